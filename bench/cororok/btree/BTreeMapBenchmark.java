@@ -0,0 +1,130 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * compares {@link BTreeMap} and {@link BPlusTreeMap} with {@link TreeMap} and {@link ConcurrentSkipListMap}. See
+ * {@link BTreeSetBenchmark} for how parameters and scores are read.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class BTreeMapBenchmark {
+	static final int PROBES = 1 << 16;
+	static final int PROBE_MASK = PROBES - 1;
+
+	@Param({ "btree", "bplustree", "treemap", "skiplist" })
+	String impl;
+
+	@Param({ "4", "16", "64", "256" })
+	int maxSizeOfKeys;
+
+	@Param({ Workload.INTEGER, Workload.LONG, Workload.STRING })
+	String keyType;
+
+	@Param({ "SEQUENTIAL", "RANDOM", "ZIPFIAN" })
+	Workload.Distribution distribution;
+
+	@Param({ "100000" })
+	int size;
+
+	Comparable[] keys;
+	Comparable[] probes;
+	Map map;
+	int probeIndex;
+	int putIndex;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Workload workload = new Workload(keyType, distribution, size, 42);
+		keys = workload.insertKeys();
+		probes = workload.probeKeys(PROBES);
+		map = newMap();
+		for (Comparable key : keys) {
+			map.put(key, key);
+		}
+	}
+
+	Map newMap() {
+		if ("btree".equals(impl))
+			return new BTreeMap(maxSizeOfKeys);
+		else if ("bplustree".equals(impl))
+			return new BPlusTreeMap(maxSizeOfKeys);
+		else if ("treemap".equals(impl))
+			return new TreeMap();
+		else if ("skiplist".equals(impl))
+			return new ConcurrentSkipListMap();
+		throw new IllegalArgumentException("unknown impl " + impl);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public Object get() {
+		return map.get(probes[probeIndex++ & PROBE_MASK]);
+	}
+
+	/**
+	 * replaces the value of an existing key, the common update path.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public Object putExisting() {
+		Comparable key = keys[putIndex];
+		if (++putIndex == keys.length)
+			putIndex = 0;
+		return map.put(key, key);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public long iterate() {
+		long sum = 0;
+		for (Object obj : map.entrySet()) {
+			Map.Entry entry = (Map.Entry) obj;
+			sum += entry.getKey().hashCode() + entry.getValue().hashCode();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 10, batchSize = 1)
+	@Measurement(iterations = 20, batchSize = 1)
+	public Map put() {
+		Map newMap = newMap();
+		for (Comparable key : keys) {
+			newMap.put(key, key);
+		}
+		return newMap;
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * compares {@link BTreeSet} and {@link BPlusTreeSet} with {@link TreeSet} and {@link ConcurrentSkipListSet}.
+ * maxSizeOfKeys is used only by btree, run e.g. "-p impl=treeset -p maxSizeOfKeys=4" for the baselines. add and remove
+ * load or unload the whole set in one invocation so their score is time per size keys.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class BTreeSetBenchmark {
+	static final int PROBES = 1 << 16;
+	static final int PROBE_MASK = PROBES - 1;
+
+	@Param({ "btree", "bplustree", "treeset", "skiplist" })
+	String impl;
+
+	@Param({ "4", "16", "64", "256" })
+	int maxSizeOfKeys;
+
+	@Param({ Workload.INTEGER, Workload.LONG, Workload.STRING })
+	String keyType;
+
+	@Param({ "SEQUENTIAL", "RANDOM", "ZIPFIAN" })
+	Workload.Distribution distribution;
+
+	@Param({ "100000" })
+	int size;
+
+	Comparable[] keys;
+	TreeSet sortedKeys;
+	Comparable[] probes;
+	Set set;
+	int probeIndex;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Workload workload = new Workload(keyType, distribution, size, 42);
+		keys = workload.insertKeys();
+		probes = workload.probeKeys(PROBES);
+		sortedKeys = new TreeSet(Arrays.asList(keys));
+		set = newSet();
+		for (Comparable key : keys) {
+			set.add(key);
+		}
+	}
+
+	Set newSet() {
+		if ("btree".equals(impl))
+			return new BTreeSet(maxSizeOfKeys);
+		else if ("bplustree".equals(impl))
+			return new BPlusTreeSet(maxSizeOfKeys);
+		else if ("treeset".equals(impl))
+			return new TreeSet();
+		else if ("skiplist".equals(impl))
+			return new ConcurrentSkipListSet();
+		throw new IllegalArgumentException("unknown impl " + impl);
+	}
+
+	/**
+	 * a full set for each invocation of {@link BTreeSetBenchmark#remove(Filled)}.
+	 */
+	@State(Scope.Thread)
+	public static class Filled {
+		Set set;
+
+		@Setup(Level.Invocation)
+		public void fill(BTreeSetBenchmark benchmark) {
+			set = benchmark.newSet();
+			for (Comparable key : benchmark.keys) {
+				set.add(key);
+			}
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public boolean contains() {
+		return set.contains(probes[probeIndex++ & PROBE_MASK]);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public long iterate() {
+		long sum = 0;
+		Iterator itr = set.iterator();
+		while (itr.hasNext()) {
+			sum += itr.next().hashCode();
+		}
+		return sum;
+	}
+
+	/**
+	 * sums in a parallel stream, btree splits its own nodes and the others split as they do.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public long parallelStream() {
+		return ((Set<Object>) set).parallelStream().mapToLong(Object::hashCode).sum();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 10, batchSize = 1)
+	@Measurement(iterations = 20, batchSize = 1)
+	public Set add() {
+		Set newSet = newSet();
+		for (Comparable key : keys) {
+			newSet.add(key);
+		}
+		return newSet;
+	}
+
+	/**
+	 * loads sorted keys, btree builds bottom up and the others use their constructors taking a SortedSet.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 10, batchSize = 1)
+	@Measurement(iterations = 20, batchSize = 1)
+	public Set build() {
+		if ("btree".equals(impl))
+			return BTreeSet.build(maxSizeOfKeys, 1, sortedKeys.iterator());
+		else if ("treeset".equals(impl))
+			return new TreeSet(sortedKeys);
+		else if ("skiplist".equals(impl))
+			return new ConcurrentSkipListSet(sortedKeys);
+
+		Set newSet = newSet(); // no bulk loading, adds in order
+		for (Object key : sortedKeys) {
+			newSet.add(key);
+		}
+		return newSet;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 10, batchSize = 1)
+	@Measurement(iterations = 20, batchSize = 1)
+	public Set remove(Filled filled) {
+		Set target = filled.set;
+		for (Comparable key : keys) {
+			target.remove(key);
+		}
+		return target;
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * compares the read-write lock of {@link ConcurrentMap} with its optimistic read mode, {@link ConcurrentBTreeMap} and
+ * {@link ShardedBTreeMap}. readMostly runs 3 readers with 1 writer, get runs readers only. Use "-tg" or "-t" to change
+ * the number of threads.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConcurrentMapBenchmark {
+	@Param({ "rwlock", "optimistic", "olc", "sharded" })
+	String impl;
+
+	@Param({ "64" })
+	int maxSizeOfKeys;
+
+	@Param({ "1000000" })
+	int size;
+
+	Map<Integer, Integer> map;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		if ("rwlock".equals(impl))
+			map = new ConcurrentMap<Integer, Integer>(new BTreeMap<Integer, Integer>(maxSizeOfKeys), false);
+		else if ("optimistic".equals(impl))
+			map = new ConcurrentMap<Integer, Integer>(new BTreeMap<Integer, Integer>(maxSizeOfKeys), true);
+		else if ("olc".equals(impl))
+			map = new ConcurrentBTreeMap<Integer, Integer>(maxSizeOfKeys);
+		else if ("sharded".equals(impl))
+			map = new ShardedBTreeMap<Integer, Integer>(maxSizeOfKeys, 65536);
+		else
+			throw new IllegalArgumentException("unknown impl " + impl);
+
+		// even keys only, writers add and remove odd keys
+		for (int i = 0; i < size; i += 2) {
+			map.put(i, i);
+		}
+	}
+
+	@Benchmark
+	@Group("readMostly")
+	@GroupThreads(3)
+	public Integer readMostlyGet() {
+		return map.get(ThreadLocalRandom.current().nextInt(size));
+	}
+
+	@Benchmark
+	@Group("readMostly")
+	@GroupThreads(1)
+	public Integer readMostlyPut() {
+		int key = ThreadLocalRandom.current().nextInt(size) | 1;
+		return map.put(key, key) == null ? map.remove(key) : null;
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Integer get() {
+		return map.get(ThreadLocalRandom.current().nextInt(size));
+	}
+}
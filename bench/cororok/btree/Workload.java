@@ -0,0 +1,150 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.util.Random;
+
+/**
+ * generates keys for benchmarks. Keys are even numbers 0, 2, 4 .. (size - 1) * 2 so that about half of uniformly
+ * drawn probes miss. String keys are zero padded to keep the same order as numbers.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class Workload {
+	public static final String INTEGER = "Integer";
+	public static final String LONG = "Long";
+	public static final String STRING = "String";
+
+	public enum Distribution {
+		/**
+		 * inserts keys in ascending order and probes them in ascending order.
+		 */
+		SEQUENTIAL,
+		/**
+		 * inserts keys in random order and probes uniformly, hits and misses.
+		 */
+		RANDOM,
+		/**
+		 * inserts keys in random order and probes a few hot keys most of the time.
+		 */
+		ZIPFIAN
+	}
+
+	static final double ZIPF_EXPONENT = 0.99;
+
+	final String keyType;
+	final Distribution distribution;
+	final int size;
+	final Random random;
+
+	public Workload(String keyType, Distribution distribution, int size, long seed) {
+		this.keyType = keyType;
+		this.distribution = distribution;
+		this.size = size;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * @return all distinct keys in insertion order.
+	 */
+	public Comparable<?>[] insertKeys() {
+		long[] values = new long[size];
+		for (int i = 0; i < size; i++) {
+			values[i] = i * 2L;
+		}
+
+		if (distribution != Distribution.SEQUENTIAL)
+			shuffle(values);
+
+		return toKeys(values);
+	}
+
+	/**
+	 * @param count should be a power of 2 so that callers can cycle with a mask.
+	 * @return keys to look up.
+	 */
+	public Comparable<?>[] probeKeys(int count) {
+		long[] values = new long[count];
+		switch (distribution) {
+		case SEQUENTIAL:
+			// ascending over the whole key space, not only its first count numbers
+			for (int i = 0; i < count; i++) {
+				values[i] = i * (size * 2L) / count;
+			}
+			break;
+		case RANDOM:
+			for (int i = 0; i < count; i++) {
+				values[i] = random.nextInt(size * 2);
+			}
+			break;
+		case ZIPFIAN:
+			// spreads hot ranks over the key space
+			long[] rankToKey = new long[size];
+			for (int i = 0; i < size; i++) {
+				rankToKey[i] = i * 2L;
+			}
+			shuffle(rankToKey);
+
+			double[] cdf = zipfCdf(size);
+			for (int i = 0; i < count; i++) {
+				values[i] = rankToKey[rankOf(cdf, random.nextDouble())];
+			}
+			break;
+		}
+		return toKeys(values);
+	}
+
+	private static double[] zipfCdf(int n) {
+		double[] cdf = new double[n];
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			sum += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+			cdf[i] = sum;
+		}
+		for (int i = 0; i < n; i++) {
+			cdf[i] /= sum;
+		}
+		return cdf;
+	}
+
+	private static int rankOf(double[] cdf, double p) {
+		int left = 0;
+		int right = cdf.length - 1;
+		while (left < right) {
+			int middle = (left + right) >>> 1;
+			if (cdf[middle] < p)
+				left = middle + 1;
+			else
+				right = middle;
+		}
+		return left;
+	}
+
+	private void shuffle(long[] values) {
+		for (int i = values.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			long temp = values[i];
+			values[i] = values[j];
+			values[j] = temp;
+		}
+	}
+
+	private Comparable<?>[] toKeys(long[] values) {
+		Comparable<?>[] keys = new Comparable<?>[values.length];
+		for (int i = 0; i < values.length; i++) {
+			if (INTEGER.equals(keyType))
+				keys[i] = Integer.valueOf((int) values[i]);
+			else if (LONG.equals(keyType))
+				keys[i] = Long.valueOf(values[i]);
+			else if (STRING.equals(keyType))
+				keys[i] = String.format("key%012d", values[i]);
+			else
+				throw new IllegalArgumentException("unknown key type " + keyType);
+		}
+		return keys;
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.util.Iterator;
+
+/**
+ * {@link BTreeMap} whose nodes keep the aggregate of the entries under them, see {@link Aggregator}. Sums, minimums
+ * or maximums of the values of a range of keys take O(log n) rather than iterating the entries in the range. Put and
+ * remove combine again the nodes on their path, and split, join and borrow the nodes they change, so each change
+ * calls {@link Aggregator#combine(Object, Object)} O(maxKey * log n) times.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ * @param <A> aggregate
+ */
+public class AggregateBTreeMap<K extends Comparable<K>, V, A> extends BTreeMap<K, V> {
+
+	public AggregateBTreeMap(int maxKey, Aggregator<? super K, ? super V, A> aggregator) {
+		super(new BTreeSet<K>(maxKey, true, false, aggregator));
+	}
+
+	private AggregateBTreeMap(BTreeSet<K> set) {
+		super(set);
+	}
+
+	/**
+	 * see {@link BTreeSet#build(int, double, Iterator)}.
+	 *
+	 * @param maxKey
+	 * @param aggregator
+	 * @param fillFactor
+	 * @param sortedEntries entries in ascending order of keys without duplicates
+	 * @return new map
+	 */
+	public static <K extends Comparable<K>, V, A> AggregateBTreeMap<K, V, A> build(int maxKey,
+			Aggregator<? super K, ? super V, A> aggregator, double fillFactor,
+			Iterator<? extends java.util.Map.Entry<K, V>> sortedEntries) {
+		AggregateBTreeMap<K, V, A> map = new AggregateBTreeMap<K, V, A>(maxKey, aggregator);
+		map.set.load(sortedEntries, fillFactor);
+		return map;
+	}
+
+	@Override
+	public AggregateBTreeMap<K, V, A> snapshot() {
+		return set.isReadOnly() ? this : new AggregateBTreeMap<K, V, A>(set.snapshot());
+	}
+
+	/**
+	 * @return aggregate of all entries in O(1).
+	 */
+	public A aggregate() {
+		return (A) set.aggregate(null, false, null, false);
+	}
+
+	/**
+	 * @param fromKey inclusive, null from the first key
+	 * @param toKey exclusive, null to the last key
+	 * @return aggregate of the entries in the range in O(log n).
+	 */
+	public A aggregate(K fromKey, K toKey) {
+		return aggregate(fromKey, true, toKey, false);
+	}
+
+	/**
+	 * @param fromKey null from the first key
+	 * @param fromInclusive
+	 * @param toKey null to the last key
+	 * @param toInclusive
+	 * @return aggregate of the entries in the range in O(log n), identity if the range is empty.
+	 */
+	public A aggregate(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+		return (A) set.aggregate(fromKey, fromInclusive, toKey, toInclusive);
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+/**
+ * a monoid over entries which {@link AggregateBTreeMap} caches in each node for the keys under the node. combine
+ * should be associative and identity should not change the other side, combine need not be commutative because keys
+ * are always combined in ascending order.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ * @param <K> key
+ * @param <V> value
+ * @param <A> aggregate
+ */
+public interface Aggregator<K, V, A> {
+	/**
+	 * @return aggregate of no entry, for example 0 for a sum.
+	 */
+	A identity();
+
+	/**
+	 * @param key
+	 * @param value
+	 * @return aggregate of one entry.
+	 */
+	A of(K key, V value);
+
+	/**
+	 * @param left aggregate of smaller keys
+	 * @param right aggregate of bigger keys
+	 * @return aggregate of both.
+	 */
+	A combine(A left, A right);
+}
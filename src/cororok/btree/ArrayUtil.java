@@ -56,4 +56,46 @@ public class ArrayUtil {
 			src[i] = null;
 		}
 	}
+
+	/**
+	 * see {@link #shiftLeft(Object[], int, int)}.
+	 */
+	public static void shiftLeft(long[] arr, int startIndex, int endIndex) {
+		System.arraycopy(arr, startIndex, arr, startIndex - 1, endIndex - startIndex);
+	}
+
+	/**
+	 * see {@link #shiftRight(Object[], int, int)}.
+	 */
+	public static void shiftRight(long[] arr, int startIndex, int endIndex) {
+		System.arraycopy(arr, startIndex, arr, startIndex + 1, endIndex - startIndex);
+	}
+
+	/**
+	 * see {@link #moveTo(Object[], Object[], int, int, int)}. It does not clear src because it holds no references.
+	 */
+	public static void moveTo(long[] src, long[] target, int startIndex, int endIndex, int newStartIndex) {
+		System.arraycopy(src, startIndex, target, newStartIndex, endIndex - startIndex);
+	}
+
+	/**
+	 * see {@link #shiftLeft(Object[], int, int)}.
+	 */
+	public static void shiftLeft(int[] arr, int startIndex, int endIndex) {
+		System.arraycopy(arr, startIndex, arr, startIndex - 1, endIndex - startIndex);
+	}
+
+	/**
+	 * see {@link #shiftRight(Object[], int, int)}.
+	 */
+	public static void shiftRight(int[] arr, int startIndex, int endIndex) {
+		System.arraycopy(arr, startIndex, arr, startIndex + 1, endIndex - startIndex);
+	}
+
+	/**
+	 * see {@link #moveTo(Object[], Object[], int, int, int)}. It does not clear src because it holds no references.
+	 */
+	public static void moveTo(int[] src, int[] target, int startIndex, int endIndex, int newStartIndex) {
+		System.arraycopy(src, startIndex, target, newStartIndex, endIndex - startIndex);
+	}
 }
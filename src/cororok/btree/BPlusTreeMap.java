@@ -0,0 +1,170 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * {@link BTreeMap} using {@link BPlusTreeSet} whose leaves keep values in an array parallel to the keys. Use
+ * {@link #forEach(BiConsumer)} or {@link #forEach(Comparable, Comparable, BiConsumer)} for scans, they read the leaves
+ * without creating entries.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class BPlusTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V> {
+	BPlusTreeSet<K> set;
+
+	public BPlusTreeMap(int maxKey) {
+		this.set = new BPlusTreeSet<K>(maxKey, true);
+	}
+
+	@Override
+	public Set<java.util.Map.Entry<K, V>> entrySet() {
+		return new EntrySet();
+	}
+
+	@Override
+	public int size() {
+		return set.size();
+	}
+
+	@Override
+	public void clear() {
+		set.clear();
+	}
+
+	@Override
+	public V put(K key, V value) {
+		return (V) set.put(key, value);
+	}
+
+	@Override
+	public V get(Object key) {
+		return (V) set.getValue((K) key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return set.contains(key);
+	}
+
+	@Override
+	public V remove(Object key) {
+		return key == null ? null : (V) set.removeKey((K) key);
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super K, ? super V> action) {
+		forEach(null, null, action);
+	}
+
+	/**
+	 * calls the action for each entry from fromKey to toKey in order of keys.
+	 *
+	 * @param fromKey inclusive, null from the first key
+	 * @param toKey exclusive, null to the last key
+	 * @param action
+	 */
+	public void forEach(K fromKey, K toKey, BiConsumer<? super K, ? super V> action) {
+		BPlusTreeSet<K>.KeyIterator itr = (BPlusTreeSet<K>.KeyIterator) set.iterator(fromKey, toKey);
+		while (itr.hasNext()) {
+			K key = itr.next();
+			action.accept(key, (V) itr.lastValue);
+		}
+	}
+
+	public int height() {
+		return set.height();
+	}
+
+	class KVEntity implements java.util.Map.Entry<K, V> {
+		final K key;
+		V value;
+
+		KVEntity(K key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public K getKey() {
+			return key;
+		}
+
+		@Override
+		public V getValue() {
+			return value;
+		}
+
+		@Override
+		public V setValue(V value) {
+			V oldValue = (V) set.replaceValue(key, value);
+			this.value = value;
+			return oldValue;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof java.util.Map.Entry == false)
+				return false;
+
+			java.util.Map.Entry<?, ?> other = (java.util.Map.Entry<?, ?>) obj;
+			return key.equals(other.getKey())
+					&& (value == null ? other.getValue() == null : value.equals(other.getValue()));
+		}
+
+		@Override
+		public int hashCode() {
+			return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + value;
+		}
+	}
+
+	class EntrySet extends AbstractSet<java.util.Map.Entry<K, V>> {
+		@Override
+		public Iterator<java.util.Map.Entry<K, V>> iterator() {
+			return new EntryIterator((BPlusTreeSet<K>.KeyIterator) set.iterator());
+		}
+
+		@Override
+		public int size() {
+			return set.size();
+		}
+	}
+
+	class EntryIterator implements Iterator<java.util.Map.Entry<K, V>> {
+		BPlusTreeSet<K>.KeyIterator itr;
+
+		EntryIterator(BPlusTreeSet<K>.KeyIterator itr) {
+			this.itr = itr;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return itr.hasNext();
+		}
+
+		@Override
+		public java.util.Map.Entry<K, V> next() {
+			K key = itr.next();
+			return new KVEntity(key, (V) itr.lastValue);
+		}
+
+		@Override
+		public void remove() {
+			itr.remove();
+		}
+	}
+}
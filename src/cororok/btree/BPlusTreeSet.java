@@ -0,0 +1,560 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * B+Tree version of {@link BTreeSet}. All keys are kept in leaves, inner nodes keep only separators, and every leaf is
+ * linked to its right sibling, so iteration and range scans walk the arrays of the leaves one after another without a
+ * stack and without allocating anything but the iterator.
+ * <p>
+ * It splits a full node on the way down when it adds a key, and fixes a node having the least keys on the way down when
+ * it removes a key by borrowing a key from a sibling or joining with it. So it never goes up and needs neither
+ * recursive calls nor stacks. A separator can stay in an inner node after its key is removed from the leaf, it is only
+ * used to choose a child.
+ *
+ * @author songduk.park cororok@gmail.com
+ */
+public class BPlusTreeSet<K extends Comparable<K>> extends AbstractSet<K> {
+	final int MAX_KEY;
+	/**
+	 * the least number of keys of a leaf except root.
+	 */
+	final int HALF_KEY;
+	/**
+	 * the least number of keys of an inner node except root. Two inner nodes and their separator should fit in a node
+	 * when they are joined.
+	 */
+	final int MIN_INNER_KEY;
+	final boolean hasValues;
+
+	Node root;
+	int size;
+	int height = 1;
+	int changed = 0;
+
+	public BPlusTreeSet(int maxSizeOfKeys) {
+		this(maxSizeOfKeys, false);
+	}
+
+	/**
+	 * @param maxSizeOfKeys
+	 * @param hasValues if true each leaf keeps values in an array parallel to the keys, see {@link BPlusTreeMap}.
+	 */
+	BPlusTreeSet(int maxSizeOfKeys, boolean hasValues) {
+		if (maxSizeOfKeys < 3)
+			throw new IllegalArgumentException("must be larger than 2");
+
+		this.MAX_KEY = maxSizeOfKeys;
+		this.HALF_KEY = maxSizeOfKeys / 2;
+		this.MIN_INNER_KEY = (maxSizeOfKeys - 1) / 2;
+		this.hasValues = hasValues;
+		this.root = new Node(true);
+	}
+
+	@Override
+	public Iterator<K> iterator() {
+		return new KeyIterator(firstLeaf(), 0, null);
+	}
+
+	/**
+	 * keys from fromKey to toKey. It finds fromKey in O(log n) then reads leaves.
+	 *
+	 * @param fromKey inclusive, null from the first key
+	 * @param toKey exclusive, null to the last key
+	 * @return iterator of the range
+	 */
+	public Iterator<K> iterator(K fromKey, K toKey) {
+		if (fromKey == null)
+			return new KeyIterator(firstLeaf(), 0, toKey);
+
+		Node leaf = findLeaf(fromKey);
+		int index = leaf.indexOf(fromKey);
+		return new KeyIterator(leaf, index >= 0 ? index : -index - 1, toKey);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int height() {
+		return height;
+	}
+
+	@Override
+	public boolean contains(Object keyObj) {
+		if (keyObj == null)
+			return false;
+
+		K key = (K) keyObj;
+		return findLeaf(key).indexOf(key) >= 0;
+	}
+
+	/**
+	 * @param key
+	 * @return value of the key, null if it can't find the key.
+	 */
+	Object getValue(K key) {
+		if (key == null)
+			return null;
+
+		Node leaf = findLeaf(key);
+		int index = leaf.indexOf(key);
+		return index < 0 ? null : leaf.values[index];
+	}
+
+	/**
+	 * replaces the value of an existing key without changing the structure so it does not affect iterators.
+	 *
+	 * @param key
+	 * @param newValue
+	 * @return old value or null if it can't find the key
+	 */
+	Object replaceValue(K key, Object newValue) {
+		Node leaf = findLeaf(key);
+		int index = leaf.indexOf(key);
+		if (index < 0)
+			return null;
+
+		Object oldValue = leaf.values[index];
+		leaf.values[index] = newValue;
+		return oldValue;
+	}
+
+	@Override
+	public void clear() {
+		this.root = new Node(true);
+		this.size = 0;
+		this.height = 1;
+		++changed;
+	}
+
+	private Node findLeaf(K key) {
+		Node node = root;
+		while (node.isLeaf == false)
+			node = node.children[node.childIndex(key)];
+		return node;
+	}
+
+	private Node firstLeaf() {
+		Node node = root;
+		while (node.isLeaf == false)
+			node = node.children[0];
+		return node;
+	}
+
+	@Override
+	public boolean add(K newKey) {
+		int oldSize = size;
+		put(newKey, null);
+		return size != oldSize;
+	}
+
+	/**
+	 * if the same key exists it replaces the value of the key in place and does not add a newKey.
+	 *
+	 * @param newKey
+	 * @param newValue ignored if it does not have values.
+	 * @return old value if the key exists or null
+	 */
+	Object put(K newKey, Object newValue) {
+		if (newKey == null)
+			throw new NullPointerException();
+
+		if (root.isFull()) {
+			Node newRoot = new Node(false);
+			newRoot.children[0] = root;
+			root = newRoot;
+			splitChild(newRoot, 0);
+			++height;
+		}
+
+		Node node = root;
+		while (node.isLeaf == false) {
+			int index = node.childIndex(newKey);
+			if (node.children[index].isFull()) {
+				splitChild(node, index);
+				if (newKey.compareTo(node.keys[index]) >= 0)
+					++index;
+			}
+			node = node.children[index];
+		}
+
+		int index = node.indexOf(newKey);
+		if (index >= 0) {
+			if (hasValues == false)
+				return null;
+
+			Object oldValue = node.values[index];
+			node.values[index] = newValue;
+			++changed;
+			return oldValue;
+		}
+
+		node.insertAt(-index - 1, newKey, newValue);
+		++size;
+		++changed;
+		return null;
+	}
+
+	@Override
+	public boolean remove(Object key) {
+		if (key == null)
+			return false;
+
+		int oldSize = size;
+		removeKey((K) key);
+		return size != oldSize;
+	}
+
+	/**
+	 * @param key
+	 * @return value of the removed key or null if it doesn't find the key or does not have values.
+	 */
+	Object removeKey(K key) {
+		Node node = root;
+		while (node.isLeaf == false) {
+			Node child = prepareChild(node, node.childIndex(key));
+			if (node == root && root.noOfKeys == 0) {
+				// root lost its last separator joining its children
+				root = child;
+				--height;
+			}
+			node = child;
+		}
+
+		int index = node.indexOf(key);
+		if (index < 0)
+			return null;
+
+		Object oldValue = node.valueAt(index);
+		node.removeAt(index);
+		--size;
+		++changed;
+		return oldValue;
+	}
+
+	/**
+	 * moves the right half of a full child to a new right sibling. A leaf copies the first key of the new leaf to the
+	 * parent and an inner node moves its center key to the parent.
+	 *
+	 * @param parent which is not full
+	 * @param index of the full child
+	 */
+	private void splitChild(Node parent, int index) {
+		Node child = parent.children[index];
+		Node right = new Node(child.isLeaf);
+		K separator;
+		if (child.isLeaf) {
+			ArrayUtil.moveTo(child.keys, right.keys, HALF_KEY, child.noOfKeys, 0);
+			if (hasValues)
+				ArrayUtil.moveTo(child.values, right.values, HALF_KEY, child.noOfKeys, 0);
+			right.noOfKeys = child.noOfKeys - HALF_KEY;
+			separator = right.keys[0];
+			right.next = child.next;
+			child.next = right;
+		} else {
+			separator = child.keys[HALF_KEY];
+			child.keys[HALF_KEY] = null;
+			ArrayUtil.moveTo(child.keys, right.keys, HALF_KEY + 1, child.noOfKeys, 0);
+			ArrayUtil.moveTo(child.children, right.children, HALF_KEY + 1, child.noOfKeys + 1, 0);
+			right.noOfKeys = child.noOfKeys - HALF_KEY - 1;
+		}
+		child.noOfKeys = HALF_KEY;
+
+		ArrayUtil.shiftRight(parent.keys, index, parent.noOfKeys);
+		ArrayUtil.shiftRight(parent.children, index + 1, parent.noOfKeys + 1);
+		parent.keys[index] = separator;
+		parent.children[index + 1] = right;
+		++parent.noOfKeys;
+	}
+
+	/**
+	 * makes sure the child can lose a key by borrowing a key from a sibling or joining with a sibling.
+	 *
+	 * @param parent which can lose a separator, or root
+	 * @param index of the child
+	 * @return the child, or its left sibling if the child was joined to it.
+	 */
+	private Node prepareChild(Node parent, int index) {
+		Node child = parent.children[index];
+		if (child.noOfKeys > child.minKeys())
+			return child;
+
+		++changed; // moves keys between leaves
+		Node left = index > 0 ? parent.children[index - 1] : null;
+		Node right = index < parent.noOfKeys ? parent.children[index + 1] : null;
+		if (left != null && left.noOfKeys > left.minKeys()) {
+			borrowFromLeft(parent, index, left, child);
+			return child;
+		} else if (right != null && right.noOfKeys > right.minKeys()) {
+			borrowFromRight(parent, index, child, right);
+			return child;
+		} else if (left != null) {
+			join(parent, index - 1, left, child);
+			return left;
+		}
+		join(parent, index, child, right);
+		return child;
+	}
+
+	private void borrowFromLeft(Node parent, int index, Node left, Node child) {
+		int last = left.noOfKeys - 1;
+		child.shiftKeysRight();
+		if (child.isLeaf) {
+			child.setKeyAt(0, left.keys[last], left.valueAt(last));
+			parent.keys[index - 1] = left.keys[last];
+		} else {
+			ArrayUtil.shiftRight(child.children, 0, child.noOfKeys + 1);
+			child.keys[0] = parent.keys[index - 1];
+			child.children[0] = left.children[last + 1];
+			parent.keys[index - 1] = left.keys[last];
+			left.children[last + 1] = null;
+		}
+		++child.noOfKeys;
+		left.clearKeys(last, last + 1);
+		--left.noOfKeys;
+	}
+
+	private void borrowFromRight(Node parent, int index, Node child, Node right) {
+		if (child.isLeaf) {
+			child.setKeyAt(child.noOfKeys, right.keys[0], right.valueAt(0));
+			right.removeAt(0);
+			parent.keys[index] = right.keys[0];
+		} else {
+			child.keys[child.noOfKeys] = parent.keys[index];
+			child.children[child.noOfKeys + 1] = right.children[0];
+			parent.keys[index] = right.keys[0];
+			ArrayUtil.shiftLeft(right.keys, 1, right.noOfKeys);
+			ArrayUtil.shiftLeft(right.children, 1, right.noOfKeys + 1);
+			right.clearChildren(right.noOfKeys, right.noOfKeys + 1);
+			right.clearKeys(right.noOfKeys - 1, right.noOfKeys);
+			--right.noOfKeys;
+		}
+		++child.noOfKeys;
+	}
+
+	/**
+	 * appends right node to left node and removes the separator and the right node from the parent.
+	 *
+	 * @param parent
+	 * @param separatorIndex index of the separator between left and right
+	 * @param left
+	 * @param right
+	 */
+	private void join(Node parent, int separatorIndex, Node left, Node right) {
+		if (left.isLeaf) {
+			for (int i = 0; i < right.noOfKeys; i++)
+				left.setKeyAt(left.noOfKeys + i, right.keys[i], right.valueAt(i));
+			left.noOfKeys += right.noOfKeys;
+			left.next = right.next;
+		} else {
+			left.keys[left.noOfKeys] = parent.keys[separatorIndex];
+			System.arraycopy(right.keys, 0, left.keys, left.noOfKeys + 1, right.noOfKeys);
+			System.arraycopy(right.children, 0, left.children, left.noOfKeys + 1, right.noOfKeys + 1);
+			left.noOfKeys += right.noOfKeys + 1;
+		}
+
+		ArrayUtil.shiftLeft(parent.keys, separatorIndex + 1, parent.noOfKeys);
+		ArrayUtil.shiftLeft(parent.children, separatorIndex + 2, parent.noOfKeys + 1);
+		parent.clearChildren(parent.noOfKeys, parent.noOfKeys + 1);
+		parent.clearKeys(parent.noOfKeys - 1, parent.noOfKeys);
+		--parent.noOfKeys;
+	}
+
+	/**
+	 * debug purpose
+	 */
+	public void debug() {
+		root.print("");
+	}
+
+	/**
+	 * Iterator that reads the keys of a leaf and moves to its right sibling.
+	 */
+	class KeyIterator implements Iterator<K> {
+		Node leaf;
+		int index;
+		/**
+		 * exclusive, null if no limit.
+		 */
+		final K toKey;
+		/**
+		 * value of the key returned by the last next.
+		 */
+		Object lastValue;
+		final int changedAt = changed;
+
+		KeyIterator(Node leaf, int index, K toKey) {
+			this.leaf = leaf;
+			this.index = index;
+			this.toKey = toKey;
+			if (index == leaf.noOfKeys)
+				nextLeaf();
+		}
+
+		private void nextLeaf() {
+			leaf = leaf.next;
+			index = 0;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return leaf != null && index < leaf.noOfKeys && (toKey == null || leaf.keys[index].compareTo(toKey) < 0);
+		}
+
+		@Override
+		public K next() {
+			if (changedAt != changed)
+				throw new ConcurrentModificationException();
+
+			if (hasNext() == false)
+				throw new NoSuchElementException();
+
+			K key = leaf.keys[index];
+			lastValue = leaf.valueAt(index);
+			if (++index == leaf.noOfKeys)
+				nextLeaf();
+			return key;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * Leaf keeps keys and values, inner node keeps separators and children. Children at index i has keys equal to or
+	 * greater than keys[i - 1] and less than keys[i].
+	 */
+	class Node {
+		final boolean isLeaf;
+		int noOfKeys = 0;
+
+		final K[] keys;
+		Object[] values;
+		Node[] children;
+		/**
+		 * right sibling of a leaf
+		 */
+		Node next;
+
+		Node(boolean isLeaf) {
+			this.isLeaf = isLeaf;
+			this.keys = BTreeSet.newKeys(MAX_KEY);
+			if (isLeaf == false)
+				this.children = (Node[]) java.lang.reflect.Array.newInstance(this.getClass(), MAX_KEY + 1);
+			else if (hasValues)
+				this.values = new Object[MAX_KEY];
+		}
+
+		boolean isFull() {
+			return noOfKeys == MAX_KEY;
+		}
+
+		int minKeys() {
+			return isLeaf ? HALF_KEY : MIN_INNER_KEY;
+		}
+
+		/**
+		 * see {@link java.util.Arrays#binarySearch(Object[], Object)}.
+		 *
+		 * @param key
+		 * @return index of the key or (-(insertion point) - 1).
+		 */
+		int indexOf(K key) {
+			int left = 0;
+			int right = noOfKeys - 1;
+			while (left <= right) {
+				int middle = (left + right) >>> 1;
+				int diff = key.compareTo(keys[middle]);
+				if (diff > 0)
+					left = middle + 1;
+				else if (diff < 0)
+					right = middle - 1;
+				else
+					return middle;
+			}
+			return -(left + 1);
+		}
+
+		/**
+		 * @param key
+		 * @return index of the child which can have the key.
+		 */
+		int childIndex(K key) {
+			int index = indexOf(key);
+			return index >= 0 ? index + 1 : -index - 1;
+		}
+
+		Object valueAt(int index) {
+			return values == null ? null : values[index];
+		}
+
+		void setKeyAt(int index, K key, Object value) {
+			keys[index] = key;
+			if (values != null)
+				values[index] = value;
+		}
+
+		void shiftKeysRight() {
+			ArrayUtil.shiftRight(keys, 0, noOfKeys);
+			if (values != null)
+				ArrayUtil.shiftRight(values, 0, noOfKeys);
+		}
+
+		void insertAt(int index, K key, Object value) {
+			ArrayUtil.shiftRight(keys, index, noOfKeys);
+			if (values != null)
+				ArrayUtil.shiftRight(values, index, noOfKeys);
+			setKeyAt(index, key, value);
+			++noOfKeys;
+		}
+
+		void removeAt(int index) {
+			ArrayUtil.shiftLeft(keys, index + 1, noOfKeys);
+			if (values != null)
+				ArrayUtil.shiftLeft(values, index + 1, noOfKeys);
+			--noOfKeys;
+			setKeyAt(noOfKeys, null, null);
+		}
+
+		/**
+		 * nulls keys and values from fromIndex to toIndex (exclusive) so that they can be collected.
+		 */
+		void clearKeys(int fromIndex, int toIndex) {
+			for (int i = fromIndex; i < toIndex; i++)
+				setKeyAt(i, null, null);
+		}
+
+		void clearChildren(int fromIndex, int toIndex) {
+			for (int i = fromIndex; i < toIndex; i++)
+				children[i] = null;
+		}
+
+		void print(String indent) {
+			StringBuilder sb = new StringBuilder(indent);
+			for (int i = 0; i < noOfKeys; i++)
+				sb.append(keys[i]).append(' ');
+			System.out.println(sb);
+			if (isLeaf == false) {
+				for (int i = 0; i <= noOfKeys; i++)
+					children[i].print(indent + "  ");
+			}
+		}
+	}
+}
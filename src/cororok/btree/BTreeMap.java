@@ -5,23 +5,177 @@
  */
 package cororok.btree;
 
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.AbstractMap;
 import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
 
 /**
- * It is compatible with standard {@link java.util.Map}. It uses a Set using B-Tree.
+ * It is compatible with standard {@link java.util.Map}. It uses a Set using B-Tree whose nodes keep values in an array
+ * parallel to the keys. Entries are created only when it iterates {@link #entrySet()}. Lookups search the keys
+ * directly without writing any member, so many threads can call {@link #get(Object)} and
+ * {@link #containsKey(Object)} at the same time as long as no thread modifies the map.
  * 
  * @author songduk.park cororok@gmail.com
  * 
  */
-public class BTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V> {
-	BTreeSet<KVEntity<K, V>> set;
-	KVEntity<K, V> reuseEntity = new KVEntity<K, V>();
+public class BTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+	BTreeSet<K> set;
+	/**
+	 * view of all entries, navigation methods of the map use it.
+	 */
+	private SubMap all;
 
 	public BTreeMap(int maxKey) {
-		this.set = new BTreeSet<KVEntity<K, V>>(maxKey);
+		this.set = new BTreeSet<K>(maxKey, true);
+	}
+
+	/**
+	 * see {@link BTreeSet#build(int, double, Iterator)}.
+	 * 
+	 * @param maxKey
+	 * @param fillFactor
+	 * @param sortedEntries entries in ascending order of keys without duplicates
+	 * @return new map
+	 */
+	public static <K extends Comparable<K>, V> BTreeMap<K, V> build(int maxKey, double fillFactor,
+			Iterator<? extends java.util.Map.Entry<K, V>> sortedEntries) {
+		BTreeMap<K, V> map = new BTreeMap<K, V>(maxKey);
+		map.set.load(sortedEntries, fillFactor);
+		return map;
+	}
+
+	/**
+	 * writes entries in ascending order of keys to the channel, see {@link BTreeSet#writeTo(WritableByteChannel, Codec)}.
+	 * 
+	 * @param channel which is not closed
+	 * @param keyCodec
+	 * @param valueCodec values should not be null
+	 * @throws IOException
+	 */
+	public void writeTo(WritableByteChannel channel, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+		SnapshotFormat.write(channel, set, keyCodec, valueCodec);
+	}
+
+	/**
+	 * reads entries written by {@link #writeTo(WritableByteChannel, Codec, Codec)} and builds a map like
+	 * {@link #build(int, double, Iterator)}.
+	 * 
+	 * @param channel which is not closed
+	 * @param maxKey
+	 * @param fillFactor
+	 * @param keyCodec
+	 * @param valueCodec
+	 * @return new map
+	 * @throws IOException if it can't read or the data is broken.
+	 */
+	public static <K extends Comparable<K>, V> BTreeMap<K, V> readFrom(ReadableByteChannel channel, int maxKey,
+			double fillFactor, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+		BTreeMap<K, V> map = new BTreeMap<K, V>(maxKey);
+		SnapshotFormat.read(channel, map.set, fillFactor, keyCodec, valueCodec);
+		return map;
+	}
+
+	BTreeMap(BTreeSet<K> set) {
+		this.set = set;
+	}
+
+	/**
+	 * see {@link BTreeSet#parallelBuild(int, double, java.util.Collection)}.
+	 * 
+	 * @param maxKey
+	 * @param fillFactor
+	 * @param entries in any order
+	 * @return new map
+	 */
+	public static <K extends Comparable<K>, V> BTreeMap<K, V> parallelBuild(int maxKey, double fillFactor,
+			java.util.Map<? extends K, ? extends V> entries) {
+		java.util.Map.Entry<? extends K, ? extends V>[] sorted = toArray(entries);
+		for (java.util.Map.Entry<? extends K, ? extends V> entry : sorted) {
+			if (entry.getKey() == null)
+				throw new IllegalArgumentException("null key");
+		}
+		Arrays.parallelSort(sorted, (left, right) -> left.getKey().compareTo(right.getKey()));
+
+		K[] keys = BTreeSet.newKeys(sorted.length);
+		Object[] values = new Object[sorted.length];
+		int noOfKeys = 0;
+		for (java.util.Map.Entry<? extends K, ? extends V> entry : sorted) {
+			if (noOfKeys > 0 && keys[noOfKeys - 1].compareTo(entry.getKey()) == 0)
+				--noOfKeys; // the last one wins like put
+			keys[noOfKeys] = entry.getKey();
+			values[noOfKeys++] = entry.getValue();
+		}
+		BTreeMap<K, V> map = new BTreeMap<K, V>(maxKey);
+		map.set.loadSorted(keys, values, noOfKeys, fillFactor);
+		return map;
+	}
+
+	/**
+	 * see {@link BTreeSet#parallelForEach(java.util.function.Consumer)}.
+	 * 
+	 * @param action should be thread safe.
+	 */
+	public void parallelForEach(BiConsumer<? super K, ? super V> action) {
+		set.parallelForEachEntry((key, value) -> action.accept(key, (V) value));
+	}
+
+	/**
+	 * see {@link BTreeSet#parallelReduce(java.util.function.Function, BinaryOperator)}.
+	 * 
+	 * @param transformer returns null to skip an entry.
+	 * @param reducer should be associative.
+	 * @return result or null if there is no result.
+	 */
+	public <U> U parallelReduce(BiFunction<? super K, ? super V, ? extends U> transformer, BinaryOperator<U> reducer) {
+		return set.parallelReduceEntries((key, value) -> transformer.apply(key, (V) value), reducer);
+	}
+
+	/**
+	 * see {@link BTreeSet#counted(int)}.
+	 * 
+	 * @param maxKey
+	 * @return new empty map supporting {@link #entryAt(int)} and {@link #rank(Comparable)}.
+	 */
+	public static <K extends Comparable<K>, V> BTreeMap<K, V> counted(int maxKey) {
+		return new BTreeMap<K, V>(new BTreeSet<K>(maxKey, true, true));
+	}
+
+	/**
+	 * see {@link BTreeSet#get(int)}.
+	 * 
+	 * @param index
+	 * @return the entry at the index in ascending order of keys.
+	 */
+	public java.util.Map.Entry<K, V> entryAt(int index) {
+		return entryOf(set.nodeAt(index));
+	}
+
+	/**
+	 * see {@link BTreeSet#rank(Comparable)}.
+	 */
+	public int rank(K key) {
+		return set.rank(key);
+	}
+
+	/**
+	 * see {@link BTreeSet#snapshot()}.
+	 * 
+	 * @return read only map which shares nodes with this map and does not see later changes.
+	 */
+	public BTreeMap<K, V> snapshot() {
+		return set.isReadOnly() ? this : new BTreeMap<K, V>(set.snapshot());
 	}
 
 	@Override
@@ -29,54 +183,441 @@ public class BTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V> {
 		return new EntrySet();
 	}
 
+	@Override
+	public int size() {
+		return set.size();
+	}
+
+	@Override
+	public void clear() {
+		set.clear();
+	}
+
 	@Override
 	public V put(K key, V value) {
-		KVEntity<K, V> newEntity = new KVEntity<K, V>(key, value);
-		KVEntity<K, V> oldEntity = set.returnExistingKeyOrAdd(newEntity);
+		return (V) set.put(key, value);
+	}
 
-		if (oldEntity == null)
-			return null;
-		else {
-			V oldValue = oldEntity.value;
-			oldEntity.value = value;
-			++set.changed;
-			return oldValue;
+	/**
+	 * puts the entries in order of keys from the node where the last one was put, see
+	 * {@link BTreeSet#putSorted(Comparable[], Object[], int)}. Entries are copied as they are if their keys are already
+	 * ascending, like a {@link java.util.SortedMap} in natural order or a sorted {@link java.util.LinkedHashMap}, and
+	 * sorted otherwise.
+	 */
+	@Override
+	public void putAll(java.util.Map<? extends K, ? extends V> entries) {
+		K[] keys = BTreeSet.newKeys(entries.size());
+		Object[] values = new Object[keys.length];
+		int noOfKeys = 0;
+		for (java.util.Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+			K key = entry.getKey();
+			if (key == null)
+				throw new NullPointerException();
+			if (noOfKeys == keys.length || (noOfKeys > 0 && keys[noOfKeys - 1].compareTo(key) >= 0)) {
+				putAllUnsorted(entries);
+				return;
+			}
+			keys[noOfKeys] = key;
+			values[noOfKeys++] = entry.getValue();
 		}
+		set.putSorted(keys, values, noOfKeys);
+	}
+
+	/**
+	 * entries in an array to sort, an array of Map.Entry can only be created raw.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <K, V> java.util.Map.Entry<? extends K, ? extends V>[] toArray(
+			java.util.Map<? extends K, ? extends V> entries) {
+		return (java.util.Map.Entry<? extends K, ? extends V>[]) entries.entrySet()
+				.toArray(new java.util.Map.Entry<?, ?>[entries.size()]);
+	}
+
+	private void putAllUnsorted(java.util.Map<? extends K, ? extends V> entries) {
+		java.util.Map.Entry<? extends K, ? extends V>[] sorted = toArray(entries);
+		for (java.util.Map.Entry<? extends K, ? extends V> entry : sorted) {
+			if (entry.getKey() == null)
+				throw new NullPointerException();
+		}
+		Arrays.sort(sorted, (left, right) -> left.getKey().compareTo(right.getKey()));
+
+		K[] keys = BTreeSet.newKeys(sorted.length);
+		Object[] values = new Object[sorted.length];
+		int noOfKeys = 0;
+		for (java.util.Map.Entry<? extends K, ? extends V> entry : sorted) {
+			if (noOfKeys > 0 && keys[noOfKeys - 1].compareTo(entry.getKey()) == 0)
+				--noOfKeys; // the last one wins like put
+			keys[noOfKeys] = entry.getKey();
+			values[noOfKeys++] = entry.getValue();
+		}
+		set.putSorted(keys, values, noOfKeys);
 	}
 
 	@Override
 	public V get(Object key) {
-		reuseEntity.key = (K) key;
-		KVEntity<K, V> oldEntity = set.get(reuseEntity);
-		return oldEntity == null ? null : oldEntity.value;
+		return (V) set.getValue((K) key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return set.contains(key);
+	}
+
+	/**
+	 * see {@link BTreeSet#findOptimistic(Comparable)}.
+	 */
+	Object findOptimistic(Object key) {
+		return set.findOptimistic((K) key);
 	}
 
 	@Override
 	public V remove(Object key) {
-		reuseEntity.key = (K) key;
-		KVEntity<K, V> oldEntity = set.get(reuseEntity);
+		return (V) set.removeKey((K) key);
+	}
+
+	private SubMap all() {
+		if (all == null)
+			all = new SubMap(set.new SubSet(null, false, null, false, false));
+		return all;
+	}
 
-		if (oldEntity != null && set.remove(reuseEntity))
-			return oldEntity.value;
+	/**
+	 * @param wrappedNode
+	 * @return an entry which does not support setValue, or null.
+	 */
+	java.util.Map.Entry<K, V> entryOf(BTreeSet<K>.WrappedNode wrappedNode) {
+		if (wrappedNode == null)
+			return null;
+		return new AbstractMap.SimpleImmutableEntry<K, V>(set.keyOf(wrappedNode),
+				(V) wrappedNode.node.valueAt(wrappedNode.index));
+	}
 
+	@Override
+	public Comparator<? super K> comparator() {
 		return null;
 	}
 
-	class KVEntity<K extends Comparable<K>, V> implements Comparable<KVEntity<K, V>>, java.util.Map.Entry<K, V> {
-		K key;
-		V value;
+	@Override
+	public K firstKey() {
+		return all().firstKey();
+	}
+
+	@Override
+	public K lastKey() {
+		return all().lastKey();
+	}
+
+	@Override
+	public java.util.Map.Entry<K, V> firstEntry() {
+		return all().firstEntry();
+	}
+
+	@Override
+	public java.util.Map.Entry<K, V> lastEntry() {
+		return all().lastEntry();
+	}
+
+	@Override
+	public java.util.Map.Entry<K, V> pollFirstEntry() {
+		return all().pollFirstEntry();
+	}
+
+	@Override
+	public java.util.Map.Entry<K, V> pollLastEntry() {
+		return all().pollLastEntry();
+	}
+
+	@Override
+	public java.util.Map.Entry<K, V> lowerEntry(K key) {
+		return entryOf(set.lowerNode(key, false));
+	}
+
+	@Override
+	public K lowerKey(K key) {
+		return set.lower(key);
+	}
+
+	@Override
+	public java.util.Map.Entry<K, V> floorEntry(K key) {
+		return entryOf(set.lowerNode(key, true));
+	}
+
+	@Override
+	public K floorKey(K key) {
+		return set.floor(key);
+	}
+
+	@Override
+	public java.util.Map.Entry<K, V> ceilingEntry(K key) {
+		return entryOf(set.higherNode(key, true));
+	}
+
+	@Override
+	public K ceilingKey(K key) {
+		return set.ceiling(key);
+	}
+
+	@Override
+	public java.util.Map.Entry<K, V> higherEntry(K key) {
+		return entryOf(set.higherNode(key, false));
+	}
+
+	@Override
+	public K higherKey(K key) {
+		return set.higher(key);
+	}
+
+	@Override
+	public Set<K> keySet() {
+		return navigableKeySet();
+	}
+
+	@Override
+	public NavigableSet<K> navigableKeySet() {
+		return all().navigableKeySet();
+	}
+
+	@Override
+	public NavigableSet<K> descendingKeySet() {
+		return all().descendingKeySet();
+	}
+
+	@Override
+	public NavigableMap<K, V> descendingMap() {
+		return all().descendingMap();
+	}
+
+	@Override
+	public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+		return all().subMap(fromKey, fromInclusive, toKey, toInclusive);
+	}
+
+	@Override
+	public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+		return all().headMap(toKey, inclusive);
+	}
+
+	@Override
+	public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+		return all().tailMap(fromKey, inclusive);
+	}
+
+	@Override
+	public SortedMap<K, V> subMap(K fromKey, K toKey) {
+		return subMap(fromKey, true, toKey, false);
+	}
+
+	@Override
+	public SortedMap<K, V> headMap(K toKey) {
+		return headMap(toKey, false);
+	}
+
+	@Override
+	public SortedMap<K, V> tailMap(K fromKey) {
+		return tailMap(fromKey, true);
+	}
 
-		KVEntity() {
+	/**
+	 * view of the entries whose keys are in a {@link BTreeSet.SubSet}.
+	 */
+	class SubMap extends AbstractMap<K, V> implements NavigableMap<K, V> {
+		final BTreeSet<K>.SubSet keys;
+
+		SubMap(BTreeSet<K>.SubSet keys) {
+			this.keys = keys;
 		}
 
-		KVEntity(K key, V value) {
-			this.key = key;
-			this.value = value;
+		@Override
+		public Set<java.util.Map.Entry<K, V>> entrySet() {
+			return new AbstractSet<java.util.Map.Entry<K, V>>() {
+				@Override
+				public Iterator<java.util.Map.Entry<K, V>> iterator() {
+					return new EntryIterator(keys.keyIterator(false));
+				}
+
+				@Override
+				public int size() {
+					return keys.size();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return keys.size();
 		}
 
 		@Override
-		public int compareTo(KVEntity<K, V> obj) {
-			return key.compareTo(obj.key);
+		public boolean isEmpty() {
+			return keys.isEmpty();
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return keys.contains(key);
+		}
+
+		@Override
+		public V get(Object key) {
+			return key != null && keys.inRange((K) key) ? BTreeMap.this.get(key) : null;
+		}
+
+		@Override
+		public V put(K key, V value) {
+			if (keys.inRange(key) == false)
+				throw new IllegalArgumentException("key out of range");
+			return BTreeMap.this.put(key, value);
+		}
+
+		@Override
+		public V remove(Object key) {
+			return key != null && keys.inRange((K) key) ? BTreeMap.this.remove(key) : null;
+		}
+
+		@Override
+		public void clear() {
+			keys.clear();
+		}
+
+		@Override
+		public Comparator<? super K> comparator() {
+			return keys.comparator();
+		}
+
+		@Override
+		public K firstKey() {
+			return keys.first();
+		}
+
+		@Override
+		public K lastKey() {
+			return keys.last();
+		}
+
+		@Override
+		public java.util.Map.Entry<K, V> firstEntry() {
+			return entryOf(keys.firstNode());
+		}
+
+		@Override
+		public java.util.Map.Entry<K, V> lastEntry() {
+			return entryOf(keys.lastNode());
+		}
+
+		@Override
+		public java.util.Map.Entry<K, V> pollFirstEntry() {
+			java.util.Map.Entry<K, V> entry = firstEntry();
+			if (entry != null)
+				set.removeKey(entry.getKey());
+			return entry;
+		}
+
+		@Override
+		public java.util.Map.Entry<K, V> pollLastEntry() {
+			java.util.Map.Entry<K, V> entry = lastEntry();
+			if (entry != null)
+				set.removeKey(entry.getKey());
+			return entry;
+		}
+
+		@Override
+		public java.util.Map.Entry<K, V> lowerEntry(K key) {
+			return entryOf(keys.lowerInView(key));
+		}
+
+		@Override
+		public K lowerKey(K key) {
+			return keys.lower(key);
+		}
+
+		@Override
+		public java.util.Map.Entry<K, V> floorEntry(K key) {
+			return entryOf(keys.floorInView(key));
+		}
+
+		@Override
+		public K floorKey(K key) {
+			return keys.floor(key);
+		}
+
+		@Override
+		public java.util.Map.Entry<K, V> ceilingEntry(K key) {
+			return entryOf(keys.ceilingInView(key));
+		}
+
+		@Override
+		public K ceilingKey(K key) {
+			return keys.ceiling(key);
+		}
+
+		@Override
+		public java.util.Map.Entry<K, V> higherEntry(K key) {
+			return entryOf(keys.higherInView(key));
+		}
+
+		@Override
+		public K higherKey(K key) {
+			return keys.higher(key);
+		}
+
+		@Override
+		public Set<K> keySet() {
+			return keys;
+		}
+
+		@Override
+		public NavigableSet<K> navigableKeySet() {
+			return keys;
+		}
+
+		@Override
+		public NavigableSet<K> descendingKeySet() {
+			return keys.descendingSet();
+		}
+
+		@Override
+		public NavigableMap<K, V> descendingMap() {
+			return new SubMap((BTreeSet<K>.SubSet) keys.descendingSet());
+		}
+
+		@Override
+		public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+			return new SubMap(keys.subSet(fromKey, fromInclusive, toKey, toInclusive));
+		}
+
+		@Override
+		public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+			return new SubMap(keys.headSet(toKey, inclusive));
+		}
+
+		@Override
+		public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+			return new SubMap(keys.tailSet(fromKey, inclusive));
+		}
+
+		@Override
+		public SortedMap<K, V> subMap(K fromKey, K toKey) {
+			return subMap(fromKey, true, toKey, false);
+		}
+
+		@Override
+		public SortedMap<K, V> headMap(K toKey) {
+			return headMap(toKey, false);
+		}
+
+		@Override
+		public SortedMap<K, V> tailMap(K fromKey) {
+			return tailMap(fromKey, true);
+		}
+	}
+
+	class KVEntity implements java.util.Map.Entry<K, V> {
+		final K key;
+		V value;
+
+		KVEntity(K key, V value) {
+			this.key = key;
+			this.value = value;
 		}
 
 		@Override
@@ -91,23 +632,36 @@ public class BTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V> {
 
 		@Override
 		public V setValue(V value) {
+			V oldValue = (V) set.replaceValue(key, value);
 			this.value = value;
-			return value;
+			return oldValue;
 		}
 
+		@Override
 		public boolean equals(Object obj) {
-			if (obj == null)
+			if (obj instanceof java.util.Map.Entry == false)
 				return false;
 
-			KVEntity<K, V> other = (KVEntity<K, V>) obj;
-			return compareTo(other) == 1;
+			java.util.Map.Entry<?, ?> other = (java.util.Map.Entry<?, ?>) obj;
+			return key.equals(other.getKey())
+					&& (value == null ? other.getValue() == null : value.equals(other.getValue()));
+		}
+
+		@Override
+		public int hashCode() {
+			return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + value;
 		}
 	}
 
 	class EntrySet extends AbstractSet<java.util.Map.Entry<K, V>> {
 		@Override
 		public Iterator<java.util.Map.Entry<K, V>> iterator() {
-			return new EntryIterator(set.iterator());
+			return new EntryIterator(set.new KeyIterator());
 		}
 
 		@Override
@@ -117,9 +671,9 @@ public class BTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V> {
 	}
 
 	class EntryIterator implements Iterator<java.util.Map.Entry<K, V>> {
-		Iterator<KVEntity<K, V>> itr;
+		BTreeSet<K>.KeyIterator itr;
 
-		EntryIterator(Iterator<KVEntity<K, V>> itr) {
+		EntryIterator(BTreeSet<K>.KeyIterator itr) {
 			this.itr = itr;
 		}
 
@@ -130,7 +684,8 @@ public class BTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V> {
 
 		@Override
 		public java.util.Map.Entry<K, V> next() {
-			return itr.next();
+			K key = itr.next();
+			return new KVEntity(key, (V) itr.lastValue);
 		}
 
 		@Override
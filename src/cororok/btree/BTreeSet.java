@@ -5,22 +5,43 @@
  */
 package cororok.btree;
 
+import java.io.IOException;
 import java.lang.reflect.Array;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
 import java.util.NoSuchElementException;
+import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * It implements B-Tree. See http://en.wikipedia.org/wiki/B-tree. It is compatible with standard {@link java.util.Set}.
  * It uses an Array to reduce overhead of memory allocation of LinkedList that is easier to handle the overflow and
  * join/merge operation. Because it uses an array when it adds a key it should shift all keys larger than the key. If
  * node will be full it splits node first then adds the key later to reduce shift operation. It uses stacks to avoid
- * recursive calls.
+ * recursive calls. As a {@link NavigableSet} it finds floor, ceiling and the bounds of views in O(log n) and its
+ * iterators start from there.
  * 
  * @author songduk.park cororok@gmail.com
  */
-public class BTreeSet<K extends Comparable<K>> extends AbstractSet<K> {
+public class BTreeSet<K extends Comparable<K>> extends AbstractSet<K> implements NavigableSet<K> {
 	int count = 0;
 	final int MAX_KEY;
 	final int HALF_KEY;
@@ -28,34 +49,580 @@ public class BTreeSet<K extends Comparable<K>> extends AbstractSet<K> {
 	final int CENTER_CHILDREN;
 	final int MAX_CHILDREN;
 	final int HALF_CHILDREN;
+	final boolean hasValues;
+	/**
+	 * true if each node keeps the number of keys under it, see {@link #counted(int)}.
+	 */
+	final boolean counted;
+	/**
+	 * if not null each node keeps the aggregate of the keys and values under it, see {@link AggregateBTreeMap}.
+	 */
+	final Aggregator<? super K, Object, Object> aggregator;
 
 	Node root;
 	int size;
 	int height = 1;
 	int changed = 0;
+	/**
+	 * counts changes of the shape of the tree, splits on add and joins or borrows on remove, unlike {@link #changed}
+	 * which counts every change.
+	 */
+	int restructured = 0;
+	/**
+	 * nodes created before the last {@link #snapshot()} have an older version and are shared with snapshots so they
+	 * are copied before they are changed.
+	 */
+	int version = 0;
+	/**
+	 * true if it is a snapshot.
+	 */
+	final boolean readOnly;
+
+	/**
+	 * parallel operations do not fork a subtree having about this number of keys or less.
+	 */
+	static final int PARALLEL_THRESHOLD = 1 << 12;
 
 	Stack<Node> addStack = new Stack<Node>();
-	Stack<WrappedNode> deleteStack = new Stack<WrappedNode>();
-	Stack<WrappedNode> minStack = new Stack<WrappedNode>();
-	Stack<WrappedNode> maxStack = new Stack<WrappedNode>();
+	/**
+	 * the key and the value going up to the parent after a split. They are kept in the set, not in a new object, so
+	 * that add does not allocate anything but new nodes.
+	 */
+	K splitKey;
+	Object splitValue;
+	/**
+	 * nodes from the root to the leaf where remove takes a key, and the index of the child it went down to in each
+	 * node. They are reused by every remove and grow only when the tree gets higher.
+	 */
+	Node[] pathNodes = newNodes(8);
+	int[] pathIndexes = new int[8];
+	int pathSize;
+	/**
+	 * nodes from the root to the rightmost leaf kept after a key greater than all keys is added, so the next such key
+	 * is added after comparing it only with the last key instead of searching every level. It is valid while
+	 * {@link #restructured} and {@link #version} are the same as when it was kept, so other adds, removes and new
+	 * values which do not split or join nodes keep it.
+	 */
+	Node[] rightPath = newNodes(8);
+	int rightPathSize;
+	int rightPathRestructured = -1;
+	int rightPathVersion;
+	/**
+	 * true while it adds a key greater than all keys. A full node on the right edge then keeps all keys but one and
+	 * the new node on the right gets only the new key, so ascending keys fill nodes instead of leaving them half full.
+	 * Nodes on the right edge may have fewer than {@link #HALF_KEY} keys like the root, remove joins or borrows for
+	 * them as for any insufficient node.
+	 */
+	boolean appending;
 
 	public BTreeSet(int maxSizeOfKeys) {
+		this(maxSizeOfKeys, false);
+	}
+
+	/**
+	 * @param maxSizeOfKeys
+	 * @param hasValues if true each node keeps values in an array parallel to the keys, see {@link BTreeMap}.
+	 */
+	BTreeSet(int maxSizeOfKeys, boolean hasValues) {
+		this(maxSizeOfKeys, hasValues, false);
+	}
+
+	/**
+	 * @param maxSizeOfKeys
+	 * @param hasValues
+	 * @param counted if true each node keeps the number of keys under it, see {@link #counted(int)}.
+	 */
+	BTreeSet(int maxSizeOfKeys, boolean hasValues, boolean counted) {
+		this(maxSizeOfKeys, hasValues, counted, null);
+	}
+
+	/**
+	 * @param maxSizeOfKeys
+	 * @param hasValues
+	 * @param counted
+	 * @param aggregator null if nodes do not keep aggregates.
+	 */
+	BTreeSet(int maxSizeOfKeys, boolean hasValues, boolean counted, Aggregator<? super K, ?, ?> aggregator) {
 		this.MAX_KEY = maxSizeOfKeys;
 		this.MAX_CHILDREN = maxSizeOfKeys + 1;
 		this.HALF_CHILDREN = (MAX_CHILDREN + 1) / 2;
 		this.HALF_KEY = MAX_KEY / 2;
 		this.CENTER_KEY = maxSizeOfKeys / 2 - 1;
 		this.CENTER_CHILDREN = CENTER_KEY + 1;
+		this.hasValues = hasValues;
+		this.counted = counted;
+		this.aggregator = (Aggregator<? super K, Object, Object>) aggregator;
+		this.readOnly = false;
 
 		this.root = new Node();
 	}
 
+	/**
+	 * creates a read only snapshot sharing the nodes of the source.
+	 */
+	private BTreeSet(BTreeSet<K> source) {
+		this.MAX_KEY = source.MAX_KEY;
+		this.MAX_CHILDREN = source.MAX_CHILDREN;
+		this.HALF_CHILDREN = source.HALF_CHILDREN;
+		this.HALF_KEY = source.HALF_KEY;
+		this.CENTER_KEY = source.CENTER_KEY;
+		this.CENTER_CHILDREN = source.CENTER_CHILDREN;
+		this.hasValues = source.hasValues;
+		this.counted = source.counted;
+		this.aggregator = source.aggregator;
+		this.readOnly = true;
+
+		this.root = source.root;
+		this.size = source.size;
+		this.height = source.height;
+	}
+
+	/**
+	 * creates an order statistic set. Each node keeps the number of keys under it so {@link #get(int)},
+	 * {@link #rank(Comparable)} and size of its views take O(log n) rather than O(n). Add and remove update the
+	 * numbers of the nodes on their path, and split, join and borrow count again only the nodes they change.
+	 * 
+	 * @param maxSizeOfKeys
+	 * @return new empty set
+	 */
+	public static <K extends Comparable<K>> BTreeSet<K> counted(int maxSizeOfKeys) {
+		return new BTreeSet<K>(maxSizeOfKeys, false, true);
+	}
+
+	public boolean isCounted() {
+		return counted;
+	}
+
+	/**
+	 * returns a read only view of the current keys in O(1). It does not copy any node but after it, this set copies a
+	 * node shared with snapshots before it changes the node, so each mutation copies only the nodes on its path from
+	 * the root to the leaf, plus a sibling when it merges. Readers of a snapshot never lock nor block this set and
+	 * never see a {@link ConcurrentModificationException}. It should be published to other threads safely like any
+	 * other object.
+	 * 
+	 * @return snapshot which throws UnsupportedOperationException on changes.
+	 */
+	public BTreeSet<K> snapshot() {
+		if (readOnly)
+			return this;
+
+		BTreeSet<K> snapshot = new BTreeSet<K>(this);
+		++version;
+		return snapshot;
+	}
+
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+
+	private void checkWritable() {
+		if (readOnly)
+			throw new UnsupportedOperationException("snapshot is read only");
+	}
+
+	/**
+	 * @return root which is not shared with snapshots.
+	 */
+	private Node writableRoot() {
+		if (root.version != version)
+			root = root.copy();
+		return root;
+	}
+
+	/**
+	 * copies the child if it is shared with snapshots and links the copy to the parent.
+	 * 
+	 * @param parent should be writable.
+	 * @param childIndex
+	 * @return child which is not shared with snapshots.
+	 */
+	private Node writableChild(Node parent, int childIndex) {
+		Node child = parent.childAt(childIndex);
+		if (child.version == version)
+			return child;
+
+		child = child.copy();
+		parent.setChildAt(childIndex, child);
+		return child;
+	}
+
+	/**
+	 * new array of nodes. Node is an inner class so its array is created raw and cast here only.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	Node[] newNodes(int length) {
+		return (Node[]) new BTreeSet.Node[length];
+	}
+
+	/**
+	 * new array of keys, which is Comparable[] at runtime like the keys of a node.
+	 */
+	@SuppressWarnings("unchecked")
+	static <K extends Comparable<K>> K[] newKeys(int length) {
+		return (K[]) new Comparable<?>[length];
+	}
+
+	private void pushPath(Node node, int index) {
+		if (pathSize == pathNodes.length) {
+			Node[] nodes = newNodes(pathSize * 2);
+			System.arraycopy(pathNodes, 0, nodes, 0, pathSize);
+			pathNodes = nodes;
+			pathIndexes = java.util.Arrays.copyOf(pathIndexes, pathSize * 2);
+		}
+		pathNodes[pathSize] = node;
+		pathIndexes[pathSize++] = index;
+	}
+
+	/**
+	 * builds a set from keys in ascending order bottom up in O(n) without searching nor splitting nodes.
+	 * 
+	 * @param maxSizeOfKeys
+	 * @param fillFactor ratio of keys in each node, 1 for read only data or less to leave room for later inserts. A
+	 *            node keeps at least half of maxSizeOfKeys anyway.
+	 * @param sortedKeys keys in ascending order without duplicates
+	 * @return new set
+	 */
+	public static <K extends Comparable<K>> BTreeSet<K> build(int maxSizeOfKeys, double fillFactor,
+			Iterator<K> sortedKeys) {
+		BTreeSet<K> set = new BTreeSet<K>(maxSizeOfKeys);
+		set.load(sortedKeys, fillFactor);
+		return set;
+	}
+
+	/**
+	 * writes keys in ascending order to the channel in the format of {@link SnapshotFormat}. It iterates this set, which
+	 * must not be changed until it returns. To write while the set is changed call it on {@link #snapshot()}, which
+	 * does not see the changes, as {@link DurableBTreeMap} does for its checkpoints.
+	 * 
+	 * @param channel which is not closed
+	 * @param keyCodec
+	 * @throws IOException
+	 */
+	public void writeTo(WritableByteChannel channel, Codec<K> keyCodec) throws IOException {
+		if (hasValues)
+			throw new UnsupportedOperationException("use BTreeMap.writeTo to write values");
+		SnapshotFormat.write(channel, this, keyCodec, null);
+	}
+
+	/**
+	 * reads keys written by {@link #writeTo(WritableByteChannel, Codec)} and builds a set like
+	 * {@link #build(int, double, Iterator)}.
+	 * 
+	 * @param channel which is not closed
+	 * @param maxSizeOfKeys
+	 * @param fillFactor
+	 * @param keyCodec
+	 * @return new set
+	 * @throws IOException if it can't read or the data is broken.
+	 */
+	public static <K extends Comparable<K>> BTreeSet<K> readFrom(ReadableByteChannel channel, int maxSizeOfKeys,
+			double fillFactor, Codec<K> keyCodec) throws IOException {
+		BTreeSet<K> set = new BTreeSet<K>(maxSizeOfKeys);
+		SnapshotFormat.read(channel, set, fillFactor, keyCodec, null);
+		return set;
+	}
+
+	/**
+	 * replaces all keys with the sorted ones. It fills leaves while it reads them, then builds each upper level from
+	 * the nodes and the separators of the lower level. Only the last nodes of a level can have less keys than the
+	 * others.
+	 * 
+	 * @param sorted keys or, if it has values, {@link Map.Entry}s in ascending order of keys.
+	 * @param fillFactor
+	 */
+	void load(Iterator<?> sorted, double fillFactor) {
+		checkWritable();
+		int keysPerNode = keysPerNode(fillFactor);
+
+		ArrayList<Node> nodes = new ArrayList<Node>();
+		ArrayList<K> separators = new ArrayList<K>();
+		ArrayList<Object> separatorValues = hasValues ? new ArrayList<Object>() : null;
+		Node leaf = new Node();
+		nodes.add(leaf);
+		K lastKey = null;
+		int noOfKeys = 0;
+		while (sorted.hasNext()) {
+			K key;
+			Object value = null;
+			if (hasValues) {
+				Map.Entry<K, ?> entry = (Map.Entry<K, ?>) sorted.next();
+				key = entry.getKey();
+				value = entry.getValue();
+			} else {
+				key = (K) sorted.next();
+			}
+			if (key == null)
+				throw new IllegalArgumentException("null key");
+			if (lastKey != null && lastKey.compareTo(key) >= 0)
+				throw new IllegalArgumentException("keys are not in ascending order, " + lastKey + " " + key);
+			lastKey = key;
+			++noOfKeys;
+
+			if (leaf.noOfKeys < keysPerNode) {
+				leaf.setKeyAt(leaf.noOfKeys++, key, value);
+			} else { // the key goes up between the full leaf and a new leaf
+				separators.add(key);
+				if (hasValues)
+					separatorValues.add(value);
+				leaf = new Node();
+				nodes.add(leaf);
+			}
+		}
+
+		buildUpperLevels(nodes, separators, separatorValues, keysPerNode, noOfKeys);
+	}
+
+	private int keysPerNode(double fillFactor) {
+		if ((fillFactor > 0 && fillFactor <= 1) == false)
+			throw new IllegalArgumentException("fillFactor should be more than 0 and not more than 1, " + fillFactor);
+		return Math.min(MAX_KEY, Math.max(HALF_KEY, (int) Math.round(MAX_KEY * fillFactor)));
+	}
+
+	/**
+	 * makes the leaves the tree of this set.
+	 */
+	private void buildUpperLevels(ArrayList<Node> nodes, ArrayList<K> separators, ArrayList<Object> separatorValues,
+			int keysPerNode, int noOfKeys) {
+		int newHeight = 1;
+		if (nodes.size() > 1)
+			balanceLastLeaves(nodes, separators, separatorValues);
+		while (nodes.size() > 1) {
+			buildUpperLevel(nodes, separators, separatorValues, keysPerNode);
+			++newHeight;
+		}
+
+		this.root = nodes.get(0);
+		root.refresh();
+		this.size = noOfKeys;
+		this.height = newHeight;
+		++changed;
+	}
+
+	/**
+	 * builds a set from keys in any order. It sorts them with {@link Arrays#parallelSort(Object[])}, fills the leaves
+	 * in parallel by {@link ForkJoinPool#commonPool()} and then builds the upper levels, which have about
+	 * 1/maxSizeOfKeys of the nodes, like {@link #build(int, double, Iterator)}.
+	 * 
+	 * @param maxSizeOfKeys
+	 * @param fillFactor
+	 * @param keys duplicates are added once.
+	 * @return new set
+	 */
+	public static <K extends Comparable<K>> BTreeSet<K> parallelBuild(int maxSizeOfKeys, double fillFactor,
+			Collection<? extends K> keys) {
+		K[] sorted = keys.toArray(BTreeSet.<K> newKeys(keys.size()));
+		for (K key : sorted) {
+			if (key == null)
+				throw new IllegalArgumentException("null key");
+		}
+		Arrays.parallelSort(sorted);
+
+		int noOfKeys = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (noOfKeys == 0 || sorted[noOfKeys - 1].compareTo(sorted[i]) != 0)
+				sorted[noOfKeys++] = sorted[i];
+		}
+		BTreeSet<K> set = new BTreeSet<K>(maxSizeOfKeys);
+		set.loadSorted(sorted, null, noOfKeys, fillFactor);
+		return set;
+	}
+
+	/**
+	 * {@link #load(Iterator, double)} from arrays. A leaf and the separator after it take keysPerNode + 1 keys, so
+	 * each leaf knows its keys and the leaves are filled in parallel.
+	 * 
+	 * @param keys in ascending order without duplicates
+	 * @param values null if it does not have values
+	 * @param noOfKeys
+	 * @param fillFactor
+	 */
+	void loadSorted(K[] keys, Object[] values, int noOfKeys, double fillFactor) {
+		checkWritable();
+		int keysPerNode = keysPerNode(fillFactor);
+		int noOfLeaves = 1 + noOfKeys / (keysPerNode + 1);
+		Node[] leaves = newNodes(noOfLeaves);
+		ForkJoinPool.commonPool().invoke(new LeafTask(leaves, 0, noOfLeaves, keys, values, noOfKeys, keysPerNode));
+
+		ArrayList<Node> nodes = new ArrayList<Node>(Arrays.asList(leaves));
+		ArrayList<K> separators = new ArrayList<K>(noOfLeaves);
+		ArrayList<Object> separatorValues = hasValues ? new ArrayList<Object>(noOfLeaves) : null;
+		for (int i = 1; i < noOfLeaves; i++) {
+			int index = i * (keysPerNode + 1) - 1;
+			separators.add(keys[index]);
+			if (hasValues)
+				separatorValues.add(values[index]);
+		}
+		buildUpperLevels(nodes, separators, separatorValues, keysPerNode, noOfKeys);
+	}
+
+	/**
+	 * fills the leaves from fromLeaf to toLeaf, the last leaf takes the rest of the keys.
+	 */
+	class LeafTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final Node[] leaves;
+		final int fromLeaf;
+		final int toLeaf;
+		final K[] keys;
+		final Object[] values;
+		final int noOfKeys;
+		final int keysPerNode;
+
+		LeafTask(Node[] leaves, int fromLeaf, int toLeaf, K[] keys, Object[] values, int noOfKeys,
+				int keysPerNode) {
+			this.leaves = leaves;
+			this.fromLeaf = fromLeaf;
+			this.toLeaf = toLeaf;
+			this.keys = keys;
+			this.values = values;
+			this.noOfKeys = noOfKeys;
+			this.keysPerNode = keysPerNode;
+		}
+
+		@Override
+		protected void compute() {
+			if ((long) (toLeaf - fromLeaf) * keysPerNode > PARALLEL_THRESHOLD) {
+				int middle = (fromLeaf + toLeaf) >>> 1;
+				invokeAll(new LeafTask(leaves, fromLeaf, middle, keys, values, noOfKeys, keysPerNode),
+						new LeafTask(leaves, middle, toLeaf, keys, values, noOfKeys, keysPerNode));
+				return;
+			}
+
+			for (int i = fromLeaf; i < toLeaf; i++) {
+				Node leaf = new Node(); // ids of nodes are only for debug so threads may share one
+
+				int from = i * (keysPerNode + 1);
+				int to = Math.min(from + keysPerNode, noOfKeys);
+				for (int j = from; j < to; j++)
+					leaf.setKeyAt(leaf.noOfKeys++, keys[j], values == null ? null : values[j]);
+				leaves[i] = leaf;
+			}
+		}
+	}
+
+	/**
+	 * the last leaf can have less than half keys, it joins the leaf with the previous one or moves keys from the
+	 * previous one.
+	 */
+	private void balanceLastLeaves(ArrayList<Node> nodes, ArrayList<K> separators, ArrayList<Object> separatorValues) {
+		int lastIndex = nodes.size() - 1;
+		Node right = nodes.get(lastIndex);
+		if (right.isInsufficientKey() == false)
+			return;
+
+		Node left = nodes.get(lastIndex - 1);
+		int separatorIndex = lastIndex - 1;
+		K separator = separators.get(separatorIndex);
+		Object separatorValue = hasValues ? separatorValues.get(separatorIndex) : null;
+		int total = left.noOfKeys + 1 + right.noOfKeys;
+		if (total <= MAX_KEY) {
+			left.setKeyAt(left.noOfKeys++, separator, separatorValue);
+			joinKeys(left, right);
+			nodes.remove(lastIndex);
+			separators.remove(separatorIndex);
+			if (hasValues)
+				separatorValues.remove(separatorIndex);
+			return;
+		}
+
+		// moves the separator and the last keys of left to right, and the last one of them up.
+		int move = (total - 1) - (total - 1) / 2 - right.noOfKeys;
+		for (int i = right.noOfKeys - 1; i >= 0; i--)
+			right.setKeyAt(i + move, right.keyAt(i), right.valueAt(i));
+		right.setKeyAt(move - 1, separator, separatorValue);
+		int from = left.noOfKeys - move;
+		for (int i = 1; i < move; i++)
+			right.setKeyAt(i - 1, left.keyAt(from + i), left.valueAt(from + i));
+		right.noOfKeys += move;
+
+		separators.set(separatorIndex, left.keyAt(from));
+		if (hasValues)
+			separatorValues.set(separatorIndex, left.valueAt(from));
+		for (int i = from; i < left.noOfKeys; i++)
+			left.setKeyAt(i, null, null);
+		left.noOfKeys = from;
+	}
+
+	/**
+	 * replaces the nodes and the separators with their parents and the separators between the parents. The last two
+	 * parents share children evenly, or become one, if the last one would have less than half keys.
+	 */
+	private void buildUpperLevel(ArrayList<Node> nodes, ArrayList<K> separators, ArrayList<Object> separatorValues,
+			int keysPerNode) {
+		int noOfNodes = nodes.size();
+		int childrenPerNode = keysPerNode + 1;
+		int noOfParents = (noOfNodes + childrenPerNode - 1) / childrenPerNode;
+		int lastChildren = noOfNodes - (noOfParents - 1) * childrenPerNode;
+		int secondLastChildren = childrenPerNode;
+		if (noOfParents > 1 && lastChildren - 1 < HALF_KEY) {
+			int children = childrenPerNode + lastChildren;
+			if (children <= MAX_CHILDREN) {
+				--noOfParents;
+				lastChildren = children;
+			} else {
+				secondLastChildren = children / 2;
+				lastChildren = children - secondLastChildren;
+			}
+		}
+
+		ArrayList<Node> parents = new ArrayList<Node>(noOfParents);
+		ArrayList<K> parentSeparators = new ArrayList<K>(noOfParents);
+		ArrayList<Object> parentSeparatorValues = hasValues ? new ArrayList<Object>(noOfParents) : null;
+		int childIndex = 0;
+		for (int p = 0; p < noOfParents; p++) {
+			int children = p == noOfParents - 1 ? lastChildren
+					: p == noOfParents - 2 ? secondLastChildren : childrenPerNode;
+			Node parent = new Node();
+			parent.initChildren();
+			for (int i = 0; i < children; i++) {
+				nodes.get(childIndex + i).refresh();
+				parent.setChildAt(i, nodes.get(childIndex + i));
+				if (i > 0) {
+					int separatorIndex = childIndex + i - 1;
+					parent.setKeyAt(i - 1, separators.get(separatorIndex),
+							hasValues ? separatorValues.get(separatorIndex) : null);
+				}
+			}
+			parent.noOfChildren = children;
+			parent.noOfKeys = children - 1;
+			parents.add(parent);
+
+			childIndex += children;
+			if (p < noOfParents - 1) {
+				parentSeparators.add(separators.get(childIndex - 1));
+				if (hasValues)
+					parentSeparatorValues.add(separatorValues.get(childIndex - 1));
+			}
+		}
+
+		nodes.clear();
+		nodes.addAll(parents);
+		separators.clear();
+		separators.addAll(parentSeparators);
+		if (hasValues) {
+			separatorValues.clear();
+			separatorValues.addAll(parentSeparatorValues);
+		}
+	}
+
 	@Override
 	public Iterator<K> iterator() {
 		return new KeyIterator();
 	}
 
 	/**
+	 * splits on the children of nodes rather than copying keys into arrays, see {@link KeySpliterator}.
+	 */
+	@Override
+	public Spliterator<K> spliterator() {
+		return new KeySpliterator(root, 0, 2 * root.noOfKeys + 1, size, true);
+	}
+
+	/**
+	 * It only reads nodes, like {@link #contains(Object)} and {@link #getValue(Comparable)}, so readers do not need to
+	 * lock each other.
+	 * 
 	 * @param key
 	 * @return returns value, null if it can't find the key.
 	 */
@@ -76,51 +643,172 @@ public class BTreeSet<K extends Comparable<K>> extends AbstractSet<K> {
 		}
 	}
 
-	@Override
-	public boolean isEmpty() {
-		return size == 0;
+	/**
+	 * finds the key at the index in ascending order in O(log n). It skips each child whose keys are all before the
+	 * index.
+	 * 
+	 * @param index
+	 * @return key
+	 * @throws IndexOutOfBoundsException
+	 * @throws UnsupportedOperationException if it is not {@link #counted(int)}.
+	 */
+	public K get(int index) {
+		WrappedNode found = nodeAt(index);
+		return found.node.keyAt(found.index);
 	}
 
-	@Override
-	public int size() {
-		return size;
+	WrappedNode nodeAt(int index) {
+		checkCounted();
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("index=" + index + " size=" + size);
+
+		Node node = root;
+		while (true) {
+			if (node.isLeaf())
+				return new WrappedNode(node, index);
+
+			int i = 0;
+			for (;; i++) {
+				int childSize = node.childAt(i).subtreeSize;
+				if (index < childSize)
+					break;
+				index -= childSize;
+				if (index == 0)
+					return new WrappedNode(node, i);
+				--index;
+			}
+			node = node.childAt(i);
+		}
 	}
 
-	public int height() {
-		return height;
+	/**
+	 * @param key
+	 * @return the number of keys less than the key in O(log n), which is the index of the key if it exists.
+	 * @throws UnsupportedOperationException if it is not {@link #counted(int)}.
+	 */
+	public int rank(K key) {
+		return countLess(key, false);
 	}
 
-	@Override
-	public boolean contains(final Object keyObj) {
-		if (keyObj == null)
-			return false;
+	/**
+	 * adds the keys of the left siblings and their subtrees on the way down.
+	 * 
+	 * @param key
+	 * @param inclusive true to count the key too if it exists.
+	 * @return the number of keys less than (or equal to) the key.
+	 */
+	int countLess(K key, boolean inclusive) {
+		checkCounted();
+		Node node = root;
+		int total = 0;
+		while (true) {
+			int index = node.indexOfGreatestLessThan(key);
+			boolean found = index < 0;
+			if (found) {
+				index = node.convertToRealIndex(index);
+				if (inclusive)
+					++total;
+			}
+			total += index;
+			if (node.isLeaf())
+				return total;
 
-		K key = (K) (keyObj);
-		return findNode(this.root, key) != null;
+			for (int i = 0; i < index; i++)
+				total += node.childAt(i).subtreeSize;
+			if (found)
+				return total + node.childAt(index).subtreeSize;
+			node = node.childAt(index);
+		}
 	}
 
-	@Override
-	public void clear() {
-		this.root = new Node();
-		this.size = 0;
-		this.height = 0;
-		++changed;
+	/**
+	 * combines the entries between the bounds in ascending order in O(log n). A node inside the bounds gives its
+	 * aggregate without going down, so only the nodes on the paths to the bounds are read.
+	 * 
+	 * @param lo null from the first key
+	 * @param loInclusive
+	 * @param hi null to the last key
+	 * @param hiInclusive
+	 * @return aggregate, see {@link Aggregator}
+	 */
+	Object aggregate(K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+		if (aggregator == null)
+			throw new UnsupportedOperationException("no aggregator");
+		return aggregate(root, lo, loInclusive, hi, hiInclusive);
+	}
+
+	/**
+	 * visits the children and the keys of the node in order as slots, slot 2i is child i and slot 2i+1 is key i. A
+	 * child at a bound which is not a key of the node has keys on both sides of the bound, so it goes down with the
+	 * bound.
+	 */
+	private Object aggregate(Node node, K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+		if (lo == null && hi == null)
+			return node.aggregate;
+
+		int firstSlot = 0;
+		boolean loInChild = false;
+		if (lo != null) {
+			int index = node.indexOfGreatestLessThan(lo);
+			if (index < 0) {
+				index = node.convertToRealIndex(index);
+				firstSlot = loInclusive ? 2 * index + 1 : 2 * index + 2;
+			} else {
+				firstSlot = 2 * index;
+				loInChild = true;
+			}
+		}
+		int lastSlot = 2 * node.noOfKeys;
+		boolean hiInChild = false;
+		if (hi != null) {
+			int index = node.indexOfGreatestLessThan(hi);
+			if (index < 0) {
+				index = node.convertToRealIndex(index);
+				lastSlot = hiInclusive ? 2 * index + 1 : 2 * index;
+			} else {
+				lastSlot = 2 * index;
+				hiInChild = true;
+			}
+		}
+
+		Object total = aggregator.identity();
+		for (int slot = firstSlot; slot <= lastSlot; slot++) {
+			Object part;
+			if ((slot & 1) == 1) {
+				int index = slot >> 1;
+				part = aggregator.of(node.keyAt(index), node.valueAt(index));
+			} else if (node.isLeaf()) {
+				continue;
+			} else {
+				boolean childLo = slot == firstSlot && loInChild;
+				boolean childHi = slot == lastSlot && hiInChild;
+				part = aggregate(node.childAt(slot >> 1), childLo ? lo : null, loInclusive, childHi ? hi : null,
+						hiInclusive);
+			}
+			total = aggregator.combine(total, part);
+		}
+		return total;
+	}
+
+	private void checkCounted() {
+		if (counted == false)
+			throw new UnsupportedOperationException("not counted, see counted(int)");
 	}
 
 	/**
-	 * search a node containing the key from the nod to sub leaves
-	 * 
-	 * @param fromNode
 	 * @param key
-	 * @return null if can't find the key or Node
+	 * @return value of the key, null if it can't find the key.
 	 */
-	private Node findNode(Node fromNode, K key) {
-		Node node = fromNode;
+	Object getValue(final K key) {
+		if (key == null)
+			return null;
+
+		Node node = root;
 		int index = 0;
 		while (true) {
 			index = node.indexOfGreatestLessThan(key);
 			if (index < 0)
-				return node;
+				return node.values[node.convertToRealIndex(index)];
 			else if (node.isLeaf())
 				return null;
 			else
@@ -128,411 +816,1732 @@ public class BTreeSet<K extends Comparable<K>> extends AbstractSet<K> {
 		}
 	}
 
-	@Override
-	public boolean add(K newKey) {
-		return returnExistingKeyOrAdd(newKey) == null;
-	}
+	/**
+	 * returned by {@link #findOptimistic(Comparable)} if it can't find the key.
+	 */
+	static final Object NOT_FOUND = new Object();
+	/**
+	 * returned by {@link #findOptimistic(Comparable)} if it has read a node which was being changed.
+	 */
+	static final Object RETRY = new Object();
 
 	/**
-	 * if the same key exists return the key and does not add a newKey. It is used to replace old key
+	 * {@link #getValue(Comparable)} for readers which do not lock and validate what they read later, see
+	 * {@link ConcurrentMap}. A writer can split, join or shift a node while it reads the node so it does not trust
+	 * noOfKeys nor the cells of the arrays, it gives up when it finds an empty cell or a number out of range.
 	 * 
-	 * @param newKey
-	 * @return return old key if the key exists or add newKey and return null
+	 * @param key
+	 * @return value of the key, {@link #NOT_FOUND} or {@link #RETRY}
 	 */
-	K returnExistingKeyOrAdd(K newKey) {
-		addStack.reset();
-		int indexOfGreatestLessThan = 0;
-		Node currentNode = root;
-		while (true) { // build a stack until leap
-			indexOfGreatestLessThan = currentNode.indexOfGreatestLessThan(newKey);
-			if (indexOfGreatestLessThan < 0) {
-				// fond old one
-				return currentNode.keyAt(currentNode.convertToRealIndex(indexOfGreatestLessThan));
-			}
-			addStack.add(currentNode);
-			if (currentNode.isLeaf())
-				break;
-			currentNode = currentNode.childAt(indexOfGreatestLessThan);
-		}
+	Object findOptimistic(final K key) {
+		if (key == null)
+			return NOT_FOUND;
 
-		++size;
+		Node node = root;
+		for (int depth = 0; node != null; depth++) {
+			int noOfKeys = node.noOfKeys;
+			K[] keys = node.keys;
+			if (noOfKeys > keys.length)
+				return RETRY;
+
+			int left = 0;
+			int right = noOfKeys - 1;
+			while (left <= right) {
+				int middle = (left + right) >>> 1;
+				K middleKey = keys[middle];
+				if (middleKey == null)
+					return RETRY;
+
+				int diff = key.compareTo(middleKey);
+				if (diff == 0) {
+					Object[] values = node.values;
+					return values == null ? null : values[middle];
+				} else if (diff > 0)
+					left = middle + 1;
+				else
+					right = middle - 1;
+			}
+
+			Node[] children = node.children;
+			if (node.noOfChildren == 0 || children == null)
+				return NOT_FOUND;
+			if (left >= children.length || depth > height)
+				return RETRY;
+			node = children[left];
+		}
+		return RETRY;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	public int height() {
+		return height;
+	}
+
+	@Override
+	public boolean contains(final Object keyObj) {
+		if (keyObj == null)
+			return false;
+
+		K key = (K) (keyObj);
+		return findNode(this.root, key) != null;
+	}
+
+	@Override
+	public void clear() {
+		checkWritable();
+		this.root = new Node();
+		this.size = 0;
+		this.height = 1;
 		++changed;
-		addFromTheBotton(newKey);
-		return null;
 	}
 
-	private void addFromTheBotton(K newKey) {
-		Node currentNode = null;
-		WrappedNode wrappedNode = new WrappedNode();
-		while (addStack.size() > 0) {
-			currentNode = addStack.pop();
-			wrappedNode = currentNode.add(newKey, wrappedNode.node);
-			if (wrappedNode == null) // no overflow
-				return;
-			// was overflowed so need to add it to the parent.
-			newKey = wrappedNode.key;
+	/**
+	 * search a node containing the key from the nod to sub leaves
+	 * 
+	 * @param fromNode
+	 * @param key
+	 * @return null if can't find the key or Node
+	 */
+	private Node findNode(Node fromNode, K key) {
+		Node node = fromNode;
+		int index = 0;
+		while (true) {
+			index = node.indexOfGreatestLessThan(key);
+			if (index < 0)
+				return node;
+			else if (node.isLeaf())
+				return null;
+			else
+				node = node.childAt(index);
 		}
-
-		// if top has a node it has to create a new root
-		createNewRoot(currentNode, wrappedNode);
 	}
 
-	private void createNewRoot(Node currentNode, WrappedNode wrappedNode) {
-		Node newRoot = new Node();
-		newRoot.setKeyAt(0, wrappedNode.key);
-		newRoot.noOfKeys = 1;
-		newRoot.initChildren();
-		newRoot.setChildAt(0, currentNode);
-		newRoot.setChildAt(1, wrappedNode.node);
-		newRoot.noOfChildren = 2;
+	/**
+	 * finds the greatest key less than the key, or equal to it if inclusive. It remembers the nearest smaller key on
+	 * the way down and returns it if the leaf has no smaller key.
+	 * 
+	 * @param key
+	 * @param inclusive
+	 * @return the node and the index of the key or null if there is no such key.
+	 */
+	WrappedNode lowerNode(K key, boolean inclusive) {
+		Node node = root;
+		WrappedNode candidate = null;
+		while (true) {
+			int index = node.indexOfGreatestLessThan(key);
+			if (index < 0) { // found
+				index = node.convertToRealIndex(index);
+				if (inclusive)
+					return new WrappedNode(node, index);
+				if (node.isLeaf() == false)
+					return maxNode(node.childAt(index));
+				return index > 0 ? new WrappedNode(node, index - 1) : candidate;
+			}
 
-		this.root = newRoot;
-		++height;
+			if (index > 0)
+				candidate = new WrappedNode(node, index - 1);
+			if (node.isLeaf())
+				return candidate;
+			node = node.childAt(index);
+		}
 	}
 
 	/**
+	 * see {@link #lowerNode(Comparable, boolean)}.
+	 * 
 	 * @param key
-	 * @return true if it finds key or false if it doesn't find the key
+	 * @param inclusive
+	 * @return the node and the index of the least key greater than (or equal to) the key or null.
 	 */
-	public boolean remove(K key) {
-		deleteStack.reset();
-		int indexOfGreatestLessThan = 0;
-		Node currentNode = root;
+	WrappedNode higherNode(K key, boolean inclusive) {
+		Node node = root;
+		WrappedNode candidate = null;
 		while (true) {
-			indexOfGreatestLessThan = currentNode.indexOfGreatestLessThan(key);
-			WrappedNode wrapper = new WrappedNode(currentNode);
-			if (indexOfGreatestLessThan < 0) {// found
-				wrapper.index = currentNode.convertToRealIndex(indexOfGreatestLessThan);
-				deleteStack.add(wrapper);
+			int index = node.indexOfGreatestLessThan(key);
+			if (index < 0) { // found
+				index = node.convertToRealIndex(index);
+				if (inclusive)
+					return new WrappedNode(node, index);
+				if (node.isLeaf() == false)
+					return minNode(node.childAt(index + 1));
+				return index + 1 < node.noOfKeys ? new WrappedNode(node, index + 1) : candidate;
+			}
 
-				// if the found key is leaf, delete the key.
-				if (currentNode.isLeaf()) {
-					currentNode.removeKeyAt(wrapper.index);
-				} else {
-					overwriteWithLeaf(currentNode, wrapper.index);
-				}
-				--size;
+			if (index < node.noOfKeys)
+				candidate = new WrappedNode(node, index);
+			if (node.isLeaf())
+				return candidate;
+			node = node.childAt(index);
+		}
+	}
+
+	/**
+	 * @param node
+	 * @return the node and the index of the least key under the node or null if it is empty.
+	 */
+	WrappedNode minNode(Node node) {
+		while (node.isLeaf() == false)
+			node = node.childAt(0);
+		return node.noOfKeys == 0 ? null : new WrappedNode(node, 0);
+	}
+
+	/**
+	 * @param node
+	 * @return the node and the index of the greatest key under the node or null if it is empty.
+	 */
+	WrappedNode maxNode(Node node) {
+		while (node.isLeaf() == false)
+			node = node.childAt(node.noOfChildren - 1);
+		return node.noOfKeys == 0 ? null : new WrappedNode(node, node.noOfKeys - 1);
+	}
+
+	K keyOf(WrappedNode wrappedNode) {
+		return wrappedNode == null ? null : wrappedNode.node.keyAt(wrappedNode.index);
+	}
+
+	@Override
+	public Comparator<? super K> comparator() {
+		return null;
+	}
+
+	@Override
+	public K first() {
+		return exists(keyOf(minNode(root)));
+	}
+
+	@Override
+	public K last() {
+		return exists(keyOf(maxNode(root)));
+	}
+
+	static <K> K exists(K key) {
+		if (key == null)
+			throw new NoSuchElementException();
+		return key;
+	}
+
+	@Override
+	public K lower(K key) {
+		return keyOf(lowerNode(key, false));
+	}
+
+	@Override
+	public K floor(K key) {
+		return keyOf(lowerNode(key, true));
+	}
+
+	@Override
+	public K ceiling(K key) {
+		return keyOf(higherNode(key, true));
+	}
+
+	@Override
+	public K higher(K key) {
+		return keyOf(higherNode(key, false));
+	}
+
+	@Override
+	public K pollFirst() {
+		K key = keyOf(minNode(root));
+		if (key != null)
+			remove(key);
+		return key;
+	}
+
+	@Override
+	public K pollLast() {
+		K key = keyOf(maxNode(root));
+		if (key != null)
+			remove(key);
+		return key;
+	}
+
+	@Override
+	public Iterator<K> descendingIterator() {
+		return new KeyIterator(null, false, null, false, true);
+	}
+
+	@Override
+	public NavigableSet<K> descendingSet() {
+		return new SubSet(null, false, null, false, true);
+	}
+
+	@Override
+	public NavigableSet<K> subSet(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+		return new SubSet(null, false, null, false, false).subSet(fromKey, fromInclusive, toKey, toInclusive);
+	}
+
+	@Override
+	public NavigableSet<K> headSet(K toKey, boolean inclusive) {
+		return new SubSet(null, false, null, false, false).headSet(toKey, inclusive);
+	}
+
+	@Override
+	public NavigableSet<K> tailSet(K fromKey, boolean inclusive) {
+		return new SubSet(null, false, null, false, false).tailSet(fromKey, inclusive);
+	}
+
+	@Override
+	public SortedSet<K> subSet(K fromKey, K toKey) {
+		return subSet(fromKey, true, toKey, false);
+	}
+
+	@Override
+	public SortedSet<K> headSet(K toKey) {
+		return headSet(toKey, false);
+	}
+
+	@Override
+	public SortedSet<K> tailSet(K fromKey) {
+		return tailSet(fromKey, true);
+	}
+
+	@Override
+	public boolean add(K newKey) {
+		int oldSize = size;
+		put(newKey, null);
+		return size != oldSize;
+	}
+
+	/**
+	 * if the same key exists it replaces the value of the key in place and does not add a newKey.
+	 * 
+	 * @param newKey
+	 * @param newValue ignored if it does not have values.
+	 * @return old value if the key exists or null
+	 */
+	Object put(K newKey, Object newValue) {
+		checkWritable();
+		if (isAppend(newKey)) {
+			append(newKey, newValue);
+			return null;
+		}
+
+		addStack.reset();
+		int indexOfGreatestLessThan = 0;
+		boolean isRightEdge = true;
+		Node currentNode = writableRoot();
+		while (true) { // build a stack until leap
+			indexOfGreatestLessThan = currentNode.indexOfGreatestLessThan(newKey);
+			isRightEdge &= indexOfGreatestLessThan == currentNode.noOfKeys;
+			if (indexOfGreatestLessThan < 0) {
+				// fond old one
+				if (hasValues == false)
+					return null;
+
+				int realIndex = currentNode.convertToRealIndex(indexOfGreatestLessThan);
+				Object oldValue = currentNode.values[realIndex];
+				currentNode.values[realIndex] = newValue;
+				reaggregateUp(currentNode);
 				++changed;
+				return oldValue;
+			}
+			addStack.add(currentNode);
+			if (currentNode.isLeaf())
 				break;
-			} else if (currentNode.isLeaf()) {
-				return false; // no key found
+			currentNode = writableChild(currentNode, indexOfGreatestLessThan);
+		}
+
+		if (isRightEdge)
+			keepRightPath();
+		add(newKey, newValue, isRightEdge);
+		return null;
+	}
+
+	/**
+	 * adds a new key to the leaf on the top of {@link #addStack} whose ancestors are under it.
+	 * 
+	 * @param isRightEdge true if the key is greater than all keys, {@link #rightPath} is the same as the stack then.
+	 */
+	private void add(K newKey, Object newValue, boolean isRightEdge) {
+		++size;
+		++changed;
+		if (counted) {
+			for (int i = 0; i < addStack.size(); i++)
+				++addStack.get(i).subtreeSize;
+		}
+		int noOfNodes = addStack.size();
+		int noOfSplits;
+		appending = isRightEdge;
+		try {
+			noOfSplits = addFromTheBotton(newKey, newValue);
+		} finally {
+			appending = false;
+		}
+		if (noOfSplits > 0)
+			++restructured;
+		if (isRightEdge) {
+			if (noOfSplits > 0)
+				loadRightPath(noOfNodes - noOfSplits);
+			rightPathRestructured = restructured;
+			rightPathVersion = version;
+		}
+	}
+
+	/**
+	 * adds a key greater than all keys to the last leaf of {@link #rightPath}. Only when the leaf is full it puts the
+	 * path on {@link #addStack} to split from the bottom, so most keys are added without going through every level.
+	 */
+	private void append(K newKey, Object newValue) {
+		Node leaf = rightPath[rightPathSize - 1];
+		if (leaf.isFull()) {
+			addStack.reset();
+			for (int i = 0; i < rightPathSize; i++)
+				addStack.add(rightPath[i]);
+			add(newKey, newValue, true);
+			return;
+		}
+
+		leaf.setKeyAt(leaf.noOfKeys++, newKey, newValue);
+		++size;
+		++changed;
+		if (counted) {
+			for (int i = 0; i < rightPathSize; i++)
+				++rightPath[i].subtreeSize;
+		}
+		reaggregateFinger(rightPath, rightPathSize);
+	}
+
+	/**
+	 * @return true if the key is greater than all keys and {@link #rightPath} is valid.
+	 */
+	private boolean isAppend(K key) {
+		if (rightPathRestructured != restructured || rightPathVersion != version || rightPath[0] != root)
+			return false;
+
+		Node leaf = rightPath[rightPathSize - 1];
+		return leaf.noOfKeys > 0 && key.compareTo(leaf.keys[leaf.noOfKeys - 1]) > 0;
+	}
+
+	/**
+	 * keeps the nodes in {@link #addStack} which are on the right edge.
+	 */
+	private void keepRightPath() {
+		if (rightPath.length < addStack.size())
+			rightPath = newNodes(addStack.size() * 2);
+		rightPathSize = addStack.size();
+		for (int i = 0; i < rightPathSize; i++)
+			rightPath[i] = addStack.get(i);
+	}
+
+	/**
+	 * finds the nodes on the right edge again below the ones which were not split.
+	 * 
+	 * @param from number of nodes from the root which were not split, 0 if the root was split.
+	 */
+	private void loadRightPath(int from) {
+		rightPathSize = from;
+		Node node = root;
+		if (from > 0) {
+			Node parent = rightPath[from - 1];
+			node = parent.childAt(parent.noOfChildren - 1);
+		}
+		while (true) {
+			if (rightPathSize == rightPath.length)
+				rightPath = Arrays.copyOf(rightPath, rightPathSize * 2);
+			rightPath[rightPathSize++] = node;
+			if (node.isLeaf())
+				return;
+			node = node.childAt(node.noOfChildren - 1);
+		}
+	}
+
+	/**
+	 * adds the keys in ascending order from the node where the last one was added, see
+	 * {@link #putSorted(Comparable[], Object[], int)}. Keys are sorted first unless they are already in ascending
+	 * order.
+	 * 
+	 * @param keys
+	 * @return true if this set has changed
+	 */
+	@Override
+	public boolean addAll(Collection<? extends K> keys) {
+		checkWritable();
+		K[] sorted = keys.toArray(newKeys(keys.size()));
+		boolean isSorted = true;
+		for (int i = 0; i < sorted.length; i++) {
+			if (sorted[i] == null)
+				throw new NullPointerException();
+			if (i > 0 && isSorted && sorted[i - 1].compareTo(sorted[i]) > 0)
+				isSorted = false;
+		}
+		if (isSorted == false)
+			Arrays.sort(sorted);
+
+		int noOfKeys = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (noOfKeys == 0 || sorted[noOfKeys - 1].compareTo(sorted[i]) != 0)
+				sorted[noOfKeys++] = sorted[i];
+		}
+		int oldSize = size;
+		putSorted(sorted, null, noOfKeys);
+		return size != oldSize;
+	}
+
+	/**
+	 * puts keys in ascending order keeping the path to the last one as a finger. A key goes up the path only while it
+	 * is not less than the upper bound of the node, which is the key after the node in its parent, and searches down
+	 * from there, so keys close to each other share most of the path. The following keys which go between the same 2
+	 * keys of a leaf are put into it at once with one shift as long as it has room. A full leaf is split like
+	 * {@link #put(Comparable, Object)} and the finger starts again from the root.
+	 * 
+	 * @param keys in ascending order without duplicates
+	 * @param values null if it does not have values
+	 * @param noOfKeys
+	 */
+	void putSorted(K[] keys, Object[] values, int noOfKeys) {
+		checkWritable();
+		Node[] finger = newNodes(height + 1);
+		K[] bounds = newKeys(height + 1); // null if there is no upper bound
+		int depth = 0;
+		for (int i = 0; i < noOfKeys;) {
+			K key = keys[i];
+			Object value = values == null ? null : values[i];
+			if (depth == 0) {
+				if (finger.length < height + 1) {
+					finger = newNodes(height + 1);
+					bounds = newKeys(height + 1);
+				}
+				finger[depth++] = writableRoot();
+			}
+			while (depth > 1 && bounds[depth - 1] != null && key.compareTo(bounds[depth - 1]) >= 0)
+				--depth;
+
+			Node node = finger[depth - 1];
+			int index;
+			while (true) {
+				index = node.indexOfGreatestLessThan(key);
+				if (index < 0 || node.isLeaf())
+					break;
+				bounds[depth] = index < node.noOfKeys ? node.keys[index] : bounds[depth - 1];
+				node = writableChild(node, index);
+				finger[depth++] = node;
+			}
+
+			if (index < 0) { // exists
+				if (hasValues) {
+					node.values[node.convertToRealIndex(index)] = value;
+					reaggregateFinger(finger, depth);
+					++changed;
+				}
+				++i;
+				continue;
+			}
+
+			int room = MAX_KEY - node.noOfKeys;
+			if (room == 0) {
+				addStack.reset();
+				for (int j = 0; j < depth; j++)
+					addStack.add(finger[j]);
+				boolean isRightEdge = bounds[depth - 1] == null && index == node.noOfKeys;
+				if (isRightEdge)
+					keepRightPath();
+				add(key, value, isRightEdge);
+				depth = 0;
+				++i;
+				continue;
+			}
+
+			// keys less than the key at the index go to the leaf together
+			K limit = index < node.noOfKeys ? node.keys[index] : bounds[depth - 1];
+			int run = 1;
+			while (run < room && i + run < noOfKeys && (limit == null || keys[i + run].compareTo(limit) < 0))
+				++run;
+			System.arraycopy(node.keys, index, node.keys, index + run, node.noOfKeys - index);
+			System.arraycopy(keys, i, node.keys, index, run);
+			if (node.values != null) {
+				System.arraycopy(node.values, index, node.values, index + run, node.noOfKeys - index);
+				System.arraycopy(values, i, node.values, index, run);
 			}
-			wrapper.index = indexOfGreatestLessThan;
-			deleteStack.add(wrapper);
-			currentNode = currentNode.childAt(indexOfGreatestLessThan);
+			node.noOfKeys += run;
+			size += run;
+			++changed;
+			if (counted) {
+				for (int j = 0; j < depth; j++)
+					finger[j].subtreeSize += run;
+			}
+			reaggregateFinger(finger, depth);
+			i += run;
+		}
+	}
+
+	/**
+	 * combines the aggregates of the nodes in the finger again from the bottom.
+	 */
+	private void reaggregateFinger(Node[] finger, int depth) {
+		if (aggregator == null)
+			return;
+		for (int j = depth - 1; j >= 0; j--)
+			finger[j].reaggregate();
+	}
+
+	/**
+	 * replaces the value of an existing key without changing the structure so it does not affect iterators.
+	 * 
+	 * @param key
+	 * @param newValue
+	 * @return old value or null if it can't find the key
+	 */
+	Object replaceValue(K key, Object newValue) {
+		checkWritable();
+		addStack.reset();
+		Node node = writableRoot();
+		int index = 0;
+		while (true) {
+			index = node.indexOfGreatestLessThan(key);
+			if (index < 0) {
+				int realIndex = node.convertToRealIndex(index);
+				Object oldValue = node.values[realIndex];
+				node.values[realIndex] = newValue;
+				reaggregateUp(node);
+				return oldValue;
+			} else if (node.isLeaf())
+				return null;
+			addStack.add(node);
+			node = writableChild(node, index);
+		}
+	}
+
+	/**
+	 * combines the aggregates of the node and its ancestors in {@link #addStack} again from the bottom.
+	 */
+	private void reaggregateUp(Node node) {
+		if (aggregator == null)
+			return;
+		node.reaggregate();
+		while (addStack.size() > 0)
+			addStack.pop().reaggregate();
+	}
+
+	/**
+	 * @return the number of nodes which were split, all nodes of the stack if it created a new root.
+	 */
+	private int addFromTheBotton(K newKey, Object newValue) {
+		Node currentNode = null;
+		Node newNode = null;
+		int noOfSplits = 0;
+		while (addStack.size() > 0) {
+			currentNode = addStack.pop();
+			newNode = currentNode.add(newKey, newValue, newNode);
+			if (newNode == null) { // no overflow
+				reaggregateUp(currentNode);
+				return noOfSplits;
+			}
+			++noOfSplits;
+			currentNode.refresh();
+			newNode.refresh();
+			// was overflowed so need to add it to the parent.
+			newKey = splitKey;
+			newValue = splitValue;
+			splitKey = null;
+			splitValue = null;
+		}
+
+		// if top has a node it has to create a new root
+		createNewRoot(currentNode, newKey, newValue, newNode);
+		return noOfSplits;
+	}
+
+	private void createNewRoot(Node currentNode, K key, Object value, Node newNode) {
+		Node newRoot = new Node();
+		newRoot.setKeyAt(0, key, value);
+		newRoot.noOfKeys = 1;
+		newRoot.initChildren();
+		newRoot.setChildAt(0, currentNode);
+		newRoot.setChildAt(1, newNode);
+		newRoot.noOfChildren = 2;
+		newRoot.refresh();
+
+		this.root = newRoot;
+		++height;
+	}
+
+	/**
+	 * @param keyObj
+	 * @return true if it finds key or false if it doesn't find the key
+	 */
+	@Override
+	public boolean remove(final Object keyObj) {
+		if (keyObj == null)
+			return false;
+
+		int oldSize = size;
+		removeKey((K) keyObj);
+		return size != oldSize;
+	}
+
+	/**
+	 * @param key
+	 * @return value of the removed key or null if it doesn't find the key or does not have values.
+	 */
+	Object removeKey(K key) {
+		checkWritable();
+		pathSize = 0;
+		int indexOfGreatestLessThan = 0;
+		Object oldValue = null;
+		Node currentNode = writableRoot();
+		while (true) {
+			indexOfGreatestLessThan = currentNode.indexOfGreatestLessThan(key);
+			if (indexOfGreatestLessThan < 0) {// found
+				int index = currentNode.convertToRealIndex(indexOfGreatestLessThan);
+				pushPath(currentNode, index);
+				if (hasValues)
+					oldValue = currentNode.values[index];
+
+				// if the found key is leaf, delete the key.
+				if (currentNode.isLeaf()) {
+					currentNode.removeKeyAt(index);
+				} else {
+					overwriteWithLeaf();
+				}
+				--size;
+				++changed;
+				if (counted) {
+					for (int i = 0; i < pathSize; i++)
+						--pathNodes[i].subtreeSize;
+				}
+				if (aggregator != null) {
+					for (int i = pathSize - 1; i >= 0; i--)
+						pathNodes[i].reaggregate();
+				}
+				break;
+			} else if (currentNode.isLeaf()) {
+				return null; // no key found
+			}
+			pushPath(currentNode, indexOfGreatestLessThan);
+			currentNode = writableChild(currentNode, indexOfGreatestLessThan);
+		}
+
+		if (pathSize == 1) // root
+			return oldValue;
+
+		merge();
+		return oldValue;
+	}
+
+	/**
+	 * replace a key in the last node of the path with the least key or the largest key in the leaf. and delete the key
+	 * in the leaf. The index of the node in the path is changed to the index of the child which the key comes from so
+	 * that merge can find the siblings of the child, and the path is extended to the leaf.
+	 */
+	private void overwriteWithLeaf() {
+		Node currentNode = pathNodes[pathSize - 1];
+		int indexToDelete = pathIndexes[pathSize - 1];
+		Node minNode = findMinNode(currentNode.childAt(indexToDelete + 1));
+		Node maxNode = findMaxNode(currentNode.childAt(indexToDelete));
+
+		// swap, use one which has more keys to reduce restructuring later.
+		Object swapValue = null;
+		K swap = null;
+		if (minNode.noOfKeys <= maxNode.noOfKeys) {
+			maxNode = pushMaxPath(currentNode, indexToDelete);
+			swapValue = maxNode.lastValue();
+			swap = maxNode.removeLastKey();
+		} else {
+			pathIndexes[pathSize - 1] = indexToDelete + 1;
+			minNode = pushMinPath(currentNode, indexToDelete + 1);
+			swapValue = minNode.valueAt(0);
+			swap = minNode.removeFirstKey();
+		}
+		currentNode.setKeyAt(indexToDelete, swap, swapValue);
+	}
+
+	/**
+	 * merges insufficient nodes from down to top. It doesn't use recursive call but uses the path.
+	 */
+	private void merge() {
+		int level = pathSize - 1;
+		Node current = pathNodes[level];
+		Node parent = null;
+		while (level > 0) {
+			parent = pathNodes[level - 1];
+			int parentIndex = pathIndexes[level - 1];
+			if (current.isInsufficientKey()) {
+				++restructured;
+				int borrowIndex = getBiggerChild(parent, parentIndex);
+				boolean isRight = borrowIndex > parentIndex;
+				Node borrow = writableChild(parent, borrowIndex);
+
+				if (canJoin(borrow, current)) {
+					if (isRight) {
+						join(current, parent, parentIndex, borrow);
+					} else {
+						join(borrow, parent, parentIndex - 1, current);
+					}
+				} else {
+					borrow(current, parent, parentIndex, borrow, isRight);
+					return;
+				}
+				current = parent;
+				--level;
+			} else {
+				break;
+			}
+		}
+
+		// root
+		if (parent.noOfKeys == 0 && parent.isLeaf() == false) {
+			this.root = parent.childAt(0);
+			--height;
+		}
+	}
+
+	private boolean canJoin(Node borrow, Node node) {
+		return borrow.noOfKeys + node.noOfKeys < MAX_KEY;
+	}
+
+	/**
+	 * @param current
+	 * @param parent
+	 * @param childIndex index of current in the parent
+	 * @param borrow
+	 * @param isRight
+	 */
+	private void borrow(Node current, Node parent, int childIndex, Node borrow, boolean isRight) {
+		if (isRight) {
+			shrinkRightKeys(current, parent, childIndex, borrow);
+		} else {
+			shrinkLeftKeys(current, parent, childIndex, borrow);
+		}
+		current.refresh();
+		borrow.refresh();
+	}
+
+	private void shrinkLeftKeys(Node current, Node parent, int childIndex, Node borrow) {
+		int parentIndex = childIndex - 1;
+		current.shiftKeysRight(0);
+		current.setKeyAt(0, parent.keyAt(parentIndex), parent.valueAt(parentIndex));
+		++current.noOfKeys;
+
+		Object borrowedValue = borrow.lastValue();
+		parent.setKeyAt(parentIndex, borrow.removeLastKey(), borrowedValue);
+		if (borrow.isLeaf() == false) {
+			ArrayUtil.shiftRight(current.children, 0, current.noOfChildren);
+			current.setChildAt(0, borrow.removeLastChild());
+
+			++current.noOfChildren;
+		}
+	}
+
+	private void shrinkRightKeys(Node current, Node parent, int childIndex, Node borrow) {
+		int parentIndex = childIndex;
+		current.setKeyAt(current.noOfKeys, parent.keyAt(parentIndex), parent.valueAt(parentIndex));
+		++current.noOfKeys;
+
+		Object borrowedValue = borrow.valueAt(0);
+		parent.setKeyAt(parentIndex, borrow.removeFirstKey(), borrowedValue);
+		if (borrow.isLeaf() == false) {
+			current.setChildAt(current.noOfChildren, borrow.removeFirstChild());
+			++current.noOfChildren;
+		}
+	}
+
+	/**
+	 * debug purpose
+	 */
+	public void showInfo() {
+		System.out.println("MAX_KEY=" + MAX_KEY);
+		System.out.println("HALF_KEY=" + HALF_KEY);
+		System.out.println("CENTER_KEY=" + CENTER_KEY);
+		System.out.println("CENTER_CHILDREN=" + CENTER_CHILDREN);
+		System.out.println("MAX_CHILDREN=" + MAX_CHILDREN);
+		System.out.println("HALF_CHILDREN=" + HALF_CHILDREN);
+	}
+
+	/**
+	 * choose a bigger child node between left and right child of key at index.
+	 * 
+	 * @param parent
+	 * @param index index of the key to find its left or right child.
+	 * @return index of left or right child node
+	 */
+	private int getBiggerChild(Node parent, int index) {
+		if (index == 0)
+			return index + 1;
+		if (index + 1 >= parent.noOfChildren)
+			return index - 1;
+
+		// choose bigger one
+		return parent.childAt(index - 1).noOfKeys >= parent.childAt(index + 1).noOfKeys ? index - 1 : index + 1;
+	}
+
+	/**
+	 * appends right node to left node
+	 * 
+	 * @param left
+	 * @param center parent node between left and right
+	 * @param centerIndex
+	 * @param right
+	 */
+	private void join(Node left, Node center, int centerIndex, Node right) {
+		left.setKeyAt(left.noOfKeys, center.keyAt(centerIndex), center.valueAt(centerIndex));
+		++left.noOfKeys;
+
+		joinKeys(left, right);
+		joinChildren(left, right);
+		left.refresh();
+
+		// shrink parent
+		center.shrink(centerIndex + 1);
+	}
+
+	private void joinChildren(Node left, Node right) {
+		for (int i = 0; i < right.noOfChildren; i++) {
+			left.setChildAt(i + left.noOfChildren, right.childAt(i));
+		}
+		left.noOfChildren += right.noOfChildren;
+	}
+
+	private void joinKeys(Node left, Node right) {
+		for (int i = 0; i < right.noOfKeys; i++) {
+			left.setKeyAt(i + left.noOfKeys, right.keyAt(i), right.valueAt(i));
+		}
+		left.noOfKeys += right.noOfKeys;
+	}
+
+	/**
+	 * find the maximum node from a node.
+	 * 
+	 * @param node
+	 * @return the maximum node
+	 */
+	private Node findMaxNode(Node node) {
+		while (node.isLeaf() == false)
+			node = node.childAt(node.noOfChildren - 1); // It's the maximum node in a node
+		return node;
+	}
+
+	/**
+	 * find the minimum node from a node.
+	 * 
+	 * @param node starting point
+	 * @return the minimum node
+	 */
+	private Node findMinNode(Node node) {
+		while (node.isLeaf() == false)
+			node = node.childAt(0); // It's the minimum in a node
+		return node;
+	}
+
+	/**
+	 * adds the writable nodes from the child to its maximum leaf to the path.
+	 * 
+	 * @param parent
+	 * @param childIndex
+	 * @return the maximum leaf
+	 */
+	private Node pushMaxPath(Node parent, int childIndex) {
+		Node node = parent;
+		do {
+			node = writableChild(node, childIndex);
+			childIndex = node.noOfChildren - 1;
+			pushPath(node, childIndex);
+		} while (node.isLeaf() == false);
+		return node;
+	}
+
+	/**
+	 * adds the writable nodes from the child to its minimum leaf to the path.
+	 * 
+	 * @param parent
+	 * @param childIndex
+	 * @return the minimum leaf
+	 */
+	private Node pushMinPath(Node parent, int childIndex) {
+		Node node = parent;
+		do {
+			node = writableChild(node, childIndex);
+			childIndex = 0;
+			pushPath(node, childIndex);
+		} while (node.isLeaf() == false);
+		return node;
+	}
+
+	/**
+	 * debug purpose
+	 */
+	public void debug() {
+		root.print();
+	}
+
+	/**
+	 * Iterator that contains keys. It keeps the path from the root in a stack whose WrappedNode has the index of the
+	 * next key of its node, so it can start from any key after a search in O(log n) and go either way.
+	 */
+	class KeyIterator implements Iterator<K> {
+		K currentKey = null;
+		Object currentValue;
+		/**
+		 * value of the key returned by the last next.
+		 */
+		Object lastValue;
+		private final Stack<WrappedNode> stack = new Stack<WrappedNode>();
+		private final boolean descending;
+		/**
+		 * the last key to return, null if no limit.
+		 */
+		private final K endKey;
+		private final boolean endInclusive;
+		final int changedAt = changed;
+
+		KeyIterator() {
+			this(null, false, null, false, false);
+		}
+
+		/**
+		 * @param startKey the first key to return, null from the first or the last key.
+		 * @param startInclusive
+		 * @param endKey
+		 * @param endInclusive
+		 * @param descending
+		 */
+		KeyIterator(K startKey, boolean startInclusive, K endKey, boolean endInclusive, boolean descending) {
+			this.descending = descending;
+			this.endKey = endKey;
+			this.endInclusive = endInclusive;
+			seek(startKey, startInclusive);
+			getNext();
+		}
+
+		/**
+		 * builds the stack from the root to the start key.
+		 */
+		private void seek(K startKey, boolean startInclusive) {
+			Node node = root;
+			while (true) {
+				int index;
+				int childIndex;
+				if (startKey == null) {
+					index = descending ? node.noOfKeys - 1 : 0;
+					childIndex = descending ? node.noOfKeys : 0;
+				} else {
+					int indexOfGreatestLessThan = node.indexOfGreatestLessThan(startKey);
+					if (indexOfGreatestLessThan < 0) { // found
+						index = node.convertToRealIndex(indexOfGreatestLessThan);
+						if (startInclusive) {
+							stack.add(new WrappedNode(node, index));
+							return;
+						}
+						childIndex = descending ? index : index + 1;
+						index = descending ? index - 1 : index + 1;
+					} else {
+						childIndex = indexOfGreatestLessThan;
+						index = descending ? indexOfGreatestLessThan - 1 : indexOfGreatestLessThan;
+					}
+				}
+				stack.add(new WrappedNode(node, index));
+				if (node.isLeaf())
+					return;
+				node = node.childAt(childIndex);
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return currentKey != null;
+		}
+
+		/**
+		 * find the next key. After a key of an inner node it goes down to the nearest leaf of the next key.
+		 */
+		private void getNext() {
+			while (stack.size() > 0) {
+				WrappedNode wrappedNode = stack.get(stack.size() - 1);
+				Node node = wrappedNode.node;
+				int index = wrappedNode.index;
+				if (index < 0 || index >= node.noOfKeys) {
+					stack.pop();
+					continue;
+				}
+
+				currentKey = node.keyAt(index);
+				currentValue = node.valueAt(index);
+				if (descending) {
+					wrappedNode.index = index - 1;
+					if (node.isLeaf() == false)
+						pushMaxPath(node.childAt(index));
+				} else {
+					wrappedNode.index = index + 1;
+					if (node.isLeaf() == false)
+						pushMinPath(node.childAt(index + 1));
+				}
+
+				if (endKey != null && isBeyondEnd(currentKey)) {
+					stack.reset();
+					break;
+				}
+				return;
+			}
+			currentKey = null;
+		}
+
+		private boolean isBeyondEnd(K key) {
+			int diff = key.compareTo(endKey);
+			if (descending)
+				diff = -diff;
+			return diff > 0 || (diff == 0 && endInclusive == false);
+		}
+
+		private void pushMinPath(Node node) {
+			while (true) {
+				stack.add(new WrappedNode(node, 0));
+				if (node.isLeaf())
+					return;
+				node = node.childAt(0);
+			}
+		}
+
+		private void pushMaxPath(Node node) {
+			while (true) {
+				stack.add(new WrappedNode(node, node.noOfKeys - 1));
+				if (node.isLeaf())
+					return;
+				node = node.childAt(node.noOfKeys);
+			}
+		}
+
+		@Override
+		public K next() {
+			if (changedAt != changed)
+				throw new ConcurrentModificationException();
+
+			if (currentKey == null)
+				throw new NoSuchElementException();
+
+			K temp = currentKey;
+			lastValue = currentValue;
+			getNext();
+			return temp;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * calls the action for each key in {@link ForkJoinPool#commonPool()}, in no particular order. It forks a task for
+	 * each child of a node until a subtree has about {@link #PARALLEL_THRESHOLD} keys.
+	 * 
+	 * @param action should be thread safe.
+	 */
+	public void parallelForEach(Consumer<? super K> action) {
+		parallelForEachEntry((key, value) -> action.accept(key));
+	}
+
+	/**
+	 * see {@link #parallelForEach(Consumer)}.
+	 * 
+	 * @param action takes a key and its value.
+	 */
+	void parallelForEachEntry(BiConsumer<? super K, Object> action) {
+		int changedAt = changed;
+		ForkJoinPool.commonPool().invoke(new ForEachTask(root, size, action));
+		if (changedAt != changed)
+			throw new ConcurrentModificationException();
+	}
+
+	/**
+	 * transforms each key and reduces the results in ascending order of keys in {@link ForkJoinPool#commonPool()}, like
+	 * {@link java.util.concurrent.ConcurrentHashMap#reduceKeys(long, Function, BiFunction)}.
+	 * 
+	 * @param transformer returns null to skip a key.
+	 * @param reducer should be associative.
+	 * @return result or null if there is no result.
+	 */
+	public <U> U parallelReduce(Function<? super K, ? extends U> transformer, BinaryOperator<U> reducer) {
+		return parallelReduceEntries((key, value) -> transformer.apply(key), reducer);
+	}
+
+	/**
+	 * see {@link #parallelReduce(Function, BinaryOperator)}.
+	 * 
+	 * @param transformer takes a key and its value.
+	 */
+	<U> U parallelReduceEntries(BiFunction<? super K, Object, ? extends U> transformer, BinaryOperator<U> reducer) {
+		int changedAt = changed;
+		U result = ForkJoinPool.commonPool().invoke(new ReduceTask<U>(root, size, transformer, reducer));
+		if (changedAt != changed)
+			throw new ConcurrentModificationException();
+		return result;
+	}
+
+	/**
+	 * @param node
+	 * @param estimate number of keys under the node if the set is not counted.
+	 * @return true if the node should be done in one thread.
+	 */
+	private boolean isSmall(Node node, long estimate) {
+		return node.isLeaf() || (counted ? node.subtreeSize : estimate) <= PARALLEL_THRESHOLD;
+	}
+
+	class ForEachTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final Node node;
+		final long estimate;
+		final BiConsumer<? super K, Object> action;
+
+		ForEachTask(Node node, long estimate, BiConsumer<? super K, Object> action) {
+			this.node = node;
+			this.estimate = estimate;
+			this.action = action;
+		}
+
+		@Override
+		protected void compute() {
+			if (isSmall(node, estimate)) {
+				forEach(node);
+				return;
+			}
+
+			ArrayList<ForEachTask> tasks = new ArrayList<ForEachTask>(node.noOfChildren);
+			for (int i = 0; i < node.noOfChildren; i++)
+				tasks.add(new ForEachTask(node.childAt(i), estimate / node.noOfChildren, action));
+			for (int i = 1; i < tasks.size(); i++)
+				tasks.get(i).fork();
+			for (int i = 0; i < node.noOfKeys; i++)
+				action.accept(node.keyAt(i), node.valueAt(i));
+			tasks.get(0).compute();
+			for (int i = 1; i < tasks.size(); i++)
+				tasks.get(i).join();
+		}
+
+		private void forEach(Node node) {
+			for (int i = 0; i < node.noOfKeys; i++) {
+				if (node.isLeaf() == false)
+					forEach(node.childAt(i));
+				action.accept(node.keyAt(i), node.valueAt(i));
+			}
+			if (node.isLeaf() == false)
+				forEach(node.childAt(node.noOfKeys));
+		}
+	}
+
+	class ReduceTask<U> extends RecursiveTask<U> {
+		private static final long serialVersionUID = 1L;
+
+		final Node node;
+		final long estimate;
+		final BiFunction<? super K, Object, ? extends U> transformer;
+		final BinaryOperator<U> reducer;
+
+		ReduceTask(Node node, long estimate, BiFunction<? super K, Object, ? extends U> transformer,
+				BinaryOperator<U> reducer) {
+			this.node = node;
+			this.estimate = estimate;
+			this.transformer = transformer;
+			this.reducer = reducer;
+		}
+
+		@Override
+		protected U compute() {
+			if (isSmall(node, estimate))
+				return reduce(null, node);
+
+			ArrayList<ReduceTask<U>> tasks = new ArrayList<ReduceTask<U>>(node.noOfChildren);
+			for (int i = 0; i < node.noOfChildren; i++)
+				tasks.add(new ReduceTask<U>(node.childAt(i), estimate / node.noOfChildren, transformer, reducer));
+			for (int i = 1; i < tasks.size(); i++)
+				tasks.get(i).fork();
+			U result = tasks.get(0).compute();
+			for (int i = 0; i < node.noOfKeys; i++) {
+				result = reduce(result, transformer.apply(node.keyAt(i), node.valueAt(i)));
+				result = reduce(result, tasks.get(i + 1).join());
+			}
+			return result;
+		}
+
+		private U reduce(U result, Node node) {
+			for (int i = 0; i < node.noOfKeys; i++) {
+				if (node.isLeaf() == false)
+					result = reduce(result, node.childAt(i));
+				result = reduce(result, transformer.apply(node.keyAt(i), node.valueAt(i)));
+			}
+			if (node.isLeaf() == false)
+				result = reduce(result, node.childAt(node.noOfKeys));
+			return result;
+		}
+
+		private U reduce(U left, U right) {
+			if (left == null)
+				return right;
+			return right == null ? left : reducer.apply(left, right);
+		}
+	}
+
+	/**
+	 * Spliterator over the slots from fromSlot to endSlot of a node, where slot 2i is the child i and slot 2i+1 is the
+	 * key i. trySplit gives the first half of the slots, so each part is a run of whole subtrees and keys, and goes
+	 * down when only one child is left. The size is exact for the whole set and, if it is {@link #counted(int)}, for
+	 * every part. forEachRemaining reads the arrays of nodes directly.
+	 */
+	class KeySpliterator implements Spliterator<K> {
+		Node node;
+		int slot;
+		int endSlot;
+		long estimate;
+		boolean exact;
+		/**
+		 * descendants being read by tryAdvance with the next slot of each, trySplit stops once it is not empty.
+		 */
+		private Stack<WrappedNode> stack;
+		final int changedAt = changed;
+
+		KeySpliterator(Node node, int slot, int endSlot, long estimate, boolean exact) {
+			this.node = node;
+			this.slot = slot;
+			this.endSlot = endSlot;
+			this.estimate = estimate;
+			this.exact = exact;
+		}
+
+		@Override
+		public Spliterator<K> trySplit() {
+			if (stack != null && stack.size() > 0)
+				return null;
+			while (endSlot - slot == 1 && (slot & 1) == 0 && node.isLeaf() == false) {
+				node = node.childAt(slot >> 1);
+				slot = 0;
+				endSlot = 2 * node.noOfKeys + 1;
+			}
+
+			int middle;
+			if (node.isLeaf()) { // keys from slot >> 1 to endSlot >> 1
+				int noOfKeys = (endSlot >> 1) - (slot >> 1);
+				if (noOfKeys < 2)
+					return null;
+				middle = 2 * ((slot >> 1) + noOfKeys / 2);
+			} else {
+				if (endSlot - slot < 2)
+					return null;
+				middle = slot + (endSlot - slot) / 2;
+				if ((middle & 1) == 1 && middle + 1 < endSlot)
+					++middle; // cuts before a child
+			}
+
+			long prefixEstimate;
+			if (counted) {
+				prefixEstimate = countSlots(slot, middle);
+				estimate -= prefixEstimate;
+			} else {
+				prefixEstimate = estimate * (middle - slot) / (endSlot - slot);
+				estimate -= prefixEstimate;
+				exact = false;
+			}
+			KeySpliterator prefix = new KeySpliterator(node, slot, middle, prefixEstimate, exact);
+			slot = middle;
+			return prefix;
+		}
+
+		private long countSlots(int from, int to) {
+			long total = (to >> 1) - (from >> 1);
+			if (node.isLeaf() == false) {
+				for (int i = (from + 1) >> 1; i <= (to - 1) >> 1; i++)
+					total += node.childAt(i).subtreeSize;
+			}
+			return total;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super K> action) {
+			if (action == null)
+				throw new NullPointerException();
+			if (changedAt != changed)
+				throw new ConcurrentModificationException();
+
+			while (true) {
+				Node current;
+				int currentSlot;
+				WrappedNode top = null;
+				if (stack != null && stack.size() > 0) {
+					top = stack.get(stack.size() - 1);
+					current = top.node;
+					currentSlot = top.index;
+					if (currentSlot > 2 * current.noOfKeys) {
+						stack.pop();
+						continue;
+					}
+					++top.index;
+				} else {
+					if (slot >= endSlot)
+						return false;
+					current = node;
+					currentSlot = slot++;
+				}
+
+				if ((currentSlot & 1) == 1) {
+					if (estimate > 0)
+						--estimate;
+					action.accept(current.keyAt(currentSlot >> 1));
+					return true;
+				}
+				if (current.isLeaf() == false) {
+					if (stack == null)
+						stack = new Stack<WrappedNode>();
+					stack.add(new WrappedNode(current.childAt(currentSlot >> 1), 0));
+				}
+			}
+		}
+
+		@Override
+		public void forEachRemaining(Consumer<? super K> action) {
+			if (action == null)
+				throw new NullPointerException();
+			if (stack != null && stack.size() > 0) {
+				while (tryAdvance(action))
+					;
+				return;
+			}
+			forEach(node, slot, endSlot, action);
+			slot = endSlot;
+			estimate = 0;
+			if (changedAt != changed)
+				throw new ConcurrentModificationException();
+		}
+
+		private void forEach(Node node, int from, int to, Consumer<? super K> action) {
+			K[] keys = node.keys;
+			if (node.isLeaf()) {
+				for (int i = from >> 1, end = to >> 1; i < end; i++)
+					action.accept(keys[i]);
+				return;
+			}
+			Node[] children = node.children;
+			for (int i = from; i < to; i++) {
+				if ((i & 1) == 1) {
+					action.accept(keys[i >> 1]);
+				} else {
+					Node child = children[i >> 1];
+					forEach(child, 0, 2 * child.noOfKeys + 1, action);
+				}
+			}
+		}
+
+		@Override
+		public long estimateSize() {
+			return estimate;
+		}
+
+		@Override
+		public int characteristics() {
+			int characteristics = Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL;
+			if (exact)
+				characteristics |= Spliterator.SIZED;
+			if (counted)
+				characteristics |= Spliterator.SUBSIZED;
+			return characteristics;
 		}
 
-		if (deleteStack.size() == 1) // root
-			return true;
-
-		merge();
-		return true;
+		@Override
+		public Comparator<? super K> getComparator() {
+			return null;
+		}
 	}
 
 	/**
-	 * replace a key in currentNode with the least key or the largest key in the leaf. and delete the key in the leaf.
-	 * 
-	 * @param currentNode
-	 * @param indexToDelete
+	 * view of the keys from lo to hi, a null bound means no limit. It searches a bound in O(log n) and then iterates
+	 * only the keys in the range, in reverse order if it is descending. Changes through the view go to the set.
 	 */
-	private void overwriteWithLeaf(Node currentNode, int indexToDelete) {
-		minStack.reset();
-		maxStack.reset();
-		Node minNode = findMinNode(currentNode.childAt(indexToDelete + 1));
-		Node maxNode = findMaxNode(currentNode.childAt(indexToDelete));
+	class SubSet extends AbstractSet<K> implements NavigableSet<K> {
+		final K lo;
+		final boolean loInclusive;
+		final K hi;
+		final boolean hiInclusive;
+		final boolean descending;
+
+		SubSet(K lo, boolean loInclusive, K hi, boolean hiInclusive, boolean descending) {
+			this.lo = lo;
+			this.loInclusive = loInclusive;
+			this.hi = hi;
+			this.hiInclusive = hiInclusive;
+			this.descending = descending;
+		}
 
-		// swap, use one which has more keys to reduce restructuring later.
-		K swap = null;
-		Stack<WrappedNode> target = null;
-		if (minNode.noOfKeys <= maxNode.noOfKeys) {
-			swap = maxNode.removeLastKey();
-			target = maxStack;
-		} else {
-			swap = minNode.removeFirstKey();
-			target = minStack;
+		boolean tooLow(K key) {
+			if (lo == null)
+				return false;
+			int diff = key.compareTo(lo);
+			return diff < 0 || (diff == 0 && loInclusive == false);
 		}
-		currentNode.setKeyAt(indexToDelete, swap);
-		deleteStack.addAll(target);
-	}
 
-	/**
-	 * merges insufficient nodes from down to top. It doesn't use recursive call but uses a stack.
-	 */
-	private void merge() {
-		WrappedNode current = deleteStack.pop();
-		WrappedNode parent = null;
-		while (deleteStack.size() > 0) {
-			parent = deleteStack.pop();
-			if (current.node.isInsufficientKey()) {
-				WrappedNode borrow = getBiggerChild(parent.node, parent.index);
-				boolean isRight = borrow.index == 1;
+		boolean tooHigh(K key) {
+			if (hi == null)
+				return false;
+			int diff = key.compareTo(hi);
+			return diff > 0 || (diff == 0 && hiInclusive == false);
+		}
 
-				if (canJoin(borrow, current)) {
-					if (isRight) {
-						join(current.node, parent.node, parent.index, borrow.node);
-					} else {
-						join(borrow.node, parent.node, parent.index - 1, current.node);
-					}
-				} else {
-					borrow(current, parent, borrow, isRight);
-					return;
-				}
-				current = parent;
-			} else {
-				break;
-			}
+		boolean inRange(K key) {
+			return tooLow(key) == false && tooHigh(key) == false;
 		}
 
-		// root
-		if (parent.node.noOfKeys == 0 && parent.node.isLeaf() == false) {
-			this.root = parent.node.childAt(0);
-			--height;
+		/**
+		 * a new bound can be an exclusive bound of this view if it is exclusive too.
+		 */
+		private boolean inRange(K key, boolean inclusive) {
+			if (inclusive)
+				return inRange(key);
+			return (lo == null || key.compareTo(lo) >= 0) && (hi == null || key.compareTo(hi) <= 0);
 		}
-	}
 
-	private boolean canJoin(WrappedNode borrow, WrappedNode node) {
-		return borrow.node.noOfKeys + node.node.noOfKeys < MAX_KEY;
-	}
+		WrappedNode lowestNode() {
+			WrappedNode found = lo == null ? minNode(root) : higherNode(lo, loInclusive);
+			return found == null || tooHigh(keyOf(found)) ? null : found;
+		}
 
-	private void borrow(WrappedNode current, WrappedNode parent, WrappedNode borrow, boolean isRight) {
-		if (isRight) {
-			shrinkRightKeys(current, parent, borrow);
-		} else {
-			shrinkLeftKeys(current, parent, borrow);
+		WrappedNode highestNode() {
+			WrappedNode found = hi == null ? maxNode(root) : lowerNode(hi, hiInclusive);
+			return found == null || tooLow(keyOf(found)) ? null : found;
+		}
+
+		private WrappedNode absLowerNode(K key, boolean inclusive) {
+			if (tooHigh(key))
+				return highestNode();
+			WrappedNode found = lowerNode(key, inclusive);
+			return found == null || tooLow(keyOf(found)) ? null : found;
 		}
-	}
 
-	private void shrinkLeftKeys(WrappedNode current, WrappedNode parent, WrappedNode borrow) {
-		int parentIndex = parent.index - 1;
-		ArrayUtil.shiftRight(current.node.keys, 0, current.node.noOfKeys);
-		current.node.setKeyAt(0, parent.node.keyAt(parentIndex));
-		++current.node.noOfKeys;
+		private WrappedNode absHigherNode(K key, boolean inclusive) {
+			if (tooLow(key))
+				return lowestNode();
+			WrappedNode found = higherNode(key, inclusive);
+			return found == null || tooHigh(keyOf(found)) ? null : found;
+		}
 
-		parent.node.setKeyAt(parentIndex, borrow.node.removeLastKey());
-		if (borrow.node.isLeaf() == false) {
-			ArrayUtil.shiftRight(current.node.children, 0, current.node.noOfChildren);
-			current.node.setChildAt(0, borrow.node.removeLastChild());
+		// in the order of the view
 
-			++current.node.noOfChildren;
+		WrappedNode firstNode() {
+			return descending ? highestNode() : lowestNode();
 		}
-	}
 
-	private void shrinkRightKeys(WrappedNode current, WrappedNode parent, WrappedNode borrow) {
-		int parentIndex = parent.index;
-		current.node.setKeyAt(current.node.noOfKeys, parent.node.keyAt(parentIndex));
-		++current.node.noOfKeys;
+		WrappedNode lastNode() {
+			return descending ? lowestNode() : highestNode();
+		}
 
-		parent.node.setKeyAt(parentIndex, borrow.node.removeFirstKey());
-		if (borrow.node.isLeaf() == false) {
-			current.node.setChildAt(current.node.noOfChildren, borrow.node.removeFirstChild());
-			++current.node.noOfChildren;
+		WrappedNode lowerInView(K key) {
+			return descending ? absHigherNode(key, false) : absLowerNode(key, false);
 		}
-	}
 
-	/**
-	 * debug purpose
-	 */
-	public void showInfo() {
-		System.out.println("MAX_KEY=" + MAX_KEY);
-		System.out.println("HALF_KEY=" + HALF_KEY);
-		System.out.println("CENTER_KEY=" + CENTER_KEY);
-		System.out.println("CENTER_CHILDREN=" + CENTER_CHILDREN);
-		System.out.println("MAX_CHILDREN=" + MAX_CHILDREN);
-		System.out.println("HALF_CHILDREN=" + HALF_CHILDREN);
-	}
+		WrappedNode floorInView(K key) {
+			return descending ? absHigherNode(key, true) : absLowerNode(key, true);
+		}
 
-	/**
-	 * choose a bigger child node between left and right child of key at index.
-	 * 
-	 * @param parent
-	 * @param index index of the key to find its left or right child.
-	 * @return left or right child node
-	 */
-	private WrappedNode getBiggerChild(Node parent, int index) {
-		Node left = null;
-		Node right = null;
-		WrappedNode wrappedNode = new WrappedNode();
-		if (index > 0)
-			left = parent.childAt(index - 1);
-
-		if (index + 1 < MAX_CHILDREN)
-			right = parent.childAt(index + 1);
-
-		if (left == null) {
-			wrappedNode.node = right;
-			wrappedNode.index = 1;
-		} else if (right == null) {
-			wrappedNode.node = left;
-			wrappedNode.index = 0;
-		} else {
-			// choose bigger one
-			if (left.noOfKeys >= right.noOfKeys) {
-				wrappedNode.node = left;
-				wrappedNode.index = 0;
-			} else {
-				wrappedNode.node = right;
-				wrappedNode.index = 1;
+		WrappedNode ceilingInView(K key) {
+			return descending ? absLowerNode(key, true) : absHigherNode(key, true);
+		}
+
+		WrappedNode higherInView(K key) {
+			return descending ? absLowerNode(key, false) : absHigherNode(key, false);
+		}
+
+		KeyIterator keyIterator(boolean reverse) {
+			if (descending == reverse)
+				return new KeyIterator(lo, loInclusive, hi, hiInclusive, false);
+			return new KeyIterator(hi, hiInclusive, lo, loInclusive, true);
+		}
+
+		@Override
+		public Iterator<K> iterator() {
+			return keyIterator(false);
+		}
+
+		@Override
+		public Iterator<K> descendingIterator() {
+			return keyIterator(true);
+		}
+
+		@Override
+		public Spliterator<K> spliterator() {
+			if (lo == null && hi == null && descending == false)
+				return BTreeSet.this.spliterator();
+			return NavigableSet.super.spliterator();
+		}
+
+		@Override
+		public int size() {
+			if (lo == null && hi == null)
+				return BTreeSet.this.size();
+			if (counted) {
+				int total = (hi == null ? BTreeSet.this.size() : countLess(hi, hiInclusive))
+						- (lo == null ? 0 : countLess(lo, loInclusive == false));
+				return Math.max(0, total);
 			}
+
+			int count = 0;
+			for (Iterator<K> itr = iterator(); itr.hasNext(); itr.next())
+				++count;
+			return count;
 		}
-		return wrappedNode;
-	}
 
-	/**
-	 * appends right node to left node
-	 * 
-	 * @param left
-	 * @param center parent node between left and right
-	 * @param centerIndex
-	 * @param right
-	 */
-	private void join(Node left, Node center, int centerIndex, Node right) {
-		left.setKeyAt(left.noOfKeys, center.keyAt(centerIndex));
-		++left.noOfKeys;
+		@Override
+		public boolean isEmpty() {
+			return lowestNode() == null;
+		}
 
-		joinKeys(left, right);
-		joinChildren(left, right);
+		@Override
+		public boolean contains(Object keyObj) {
+			return keyObj != null && inRange((K) keyObj) && BTreeSet.this.contains(keyObj);
+		}
 
-		// shrink parent
-		center.shrink(centerIndex + 1);
-	}
+		/**
+		 * a view of keys of a map does not add a key without a value.
+		 */
+		@Override
+		public boolean add(K key) {
+			if (hasValues)
+				throw new UnsupportedOperationException();
+			if (inRange(key) == false)
+				throw new IllegalArgumentException("key out of range");
+			return BTreeSet.this.add(key);
+		}
 
-	private void joinChildren(Node left, Node right) {
-		for (int i = 0; i < right.noOfChildren; i++) {
-			left.setChildAt(i + left.noOfChildren, right.childAt(i));
+		@Override
+		public boolean remove(Object keyObj) {
+			return keyObj != null && inRange((K) keyObj) && BTreeSet.this.remove(keyObj);
 		}
-		left.noOfChildren += right.noOfChildren;
-	}
 
-	private void joinKeys(Node left, Node right) {
-		for (int i = 0; i < right.noOfKeys; i++) {
-			left.setKeyAt(i + left.noOfKeys, right.keyAt(i));
+		@Override
+		public void clear() {
+			if (lo == null && hi == null) {
+				BTreeSet.this.clear();
+				return;
+			}
+			for (K key = keyOf(lowestNode()); key != null; key = keyOf(lowestNode()))
+				BTreeSet.this.remove(key);
 		}
-		left.noOfKeys += right.noOfKeys;
-	}
 
-	/**
-	 * find the maximum node from a node.
-	 * 
-	 * @param node
-	 * @return the maximum node
-	 */
-	private Node findMaxNode(Node node) {
-		while (true) {
-			WrappedNode wrappedNode = new WrappedNode();
-			wrappedNode.node = node;
-			wrappedNode.index = node.noOfChildren - 1;
-			maxStack.add(wrappedNode);
-			if (node.isLeaf())
-				return node;
+		@Override
+		public Comparator<? super K> comparator() {
+			return descending ? Collections.<K> reverseOrder() : null;
+		}
 
-			node = node.childAt(node.noOfChildren - 1); // It's the maximum node
-														// in a node
+		@Override
+		public K first() {
+			return exists(keyOf(firstNode()));
 		}
-	}
 
-	/**
-	 * find the minimum node from a node.
-	 * 
-	 * @param node starting point
-	 * @return the minimum node
-	 */
-	private Node findMinNode(Node node) {
-		while (true) {
-			WrappedNode wrapper = new WrappedNode();
-			wrapper.node = node;
-			wrapper.index = 0;
-			minStack.add(wrapper);
-			if (node.isLeaf())
-				return node;
+		@Override
+		public K last() {
+			return exists(keyOf(lastNode()));
+		}
 
-			node = node.childAt(0); // It's the minimum in a node
+		@Override
+		public K lower(K key) {
+			return keyOf(lowerInView(key));
 		}
-	}
 
-	/**
-	 * debug purpose
-	 */
-	public void debug() {
-		root.print();
-	}
+		@Override
+		public K floor(K key) {
+			return keyOf(floorInView(key));
+		}
 
-	/**
-	 * Iterator that contains keys.
-	 */
-	private class KeyIterator implements Iterator<K> {
-		WrappedNode wrappedNode;
-		K currentKey = null;
-		private Stack<WrappedNode> stack = new Stack<WrappedNode>();
-		int indexOfPrinting = 0;
-		final int changedAt = changed;
+		@Override
+		public K ceiling(K key) {
+			return keyOf(ceilingInView(key));
+		}
 
-		KeyIterator() {
-			wrappedNode = new WrappedNode(root);
-			getNext();
+		@Override
+		public K higher(K key) {
+			return keyOf(higherInView(key));
 		}
 
 		@Override
-		public boolean hasNext() {
-			return currentKey != null;
+		public K pollFirst() {
+			K key = keyOf(firstNode());
+			if (key != null)
+				BTreeSet.this.remove(key);
+			return key;
+		}
+
+		@Override
+		public K pollLast() {
+			K key = keyOf(lastNode());
+			if (key != null)
+				BTreeSet.this.remove(key);
+			return key;
+		}
+
+		@Override
+		public NavigableSet<K> descendingSet() {
+			return new SubSet(lo, loInclusive, hi, hiInclusive, descending == false);
 		}
 
 		/**
-		 * find the next node
+		 * @param newLo null to keep lo of this view
+		 * @param newLoInclusive
+		 * @param newHi null to keep hi of this view
+		 * @param newHiInclusive
+		 * @return view in the same order as this view
 		 */
-		private void getNext() {
-			do {
-				if (wrappedNode.node.isLeaf()) {
-					if (wrappedNode.node.noOfKeys > indexOfPrinting) {
-						currentKey = wrappedNode.node.keyAt(indexOfPrinting++);
-						break;
-					}
-					indexOfPrinting = 0;
-					if (stack.size() == 0) {
-						currentKey = null;
-						break;
-					}
-					wrappedNode = stack.pop();
-					wrappedNode.check = true;
-				} else if (wrappedNode.check) {
-					// check it returned all node
-					if (wrappedNode.index == wrappedNode.node.noOfKeys) {
-						if (stack.size() == 0) {
-							currentKey = null;
-							break;
-						}
-						wrappedNode = stack.pop();
-						wrappedNode.check = true;
-					} else { // return one by one in the current node
-						currentKey = wrappedNode.node.keyAt(wrappedNode.index++);
-						stack.add(wrappedNode);
-						WrappedNode temp = new WrappedNode(wrappedNode.node.childAt(wrappedNode.index));
-						wrappedNode = temp;
-						break;
-					}
-				} else {
-					stack.add(wrappedNode);
-					WrappedNode temp = new WrappedNode(wrappedNode.node.childAt(0));
-					wrappedNode = temp;
-				}
-			} while (true);
+		SubSet newSubSet(K newLo, boolean newLoInclusive, K newHi, boolean newHiInclusive) {
+			if (newLo == null) {
+				newLo = lo;
+				newLoInclusive = loInclusive;
+			} else if (inRange(newLo, newLoInclusive) == false) {
+				throw new IllegalArgumentException("fromKey out of range");
+			}
+			if (newHi == null) {
+				newHi = hi;
+				newHiInclusive = hiInclusive;
+			} else if (inRange(newHi, newHiInclusive) == false) {
+				throw new IllegalArgumentException("toKey out of range");
+			}
+			if (newLo != null && newHi != null && newLo.compareTo(newHi) > 0)
+				throw new IllegalArgumentException("fromKey > toKey");
+			return new SubSet(newLo, newLoInclusive, newHi, newHiInclusive, descending);
 		}
 
 		@Override
-		public K next() {
-			if (changedAt != changed)
-				throw new ConcurrentModificationException();
+		public SubSet subSet(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+			if (fromKey == null || toKey == null)
+				throw new NullPointerException();
+			if (descending)
+				return newSubSet(toKey, toInclusive, fromKey, fromInclusive);
+			return newSubSet(fromKey, fromInclusive, toKey, toInclusive);
+		}
 
-			if (currentKey == null)
-				throw new NoSuchElementException();
+		@Override
+		public SubSet headSet(K toKey, boolean inclusive) {
+			if (toKey == null)
+				throw new NullPointerException();
+			if (descending)
+				return newSubSet(toKey, inclusive, null, false);
+			return newSubSet(null, false, toKey, inclusive);
+		}
 
-			K temp = currentKey;
-			getNext();
-			return temp;
+		@Override
+		public SubSet tailSet(K fromKey, boolean inclusive) {
+			if (fromKey == null)
+				throw new NullPointerException();
+			if (descending)
+				return newSubSet(null, false, fromKey, inclusive);
+			return newSubSet(fromKey, inclusive, null, false);
 		}
 
 		@Override
-		public void remove() {
-			throw new UnsupportedOperationException();
+		public SortedSet<K> subSet(K fromKey, K toKey) {
+			return subSet(fromKey, true, toKey, false);
+		}
+
+		@Override
+		public SortedSet<K> headSet(K toKey) {
+			return headSet(toKey, false);
+		}
+
+		@Override
+		public SortedSet<K> tailSet(K fromKey) {
+			return tailSet(fromKey, true);
 		}
 	}
 
@@ -542,11 +2551,6 @@ public class BTreeSet<K extends Comparable<K>> extends AbstractSet<K> {
 	class WrappedNode {
 		Node node;
 		int index;
-		K key;
-		boolean check;
-
-		public WrappedNode() {
-		}
 
 		public WrappedNode(Node node) {
 			this.node = node;
@@ -560,19 +2564,91 @@ public class BTreeSet<K extends Comparable<K>> extends AbstractSet<K> {
 
 	/**
 	 * Keeps keys in an array rather than linked list to reduce memory use. Number of children is one bigger than keys
-	 * because child can be placed on the left and right side of the parent.
+	 * because child can be placed on the left and right side of the parent. Values, if any, are kept at the same index
+	 * as their keys.
 	 */
 	class Node {
 		int id;
 		int noOfKeys = 0;
 		int noOfChildren = 0;
+		/**
+		 * number of keys of this node and its descendants, kept only if {@link BTreeSet#counted}.
+		 */
+		int subtreeSize;
+		/**
+		 * aggregate of the keys and values of this node and its descendants, kept only if there is
+		 * {@link BTreeSet#aggregator}.
+		 */
+		Object aggregate;
+		/**
+		 * see {@link BTreeSet#version}
+		 */
+		final int version;
 
 		K[] keys;
+		Object[] values;
 		Node[] children;
 
 		public Node() {
-			this.keys = (K[]) new Comparable<?>[MAX_KEY];
+			this.keys = newKeys(MAX_KEY);
+			if (hasValues)
+				this.values = new Object[MAX_KEY];
 			this.id = ++count;
+			this.version = BTreeSet.this.version;
+			if (aggregator != null)
+				this.aggregate = aggregator.identity();
+		}
+
+		/**
+		 * @return new node of the current version having the same keys, values and children.
+		 */
+		Node copy() {
+			Node node = new Node();
+			System.arraycopy(keys, 0, node.keys, 0, noOfKeys);
+			if (values != null)
+				System.arraycopy(values, 0, node.values, 0, noOfKeys);
+			if (children != null) {
+				node.initChildren();
+				System.arraycopy(children, 0, node.children, 0, noOfChildren);
+			}
+			node.noOfKeys = noOfKeys;
+			node.noOfChildren = noOfChildren;
+			node.subtreeSize = subtreeSize;
+			node.aggregate = aggregate;
+			return node;
+		}
+
+		/**
+		 * counts the keys under this node again from its children whose numbers are right.
+		 */
+		void recount() {
+			int total = noOfKeys;
+			for (int i = 0; i < noOfChildren; i++)
+				total += children[i].subtreeSize;
+			subtreeSize = total;
+		}
+
+		/**
+		 * combines the keys and the aggregates of the children in order again.
+		 */
+		void reaggregate() {
+			Object total = isLeaf() ? aggregator.identity() : children[0].aggregate;
+			for (int i = 0; i < noOfKeys; i++) {
+				total = aggregator.combine(total, aggregator.of(keys[i], valueAt(i)));
+				if (isLeaf() == false)
+					total = aggregator.combine(total, children[i + 1].aggregate);
+			}
+			aggregate = total;
+		}
+
+		/**
+		 * updates what it keeps about its descendants after its keys or children have changed.
+		 */
+		void refresh() {
+			if (counted)
+				recount();
+			if (aggregator != null)
+				reaggregate();
 		}
 
 		public void initChildren() {
@@ -604,8 +2680,11 @@ public class BTreeSet<K extends Comparable<K>> extends AbstractSet<K> {
 
 			K deletedKey = keys[indexToDelete];
 			ArrayUtil.shiftLeft(keys, indexToDelete + 1, noOfKeys);
-
 			keys[noOfKeys - 1] = null;
+			if (values != null) {
+				ArrayUtil.shiftLeft(values, indexToDelete + 1, noOfKeys);
+				values[noOfKeys - 1] = null;
+			}
 			--noOfKeys;
 			return deletedKey;
 		}
@@ -619,6 +2698,11 @@ public class BTreeSet<K extends Comparable<K>> extends AbstractSet<K> {
 
 			K deletedKey = keys[0];
 			ArrayUtil.shiftLeft(keys, 1, noOfKeys);
+			keys[noOfKeys - 1] = null;
+			if (values != null) {
+				ArrayUtil.shiftLeft(values, 1, noOfKeys);
+				values[noOfKeys - 1] = null;
+			}
 			--noOfKeys;
 			return deletedKey;
 		}
@@ -633,6 +2717,7 @@ public class BTreeSet<K extends Comparable<K>> extends AbstractSet<K> {
 			Node deletedNode = children[0];
 			ArrayUtil.shiftLeft(children, 1, noOfChildren);
 			--noOfChildren;
+			children[noOfChildren] = null;
 			return deletedNode;
 		}
 
@@ -645,6 +2730,8 @@ public class BTreeSet<K extends Comparable<K>> extends AbstractSet<K> {
 
 			K deletedKey = keys[--noOfKeys];
 			keys[noOfKeys] = null;
+			if (values != null)
+				values[noOfKeys] = null;
 			return deletedKey;
 		}
 
@@ -672,8 +2759,27 @@ public class BTreeSet<K extends Comparable<K>> extends AbstractSet<K> {
 			return keys[keyIndex];
 		}
 
-		private void setKeyAt(int keyIndex, K key) {
+		private void setKeyAt(int keyIndex, K key, Object value) {
 			keys[keyIndex] = key;
+			if (values != null)
+				values[keyIndex] = value;
+		}
+
+		Object valueAt(int keyIndex) {
+			return values == null ? null : values[keyIndex];
+		}
+
+		Object lastValue() {
+			return valueAt(noOfKeys - 1);
+		}
+
+		/**
+		 * shifts keys and values one right from the index to the end.
+		 */
+		private void shiftKeysRight(int fromIndex) {
+			ArrayUtil.shiftRight(keys, fromIndex, noOfKeys);
+			if (values != null)
+				ArrayUtil.shiftRight(values, fromIndex, noOfKeys);
 		}
 
 		public boolean isLeaf() {
@@ -699,20 +2805,22 @@ public class BTreeSet<K extends Comparable<K>> extends AbstractSet<K> {
 
 		/**
 		 * @param key
+		 * @param value
 		 * @param childNode
-		 * @return null it it is not full or new right node separated because of insertion.
+		 * @return null it it is not full or new right node separated because of insertion. The key going up to the
+		 *         parent is left in {@link BTreeSet#splitKey}.
 		 */
-		public WrappedNode add(K key, Node childNode) {
+		public Node add(K key, Object value, Node childNode) {
 			int indexOfNew = indexOfGreatestLessThan(key);
 			if (isFull())
-				return split(key, childNode, indexOfNew);
+				return split(key, value, childNode, indexOfNew);
 
 			if (childNode != null)
 				addChild(indexOfNew + 1, childNode);
 
 			// shift from idxGreatestLess
-			ArrayUtil.shiftRight(keys, indexOfNew, noOfKeys);
-			keys[indexOfNew] = key;
+			shiftKeysRight(indexOfNew);
+			setKeyAt(indexOfNew, key, value);
 			++noOfKeys;
 			return null;
 		}
@@ -722,16 +2830,53 @@ public class BTreeSet<K extends Comparable<K>> extends AbstractSet<K> {
 		 * right.
 		 * 
 		 * @param key
+		 * @param value
 		 * @param childNode
 		 * @param indexOfNew index where key and childNode will be placed.
 		 * @return new right side node which will be added to the parent.
 		 */
-		private WrappedNode split(K key, Node childNode, int indexOfNew) {
-			WrappedNode wrappedNode = splitKeys(key, indexOfNew);
+		private Node split(K key, Object value, Node childNode, int indexOfNew) {
+			if (appending && indexOfNew == MAX_KEY)
+				return splitRightEdge(key, value, childNode);
+
+			Node newNode = splitKeys(key, value, indexOfNew);
+			if (childNode != null) {
+				splitChildren(indexOfNew, newNode, childNode);
+			}
+			return newNode;
+		}
+
+		/**
+		 * split the full node on the right edge when the key is greater than all keys. This node keeps all keys but the
+		 * last one, which goes up to the parent, and the new right node has only the new key, see
+		 * {@link BTreeSet#appending}.
+		 * 
+		 * @param key
+		 * @param value
+		 * @param childNode
+		 * @return new right side node which will be added to the parent.
+		 */
+		private Node splitRightEdge(K key, Object value, Node childNode) {
+			Node newNode = new Node();
+			splitKey = keys[MAX_KEY - 1];
+			splitValue = valueAt(MAX_KEY - 1);
+			keys[MAX_KEY - 1] = null;
+			newNode.keys[0] = key;
+			if (values != null) {
+				values[MAX_KEY - 1] = null;
+				newNode.values[0] = value;
+			}
+			noOfKeys = MAX_KEY - 1;
+			newNode.noOfKeys = 1;
 			if (childNode != null) {
-				splitChildren(indexOfNew, wrappedNode.node, childNode);
+				newNode.initChildren();
+				newNode.children[0] = children[MAX_KEY];
+				newNode.children[1] = childNode;
+				children[MAX_KEY] = null;
+				noOfChildren = MAX_KEY;
+				newNode.noOfChildren = 2;
 			}
-			return wrappedNode;
+			return newNode;
 		}
 
 		/**
@@ -800,38 +2945,51 @@ public class BTreeSet<K extends Comparable<K>> extends AbstractSet<K> {
 
 		/**
 		 * @param key
+		 * @param value
 		 * @param indexOfNew
 		 * @return new node for right node which should be added to parent node
 		 */
-		private WrappedNode splitKeys(K key, int indexOfNew) {
-			WrappedNode wrappedNode = new WrappedNode();
-			wrappedNode.node = new Node();
+		private Node splitKeys(K key, Object value, int indexOfNew) {
+			Node newNode = new Node();
 			if (indexOfNew <= CENTER_KEY) {
-				wrappedNode.key = keys[CENTER_KEY];
+				splitKey = keys[CENTER_KEY];
+				splitValue = valueAt(CENTER_KEY);
 				// left - shift
 				ArrayUtil.shiftRight(keys, indexOfNew, CENTER_KEY);
-				keys[indexOfNew] = key;
+				if (values != null)
+					ArrayUtil.shiftRight(values, indexOfNew, CENTER_KEY);
+				setKeyAt(indexOfNew, key, value);
 				// right
-				moveRightHalfToNewNode(wrappedNode.node.keys);
+				moveRightHalfToNewNode(newNode);
 			} else if (indexOfNew == CENTER_CHILDREN) {
-				wrappedNode.key = key;
+				splitKey = key;
+				splitValue = value;
 				// right
-				moveRightHalfToNewNode(wrappedNode.node.keys);
+				moveRightHalfToNewNode(newNode);
 			} else {
-				wrappedNode.key = keys[CENTER_CHILDREN];
+				splitKey = keys[CENTER_CHILDREN];
+				splitValue = valueAt(CENTER_CHILDREN);
 				keys[CENTER_CHILDREN] = null;
 				// right
 				int size = (indexOfNew - CENTER_CHILDREN - 1);
-				ArrayUtil.moveTo(keys, wrappedNode.node.keys, CENTER_CHILDREN + 1, indexOfNew, 0);
-				wrappedNode.node.keys[size] = key;
-				ArrayUtil.moveTo(keys, wrappedNode.node.keys, indexOfNew, noOfKeys, ++size);
+				ArrayUtil.moveTo(keys, newNode.keys, CENTER_CHILDREN + 1, indexOfNew, 0);
+				newNode.keys[size] = key;
+				ArrayUtil.moveTo(keys, newNode.keys, indexOfNew, noOfKeys, size + 1);
+				if (values != null) {
+					values[CENTER_CHILDREN] = null;
+					ArrayUtil.moveTo(values, newNode.values, CENTER_CHILDREN + 1, indexOfNew, 0);
+					newNode.values[size] = value;
+					ArrayUtil.moveTo(values, newNode.values, indexOfNew, noOfKeys, size + 1);
+				}
 			}
-			noOfKeys = wrappedNode.node.noOfKeys = HALF_KEY;
-			return wrappedNode;
+			noOfKeys = newNode.noOfKeys = HALF_KEY;
+			return newNode;
 		}
 
-		void moveRightHalfToNewNode(K[] newKeys) {
-			ArrayUtil.moveTo(this.keys, newKeys, CENTER_KEY + 1, MAX_KEY, 0);
+		void moveRightHalfToNewNode(Node newNode) {
+			ArrayUtil.moveTo(this.keys, newNode.keys, CENTER_KEY + 1, MAX_KEY, 0);
+			if (values != null)
+				ArrayUtil.moveTo(this.values, newNode.values, CENTER_KEY + 1, MAX_KEY, 0);
 		}
 
 		/**
@@ -842,10 +3000,14 @@ public class BTreeSet<K extends Comparable<K>> extends AbstractSet<K> {
 		void shrink(int from) {
 			for (; from < noOfKeys; from++) {
 				keys[from - 1] = keys[from];
+				if (values != null)
+					values[from - 1] = values[from];
 				children[from] = children[from + 1];
 			}
 			--noOfKeys;
 			keys[noOfKeys] = null;
+			if (values != null)
+				values[noOfKeys] = null;
 
 			--noOfChildren;
 			children[noOfChildren] = null;
@@ -0,0 +1,380 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+
+/**
+ * {@link PageStore} reading pages of a file into a fixed number of buffers, so it decides which pages stay in memory
+ * instead of the OS. The file has the same format as {@link PageFile}. A page is pinned while it is used and a buffer
+ * of an unpinned page is reused for another page by CLOCK: the hand goes around the buffers, clears the referenced bit
+ * of a page and takes the first one whose bit is already clear. A changed page is written back when its buffer is
+ * reused or on {@link #flush()}.
+ * <p>
+ * The bit is set when a page is used again, not when it is read, so a page used once is reused before pages used by
+ * every search. A page told by {@link #evictFirst(int)} is reused before the hand moves, so a long scan of leaves
+ * reuses the same few buffers and does not evict inner pages. The header page is always kept in memory and is written
+ * on {@link #flush()}. It is not thread safe.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class BufferPool implements PageStore {
+	final int pageSize;
+	final FileChannel channel;
+	final ByteBuffer header;
+	final boolean created;
+	int pageCount;
+	int freePage;
+
+	final Frame[] frames;
+	final IntBTreeMap<Frame> frameOf = new IntBTreeMap<Frame>(64);
+	int hand;
+	/**
+	 * pages pinned by {@link #buffer(int)} until {@link #release()}.
+	 */
+	final Stack<Frame> pinned = new Stack<Frame>();
+	/**
+	 * frames told by {@link #evictFirst(int)}, they are reused before the hand moves.
+	 */
+	final ArrayDeque<Frame> cold = new ArrayDeque<Frame>();
+
+	long hits;
+	long misses;
+	long writeBacks;
+
+	static class Frame {
+		final ByteBuffer buffer;
+		int pageId = -1;
+		int pins;
+		boolean dirty;
+		boolean referenced;
+		boolean cold;
+
+		Frame(int pageSize) {
+			this.buffer = ByteBuffer.allocate(pageSize);
+		}
+	}
+
+	/**
+	 * opens the file or creates it if it does not exist or is empty.
+	 *
+	 * @param path
+	 * @param pageSize see {@link PageFile#PageFile(Path, int)}
+	 * @param noOfBuffers the most pages kept in memory besides the header
+	 * @throws IOException
+	 */
+	public BufferPool(Path path, int pageSize, int noOfBuffers) throws IOException {
+		if (pageSize < 512 || pageSize > 65536 || Integer.bitCount(pageSize) != 1)
+			throw new IllegalArgumentException("pageSize should be a power of 2 from 512 to 65536, " + pageSize);
+		if (noOfBuffers < 8)
+			throw new IllegalArgumentException("noOfBuffers should be 8 or more, " + noOfBuffers);
+
+		this.pageSize = pageSize;
+		this.frames = new Frame[noOfBuffers];
+		for (int i = 0; i < noOfBuffers; i++)
+			frames[i] = new Frame(pageSize);
+		this.header = ByteBuffer.allocate(pageSize);
+		this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE);
+		this.created = channel.size() == 0;
+
+		if (created) {
+			pageCount = 1;
+			header.putInt(0, PageFile.MAGIC);
+			header.putInt(4, pageSize);
+			writeHeader();
+		} else {
+			read(0, header);
+			if (header.getInt(0) != PageFile.MAGIC) {
+				channel.close();
+				throw new IOException("not a page file, " + path);
+			}
+			if (header.getInt(4) != pageSize) {
+				channel.close();
+				throw new IOException("page size is " + header.getInt(4) + " not " + pageSize);
+			}
+			pageCount = header.getInt(8);
+			freePage = header.getInt(12);
+		}
+	}
+
+	@Override
+	public boolean isCreated() {
+		return created;
+	}
+
+	@Override
+	public int pageSize() {
+		return pageSize;
+	}
+
+	@Override
+	public int pageCount() {
+		return pageCount;
+	}
+
+	/**
+	 * @return how many times a page was found in memory.
+	 */
+	public long hits() {
+		return hits;
+	}
+
+	/**
+	 * @return how many times a page was read from the file.
+	 */
+	public long misses() {
+		return misses;
+	}
+
+	/**
+	 * @return how many changed pages were written to reuse their buffers.
+	 */
+	public long writeBacks() {
+		return writeBacks;
+	}
+
+	/**
+	 * pins the page until {@link #release()}.
+	 */
+	@Override
+	public ByteBuffer buffer(int pageId) {
+		if (pageId == 0)
+			return header;
+
+		Frame frame = pinFrame(pageId);
+		pinned.add(frame);
+		return frame.buffer;
+	}
+
+	@Override
+	public int offset(int pageId) {
+		return 0;
+	}
+
+	@Override
+	public void markDirty(int pageId) {
+		if (pageId == 0)
+			return;
+
+		Frame frame = frameOf.get(pageId);
+		if (frame == null || frame.pins == 0)
+			throw new IllegalStateException("page is not pinned, " + pageId);
+		frame.dirty = true;
+	}
+
+	@Override
+	public void release() {
+		while (pinned.size() > 0)
+			pinned.pop().pins--;
+	}
+
+	@Override
+	public void evictFirst(int pageId) {
+		Frame frame = frameOf.get(pageId);
+		if (frame == null || frame.cold)
+			return;
+
+		frame.referenced = false;
+		if (cold.size() == frames.length)
+			cold.removeIf(f -> f.cold == false); // used again after it was told
+		if (cold.size() < frames.length) {
+			frame.cold = true;
+			cold.add(frame);
+		}
+	}
+
+	/**
+	 * @param pageId
+	 * @return buffer of the page which is kept in memory until {@link #unpin(int, boolean)}.
+	 */
+	public ByteBuffer pin(int pageId) {
+		if (pageId == 0)
+			return header;
+		return pinFrame(pageId).buffer;
+	}
+
+	/**
+	 * @param pageId which was pinned
+	 * @param dirty true if the page was changed
+	 */
+	public void unpin(int pageId, boolean dirty) {
+		if (pageId == 0)
+			return;
+
+		Frame frame = frameOf.get(pageId);
+		if (frame == null || frame.pins == 0)
+			throw new IllegalStateException("page is not pinned, " + pageId);
+		frame.dirty |= dirty;
+		frame.pins--;
+	}
+
+	private Frame pinFrame(int pageId) {
+		Frame frame = frameOf.get(pageId);
+		if (frame != null) {
+			++hits;
+			frame.referenced = true;
+			frame.cold = false;
+		} else {
+			++misses;
+			frame = victim();
+			if (frame.pageId != -1) {
+				if (frame.dirty)
+					writeBack(frame);
+				frameOf.remove(frame.pageId);
+			}
+			frame.pageId = pageId;
+			frame.dirty = false;
+			frame.referenced = false;
+			frame.cold = false;
+			try {
+				read(pageId, frame.buffer);
+			} catch (IOException e) {
+				frame.pageId = -1;
+				throw new UncheckedIOException(e);
+			}
+			frameOf.put(pageId, frame);
+		}
+		frame.pins++;
+		return frame;
+	}
+
+	/**
+	 * @return an empty frame or the first unpinned frame whose referenced bit is clear.
+	 */
+	private Frame victim() {
+		for (int i = cold.size(); i > 0; i--) {
+			Frame frame = cold.poll();
+			if (frame.cold == false)
+				continue;
+			if (frame.pins == 0)
+				return frame;
+			cold.add(frame); // still used by the scan
+		}
+		for (int i = 0; i < frames.length * 2; i++) {
+			Frame frame = frames[hand];
+			hand = hand + 1 == frames.length ? 0 : hand + 1;
+			if (frame.pageId == -1)
+				return frame;
+			if (frame.pins > 0)
+				continue;
+			if (frame.referenced)
+				frame.referenced = false;
+			else
+				return frame;
+		}
+		throw new IllegalStateException("all " + frames.length + " buffers are pinned");
+	}
+
+	/**
+	 * reads the page into the buffer, the part after the end of the file is filled with 0.
+	 */
+	private void read(int pageId, ByteBuffer buffer) throws IOException {
+		buffer.clear();
+		long position = (long) pageId * pageSize;
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0)
+				break;
+		}
+		while (buffer.hasRemaining())
+			buffer.put((byte) 0);
+		buffer.clear();
+	}
+
+	private void write(int pageId, ByteBuffer buffer) throws IOException {
+		buffer.clear();
+		long position = (long) pageId * pageSize;
+		while (buffer.hasRemaining())
+			channel.write(buffer, position + buffer.position());
+		buffer.clear();
+	}
+
+	private void writeBack(Frame frame) {
+		try {
+			write(frame.pageId, frame.buffer);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		frame.dirty = false;
+		++writeBacks;
+	}
+
+	@Override
+	public int allocate() {
+		if (freePage != 0) {
+			int pageId = freePage;
+			freePage = pin(pageId).getInt(0);
+			unpin(pageId, false);
+			return pageId;
+		}
+		return pageCount++;
+	}
+
+	@Override
+	public void free(int pageId) {
+		pin(pageId).putInt(0, freePage);
+		unpin(pageId, true);
+		freePage = pageId;
+	}
+
+	/**
+	 * forgets all pages but the header, the buffers should not be pinned.
+	 */
+	@Override
+	public void clear() {
+		for (Frame frame : frames) {
+			if (frame.pins > 0)
+				throw new IllegalStateException("page is pinned, " + frame.pageId);
+			frame.pageId = -1;
+			frame.dirty = false;
+			frame.cold = false;
+		}
+		frameOf.clear();
+		cold.clear();
+		pageCount = 1;
+		freePage = 0;
+	}
+
+	private void writeHeader() throws IOException {
+		header.putInt(8, pageCount);
+		header.putInt(12, freePage);
+		write(0, header);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		for (Frame frame : frames) {
+			if (frame.dirty) {
+				write(frame.pageId, frame.buffer);
+				frame.dirty = false;
+			}
+		}
+		writeHeader();
+		channel.force(true);
+	}
+
+	/**
+	 * flushes and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (channel.isOpen() == false)
+			return;
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * {@link BTreeMap} for byte[] keys compared as unsigned bytes, see {@link BytesBTreeSet}. Values are kept in a parallel
+ * Object[] of each node. Keys are copied when they are put and returned. Entries are created only when it iterates
+ * {@link #entrySet()}.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class BytesBTreeMap<V> extends AbstractMap<byte[], V> {
+	BytesBTreeSet set;
+
+	public BytesBTreeMap(int maxKey) {
+		this.set = new BytesBTreeSet(maxKey, true);
+	}
+
+	@Override
+	public Set<java.util.Map.Entry<byte[], V>> entrySet() {
+		return new EntrySet();
+	}
+
+	@Override
+	public Set<byte[]> keySet() {
+		return set;
+	}
+
+	@Override
+	public int size() {
+		return set.size();
+	}
+
+	@Override
+	public void clear() {
+		set.clear();
+	}
+
+	@Override
+	public V put(byte[] key, V value) {
+		return (V) set.put(key, value);
+	}
+
+	@Override
+	public V get(Object key) {
+		if (key instanceof byte[] == false)
+			return null;
+
+		return (V) set.getValue((byte[]) key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return set.contains(key);
+	}
+
+	@Override
+	public V remove(Object key) {
+		if (key instanceof byte[] == false)
+			return null;
+
+		return (V) set.removeKey((byte[]) key);
+	}
+
+	class KVEntity implements java.util.Map.Entry<byte[], V> {
+		final byte[] key;
+		V value;
+
+		KVEntity(byte[] key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public byte[] getKey() {
+			return key;
+		}
+
+		@Override
+		public V getValue() {
+			return value;
+		}
+
+		@Override
+		public V setValue(V value) {
+			V oldValue = (V) set.replaceValue(key, value);
+			this.value = value;
+			return oldValue;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof java.util.Map.Entry == false)
+				return false;
+
+			java.util.Map.Entry<?, ?> other = (java.util.Map.Entry<?, ?>) obj;
+			return other.getKey() instanceof byte[] && Arrays.equals(key, (byte[]) other.getKey())
+					&& (value == null ? other.getValue() == null : value.equals(other.getValue()));
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(key) ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return Arrays.toString(key) + "=" + value;
+		}
+	}
+
+	class EntrySet extends AbstractSet<java.util.Map.Entry<byte[], V>> {
+		@Override
+		public Iterator<java.util.Map.Entry<byte[], V>> iterator() {
+			return new EntryIterator((BytesBTreeSet.KeyIterator) set.iterator());
+		}
+
+		@Override
+		public int size() {
+			return set.size();
+		}
+	}
+
+	class EntryIterator implements Iterator<java.util.Map.Entry<byte[], V>> {
+		BytesBTreeSet.KeyIterator itr;
+
+		EntryIterator(BytesBTreeSet.KeyIterator itr) {
+			this.itr = itr;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return itr.hasNext();
+		}
+
+		@Override
+		public java.util.Map.Entry<byte[], V> next() {
+			byte[] key = itr.next();
+			return new KVEntity(key, (V) itr.lastValue);
+		}
+
+		@Override
+		public void remove() {
+			itr.remove();
+		}
+	}
+
+	public int height() {
+		return set.height();
+	}
+
+	/**
+	 * @return number of bytes of keys kept in all nodes.
+	 */
+	public long byteCount() {
+		return set.byteCount();
+	}
+}
@@ -0,0 +1,37 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.nio.ByteBuffer;
+
+/**
+ * writes and reads keys or values at the position of a buffer, see {@link Codecs} for common types. Pages of
+ * {@link MappedBTreeMap} reserve maxSize bytes for each key or value.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ * @param <T>
+ */
+public interface Codec<T> {
+	/**
+	 * @return the most bytes write takes.
+	 */
+	int maxSize();
+
+	/**
+	 * writes the value from the position and moves the position after it.
+	 *
+	 * @param buffer having maxSize bytes or more remaining
+	 * @param value not null
+	 * @throws IllegalArgumentException if it takes more than maxSize bytes.
+	 */
+	void write(ByteBuffer buffer, T value);
+
+	/**
+	 * reads a value written by write from the position and moves the position after it.
+	 */
+	T read(ByteBuffer buffer);
+}
@@ -0,0 +1,126 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link Codec}s of fixed width numbers and of length prefixed strings and byte arrays.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class Codecs {
+	public static final Codec<Integer> INT = new Codec<Integer>() {
+		@Override
+		public int maxSize() {
+			return 4;
+		}
+
+		@Override
+		public void write(ByteBuffer buffer, Integer value) {
+			buffer.putInt(value);
+		}
+
+		@Override
+		public Integer read(ByteBuffer buffer) {
+			return buffer.getInt();
+		}
+	};
+
+	public static final Codec<Long> LONG = new Codec<Long>() {
+		@Override
+		public int maxSize() {
+			return 8;
+		}
+
+		@Override
+		public void write(ByteBuffer buffer, Long value) {
+			buffer.putLong(value);
+		}
+
+		@Override
+		public Long read(ByteBuffer buffer) {
+			return buffer.getLong();
+		}
+	};
+
+	public static final Codec<Double> DOUBLE = new Codec<Double>() {
+		@Override
+		public int maxSize() {
+			return 8;
+		}
+
+		@Override
+		public void write(ByteBuffer buffer, Double value) {
+			buffer.putDouble(value);
+		}
+
+		@Override
+		public Double read(ByteBuffer buffer) {
+			return buffer.getDouble();
+		}
+	};
+
+	private Codecs() {
+	}
+
+	/**
+	 * @param maxBytes the most bytes of a UTF-8 string, less than 65536.
+	 * @return codec writing the length in 2 bytes and then the UTF-8 bytes.
+	 */
+	public static Codec<String> utf8(int maxBytes) {
+		Codec<byte[]> bytes = bytes(maxBytes);
+		return new Codec<String>() {
+			@Override
+			public int maxSize() {
+				return bytes.maxSize();
+			}
+
+			@Override
+			public void write(ByteBuffer buffer, String value) {
+				bytes.write(buffer, value.getBytes(StandardCharsets.UTF_8));
+			}
+
+			@Override
+			public String read(ByteBuffer buffer) {
+				return new String(bytes.read(buffer), StandardCharsets.UTF_8);
+			}
+		};
+	}
+
+	/**
+	 * @param maxBytes the most bytes of an array, less than 65536.
+	 * @return codec writing the length in 2 bytes and then the bytes.
+	 */
+	public static Codec<byte[]> bytes(int maxBytes) {
+		if (maxBytes < 0 || maxBytes > 0xFFFF)
+			throw new IllegalArgumentException("maxBytes should be from 0 to 65535, " + maxBytes);
+
+		return new Codec<byte[]>() {
+			@Override
+			public int maxSize() {
+				return 2 + maxBytes;
+			}
+
+			@Override
+			public void write(ByteBuffer buffer, byte[] value) {
+				if (value.length > maxBytes)
+					throw new IllegalArgumentException("longer than " + maxBytes + " bytes, " + value.length);
+				buffer.putShort((short) value.length);
+				buffer.put(value);
+			}
+
+			@Override
+			public byte[] read(ByteBuffer buffer) {
+				byte[] value = new byte[buffer.getShort() & 0xFFFF];
+				buffer.get(value);
+				return value;
+			}
+		};
+	}
+}
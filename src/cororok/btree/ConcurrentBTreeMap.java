@@ -0,0 +1,803 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * concurrent B-Tree using optimistic lock coupling. Every node has a {@link StampedLock} whose stamp works as the
+ * version of the node. Readers never lock, they read a node and validate its stamp before they go down to a child and
+ * restart from the root if the node has been changed. Writers lock only the leaf they change, and its parent if the
+ * leaf has to be split or removed.
+ * <p>
+ * Unlike {@link BTreeSet} all entries are kept in leaves and inner nodes keep only separators so that a writer does
+ * not have to change an inner node to delete a key. Leaves are linked to their right sibling for iteration. It splits
+ * full nodes on the way down so that a split never goes up more than one level. A leaf which becomes empty on delete
+ * is merged with its sibling under the same parent if it can lock them at once. Inner nodes are never merged, so
+ * after many deletes every parent still has at least one leaf which may be empty, and the tree keeps its height until
+ * {@link #clear()} starts a new one. Iterators are weakly consistent: they return keys in order, never throw
+ * {@link java.util.ConcurrentModificationException} and may or may not see changes made after they were created.
+ * <p>
+ * It implements {@link java.util.concurrent.ConcurrentMap}. putIfAbsent, remove and replace are atomic because they
+ * hold the write lock of the leaf while they check and change it. compute, computeIfPresent and merge call the
+ * function without any lock and set the result only if the key still has the value given to the function, otherwise
+ * they call it again with the new value. So a function may read this map, may be called more than once and should not
+ * have side effects. computeIfAbsent may call the function in more than one thread for the same key but only the first
+ * result is kept, like {@link java.util.concurrent.ConcurrentSkipListMap}.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class ConcurrentBTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V> implements
+		java.util.concurrent.ConcurrentMap<K, V> {
+	/**
+	 * failed attempts before a retry loop starts to yield.
+	 */
+	static final int SPINS = 16;
+
+	final int MAX_KEY;
+	final int HALF_KEY;
+
+	volatile Node root;
+
+	public ConcurrentBTreeMap(int maxSizeOfKeys) {
+		if (maxSizeOfKeys < 3)
+			throw new IllegalArgumentException("must be larger than 2");
+
+		this.MAX_KEY = maxSizeOfKeys;
+		this.HALF_KEY = maxSizeOfKeys / 2;
+		this.root = new Node(true, new LongAdder());
+	}
+
+	@Override
+	public Set<java.util.Map.Entry<K, V>> entrySet() {
+		return new EntrySet();
+	}
+
+	@Override
+	public int size() {
+		return (int) root.treeSize.sum();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return root.treeSize.sum() == 0;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return find((K) key) != null;
+	}
+
+	@Override
+	public V get(Object key) {
+		Object value = find((K) key);
+		return value == null ? null : (V) value;
+	}
+
+	/**
+	 * @param key
+	 * @return value of the key or null if it can't find the key.
+	 */
+	private Object find(K key) {
+		if (key == null)
+			return null;
+
+		int attempts = 0;
+		restart: while (true) {
+			backoff(attempts++);
+			Node node = root;
+			long stamp = node.lock.tryOptimisticRead();
+			if (stamp == 0 || node != root)
+				continue;
+
+			try {
+				while (node.isLeaf == false) {
+					// the child is valid only if its parent did not change until it got the stamp of the child
+					Node child = node.children[node.childIndex(key)];
+					long childStamp = child.lock.tryOptimisticRead();
+					if (childStamp == 0 || node.lock.validate(stamp) == false)
+						continue restart;
+
+					node = child;
+					stamp = childStamp;
+				}
+
+				int index = node.indexOf(key);
+				Object value = index < 0 ? null : node.values[index];
+				if (node.lock.validate(stamp) == false)
+					continue restart;
+
+				return value;
+			} catch (RuntimeException e) {
+				// a torn read of a node that was being changed, or a real error if the node is still valid.
+				if (node.lock.validate(stamp))
+					throw e;
+			}
+		}
+	}
+
+	/**
+	 * @param key must not be null
+	 * @param value must not be null
+	 * @return old value or null if it didn't have the key.
+	 */
+	@Override
+	public V put(K key, V value) {
+		if (key == null || value == null)
+			throw new NullPointerException();
+
+		Node leaf = lockLeaf(key);
+		try {
+			int index = leaf.indexOf(key);
+			if (index >= 0) {
+				Object oldValue = leaf.values[index];
+				leaf.values[index] = value;
+				return (V) oldValue;
+			}
+
+			leaf.insertAt(-index - 1, key, value);
+			return null;
+		} finally {
+			leaf.lock.tryUnlockWrite();
+		}
+	}
+
+	@Override
+	public V putIfAbsent(K key, V value) {
+		if (key == null || value == null)
+			throw new NullPointerException();
+
+		Node leaf = lockLeaf(key);
+		try {
+			int index = leaf.indexOf(key);
+			if (index >= 0)
+				return (V) leaf.values[index];
+
+			leaf.insertAt(-index - 1, key, value);
+			return null;
+		} finally {
+			leaf.lock.tryUnlockWrite();
+		}
+	}
+
+	@Override
+	public V remove(Object keyObj) {
+		if (keyObj == null)
+			return null;
+
+		K key = (K) keyObj;
+		Node leaf = lockLeaf(key);
+		try {
+			int index = leaf.indexOf(key);
+			if (index < 0)
+				return null;
+
+			Object oldValue = leaf.values[index];
+			leaf.removeAt(index);
+			return (V) oldValue;
+		} finally {
+			unlockAfterRemove(leaf, key);
+		}
+	}
+
+	@Override
+	public boolean remove(Object keyObj, Object value) {
+		if (keyObj == null || value == null)
+			return false;
+
+		K key = (K) keyObj;
+		Node leaf = lockLeaf(key);
+		try {
+			int index = leaf.indexOf(key);
+			if (index < 0 || value.equals(leaf.values[index]) == false)
+				return false;
+
+			leaf.removeAt(index);
+			return true;
+		} finally {
+			unlockAfterRemove(leaf, key);
+		}
+	}
+
+	@Override
+	public boolean replace(K key, V oldValue, V newValue) {
+		if (key == null || oldValue == null || newValue == null)
+			throw new NullPointerException();
+
+		Node leaf = lockLeaf(key);
+		try {
+			int index = leaf.indexOf(key);
+			if (index < 0 || oldValue.equals(leaf.values[index]) == false)
+				return false;
+
+			leaf.values[index] = newValue;
+			return true;
+		} finally {
+			leaf.lock.tryUnlockWrite();
+		}
+	}
+
+	@Override
+	public V replace(K key, V value) {
+		if (key == null || value == null)
+			throw new NullPointerException();
+
+		Node leaf = lockLeaf(key);
+		try {
+			int index = leaf.indexOf(key);
+			if (index < 0)
+				return null;
+
+			Object oldValue = leaf.values[index];
+			leaf.values[index] = value;
+			return (V) oldValue;
+		} finally {
+			leaf.lock.tryUnlockWrite();
+		}
+	}
+
+	@Override
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+		if (key == null || mappingFunction == null)
+			throw new NullPointerException();
+
+		Object value = find(key);
+		if (value != null)
+			return (V) value;
+
+		V newValue = mappingFunction.apply(key);
+		if (newValue == null)
+			return null;
+
+		V oldValue = putIfAbsent(key, newValue);
+		return oldValue == null ? newValue : oldValue;
+	}
+
+	@Override
+	public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		if (key == null || remappingFunction == null)
+			throw new NullPointerException();
+
+		for (int attempts = 0;; backoff(++attempts)) {
+			Object oldValue = find(key);
+			if (oldValue == null)
+				return null;
+
+			V newValue = remappingFunction.apply(key, (V) oldValue);
+			if (replaceOrRemove(key, oldValue, newValue))
+				return newValue;
+		}
+	}
+
+	@Override
+	public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		if (key == null || remappingFunction == null)
+			throw new NullPointerException();
+
+		for (int attempts = 0;; backoff(++attempts)) {
+			Object oldValue = find(key);
+			V newValue = remappingFunction.apply(key, (V) oldValue);
+			if (oldValue != null) {
+				if (replaceOrRemove(key, oldValue, newValue))
+					return newValue;
+			} else if (newValue == null || putIfAbsent(key, newValue) == null) {
+				return newValue;
+			}
+		}
+	}
+
+	@Override
+	public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+		if (key == null || value == null || remappingFunction == null)
+			throw new NullPointerException();
+
+		for (int attempts = 0;; backoff(++attempts)) {
+			Object oldValue = find(key);
+			if (oldValue == null) {
+				if (putIfAbsent(key, value) == null)
+					return value;
+				continue;
+			}
+
+			V newValue = remappingFunction.apply((V) oldValue, value);
+			if (replaceOrRemove(key, oldValue, newValue))
+				return newValue;
+		}
+	}
+
+	/**
+	 * sets the new value or removes the key if it is null, only if the key still has the old value.
+	 *
+	 * @param oldValue the same object as the current value, not just equal
+	 * @return false if the key has been changed or removed.
+	 */
+	private boolean replaceOrRemove(K key, Object oldValue, V newValue) {
+		Node leaf = lockLeaf(key);
+		try {
+			int index = leaf.indexOf(key);
+			if (index < 0 || leaf.values[index] != oldValue)
+				return false;
+
+			if (newValue == null)
+				leaf.removeAt(index);
+			else
+				leaf.values[index] = newValue;
+			return true;
+		} finally {
+			unlockAfterRemove(leaf, key);
+		}
+	}
+
+	/**
+	 * unlocks a leaf which a key may have been removed from and unlinks the leaf if it is empty.
+	 */
+	private void unlockAfterRemove(Node leaf, K key) {
+		boolean isEmpty = leaf.noOfKeys == 0;
+		leaf.lock.tryUnlockWrite();
+		if (isEmpty)
+			unlinkEmpty(key);
+	}
+
+	/**
+	 * merges the empty leaf of the key with its sibling under the same parent and removes the right one of them from
+	 * the parent and the chain of leaves, so that finds and iterators don't go through empty leaves. It only tries
+	 * once without waiting, if a node is locked or changed or the leaf is the only child it keeps the leaf.
+	 * <p>
+	 * The removed leaf keeps its keys and its right sibling for iterators which are on it. A writer which was going to
+	 * lock it fails to convert its stamp and restarts from the root.
+	 *
+	 * @param key a key which was in the leaf
+	 */
+	private void unlinkEmpty(K key) {
+		Node parent = null;
+		long parentStamp = 0;
+		int index = 0;
+		Node node = root;
+		long stamp = node.lock.tryOptimisticRead();
+		if (stamp == 0)
+			return;
+
+		try {
+			while (node.isLeaf == false) {
+				index = node.childIndex(key);
+				Node child = node.children[index];
+				long childStamp = child.lock.tryOptimisticRead();
+				if (childStamp == 0 || node.lock.validate(stamp) == false)
+					return;
+
+				parent = node;
+				parentStamp = stamp;
+				node = child;
+				stamp = childStamp;
+			}
+		} catch (RuntimeException e) {
+			if (node.lock.validate(stamp))
+				throw e;
+			return;
+		}
+
+		if (parent == null)
+			return;
+
+		long parentWriteStamp = parent.lock.tryConvertToWriteLock(parentStamp);
+		if (parentWriteStamp == 0)
+			return;
+
+		if (index == 0 && parent.noOfKeys == 0) {
+			parent.lock.unlockWrite(parentWriteStamp);
+			return;
+		}
+
+		// the right one is removed, it is the empty leaf unless that is the first child
+		int rightIndex = index == 0 ? 1 : index;
+		Node left = parent.children[rightIndex - 1];
+		Node right = parent.children[rightIndex];
+		long writeStamp = node.lock.tryConvertToWriteLock(stamp);
+		Node sibling = node == left ? right : left;
+		long siblingWriteStamp = writeStamp == 0 ? 0 : sibling.lock.tryWriteLock();
+		try {
+			if (siblingWriteStamp == 0 || node.noOfKeys > 0 || left.next != right
+					|| left.noOfKeys + right.noOfKeys > MAX_KEY)
+				return;
+
+			// copies so that the removed leaf still has its keys
+			System.arraycopy(right.keys, 0, left.keys, left.noOfKeys, right.noOfKeys);
+			System.arraycopy(right.values, 0, left.values, left.noOfKeys, right.noOfKeys);
+			left.noOfKeys += right.noOfKeys;
+			left.next = right.next;
+
+			ArrayUtil.shiftLeft(parent.keys, rightIndex, parent.noOfKeys);
+			ArrayUtil.shiftLeft(parent.children, rightIndex + 1, parent.noOfKeys + 1);
+			--parent.noOfKeys;
+			parent.keys[parent.noOfKeys] = null;
+			parent.children[parent.noOfKeys + 1] = null;
+		} finally {
+			if (siblingWriteStamp != 0)
+				sibling.lock.unlockWrite(siblingWriteStamp);
+			if (writeStamp != 0)
+				node.lock.unlockWrite(writeStamp);
+			parent.lock.unlockWrite(parentWriteStamp);
+		}
+	}
+
+	/**
+	 * spins for the first attempts and then yields so that the writer holding the lock can finish.
+	 *
+	 * @param attempts failed attempts so far
+	 */
+	static void backoff(int attempts) {
+		if (attempts > SPINS)
+			Thread.yield();
+	}
+
+	/**
+	 * starts a new tree with its own size. Writers which still hold a leaf of the old tree finish on it and change the
+	 * size of the old one, as if they had finished before the clear.
+	 */
+	@Override
+	public void clear() {
+		root = new Node(true, new LongAdder());
+	}
+
+	/**
+	 * goes down to the leaf of the key and returns it write locked. It splits a full node on the way and restarts.
+	 *
+	 * @param key
+	 * @return write locked leaf which is not full.
+	 */
+	private Node lockLeaf(K key) {
+		int attempts = 0;
+		restart: while (true) {
+			backoff(attempts++);
+			Node parent = null;
+			long parentStamp = 0;
+			Node node = root;
+			long stamp = node.lock.tryOptimisticRead();
+			if (stamp == 0 || node != root)
+				continue;
+
+			try {
+				while (true) {
+					if (node.isFull()) {
+						splitAndUnlock(parent, parentStamp, node, stamp);
+						continue restart;
+					}
+
+					if (node.isLeaf) {
+						long writeStamp = node.lock.tryConvertToWriteLock(stamp);
+						if (writeStamp == 0)
+							continue restart;
+
+						return node;
+					}
+
+					Node child = node.children[node.childIndex(key)];
+					long childStamp = child.lock.tryOptimisticRead();
+					if (childStamp == 0 || node.lock.validate(stamp) == false)
+						continue restart;
+
+					parent = node;
+					parentStamp = stamp;
+					node = child;
+					stamp = childStamp;
+				}
+			} catch (RuntimeException e) {
+				if (node.lock.validate(stamp))
+					throw e;
+			}
+		}
+	}
+
+	/**
+	 * splits a full node if neither the node nor its parent has been changed since their stamps. It locks the parent
+	 * and the node only while it splits. If it can't lock them it does nothing and the caller restarts anyway.
+	 *
+	 * @param parent null if node is root
+	 * @param parentStamp
+	 * @param node
+	 * @param stamp
+	 */
+	private void splitAndUnlock(Node parent, long parentStamp, Node node, long stamp) {
+		long parentWriteStamp = 0;
+		if (parent != null) {
+			parentWriteStamp = parent.lock.tryConvertToWriteLock(parentStamp);
+			if (parentWriteStamp == 0)
+				return;
+		}
+
+		long writeStamp = node.lock.tryConvertToWriteLock(stamp);
+		if (writeStamp == 0) {
+			if (parent != null)
+				parent.lock.unlockWrite(parentWriteStamp);
+			return;
+		}
+
+		try {
+			if (parent == null && node != root)
+				return; // somebody has created a new root
+
+			Node right = node.split();
+			K separator = right.separator;
+			right.separator = null;
+			if (parent == null) {
+				Node newRoot = new Node(false, node.treeSize);
+				newRoot.keys[0] = separator;
+				newRoot.children[0] = node;
+				newRoot.children[1] = right;
+				newRoot.noOfKeys = 1;
+				root = newRoot;
+			} else {
+				parent.insertChild(separator, right);
+			}
+		} finally {
+			node.lock.unlockWrite(writeStamp);
+			if (parent != null)
+				parent.lock.unlockWrite(parentWriteStamp);
+		}
+	}
+
+	/**
+	 * @return the leftmost leaf
+	 */
+	private Node firstLeaf() {
+		int attempts = 0;
+		restart: while (true) {
+			backoff(attempts++);
+			Node node = root;
+			long stamp = node.lock.tryOptimisticRead();
+			if (stamp == 0 || node != root)
+				continue;
+
+			try {
+				while (node.isLeaf == false) {
+					Node child = node.children[0];
+					long childStamp = child.lock.tryOptimisticRead();
+					if (childStamp == 0 || node.lock.validate(stamp) == false)
+						continue restart;
+
+					node = child;
+					stamp = childStamp;
+				}
+				return node;
+			} catch (RuntimeException e) {
+				if (node.lock.validate(stamp))
+					throw e;
+			}
+		}
+	}
+
+	/**
+	 * Leaf keeps keys and values, inner node keeps separators and children. Children at index i has keys equal to or
+	 * greater than keys[i - 1] and less than keys[i].
+	 */
+	class Node {
+		final StampedLock lock = new StampedLock();
+		final boolean isLeaf;
+		int noOfKeys = 0;
+
+		final K[] keys;
+		Object[] values;
+		Node[] children;
+		/**
+		 * right sibling of a leaf
+		 */
+		Node next;
+		/**
+		 * the first key of a new right node, only while it splits.
+		 */
+		K separator;
+		/**
+		 * number of keys of the tree, shared by all nodes of the tree so that a leaf changes the size of its own tree.
+		 */
+		final LongAdder treeSize;
+
+		Node(boolean isLeaf, LongAdder treeSize) {
+			this.isLeaf = isLeaf;
+			this.treeSize = treeSize;
+			this.keys = BTreeSet.newKeys(MAX_KEY);
+			if (isLeaf)
+				this.values = new Object[MAX_KEY];
+			else
+				this.children = (Node[]) java.lang.reflect.Array.newInstance(this.getClass(), MAX_KEY + 1);
+		}
+
+		boolean isFull() {
+			return noOfKeys == MAX_KEY;
+		}
+
+		/**
+		 * see {@link java.util.Arrays#binarySearch(Object[], Object)}.
+		 *
+		 * @param key
+		 * @return index of the key or (-(insertion point) - 1).
+		 */
+		int indexOf(K key) {
+			int left = 0;
+			int right = noOfKeys - 1;
+			while (left <= right) {
+				int middle = (left + right) >>> 1;
+				int diff = key.compareTo(keys[middle]);
+				if (diff > 0)
+					left = middle + 1;
+				else if (diff < 0)
+					right = middle - 1;
+				else
+					return middle;
+			}
+			return -(left + 1);
+		}
+
+		/**
+		 * @param key
+		 * @return index of the child which can have the key.
+		 */
+		int childIndex(K key) {
+			int index = indexOf(key);
+			return index >= 0 ? index + 1 : -index - 1;
+		}
+
+		void insertAt(int index, K key, Object value) {
+			ArrayUtil.shiftRight(keys, index, noOfKeys);
+			ArrayUtil.shiftRight(values, index, noOfKeys);
+			keys[index] = key;
+			values[index] = value;
+			++noOfKeys;
+			treeSize.increment();
+		}
+
+		void removeAt(int index) {
+			ArrayUtil.shiftLeft(keys, index + 1, noOfKeys);
+			ArrayUtil.shiftLeft(values, index + 1, noOfKeys);
+			--noOfKeys;
+			keys[noOfKeys] = null;
+			values[noOfKeys] = null;
+			treeSize.decrement();
+		}
+
+		/**
+		 * adds a separator and its right child which came from splitting children[index of separator].
+		 *
+		 * @param separator
+		 * @param right
+		 */
+		void insertChild(K separator, Node right) {
+			int index = childIndex(separator);
+			ArrayUtil.shiftRight(keys, index, noOfKeys);
+			ArrayUtil.shiftRight(children, index + 1, noOfKeys + 1);
+			keys[index] = separator;
+			children[index + 1] = right;
+			++noOfKeys;
+		}
+
+		/**
+		 * moves the right half to a new node. A leaf copies the first key of the right node to its parent and an inner
+		 * node moves its center key to the parent.
+		 *
+		 * @return new right node whose separator is set.
+		 */
+		Node split() {
+			Node right = new Node(isLeaf, treeSize);
+			if (isLeaf) {
+				int moved = noOfKeys - HALF_KEY;
+				ArrayUtil.moveTo(keys, right.keys, HALF_KEY, noOfKeys, 0);
+				ArrayUtil.moveTo(values, right.values, HALF_KEY, noOfKeys, 0);
+				right.noOfKeys = moved;
+				noOfKeys = HALF_KEY;
+				right.separator = right.keys[0];
+				right.next = next;
+				next = right;
+			} else {
+				right.separator = keys[HALF_KEY];
+				keys[HALF_KEY] = null;
+				ArrayUtil.moveTo(keys, right.keys, HALF_KEY + 1, noOfKeys, 0);
+				ArrayUtil.moveTo(children, right.children, HALF_KEY + 1, noOfKeys + 1, 0);
+				right.noOfKeys = noOfKeys - HALF_KEY - 1;
+				noOfKeys = HALF_KEY;
+			}
+			return right;
+		}
+	}
+
+	class EntrySet extends AbstractSet<java.util.Map.Entry<K, V>> {
+		@Override
+		public Iterator<java.util.Map.Entry<K, V>> iterator() {
+			return new EntryIterator();
+		}
+
+		@Override
+		public int size() {
+			return ConcurrentBTreeMap.this.size();
+		}
+	}
+
+	/**
+	 * copies a leaf at a time while the leaf is valid and moves to its right sibling.
+	 */
+	class EntryIterator implements Iterator<java.util.Map.Entry<K, V>> {
+		Node leaf;
+		final K[] keys = BTreeSet.newKeys(MAX_KEY);
+		final Object[] values = new Object[MAX_KEY];
+		int noOfKeys = 0;
+		int index = 0;
+		K lastKey;
+
+		EntryIterator() {
+			leaf = firstLeaf();
+			readLeaf();
+		}
+
+		/**
+		 * copies the current leaf and moves to the next non empty one.
+		 */
+		private void readLeaf() {
+			int attempts = 0;
+			while (leaf != null) {
+				backoff(attempts++);
+				long stamp = leaf.lock.tryOptimisticRead();
+				if (stamp == 0)
+					continue;
+
+				Node next;
+				try {
+					noOfKeys = leaf.noOfKeys;
+					System.arraycopy(leaf.keys, 0, keys, 0, noOfKeys);
+					System.arraycopy(leaf.values, 0, values, 0, noOfKeys);
+					next = leaf.next;
+				} catch (RuntimeException e) {
+					continue; // changed while copying
+				}
+
+				if (leaf.lock.validate(stamp) == false)
+					continue;
+
+				leaf = next;
+				index = 0;
+				attempts = 0;
+				if (noOfKeys > 0)
+					return;
+			}
+			noOfKeys = 0;
+			index = 0;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return index < noOfKeys;
+		}
+
+		@Override
+		public java.util.Map.Entry<K, V> next() {
+			if (index >= noOfKeys)
+				throw new NoSuchElementException();
+
+			K key = keys[index];
+			V value = (V) values[index];
+			if (++index == noOfKeys)
+				readLeaf();
+
+			lastKey = key;
+			return new AbstractMap.SimpleImmutableEntry<K, V>(key, value);
+		}
+
+		@Override
+		public void remove() {
+			if (lastKey == null)
+				throw new IllegalStateException();
+
+			ConcurrentBTreeMap.this.remove(lastKey);
+			lastKey = null;
+		}
+	}
+}
@@ -10,10 +10,14 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * simple class using {@link java.util.concurrent.locks.ReentrantReadWriteLock} to support concurrent multiple reads and
- * single write.
+ * single write. In optimistic read mode it uses a {@link java.util.concurrent.locks.StampedLock} instead, and get,
+ * containsKey and size read the map without the lock and validate the stamp after that. They take the read lock only if
+ * a writer has changed the map meanwhile. See {@link ConcurrentBTreeMap} for a B-Tree whose readers do not lock and
+ * whose writers lock only the nodes they change.
  * 
  * @author songduk.park cororok@gmail.com
  * 
@@ -21,16 +25,45 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 public class ConcurrentMap<K, V> implements Map<K, V> {
 
 	Map<K, V> map;
-	ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-	Lock read = lock.readLock();
-	Lock write = lock.writeLock();
+	ReentrantReadWriteLock lock;
+	/**
+	 * not null in optimistic read mode.
+	 */
+	StampedLock stampedLock;
+	Lock read;
+	Lock write;
 
 	ConcurrentMap(Map<K, V> map) {
+		this(map, false);
+	}
+
+	/**
+	 * @param map
+	 * @param optimisticRead true to read without the lock. Reads of the map must not go wrong forever even if a writer
+	 *            changes the map meanwhile, {@link BTreeMap} is safe.
+	 */
+	ConcurrentMap(Map<K, V> map, boolean optimisticRead) {
 		this.map = map;
+		if (optimisticRead) {
+			stampedLock = new StampedLock();
+			read = stampedLock.asReadLock();
+			write = stampedLock.asWriteLock();
+		} else {
+			lock = new ReentrantReadWriteLock();
+			read = lock.readLock();
+			write = lock.writeLock();
+		}
 	}
 
 	@Override
 	public int size() {
+		if (stampedLock != null) {
+			long stamp = stampedLock.tryOptimisticRead();
+			int size = map.size();
+			if (stampedLock.validate(stamp))
+				return size;
+		}
+
 		read.lock();
 		try {
 			return map.size();
@@ -51,6 +84,12 @@ public class ConcurrentMap<K, V> implements Map<K, V> {
 
 	@Override
 	public boolean containsKey(Object key) {
+		if (stampedLock != null) {
+			Object value = findOptimistic(key);
+			if (value != BTreeSet.RETRY)
+				return value != BTreeSet.NOT_FOUND;
+		}
+
 		read.lock();
 		try {
 			return map.containsKey(key);
@@ -71,6 +110,12 @@ public class ConcurrentMap<K, V> implements Map<K, V> {
 
 	@Override
 	public V get(Object key) {
+		if (stampedLock != null) {
+			Object value = findOptimistic(key);
+			if (value != BTreeSet.RETRY)
+				return value == BTreeSet.NOT_FOUND ? null : (V) value;
+		}
+
 		read.lock();
 		try {
 			return map.get(key);
@@ -79,6 +124,32 @@ public class ConcurrentMap<K, V> implements Map<K, V> {
 		}
 	}
 
+	/**
+	 * reads the map without the lock.
+	 * 
+	 * @param key
+	 * @return value, {@link BTreeSet#NOT_FOUND} or {@link BTreeSet#RETRY} if a writer has changed the map.
+	 */
+	private Object findOptimistic(Object key) {
+		long stamp = stampedLock.tryOptimisticRead();
+		if (stamp == 0)
+			return BTreeSet.RETRY;
+
+		Object value;
+		try {
+			if (map instanceof BTreeMap)
+				value = ((BTreeMap<?, ?>) map).findOptimistic(key);
+			else
+				value = map.containsKey(key) ? map.get(key) : BTreeSet.NOT_FOUND;
+		} catch (RuntimeException e) {
+			// a torn read, or a real error if nothing has changed.
+			if (stampedLock.validate(stamp))
+				throw e;
+			return BTreeSet.RETRY;
+		}
+		return stampedLock.validate(stamp) ? value : BTreeSet.RETRY;
+	}
+
 	@Override
 	public V put(K key, V value) {
 		write.lock();
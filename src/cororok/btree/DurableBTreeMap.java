@@ -0,0 +1,640 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * {@link BTreeMap} kept in memory whose changes are appended to a write-ahead log in a directory. A change is applied
+ * to the map and appended to a buffer while the map is locked, and then the thread waits until the log is synced.
+ * The first waiting thread becomes the leader, it writes all records appended until then with one
+ * {@link FileChannel#force(boolean)} without holding the lock and the others wait on a condition which is signalled
+ * when the synced position moves, so the threads arriving while it syncs are committed together by the next leader.
+ * Other threads may see a change before it is synced.
+ * <p>
+ * {@link #checkpoint()} starts a new log and writes a snapshot of the map to a checkpoint file while the map is
+ * changed in the format of {@link BTreeMap#writeTo(java.nio.channels.WritableByteChannel, Codec, Codec)}, then
+ * deletes the old log and checkpoint. It runs on a background thread whenever the log gets longer than
+ * {@link #setCheckpointBytes(long)}, a failure of it is thrown by the next change instead of the committed one. Opening the directory loads the last checkpoint bottom up and replays the logs
+ * after it, a broken record at the end of a log is regarded as not committed. Methods are thread safe.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class DurableBTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V> implements Closeable {
+	static final String LOG_PREFIX = "wal-";
+	static final String LOG_SUFFIX = ".log";
+	static final String CHECKPOINT_PREFIX = "checkpoint-";
+	static final String CHECKPOINT_SUFFIX = ".dat";
+	static final String TEMP_SUFFIX = ".tmp";
+	static final int IO_BUFFER_SIZE = 1 << 20;
+	public static final long DEFAULT_CHECKPOINT_BYTES = 64L << 20;
+	/**
+	 * loaded nodes have room for later puts.
+	 */
+	static final double FILL_FACTOR = 0.75;
+
+	// types of records
+	static final byte PUT = 1;
+	static final byte REMOVE = 2;
+	static final byte CLEAR = 3;
+	/**
+	 * length of the type, key and value and CRC32 of them.
+	 */
+	static final int RECORD_HEADER = 8;
+
+	final Path dir;
+	final int maxKey;
+	final Codec<K> keyCodec;
+	final Codec<V> valueCodec;
+	final int maxRecord;
+
+	// guarded by this
+	BTreeMap<K, V> map;
+	ByteBuffer pending;
+	final CRC32 crc = new CRC32();
+	long generation;
+	FileChannel log;
+	/**
+	 * bytes appended to all logs.
+	 */
+	long appended;
+	/**
+	 * appended when the current log started.
+	 */
+	long logStart;
+	boolean closed;
+	long checkpointBytes = DEFAULT_CHECKPOINT_BYTES;
+
+	/**
+	 * one thread syncs the log and rolls it at a time.
+	 */
+	final ReentrantLock syncLock = new ReentrantLock();
+	/**
+	 * signalled when {@link #synced} moves or a sync fails.
+	 */
+	final Condition syncDone = syncLock.newCondition();
+	// guarded by syncLock
+	ByteBuffer spare;
+	/**
+	 * true while the leader writes and forces the log without holding syncLock.
+	 */
+	boolean syncing;
+	volatile long synced;
+	volatile long syncCount;
+	/**
+	 * set when a log could not be written, later changes fail with it.
+	 */
+	volatile IOException failure;
+
+	final ReentrantLock checkpointLock = new ReentrantLock();
+	final ExecutorService checkpointer;
+	// guarded by this
+	boolean checkpointScheduled;
+	/**
+	 * set when a background checkpoint failed, the next change throws it.
+	 */
+	volatile IOException checkpointFailure;
+
+	/**
+	 * opens the map in the directory or creates it.
+	 *
+	 * @param dir which is created if it does not exist. It should not be used by another map.
+	 * @param maxKey see {@link BTreeMap#BTreeMap(int)}
+	 * @param keyCodec
+	 * @param valueCodec
+	 * @return map
+	 * @throws IOException
+	 */
+	public static <K extends Comparable<K>, V> DurableBTreeMap<K, V> open(Path dir, int maxKey, Codec<K> keyCodec,
+			Codec<V> valueCodec) throws IOException {
+		return new DurableBTreeMap<K, V>(dir, maxKey, keyCodec, valueCodec);
+	}
+
+	DurableBTreeMap(Path dir, int maxKey, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+		this.dir = dir;
+		this.maxKey = maxKey;
+		this.keyCodec = keyCodec;
+		this.valueCodec = valueCodec;
+		this.maxRecord = RECORD_HEADER + 1 + keyCodec.maxSize() + valueCodec.maxSize();
+		this.pending = ByteBuffer.allocate(Math.max(maxRecord, 1 << 16));
+		this.spare = ByteBuffer.allocate(pending.capacity());
+		Files.createDirectories(dir);
+		recover();
+		this.checkpointer = Executors.newSingleThreadExecutor(task -> {
+			Thread thread = new Thread(task, "checkpoint " + dir);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * loads the last checkpoint, replays the logs after it and opens the last log to append.
+	 */
+	private void recover() throws IOException {
+		TreeMap<Long, Path> checkpoints = new TreeMap<Long, Path>();
+		TreeMap<Long, Path> logs = new TreeMap<Long, Path>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				if (name.endsWith(TEMP_SUFFIX))
+					Files.delete(file); // checkpoint which was not completed
+				else if (name.startsWith(CHECKPOINT_PREFIX) && name.endsWith(CHECKPOINT_SUFFIX))
+					checkpoints.put(generationOf(name, CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX), file);
+				else if (name.startsWith(LOG_PREFIX) && name.endsWith(LOG_SUFFIX))
+					logs.put(generationOf(name, LOG_PREFIX, LOG_SUFFIX), file);
+			}
+		}
+
+		if (checkpoints.isEmpty()) {
+			map = new BTreeMap<K, V>(maxKey);
+		} else {
+			generation = checkpoints.lastKey();
+			map = readCheckpoint(checkpoints.lastEntry().getValue());
+		}
+
+		long lastLength = 0;
+		for (Map.Entry<Long, Path> entry : logs.tailMap(generation, true).entrySet()) {
+			generation = entry.getKey();
+			lastLength = replay(entry.getValue());
+		}
+		log = FileChannel.open(logPath(generation), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		log.truncate(lastLength); // drops a broken record
+		log.position(lastLength);
+		log.force(true);
+		syncDirectory();
+		deleteBefore(generation);
+	}
+
+	private static long generationOf(String name, String prefix, String suffix) throws IOException {
+		try {
+			return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+		} catch (NumberFormatException e) {
+			throw new IOException("unknown file, " + name);
+		}
+	}
+
+	Path logPath(long generation) {
+		return dir.resolve(LOG_PREFIX + generation + LOG_SUFFIX);
+	}
+
+	Path checkpointPath(long generation) {
+		return dir.resolve(CHECKPOINT_PREFIX + generation + CHECKPOINT_SUFFIX);
+	}
+
+	/**
+	 * applies records of the log to the map until the end or a broken record.
+	 *
+	 * @return length of the valid records
+	 */
+	private long replay(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(Math.max(IO_BUFFER_SIZE, maxRecord));
+			buffer.flip();
+			long valid = 0;
+			while (true) {
+				if (fill(channel, buffer, RECORD_HEADER) == false)
+					return valid;
+
+				int length = buffer.getInt();
+				int checksum = buffer.getInt();
+				if (length < 1 || length > maxRecord - RECORD_HEADER || fill(channel, buffer, length) == false)
+					return valid;
+
+				ByteBuffer record = buffer.duplicate();
+				record.limit(record.position() + length);
+				crc.reset();
+				crc.update(record);
+				if ((int) crc.getValue() != checksum)
+					return valid;
+
+				byte type = buffer.get();
+				if (type == PUT)
+					map.put(keyCodec.read(buffer), valueCodec.read(buffer));
+				else if (type == REMOVE)
+					map.remove(keyCodec.read(buffer));
+				else if (type == CLEAR)
+					map.clear();
+				else
+					return valid;
+				valid += RECORD_HEADER + length;
+			}
+		}
+	}
+
+	/**
+	 * reads from the channel until the buffer has the bytes remaining.
+	 *
+	 * @return false if the channel ends before.
+	 */
+	static boolean fill(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+		if (buffer.remaining() >= bytes)
+			return true;
+
+		buffer.compact();
+		while (buffer.position() < bytes) {
+			if (channel.read(buffer) < 0) {
+				buffer.flip();
+				return false;
+			}
+		}
+		buffer.flip();
+		return true;
+	}
+
+	private BTreeMap<K, V> readCheckpoint(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return BTreeMap.readFrom(channel, maxKey, FILL_FACTOR, keyCodec, valueCodec);
+		}
+	}
+
+	private void writeCheckpoint(Path path, BTreeMap<K, V> snapshot) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			snapshot.writeTo(channel, keyCodec, valueCodec);
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * makes creating, renaming and deleting files durable, it is not supported by some file systems.
+	 */
+	private void syncDirectory() {
+		try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+		}
+	}
+
+	private void deleteBefore(long generation) throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				if ((name.startsWith(CHECKPOINT_PREFIX) && name.endsWith(CHECKPOINT_SUFFIX)
+						&& generationOf(name, CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX) < generation)
+						|| (name.startsWith(LOG_PREFIX) && name.endsWith(LOG_SUFFIX)
+								&& generationOf(name, LOG_PREFIX, LOG_SUFFIX) < generation))
+					Files.delete(file);
+			}
+		}
+	}
+
+	/**
+	 * appends a record to the pending buffer. It is called while the map is locked and before the change is applied,
+	 * so a key or value which can't be written does not change the map.
+	 *
+	 * @return position of the end of the record in all logs, see {@link #sync(long)}.
+	 */
+	private long append(byte type, K key, V value) {
+		if (closed)
+			throw new IllegalStateException("closed");
+		if (failure != null)
+			throw new UncheckedIOException(failure);
+		IOException checkpointError = checkpointFailure;
+		if (checkpointError != null) {
+			checkpointFailure = null;
+			throw new UncheckedIOException(checkpointError);
+		}
+
+		if (pending.remaining() < maxRecord) {
+			ByteBuffer bigger = ByteBuffer.allocate(pending.capacity() * 2);
+			pending.flip();
+			bigger.put(pending);
+			pending = bigger;
+		}
+
+		int start = pending.position();
+		try {
+			pending.position(start + RECORD_HEADER);
+			pending.put(type);
+			if (key != null)
+				keyCodec.write(pending, key);
+			if (value != null)
+				valueCodec.write(pending, value);
+		} catch (RuntimeException e) {
+			pending.position(start);
+			throw e;
+		}
+
+		int end = pending.position();
+		ByteBuffer record = pending.duplicate();
+		record.position(start + RECORD_HEADER);
+		record.limit(end);
+		crc.reset();
+		crc.update(record);
+		pending.putInt(start, end - start - RECORD_HEADER);
+		pending.putInt(start + 4, (int) crc.getValue());
+		appended += end - start;
+		return appended;
+	}
+
+	/**
+	 * waits until the log is synced to the position. If no thread is syncing it becomes the leader and syncs all
+	 * pending records, otherwise it waits for the leader and checks again.
+	 */
+	private void sync(long position) {
+		if (synced >= position)
+			return;
+
+		syncLock.lock();
+		try {
+			while (synced < position) {
+				if (failure != null)
+					throw new UncheckedIOException(failure);
+				if (syncing) {
+					syncDone.awaitUninterruptibly();
+					continue;
+				}
+
+				syncing = true;
+				ByteBuffer batch;
+				FileChannel channel;
+				long end;
+				synchronized (this) {
+					batch = pending;
+					pending = spare;
+					channel = log;
+					end = appended;
+				}
+				IOException error = null;
+				syncLock.unlock();
+				try {
+					SnapshotFormat.writeFully(channel, batch);
+					channel.force(false);
+				} catch (IOException e) {
+					error = e;
+				} finally {
+					syncLock.lock();
+					syncing = false;
+					syncDone.signalAll();
+				}
+				if (error != null) {
+					failure = error;
+					throw new UncheckedIOException(error);
+				}
+				spare = batch;
+				synced = end;
+				++syncCount;
+			}
+		} finally {
+			syncLock.unlock();
+		}
+		checkpointIfLong();
+	}
+
+	/**
+	 * waits until the leader has synced, called with syncLock before the log is used.
+	 */
+	private void awaitSyncing() {
+		while (syncing)
+			syncDone.awaitUninterruptibly();
+	}
+
+	/**
+	 * schedules a checkpoint on the background thread if the log is long and none is scheduled.
+	 */
+	private void checkpointIfLong() {
+		synchronized (this) {
+			if (closed || checkpointScheduled || appended - logStart < checkpointBytes)
+				return;
+			checkpointScheduled = true;
+		}
+		try {
+			checkpointer.execute(this::checkpointInBackground);
+		} catch (RejectedExecutionException e) {
+			// being closed
+		}
+	}
+
+	private void checkpointInBackground() {
+		try {
+			checkpoint();
+		} catch (IOException e) {
+			checkpointFailure = e;
+		} catch (IllegalStateException e) {
+			// closed meanwhile
+		} finally {
+			synchronized (this) {
+				checkpointScheduled = false;
+			}
+		}
+	}
+
+	/**
+	 * writes a checkpoint and deletes the logs before it. The map can be changed while it writes the checkpoint.
+	 *
+	 * @throws IOException
+	 */
+	public void checkpoint() throws IOException {
+		checkpointLock.lock();
+		try {
+			BTreeMap<K, V> snapshot;
+			long newGeneration;
+			syncLock.lock();
+			try {
+				awaitSyncing();
+				synchronized (this) {
+					if (closed)
+						throw new IllegalStateException("closed");
+					// the old log should be complete until the checkpoint is written
+					SnapshotFormat.writeFully(log, pending);
+					log.force(false);
+					synced = appended;
+					syncDone.signalAll();
+					log.close();
+
+					newGeneration = generation + 1;
+					log = FileChannel.open(logPath(newGeneration), StandardOpenOption.CREATE,
+							StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+					generation = newGeneration;
+					logStart = appended;
+					snapshot = map.snapshot();
+				}
+			} catch (IOException e) {
+				failure = e;
+				throw e;
+			} finally {
+				syncLock.unlock();
+			}
+			syncDirectory();
+
+			Path temp = dir.resolve(CHECKPOINT_PREFIX + newGeneration + CHECKPOINT_SUFFIX + TEMP_SUFFIX);
+			writeCheckpoint(temp, snapshot);
+			Files.move(temp, checkpointPath(newGeneration), StandardCopyOption.ATOMIC_MOVE);
+			syncDirectory();
+			deleteBefore(newGeneration);
+		} finally {
+			checkpointLock.unlock();
+		}
+	}
+
+	/**
+	 * @param checkpointBytes length of a log which makes a checkpoint, {@link #DEFAULT_CHECKPOINT_BYTES} by default.
+	 */
+	public synchronized void setCheckpointBytes(long checkpointBytes) {
+		this.checkpointBytes = checkpointBytes;
+	}
+
+	/**
+	 * @return how many times the log has been synced by commits.
+	 */
+	public long syncCount() {
+		return syncCount;
+	}
+
+	/**
+	 * @return the directory.
+	 */
+	public Path directory() {
+		return dir;
+	}
+
+	@Override
+	public V put(K key, V value) {
+		if (key == null || value == null)
+			throw new NullPointerException();
+
+		long position;
+		V oldValue;
+		synchronized (this) {
+			position = append(PUT, key, value);
+			oldValue = map.put(key, value);
+		}
+		sync(position);
+		return oldValue;
+	}
+
+	/**
+	 * commits all entries with one sync.
+	 */
+	@Override
+	public void putAll(Map<? extends K, ? extends V> entries) {
+		long position = 0;
+		synchronized (this) {
+			for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+				if (entry.getKey() == null || entry.getValue() == null)
+					throw new NullPointerException();
+				position = append(PUT, entry.getKey(), entry.getValue());
+				map.put(entry.getKey(), entry.getValue());
+			}
+		}
+		sync(position);
+	}
+
+	@Override
+	public V remove(Object keyObj) {
+		if (keyObj == null)
+			return null;
+
+		K key = (K) keyObj;
+		long position;
+		V oldValue;
+		synchronized (this) {
+			if (map.containsKey(key) == false)
+				return null;
+			position = append(REMOVE, key, null);
+			oldValue = map.remove(key);
+		}
+		sync(position);
+		return oldValue;
+	}
+
+	@Override
+	public void clear() {
+		long position;
+		synchronized (this) {
+			position = append(CLEAR, null, null);
+			map.clear();
+		}
+		sync(position);
+	}
+
+	@Override
+	public synchronized V get(Object key) {
+		return map.get(key);
+	}
+
+	@Override
+	public synchronized boolean containsKey(Object key) {
+		return map.containsKey(key);
+	}
+
+	@Override
+	public synchronized int size() {
+		return map.size();
+	}
+
+	/**
+	 * @return read only map of the current entries, see {@link BTreeMap#snapshot()}.
+	 */
+	public synchronized BTreeMap<K, V> snapshot() {
+		return map.snapshot();
+	}
+
+	/**
+	 * @return read only entries of a snapshot.
+	 */
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return Collections.unmodifiableSet(snapshot().entrySet());
+	}
+
+	/**
+	 * syncs pending records and closes the log. It does not write a checkpoint.
+	 */
+	@Override
+	public void close() throws IOException {
+		checkpointer.shutdown();
+		try {
+			checkpointer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		syncLock.lock();
+		try {
+			awaitSyncing();
+			synchronized (this) {
+				if (closed)
+					return;
+				closed = true;
+				try {
+					if (failure == null) {
+						SnapshotFormat.writeFully(log, pending);
+						log.force(false);
+						synced = appended;
+						syncDone.signalAll();
+					}
+				} finally {
+					log.close();
+				}
+			}
+		} finally {
+			syncLock.unlock();
+		}
+	}
+}
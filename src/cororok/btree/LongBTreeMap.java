@@ -0,0 +1,205 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * {@link BTreeMap} for long keys. Keys are kept in long[] and values in a parallel Object[] of each node so it does not
+ * create an object per entry. Entries are created only when it iterates {@link #entrySet()}.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class LongBTreeMap<V> extends AbstractMap<Long, V> {
+	LongBTreeSet set;
+
+	public LongBTreeMap(int maxKey) {
+		this.set = new LongBTreeSet(maxKey, true);
+	}
+
+	@Override
+	public Set<java.util.Map.Entry<Long, V>> entrySet() {
+		return new EntrySet();
+	}
+
+	/**
+	 * view of the keys which does not support add because a key needs a value.
+	 */
+	@Override
+	public Set<Long> keySet() {
+		return new KeySet();
+	}
+
+	@Override
+	public int size() {
+		return set.size();
+	}
+
+	@Override
+	public void clear() {
+		set.clear();
+	}
+
+	@Override
+	public V put(Long key, V value) {
+		return put(key.longValue(), value);
+	}
+
+	public V put(long key, V value) {
+		return (V) set.put(key, value);
+	}
+
+	@Override
+	public V get(Object key) {
+		if (key instanceof Long == false)
+			return null;
+
+		return get(((Long) key).longValue());
+	}
+
+	public V get(long key) {
+		return (V) set.getValue(key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return set.contains(key);
+	}
+
+	public boolean containsKey(long key) {
+		return set.contains(key);
+	}
+
+	@Override
+	public V remove(Object key) {
+		if (key instanceof Long == false)
+			return null;
+
+		return remove(((Long) key).longValue());
+	}
+
+	public V remove(long key) {
+		return (V) set.removeKey(key);
+	}
+
+	class KVEntity implements java.util.Map.Entry<Long, V> {
+		final long key;
+		V value;
+
+		KVEntity(long key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public Long getKey() {
+			return key;
+		}
+
+		@Override
+		public V getValue() {
+			return value;
+		}
+
+		@Override
+		public V setValue(V value) {
+			V oldValue = (V) set.replaceValue(key, value);
+			this.value = value;
+			return oldValue;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof java.util.Map.Entry == false)
+				return false;
+
+			java.util.Map.Entry<?, ?> other = (java.util.Map.Entry<?, ?>) obj;
+			return getKey().equals(other.getKey())
+					&& (value == null ? other.getValue() == null : value.equals(other.getValue()));
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(key) ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + value;
+		}
+	}
+
+	class KeySet extends AbstractSet<Long> {
+		@Override
+		public Iterator<Long> iterator() {
+			return set.iterator();
+		}
+
+		@Override
+		public int size() {
+			return set.size();
+		}
+
+		@Override
+		public boolean contains(Object key) {
+			return set.contains(key);
+		}
+
+		@Override
+		public boolean remove(Object key) {
+			return set.remove(key);
+		}
+
+		@Override
+		public void clear() {
+			set.clear();
+		}
+	}
+
+	class EntrySet extends AbstractSet<java.util.Map.Entry<Long, V>> {
+		@Override
+		public Iterator<java.util.Map.Entry<Long, V>> iterator() {
+			return new EntryIterator((LongBTreeSet.KeyIterator) set.iterator());
+		}
+
+		@Override
+		public int size() {
+			return set.size();
+		}
+	}
+
+	class EntryIterator implements Iterator<java.util.Map.Entry<Long, V>> {
+		LongBTreeSet.KeyIterator itr;
+
+		EntryIterator(LongBTreeSet.KeyIterator itr) {
+			this.itr = itr;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return itr.hasNext();
+		}
+
+		@Override
+		public java.util.Map.Entry<Long, V> next() {
+			long key = itr.nextLong();
+			return new KVEntity(key, (V) itr.lastValue);
+		}
+
+		@Override
+		public void remove() {
+			itr.remove();
+		}
+	}
+
+	public int height() {
+		return set.height();
+	}
+}
@@ -0,0 +1,929 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * {@link BTreeSet} for long keys. Node keeps keys in a long[] so it does not box keys nor call compareTo. If it is
+ * created by {@link LongBTreeMap} each node keeps values in an Object[] parallel to the keys.
+ *
+ * @author songduk.park cororok@gmail.com
+ */
+public class LongBTreeSet extends AbstractSet<Long> {
+	int count = 0;
+	final int MAX_KEY;
+	final int HALF_KEY;
+	final int CENTER_KEY;
+	final int CENTER_CHILDREN;
+	final int MAX_CHILDREN;
+	final int HALF_CHILDREN;
+	final boolean hasValues;
+
+	Node root;
+	int size;
+	int height = 1;
+	int changed = 0;
+
+	Stack<Node> addStack = new Stack<Node>();
+	Stack<WrappedNode> deleteStack = new Stack<WrappedNode>();
+	Stack<WrappedNode> minStack = new Stack<WrappedNode>();
+	Stack<WrappedNode> maxStack = new Stack<WrappedNode>();
+
+	public LongBTreeSet(int maxSizeOfKeys) {
+		this(maxSizeOfKeys, false);
+	}
+
+	LongBTreeSet(int maxSizeOfKeys, boolean hasValues) {
+		this.MAX_KEY = maxSizeOfKeys;
+		this.MAX_CHILDREN = maxSizeOfKeys + 1;
+		this.HALF_CHILDREN = (MAX_CHILDREN + 1) / 2;
+		this.HALF_KEY = MAX_KEY / 2;
+		this.CENTER_KEY = maxSizeOfKeys / 2 - 1;
+		this.CENTER_CHILDREN = CENTER_KEY + 1;
+		this.hasValues = hasValues;
+
+		this.root = new Node();
+	}
+
+	@Override
+	public PrimitiveIterator.OfLong iterator() {
+		return new KeyIterator();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	public int height() {
+		return height;
+	}
+
+	@Override
+	public boolean contains(final Object keyObj) {
+		if (keyObj instanceof Long == false)
+			return false;
+
+		return contains(((Long) keyObj).longValue());
+	}
+
+	public boolean contains(final long key) {
+		Node node = root;
+		int index = 0;
+		while (true) {
+			index = node.indexOfGreatestLessThan(key);
+			if (index < 0)
+				return true;
+			else if (node.isLeaf())
+				return false;
+			else
+				node = node.childAt(index);
+		}
+	}
+
+	/**
+	 * @param key
+	 * @return value of the key, null if it can't find the key.
+	 */
+	Object getValue(final long key) {
+		Node node = root;
+		int index = 0;
+		while (true) {
+			index = node.indexOfGreatestLessThan(key);
+			if (index < 0)
+				return node.values[node.convertToRealIndex(index)];
+			else if (node.isLeaf())
+				return null;
+			else
+				node = node.childAt(index);
+		}
+	}
+
+	@Override
+	public void clear() {
+		this.root = new Node();
+		this.size = 0;
+		this.height = 1;
+		++changed;
+	}
+
+	@Override
+	public boolean add(Long newKey) {
+		return add(newKey.longValue());
+	}
+
+	public boolean add(long newKey) {
+		int oldSize = size;
+		put(newKey, null);
+		return size != oldSize;
+	}
+
+	/**
+	 * if the same key exists it replaces the value of the key and does not add a newKey.
+	 *
+	 * @param newKey
+	 * @param newValue ignored if it does not have values.
+	 * @return old value if the key exists or null
+	 */
+	Object put(long newKey, Object newValue) {
+		addStack.reset();
+		int indexOfGreatestLessThan = 0;
+		Node currentNode = root;
+		while (true) { // build a stack until leap
+			indexOfGreatestLessThan = currentNode.indexOfGreatestLessThan(newKey);
+			if (indexOfGreatestLessThan < 0) {
+				// fond old one
+				if (hasValues == false)
+					return null;
+
+				int realIndex = currentNode.convertToRealIndex(indexOfGreatestLessThan);
+				Object oldValue = currentNode.values[realIndex];
+				currentNode.values[realIndex] = newValue;
+				++changed;
+				return oldValue;
+			}
+			addStack.add(currentNode);
+			if (currentNode.isLeaf())
+				break;
+			currentNode = currentNode.childAt(indexOfGreatestLessThan);
+		}
+
+		++size;
+		++changed;
+		addFromTheBotton(newKey, newValue);
+		return null;
+	}
+
+	/**
+	 * replaces the value of an existing key without changing the structure so it does not affect iterators.
+	 *
+	 * @param key
+	 * @param newValue
+	 * @return old value or null if it can't find the key
+	 */
+	Object replaceValue(long key, Object newValue) {
+		Node node = root;
+		int index = 0;
+		while (true) {
+			index = node.indexOfGreatestLessThan(key);
+			if (index < 0) {
+				int realIndex = node.convertToRealIndex(index);
+				Object oldValue = node.values[realIndex];
+				node.values[realIndex] = newValue;
+				return oldValue;
+			} else if (node.isLeaf())
+				return null;
+			else
+				node = node.childAt(index);
+		}
+	}
+
+	private void addFromTheBotton(long newKey, Object newValue) {
+		Node currentNode = null;
+		WrappedNode wrappedNode = new WrappedNode();
+		while (addStack.size() > 0) {
+			currentNode = addStack.pop();
+			wrappedNode = currentNode.add(newKey, newValue, wrappedNode.node);
+			if (wrappedNode == null) // no overflow
+				return;
+			// was overflowed so need to add it to the parent.
+			newKey = wrappedNode.key;
+			newValue = wrappedNode.value;
+		}
+
+		// if top has a node it has to create a new root
+		createNewRoot(currentNode, wrappedNode);
+	}
+
+	private void createNewRoot(Node currentNode, WrappedNode wrappedNode) {
+		Node newRoot = new Node();
+		newRoot.setKeyAt(0, wrappedNode.key, wrappedNode.value);
+		newRoot.noOfKeys = 1;
+		newRoot.initChildren();
+		newRoot.setChildAt(0, currentNode);
+		newRoot.setChildAt(1, wrappedNode.node);
+		newRoot.noOfChildren = 2;
+
+		this.root = newRoot;
+		++height;
+	}
+
+	@Override
+	public boolean remove(Object keyObj) {
+		if (keyObj instanceof Long == false)
+			return false;
+
+		return remove(((Long) keyObj).longValue());
+	}
+
+	/**
+	 * @param key
+	 * @return true if it finds key or false if it doesn't find the key
+	 */
+	public boolean remove(long key) {
+		int oldSize = size;
+		removeKey(key);
+		return size != oldSize;
+	}
+
+	/**
+	 * @param key
+	 * @return value of the removed key or null if it doesn't find the key or does not have values.
+	 */
+	Object removeKey(long key) {
+		deleteStack.reset();
+		int indexOfGreatestLessThan = 0;
+		Object oldValue = null;
+		Node currentNode = root;
+		while (true) {
+			indexOfGreatestLessThan = currentNode.indexOfGreatestLessThan(key);
+			WrappedNode wrapper = new WrappedNode(currentNode);
+			if (indexOfGreatestLessThan < 0) {// found
+				wrapper.index = currentNode.convertToRealIndex(indexOfGreatestLessThan);
+				deleteStack.add(wrapper);
+				if (hasValues)
+					oldValue = currentNode.values[wrapper.index];
+
+				// if the found key is leaf, delete the key.
+				if (currentNode.isLeaf()) {
+					currentNode.removeKeyAt(wrapper.index);
+				} else {
+					overwriteWithLeaf(wrapper);
+				}
+				--size;
+				++changed;
+				break;
+			} else if (currentNode.isLeaf()) {
+				return null; // no key found
+			}
+			wrapper.index = indexOfGreatestLessThan;
+			deleteStack.add(wrapper);
+			currentNode = currentNode.childAt(indexOfGreatestLessThan);
+		}
+
+		if (deleteStack.size() == 1) // root
+			return oldValue;
+
+		merge();
+		return oldValue;
+	}
+
+	/**
+	 * replace a key in currentNode with the least key or the largest key in the leaf. and delete the key in the leaf.
+	 *
+	 * @param wrapper the node and the index of the key to delete. Its index is changed to the index of the child which
+	 *            the key comes from so that merge can find the siblings of the child.
+	 */
+	private void overwriteWithLeaf(WrappedNode wrapper) {
+		Node currentNode = wrapper.node;
+		int indexToDelete = wrapper.index;
+		minStack.reset();
+		maxStack.reset();
+		Node minNode = findMinNode(currentNode.childAt(indexToDelete + 1));
+		Node maxNode = findMaxNode(currentNode.childAt(indexToDelete));
+
+		// swap, use one which has more keys to reduce restructuring later.
+		Stack<WrappedNode> target = null;
+		if (minNode.noOfKeys <= maxNode.noOfKeys) {
+			currentNode.setKeyAt(indexToDelete, maxNode.lastKey(), maxNode.lastValue());
+			maxNode.removeLastKey();
+			target = maxStack;
+		} else {
+			currentNode.setKeyAt(indexToDelete, minNode.keys[0], minNode.valueAt(0));
+			minNode.removeFirstKey();
+			target = minStack;
+			wrapper.index = indexToDelete + 1;
+		}
+		deleteStack.addAll(target);
+	}
+
+	/**
+	 * merges insufficient nodes from down to top. It doesn't use recursive call but uses a stack.
+	 */
+	private void merge() {
+		WrappedNode current = deleteStack.pop();
+		WrappedNode parent = null;
+		while (deleteStack.size() > 0) {
+			parent = deleteStack.pop();
+			if (current.node.isInsufficientKey()) {
+				WrappedNode borrow = getBiggerChild(parent.node, parent.index);
+				boolean isRight = borrow.index == 1;
+
+				if (canJoin(borrow, current)) {
+					if (isRight) {
+						join(current.node, parent.node, parent.index, borrow.node);
+					} else {
+						join(borrow.node, parent.node, parent.index - 1, current.node);
+					}
+				} else {
+					borrow(current, parent, borrow, isRight);
+					return;
+				}
+				current = parent;
+			} else {
+				break;
+			}
+		}
+
+		// root
+		if (parent.node.noOfKeys == 0 && parent.node.isLeaf() == false) {
+			this.root = parent.node.childAt(0);
+			--height;
+		}
+	}
+
+	private boolean canJoin(WrappedNode borrow, WrappedNode node) {
+		return borrow.node.noOfKeys + node.node.noOfKeys < MAX_KEY;
+	}
+
+	private void borrow(WrappedNode current, WrappedNode parent, WrappedNode borrow, boolean isRight) {
+		if (isRight) {
+			shrinkRightKeys(current, parent, borrow);
+		} else {
+			shrinkLeftKeys(current, parent, borrow);
+		}
+	}
+
+	private void shrinkLeftKeys(WrappedNode current, WrappedNode parent, WrappedNode borrow) {
+		int parentIndex = parent.index - 1;
+		current.node.shiftKeysRight(0);
+		current.node.setKeyAt(0, parent.node.keys[parentIndex], parent.node.valueAt(parentIndex));
+		++current.node.noOfKeys;
+
+		parent.node.setKeyAt(parentIndex, borrow.node.lastKey(), borrow.node.lastValue());
+		borrow.node.removeLastKey();
+		if (borrow.node.isLeaf() == false) {
+			ArrayUtil.shiftRight(current.node.children, 0, current.node.noOfChildren);
+			current.node.setChildAt(0, borrow.node.removeLastChild());
+
+			++current.node.noOfChildren;
+		}
+	}
+
+	private void shrinkRightKeys(WrappedNode current, WrappedNode parent, WrappedNode borrow) {
+		int parentIndex = parent.index;
+		current.node.setKeyAt(current.node.noOfKeys, parent.node.keys[parentIndex], parent.node.valueAt(parentIndex));
+		++current.node.noOfKeys;
+
+		parent.node.setKeyAt(parentIndex, borrow.node.keys[0], borrow.node.valueAt(0));
+		borrow.node.removeFirstKey();
+		if (borrow.node.isLeaf() == false) {
+			current.node.setChildAt(current.node.noOfChildren, borrow.node.removeFirstChild());
+			++current.node.noOfChildren;
+		}
+	}
+
+	/**
+	 * choose a bigger child node between left and right child of key at index.
+	 *
+	 * @param parent
+	 * @param index index of the key to find its left or right child.
+	 * @return left or right child node
+	 */
+	private WrappedNode getBiggerChild(Node parent, int index) {
+		Node left = null;
+		Node right = null;
+		WrappedNode wrappedNode = new WrappedNode();
+		if (index > 0)
+			left = parent.childAt(index - 1);
+
+		if (index + 1 < parent.noOfChildren)
+			right = parent.childAt(index + 1);
+
+		if (left == null) {
+			wrappedNode.node = right;
+			wrappedNode.index = 1;
+		} else if (right == null) {
+			wrappedNode.node = left;
+			wrappedNode.index = 0;
+		} else {
+			// choose bigger one
+			if (left.noOfKeys >= right.noOfKeys) {
+				wrappedNode.node = left;
+				wrappedNode.index = 0;
+			} else {
+				wrappedNode.node = right;
+				wrappedNode.index = 1;
+			}
+		}
+		return wrappedNode;
+	}
+
+	/**
+	 * appends right node to left node
+	 *
+	 * @param left
+	 * @param center parent node between left and right
+	 * @param centerIndex
+	 * @param right
+	 */
+	private void join(Node left, Node center, int centerIndex, Node right) {
+		left.setKeyAt(left.noOfKeys, center.keys[centerIndex], center.valueAt(centerIndex));
+		++left.noOfKeys;
+
+		joinKeys(left, right);
+		joinChildren(left, right);
+
+		// shrink parent
+		center.shrink(centerIndex + 1);
+	}
+
+	private void joinChildren(Node left, Node right) {
+		for (int i = 0; i < right.noOfChildren; i++) {
+			left.setChildAt(i + left.noOfChildren, right.childAt(i));
+		}
+		left.noOfChildren += right.noOfChildren;
+	}
+
+	private void joinKeys(Node left, Node right) {
+		System.arraycopy(right.keys, 0, left.keys, left.noOfKeys, right.noOfKeys);
+		if (hasValues)
+			System.arraycopy(right.values, 0, left.values, left.noOfKeys, right.noOfKeys);
+		left.noOfKeys += right.noOfKeys;
+	}
+
+	/**
+	 * find the maximum node from a node.
+	 *
+	 * @param node
+	 * @return the maximum node
+	 */
+	private Node findMaxNode(Node node) {
+		while (true) {
+			WrappedNode wrappedNode = new WrappedNode();
+			wrappedNode.node = node;
+			wrappedNode.index = node.noOfChildren - 1;
+			maxStack.add(wrappedNode);
+			if (node.isLeaf())
+				return node;
+
+			node = node.childAt(node.noOfChildren - 1); // It's the maximum node
+														// in a node
+		}
+	}
+
+	/**
+	 * find the minimum node from a node.
+	 *
+	 * @param node starting point
+	 * @return the minimum node
+	 */
+	private Node findMinNode(Node node) {
+		while (true) {
+			WrappedNode wrapper = new WrappedNode();
+			wrapper.node = node;
+			wrapper.index = 0;
+			minStack.add(wrapper);
+			if (node.isLeaf())
+				return node;
+
+			node = node.childAt(0); // It's the minimum in a node
+		}
+	}
+
+	/**
+	 * Iterator that contains keys. {@link #nextLong()} does not box keys.
+	 */
+	class KeyIterator implements PrimitiveIterator.OfLong {
+		WrappedNode wrappedNode;
+		boolean hasNext;
+		long currentKey;
+		Object currentValue;
+		/**
+		 * value of the key returned by the last next.
+		 */
+		Object lastValue;
+		private Stack<WrappedNode> stack = new Stack<WrappedNode>();
+		int indexOfPrinting = 0;
+		final int changedAt = changed;
+
+		KeyIterator() {
+			wrappedNode = new WrappedNode(root);
+			getNext();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return hasNext;
+		}
+
+		private void setCurrent(Node node, int index) {
+			currentKey = node.keys[index];
+			currentValue = node.valueAt(index);
+			hasNext = true;
+		}
+
+		/**
+		 * find the next node
+		 */
+		private void getNext() {
+			do {
+				if (wrappedNode.node.isLeaf()) {
+					if (wrappedNode.node.noOfKeys > indexOfPrinting) {
+						setCurrent(wrappedNode.node, indexOfPrinting++);
+						break;
+					}
+					indexOfPrinting = 0;
+					if (stack.size() == 0) {
+						hasNext = false;
+						break;
+					}
+					wrappedNode = stack.pop();
+					wrappedNode.check = true;
+				} else if (wrappedNode.check) {
+					// check it returned all node
+					if (wrappedNode.index == wrappedNode.node.noOfKeys) {
+						if (stack.size() == 0) {
+							hasNext = false;
+							break;
+						}
+						wrappedNode = stack.pop();
+						wrappedNode.check = true;
+					} else { // return one by one in the current node
+						setCurrent(wrappedNode.node, wrappedNode.index++);
+						stack.add(wrappedNode);
+						WrappedNode temp = new WrappedNode(wrappedNode.node.childAt(wrappedNode.index));
+						wrappedNode = temp;
+						break;
+					}
+				} else {
+					stack.add(wrappedNode);
+					WrappedNode temp = new WrappedNode(wrappedNode.node.childAt(0));
+					wrappedNode = temp;
+				}
+			} while (true);
+		}
+
+		@Override
+		public long nextLong() {
+			if (changedAt != changed)
+				throw new ConcurrentModificationException();
+
+			if (hasNext == false)
+				throw new NoSuchElementException();
+
+			long temp = currentKey;
+			lastValue = currentValue;
+			getNext();
+			return temp;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * It uses WrappedNode to reduce unnecessary members in Node.
+	 */
+	class WrappedNode {
+		Node node;
+		int index;
+		long key;
+		Object value;
+		boolean check;
+
+		public WrappedNode() {
+		}
+
+		public WrappedNode(Node node) {
+			this.node = node;
+		}
+	}
+
+	/**
+	 * Keeps keys in a long[] and values, if any, in an Object[] at the same index.
+	 */
+	class Node {
+		int id;
+		int noOfKeys = 0;
+		int noOfChildren = 0;
+
+		long[] keys;
+		Object[] values;
+		Node[] children;
+
+		public Node() {
+			this.keys = new long[MAX_KEY];
+			if (hasValues)
+				this.values = new Object[MAX_KEY];
+			this.id = ++count;
+		}
+
+		public void initChildren() {
+			this.children = new Node[MAX_CHILDREN];
+		}
+
+		/**
+		 * except root node should keep half or more than key
+		 *
+		 * @return
+		 */
+		public boolean isInsufficientKey() {
+			return noOfKeys < HALF_KEY;
+		}
+
+		/**
+		 * delete the key at the index of the leaf.
+		 *
+		 * @param indexToDelete
+		 */
+		void removeKeyAt(int indexToDelete) {
+			if (isLeaf() == false || noOfKeys <= indexToDelete)
+				return;
+
+			ArrayUtil.shiftLeft(keys, indexToDelete + 1, noOfKeys);
+			if (values != null) {
+				ArrayUtil.shiftLeft(values, indexToDelete + 1, noOfKeys);
+				values[noOfKeys - 1] = null;
+			}
+			--noOfKeys;
+		}
+
+		void removeFirstKey() {
+			if (noOfKeys == 0)
+				return;
+
+			ArrayUtil.shiftLeft(keys, 1, noOfKeys);
+			if (values != null) {
+				ArrayUtil.shiftLeft(values, 1, noOfKeys);
+				values[noOfKeys - 1] = null;
+			}
+			--noOfKeys;
+		}
+
+		void removeLastKey() {
+			if (noOfKeys == 0)
+				return;
+
+			--noOfKeys;
+			if (values != null)
+				values[noOfKeys] = null;
+		}
+
+		long lastKey() {
+			return keys[noOfKeys - 1];
+		}
+
+		Object lastValue() {
+			return valueAt(noOfKeys - 1);
+		}
+
+		/**
+		 * @return null if there is no child
+		 */
+		Node removeFirstChild() {
+			if (noOfChildren == 0)
+				return null;
+
+			Node deletedNode = children[0];
+			ArrayUtil.shiftLeft(children, 1, noOfChildren);
+			--noOfChildren;
+			children[noOfChildren] = null;
+			return deletedNode;
+		}
+
+		/**
+		 * @return null if there is no child
+		 */
+		Node removeLastChild() {
+			if (noOfChildren == 0)
+				return null;
+
+			Node deletedNode = children[--noOfChildren];
+			children[noOfChildren] = null;
+			return deletedNode;
+		}
+
+		private Node childAt(int childIndex) {
+			return children[childIndex];
+		}
+
+		private void setChildAt(int childIndex, Node child) {
+			children[childIndex] = child;
+		}
+
+		Object valueAt(int keyIndex) {
+			return values == null ? null : values[keyIndex];
+		}
+
+		private void setKeyAt(int keyIndex, long key, Object value) {
+			keys[keyIndex] = key;
+			if (values != null)
+				values[keyIndex] = value;
+		}
+
+		/**
+		 * shifts keys and values one right from the index to the end.
+		 */
+		private void shiftKeysRight(int fromIndex) {
+			ArrayUtil.shiftRight(keys, fromIndex, noOfKeys);
+			if (values != null)
+				ArrayUtil.shiftRight(values, fromIndex, noOfKeys);
+		}
+
+		public boolean isLeaf() {
+			return noOfChildren == 0;
+		}
+
+		public boolean isFull() {
+			return noOfKeys == MAX_KEY;
+		}
+
+		/**
+		 * see the method {@link java.util.List#add(index,element)}.
+		 *
+		 * @param position
+		 * @param newNode
+		 */
+		private void addChild(int position, Node newNode) {
+			ArrayUtil.shiftRight(children, position, noOfChildren);
+
+			children[position] = newNode;
+			++noOfChildren;
+		}
+
+		/**
+		 * @param key
+		 * @param value
+		 * @param childNode
+		 * @return null it it is not full or new right node separated because of insertion.
+		 */
+		public WrappedNode add(long key, Object value, Node childNode) {
+			int indexOfNew = indexOfGreatestLessThan(key);
+			if (isFull())
+				return split(key, value, childNode, indexOfNew);
+
+			if (childNode != null)
+				addChild(indexOfNew + 1, childNode);
+
+			// shift from idxGreatestLess
+			shiftKeysRight(indexOfNew);
+			setKeyAt(indexOfNew, key, value);
+			++noOfKeys;
+			return null;
+		}
+
+		/**
+		 * split current node to left and right node which is created newly and add key and childNode to either left or
+		 * right.
+		 *
+		 * @param key
+		 * @param value
+		 * @param childNode
+		 * @param indexOfNew index where key and childNode will be placed.
+		 * @return new right side node which will be added to the parent.
+		 */
+		private WrappedNode split(long key, Object value, Node childNode, int indexOfNew) {
+			WrappedNode wrappedNode = splitKeys(key, value, indexOfNew);
+			if (childNode != null) {
+				splitChildren(indexOfNew, wrappedNode.node, childNode);
+			}
+			return wrappedNode;
+		}
+
+		/**
+		 * If a key exists returns (index - size) that is negative value.
+		 *
+		 * @param key
+		 * @return negative value if there is the key or index of the greatest but smaller key than the key.
+		 */
+		private int indexOfGreatestLessThan(long key) {
+			int left = 0;
+			int right = noOfKeys - 1;
+			// use binary search
+			while (left <= right) {
+				int middle = (left + right) >>> 1;
+				long middleKey = keys[middle];
+				if (key > middleKey)
+					left = middle + 1;
+				else if (key < middleKey)
+					right = middle - 1;
+				else
+					return middle - MAX_KEY; // exists
+			}
+			return left;
+		}
+
+		/**
+		 * see the method {@link #indexOfGreatestLessThan(long)}.
+		 *
+		 * @param indexOfGreatestLessThan
+		 * @return
+		 */
+		int convertToRealIndex(int indexOfGreatestLessThan) {
+			return indexOfGreatestLessThan + MAX_KEY;
+		}
+
+		/**
+		 * split child before it adds a new key because it knows it will be full.
+		 *
+		 * @param indexOfNew
+		 * @param seperatedNode
+		 * @param newChild
+		 */
+		private void splitChildren(int indexOfNew, Node seperatedNode, Node newChild) {
+			seperatedNode.initChildren();
+			if (indexOfNew == CENTER_CHILDREN) {
+				// right
+				seperatedNode.children[0] = newChild;
+				ArrayUtil.moveTo(children, seperatedNode.children, CENTER_CHILDREN + 1, MAX_KEY + 1, 1);
+			} else if (indexOfNew < CENTER_CHILDREN) {
+				// right
+				ArrayUtil.moveTo(children, seperatedNode.children, CENTER_CHILDREN, MAX_CHILDREN, 0);
+				// left
+				ArrayUtil.shiftRight(children, indexOfNew + 1, CENTER_CHILDREN);
+				children[indexOfNew + 1] = newChild;
+			} else {
+				// right
+				ArrayUtil.moveTo(children, seperatedNode.children, CENTER_CHILDREN + 1, indexOfNew + 1, 0);
+				int index = indexOfNew - CENTER_CHILDREN;
+				seperatedNode.children[index] = newChild;
+				ArrayUtil.moveTo(children, seperatedNode.children, indexOfNew + 1, MAX_CHILDREN, ++index);
+			}
+			noOfChildren = seperatedNode.noOfChildren = HALF_CHILDREN;
+		}
+
+		/**
+		 * @param key
+		 * @param value
+		 * @param indexOfNew
+		 * @return new node for right node which should be added to parent node
+		 */
+		private WrappedNode splitKeys(long key, Object value, int indexOfNew) {
+			WrappedNode wrappedNode = new WrappedNode();
+			Node newNode = wrappedNode.node = new Node();
+			if (indexOfNew <= CENTER_KEY) {
+				wrappedNode.key = keys[CENTER_KEY];
+				wrappedNode.value = valueAt(CENTER_KEY);
+				// left - shift
+				ArrayUtil.shiftRight(keys, indexOfNew, CENTER_KEY);
+				if (values != null)
+					ArrayUtil.shiftRight(values, indexOfNew, CENTER_KEY);
+				setKeyAt(indexOfNew, key, value);
+				// right
+				moveRightHalfToNewNode(newNode);
+			} else if (indexOfNew == CENTER_CHILDREN) {
+				wrappedNode.key = key;
+				wrappedNode.value = value;
+				// right
+				moveRightHalfToNewNode(newNode);
+			} else {
+				wrappedNode.key = keys[CENTER_CHILDREN];
+				wrappedNode.value = valueAt(CENTER_CHILDREN);
+				// right
+				int size = (indexOfNew - CENTER_CHILDREN - 1);
+				ArrayUtil.moveTo(keys, newNode.keys, CENTER_CHILDREN + 1, indexOfNew, 0);
+				newNode.keys[size] = key;
+				ArrayUtil.moveTo(keys, newNode.keys, indexOfNew, noOfKeys, size + 1);
+				if (values != null) {
+					values[CENTER_CHILDREN] = null;
+					ArrayUtil.moveTo(values, newNode.values, CENTER_CHILDREN + 1, indexOfNew, 0);
+					newNode.values[size] = value;
+					ArrayUtil.moveTo(values, newNode.values, indexOfNew, noOfKeys, size + 1);
+				}
+			}
+			noOfKeys = newNode.noOfKeys = HALF_KEY;
+			return wrappedNode;
+		}
+
+		void moveRightHalfToNewNode(Node newNode) {
+			ArrayUtil.moveTo(this.keys, newNode.keys, CENTER_KEY + 1, MAX_KEY, 0);
+			if (values != null)
+				ArrayUtil.moveTo(this.values, newNode.values, CENTER_KEY + 1, MAX_KEY, 0);
+		}
+
+		/**
+		 * move key and child one left from 'from' to the end and reduce one size.
+		 *
+		 * @param from
+		 */
+		void shrink(int from) {
+			for (; from < noOfKeys; from++) {
+				keys[from - 1] = keys[from];
+				if (values != null)
+					values[from - 1] = values[from];
+				children[from] = children[from + 1];
+			}
+			--noOfKeys;
+			if (values != null)
+				values[noOfKeys] = null;
+
+			--noOfChildren;
+			children[noOfChildren] = null;
+		}
+	}
+}
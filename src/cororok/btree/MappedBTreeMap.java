@@ -0,0 +1,813 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * {@link BPlusTreeMap} kept in a {@link PageStore}. Each node is a page and keys and values are written in slots of
+ * {@link Codec#maxSize()} bytes, so a node is read where it is mapped without being loaded, and opening a map reads
+ * only its header. It splits and fixes nodes on the way down like {@link BPlusTreeSet}, so it keeps only a parent and
+ * its children pinned while it goes down. Pages are mapped by a {@link PageFile} and cached by the OS, read into a
+ * {@link BufferPool} of a fixed size, or kept off the heap by an {@link OffHeapArena} without a file.
+ * <p>
+ * A page has the type, the number of keys and the next leaf in its first {@link #PAGE_HEADER} bytes. A leaf has the
+ * slots of keys and then the slots of values, an inner node has the children and then the slots of keys. Call
+ * {@link #flush()} to write changes to the storage device, a crash between flushes may leave the pages broken. It
+ * is not thread safe.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class MappedBTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V> implements Closeable {
+	public static final int DEFAULT_PAGE_SIZE = 4096;
+	static final int PAGE_HEADER = 8;
+
+	// offsets in the header page
+	static final int KEY_SIZE_AT = PageFile.HEADER_SIZE;
+	static final int VALUE_SIZE_AT = KEY_SIZE_AT + 4;
+	static final int ROOT_AT = VALUE_SIZE_AT + 4;
+	static final int HEIGHT_AT = ROOT_AT + 4;
+	static final int SIZE_AT = HEIGHT_AT + 4;
+
+	final PageStore file;
+	final Codec<K> keyCodec;
+	final Codec<V> valueCodec;
+	final int keySize;
+	final int valueSize;
+	final int LEAF_MAX_KEY;
+	final int LEAF_HALF_KEY;
+	final int INNER_MAX_KEY;
+	final int INNER_HALF_KEY;
+	/**
+	 * the least number of keys of an inner node except root.
+	 */
+	final int MIN_INNER_KEY;
+
+	int root;
+	int height;
+	long size;
+	int changed;
+	/**
+	 * to move slots in a page or between pages.
+	 */
+	private final byte[] scratch;
+
+	/**
+	 * see {@link #open(Path, int, Codec, Codec)}.
+	 */
+	public static <K extends Comparable<K>, V> MappedBTreeMap<K, V> open(Path path, Codec<K> keyCodec,
+			Codec<V> valueCodec) throws IOException {
+		return open(path, DEFAULT_PAGE_SIZE, keyCodec, valueCodec);
+	}
+
+	/**
+	 * opens the map in the file or creates it.
+	 *
+	 * @param path
+	 * @param pageSize see {@link PageFile#PageFile(Path, int)}
+	 * @param keyCodec its maxSize should be the same as the one the file was created with.
+	 * @param valueCodec its maxSize should be the same as the one the file was created with.
+	 * @return map
+	 * @throws IOException if it can't open the file or the file was created with other sizes.
+	 */
+	public static <K extends Comparable<K>, V> MappedBTreeMap<K, V> open(Path path, int pageSize, Codec<K> keyCodec,
+			Codec<V> valueCodec) throws IOException {
+		return open(new PageFile(path, pageSize), keyCodec, valueCodec);
+	}
+
+	/**
+	 * opens the map in the file through a {@link BufferPool} instead of mapping the file.
+	 *
+	 * @param path
+	 * @param pageSize see {@link PageFile#PageFile(Path, int)}
+	 * @param noOfBuffers see {@link BufferPool#BufferPool(Path, int, int)}
+	 * @param keyCodec
+	 * @param valueCodec
+	 * @return map
+	 * @throws IOException
+	 */
+	public static <K extends Comparable<K>, V> MappedBTreeMap<K, V> open(Path path, int pageSize, int noOfBuffers,
+			Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+		return open(new BufferPool(path, pageSize, noOfBuffers), keyCodec, valueCodec);
+	}
+
+	/**
+	 * creates an empty map whose pages are in direct memory, see {@link OffHeapArena}. {@link #close()} frees them.
+	 *
+	 * @param pageSize see {@link OffHeapArena#OffHeapArena(int)}
+	 * @param keyCodec
+	 * @param valueCodec
+	 * @return map
+	 */
+	public static <K extends Comparable<K>, V> MappedBTreeMap<K, V> offHeap(int pageSize, Codec<K> keyCodec,
+			Codec<V> valueCodec) {
+		try {
+			return open(new OffHeapArena(pageSize), keyCodec, valueCodec);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e); // an arena is always created empty
+		}
+	}
+
+	private static <K extends Comparable<K>, V> MappedBTreeMap<K, V> open(PageStore file, Codec<K> keyCodec,
+			Codec<V> valueCodec) throws IOException {
+		try {
+			return new MappedBTreeMap<K, V>(file, keyCodec, valueCodec);
+		} catch (RuntimeException | IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	MappedBTreeMap(PageStore file, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+		this.file = file;
+		this.keyCodec = keyCodec;
+		this.valueCodec = valueCodec;
+		this.keySize = keyCodec.maxSize();
+		this.valueSize = valueCodec.maxSize();
+		this.LEAF_MAX_KEY = (file.pageSize() - PAGE_HEADER) / (keySize + valueSize);
+		this.LEAF_HALF_KEY = LEAF_MAX_KEY / 2;
+		this.INNER_MAX_KEY = (file.pageSize() - PAGE_HEADER - 4) / (keySize + 4);
+		this.INNER_HALF_KEY = INNER_MAX_KEY / 2;
+		this.MIN_INNER_KEY = (INNER_MAX_KEY - 1) / 2;
+		if (LEAF_MAX_KEY < 3 || INNER_MAX_KEY < 3)
+			throw new IllegalArgumentException("a page should have 3 keys or more, use a bigger page");
+		this.scratch = new byte[file.pageSize()];
+
+		ByteBuffer header = file.buffer(0);
+		if (file.isCreated()) {
+			header.putInt(KEY_SIZE_AT, keySize);
+			header.putInt(VALUE_SIZE_AT, valueSize);
+			root = newPage(true).id;
+			height = 1;
+			writeHeader();
+			file.release();
+		} else {
+			if (header.getInt(KEY_SIZE_AT) != keySize || header.getInt(VALUE_SIZE_AT) != valueSize)
+				throw new IOException("sizes of keys and values are " + header.getInt(KEY_SIZE_AT) + " and "
+						+ header.getInt(VALUE_SIZE_AT));
+			root = header.getInt(ROOT_AT);
+			height = header.getInt(HEIGHT_AT);
+			size = header.getLong(SIZE_AT);
+		}
+	}
+
+	private void writeHeader() {
+		ByteBuffer header = file.buffer(0);
+		header.putInt(ROOT_AT, root);
+		header.putInt(HEIGHT_AT, height);
+		header.putLong(SIZE_AT, size);
+	}
+
+	/**
+	 * writes all changes to the storage device and waits.
+	 *
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		writeHeader();
+		file.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		writeHeader();
+		file.close();
+	}
+
+	@Override
+	public int size() {
+		return (int) Math.min(size, Integer.MAX_VALUE);
+	}
+
+	public long longSize() {
+		return size;
+	}
+
+	public int height() {
+		return height;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public V get(Object keyObj) {
+		if (keyObj == null)
+			return null;
+
+		K key = (K) keyObj;
+		try {
+			Page leaf = findLeaf(key);
+			int index = leaf.indexOf(key);
+			return index < 0 ? null : leaf.valueAt(index);
+		} finally {
+			file.release();
+		}
+	}
+
+	@Override
+	public boolean containsKey(Object keyObj) {
+		if (keyObj == null)
+			return false;
+
+		K key = (K) keyObj;
+		try {
+			return findLeaf(key).indexOf(key) >= 0;
+		} finally {
+			file.release();
+		}
+	}
+
+	@Override
+	public void clear() {
+		file.clear();
+		try {
+			root = newPage(true).id;
+		} finally {
+			file.release();
+		}
+		height = 1;
+		size = 0;
+		writeHeader();
+		++changed;
+	}
+
+	private Page findLeaf(K key) {
+		Page page = new Page(root);
+		while (page.isLeaf() == false)
+			page = keep(page.childAt(page.childIndex(key)));
+		return page;
+	}
+
+	private Page firstLeaf() {
+		Page page = new Page(root);
+		while (page.isLeaf() == false)
+			page = keep(page.childAt(0));
+		return page;
+	}
+
+	/**
+	 * releases pages used so far and pins the page again.
+	 */
+	private Page keep(int pageId) {
+		file.release();
+		return new Page(pageId);
+	}
+
+	private Page newPage(boolean isLeaf) {
+		Page page = new Page(file.allocate());
+		page.buffer.put(page.base, (byte) (isLeaf ? 1 : 0));
+		page.setNoOfKeys(0);
+		page.setNext(0);
+		return page;
+	}
+
+	/**
+	 * if the same key exists it replaces the value of the key in place.
+	 *
+	 * @return old value if the key exists or null
+	 */
+	@Override
+	public V put(K key, V value) {
+		if (key == null || value == null)
+			throw new NullPointerException();
+
+		try {
+			return put(new Page(root), key, value);
+		} finally {
+			file.release();
+		}
+	}
+
+	private V put(Page node, K key, V value) {
+		if (node.isFull()) {
+			Page newRoot = newPage(false);
+			newRoot.setChildAt(0, root);
+			root = newRoot.id;
+			splitChild(newRoot, 0);
+			++height;
+			writeHeader();
+			node = newRoot;
+		}
+
+		while (node.isLeaf() == false) {
+			node = keep(node.id);
+			int index = node.childIndex(key);
+			Page child = new Page(node.childAt(index));
+			if (child.isFull()) {
+				splitChild(node, index);
+				if (key.compareTo(node.keyAt(index)) >= 0)
+					++index;
+				child = new Page(node.childAt(index));
+			}
+			node = child;
+		}
+
+		int index = node.indexOf(key);
+		if (index >= 0) {
+			V oldValue = node.valueAt(index);
+			node.setValueAt(index, value);
+			return oldValue;
+		}
+
+		node.insertAt(-index - 1, key, value);
+		++size;
+		++changed;
+		writeHeader();
+		return null;
+	}
+
+	@Override
+	public V remove(Object keyObj) {
+		if (keyObj == null)
+			return null;
+
+		try {
+			return remove(new Page(root), (K) keyObj);
+		} finally {
+			file.release();
+		}
+	}
+
+	private V remove(Page node, K key) {
+		while (node.isLeaf() == false) {
+			node = keep(node.id);
+			Page child = prepareChild(node, node.childIndex(key));
+			if (node.id == root && node.noOfKeys() == 0) {
+				// root lost its last separator joining its children
+				file.free(root);
+				root = child.id;
+				--height;
+				writeHeader();
+			}
+			node = child;
+		}
+
+		int index = node.indexOf(key);
+		if (index < 0)
+			return null;
+
+		V oldValue = node.valueAt(index);
+		node.removeAt(index);
+		--size;
+		++changed;
+		writeHeader();
+		return oldValue;
+	}
+
+	/**
+	 * replaces the value of an existing key without changing the structure so it does not affect iterators.
+	 */
+	V replaceValue(K key, V value) {
+		try {
+			Page leaf = findLeaf(key);
+			int index = leaf.indexOf(key);
+			if (index < 0)
+				return null;
+
+			V oldValue = leaf.valueAt(index);
+			leaf.setValueAt(index, value);
+			return oldValue;
+		} finally {
+			file.release();
+		}
+	}
+
+	/**
+	 * see {@link BPlusTreeSet}, a separator is copied from its slot without being decoded.
+	 *
+	 * @param parent which is not full
+	 * @param index of the full child
+	 */
+	private void splitChild(Page parent, int index) {
+		Page child = new Page(parent.childAt(index));
+		Page right = newPage(child.isLeaf());
+		int noOfKeys = child.noOfKeys();
+		Page separatorPage;
+		int separatorIndex;
+		if (child.isLeaf()) {
+			int half = LEAF_HALF_KEY;
+			moveKeys(child, half, right, 0, noOfKeys - half);
+			right.setNoOfKeys(noOfKeys - half);
+			right.setNext(child.next());
+			child.setNext(right.id);
+			child.setNoOfKeys(half);
+			separatorPage = right;
+			separatorIndex = 0;
+		} else {
+			int half = INNER_HALF_KEY;
+			moveKeys(child, half + 1, right, 0, noOfKeys - half - 1);
+			moveChildren(child, half + 1, right, 0, noOfKeys - half);
+			right.setNoOfKeys(noOfKeys - half - 1);
+			child.setNoOfKeys(half);
+			separatorPage = child; // the slot stays after the last key of child
+			separatorIndex = half;
+		}
+
+		int parentKeys = parent.noOfKeys();
+		moveKeys(parent, index, parent, index + 1, parentKeys - index);
+		moveChildren(parent, index + 1, parent, index + 2, parentKeys - index);
+		move(separatorPage, separatorPage.keyOffset(separatorIndex), parent, parent.keyOffset(index), keySize);
+		parent.setChildAt(index + 1, right.id);
+		parent.setNoOfKeys(parentKeys + 1);
+	}
+
+	/**
+	 * makes sure the child can lose a key by borrowing a key from a sibling or joining with a sibling.
+	 *
+	 * @return the child, or its left sibling if the child was joined to it.
+	 */
+	private Page prepareChild(Page parent, int index) {
+		Page child = new Page(parent.childAt(index));
+		if (child.noOfKeys() > child.minKeys())
+			return child;
+
+		++changed; // moves keys between leaves
+		int parentKeys = parent.noOfKeys();
+		Page left = index > 0 ? new Page(parent.childAt(index - 1)) : null;
+		Page right = index < parentKeys ? new Page(parent.childAt(index + 1)) : null;
+		if (left != null && left.noOfKeys() > left.minKeys()) {
+			borrowFromLeft(parent, index, left, child);
+			return child;
+		} else if (right != null && right.noOfKeys() > right.minKeys()) {
+			borrowFromRight(parent, index, child, right);
+			return child;
+		} else if (left != null) {
+			join(parent, index - 1, left, child);
+			return left;
+		}
+		join(parent, index, child, right);
+		return child;
+	}
+
+	private void borrowFromLeft(Page parent, int index, Page left, Page child) {
+		int last = left.noOfKeys() - 1;
+		int noOfKeys = child.noOfKeys();
+		moveKeys(child, 0, child, 1, noOfKeys);
+		if (child.isLeaf()) {
+			moveKeys(left, last, child, 0, 1);
+			move(left, left.keyOffset(last), parent, parent.keyOffset(index - 1), keySize);
+		} else {
+			moveChildren(child, 0, child, 1, noOfKeys + 1);
+			move(parent, parent.keyOffset(index - 1), child, child.keyOffset(0), keySize);
+			child.setChildAt(0, left.childAt(last + 1));
+			move(left, left.keyOffset(last), parent, parent.keyOffset(index - 1), keySize);
+		}
+		child.setNoOfKeys(noOfKeys + 1);
+		left.setNoOfKeys(last);
+	}
+
+	private void borrowFromRight(Page parent, int index, Page child, Page right) {
+		int noOfKeys = child.noOfKeys();
+		int rightKeys = right.noOfKeys();
+		if (child.isLeaf()) {
+			moveKeys(right, 0, child, noOfKeys, 1);
+			moveKeys(right, 1, right, 0, rightKeys - 1);
+			move(right, right.keyOffset(0), parent, parent.keyOffset(index), keySize);
+		} else {
+			move(parent, parent.keyOffset(index), child, child.keyOffset(noOfKeys), keySize);
+			child.setChildAt(noOfKeys + 1, right.childAt(0));
+			move(right, right.keyOffset(0), parent, parent.keyOffset(index), keySize);
+			moveKeys(right, 1, right, 0, rightKeys - 1);
+			moveChildren(right, 1, right, 0, rightKeys);
+		}
+		right.setNoOfKeys(rightKeys - 1);
+		child.setNoOfKeys(noOfKeys + 1);
+	}
+
+	/**
+	 * appends right page to left page, removes the separator and the right page from the parent and frees the right
+	 * page.
+	 */
+	private void join(Page parent, int separatorIndex, Page left, Page right) {
+		int leftKeys = left.noOfKeys();
+		int rightKeys = right.noOfKeys();
+		if (left.isLeaf()) {
+			moveKeys(right, 0, left, leftKeys, rightKeys);
+			left.setNext(right.next());
+			left.setNoOfKeys(leftKeys + rightKeys);
+		} else {
+			move(parent, parent.keyOffset(separatorIndex), left, left.keyOffset(leftKeys), keySize);
+			moveKeys(right, 0, left, leftKeys + 1, rightKeys);
+			moveChildren(right, 0, left, leftKeys + 1, rightKeys + 1);
+			left.setNoOfKeys(leftKeys + rightKeys + 1);
+		}
+
+		int parentKeys = parent.noOfKeys();
+		moveKeys(parent, separatorIndex + 1, parent, separatorIndex, parentKeys - separatorIndex - 1);
+		moveChildren(parent, separatorIndex + 2, parent, separatorIndex + 1, parentKeys - separatorIndex - 1);
+		parent.setNoOfKeys(parentKeys - 1);
+		file.free(right.id);
+	}
+
+	/**
+	 * moves keys, and values if they are leaves, from a page to a page which may be the same.
+	 */
+	private void moveKeys(Page from, int fromIndex, Page to, int toIndex, int length) {
+		if (length <= 0)
+			return;
+		move(from, from.keyOffset(fromIndex), to, to.keyOffset(toIndex), length * keySize);
+		if (from.isLeaf())
+			move(from, from.valueOffset(fromIndex), to, to.valueOffset(toIndex), length * valueSize);
+	}
+
+	private void moveChildren(Page from, int fromIndex, Page to, int toIndex, int length) {
+		if (length <= 0)
+			return;
+		move(from, from.childOffset(fromIndex), to, to.childOffset(toIndex), length * 4);
+	}
+
+	/**
+	 * copies through {@link #scratch} so the ranges can overlap.
+	 */
+	private void move(Page from, int fromOffset, Page to, int toOffset, int length) {
+		from.buffer.position(fromOffset);
+		from.buffer.get(scratch, 0, length);
+		to.buffer.position(toOffset);
+		to.buffer.put(scratch, 0, length);
+		file.markDirty(to.id);
+	}
+
+	@Override
+	public Set<java.util.Map.Entry<K, V>> entrySet() {
+		return new AbstractSet<java.util.Map.Entry<K, V>>() {
+			@Override
+			public Iterator<java.util.Map.Entry<K, V>> iterator() {
+				return new EntryIterator(MappedBTreeMap.this.iterator(null, null));
+			}
+
+			@Override
+			public int size() {
+				return MappedBTreeMap.this.size();
+			}
+		};
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super K, ? super V> action) {
+		forEach(null, null, action);
+	}
+
+	/**
+	 * calls the action for each entry from fromKey to toKey in order of keys, reading the leaves one after another.
+	 *
+	 * @param fromKey inclusive, null from the first key
+	 * @param toKey exclusive, null to the last key
+	 * @param action
+	 */
+	public void forEach(K fromKey, K toKey, BiConsumer<? super K, ? super V> action) {
+		KeyIterator itr = iterator(fromKey, toKey);
+		while (itr.hasNext()) {
+			K key = itr.next();
+			action.accept(key, itr.lastValue);
+		}
+	}
+
+	/**
+	 * @param fromKey inclusive, null from the first key
+	 * @param toKey exclusive, null to the last key
+	 * @return iterator of keys which keeps the value of the last key
+	 */
+	KeyIterator iterator(K fromKey, K toKey) {
+		try {
+			if (fromKey == null)
+				return new KeyIterator(firstLeaf(), 0, toKey);
+
+			Page leaf = findLeaf(fromKey);
+			int index = leaf.indexOf(fromKey);
+			return new KeyIterator(leaf, index >= 0 ? index : -index - 1, toKey);
+		} finally {
+			file.release();
+		}
+	}
+
+	/**
+	 * Iterator that reads the keys of a leaf and moves to its right sibling.
+	 */
+	class KeyIterator implements Iterator<K> {
+		/**
+		 * the leaf is not kept pinned between calls.
+		 */
+		int leafId;
+		int index;
+		final K toKey;
+		K nextKey;
+		/**
+		 * value of the key returned by the last next.
+		 */
+		V lastValue;
+		final int changedAt = changed;
+
+		KeyIterator(Page leaf, int index, K toKey) {
+			this.index = index;
+			this.toKey = toKey;
+			findNext(leaf);
+		}
+
+		private void findNext(Page leaf) {
+			while (leaf != null && index == leaf.noOfKeys()) {
+				int next = leaf.next();
+				file.evictFirst(leaf.id);
+				leaf = next == 0 ? null : new Page(next);
+				index = 0;
+			}
+			if (leaf != null)
+				leafId = leaf.id;
+			nextKey = leaf == null ? null : leaf.keyAt(index);
+			if (nextKey != null && toKey != null && nextKey.compareTo(toKey) >= 0)
+				nextKey = null;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return nextKey != null;
+		}
+
+		@Override
+		public K next() {
+			if (changedAt != changed)
+				throw new ConcurrentModificationException();
+			if (nextKey == null)
+				throw new NoSuchElementException();
+
+			try {
+				K key = nextKey;
+				Page leaf = new Page(leafId);
+				lastValue = leaf.valueAt(index++);
+				findNext(leaf);
+				return key;
+			} finally {
+				file.release();
+			}
+		}
+	}
+
+	class EntryIterator implements Iterator<java.util.Map.Entry<K, V>> {
+		final KeyIterator itr;
+
+		EntryIterator(KeyIterator itr) {
+			this.itr = itr;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return itr.hasNext();
+		}
+
+		@Override
+		public java.util.Map.Entry<K, V> next() {
+			K key = itr.next();
+			return new AbstractMap.SimpleEntry<K, V>(key, itr.lastValue) {
+				@Override
+				public V setValue(V value) {
+					replaceValue(key, value);
+					return super.setValue(value);
+				}
+			};
+		}
+	}
+
+	/**
+	 * view of a page. It reads and writes the buffer of the store directly, nothing is kept in it but where the page
+	 * is. It is valid until {@link PageStore#release()}.
+	 */
+	class Page {
+		final int id;
+		final ByteBuffer buffer;
+		final int base;
+
+		Page(int id) {
+			this.id = id;
+			this.buffer = file.buffer(id);
+			this.base = file.offset(id);
+		}
+
+		boolean isLeaf() {
+			return buffer.get(base) == 1;
+		}
+
+		int noOfKeys() {
+			return buffer.getChar(base + 2);
+		}
+
+		void setNoOfKeys(int noOfKeys) {
+			buffer.putChar(base + 2, (char) noOfKeys);
+			file.markDirty(id);
+		}
+
+		/**
+		 * @return the right sibling of a leaf, 0 if none.
+		 */
+		int next() {
+			return buffer.getInt(base + 4);
+		}
+
+		void setNext(int next) {
+			buffer.putInt(base + 4, next);
+			file.markDirty(id);
+		}
+
+		boolean isFull() {
+			return noOfKeys() == (isLeaf() ? LEAF_MAX_KEY : INNER_MAX_KEY);
+		}
+
+		int minKeys() {
+			return isLeaf() ? LEAF_HALF_KEY : MIN_INNER_KEY;
+		}
+
+		int keyOffset(int index) {
+			if (isLeaf())
+				return base + PAGE_HEADER + index * keySize;
+			return base + PAGE_HEADER + (INNER_MAX_KEY + 1) * 4 + index * keySize;
+		}
+
+		int valueOffset(int index) {
+			return base + PAGE_HEADER + LEAF_MAX_KEY * keySize + index * valueSize;
+		}
+
+		int childOffset(int index) {
+			return base + PAGE_HEADER + index * 4;
+		}
+
+		K keyAt(int index) {
+			buffer.position(keyOffset(index));
+			return keyCodec.read(buffer);
+		}
+
+		V valueAt(int index) {
+			buffer.position(valueOffset(index));
+			return valueCodec.read(buffer);
+		}
+
+		void setValueAt(int index, V value) {
+			buffer.position(valueOffset(index));
+			valueCodec.write(buffer, value);
+			file.markDirty(id);
+		}
+
+		int childAt(int index) {
+			return buffer.getInt(childOffset(index));
+		}
+
+		void setChildAt(int index, int child) {
+			buffer.putInt(childOffset(index), child);
+			file.markDirty(id);
+		}
+
+		/**
+		 * see {@link java.util.Arrays#binarySearch(Object[], Object)}.
+		 */
+		int indexOf(K key) {
+			int left = 0;
+			int right = noOfKeys() - 1;
+			while (left <= right) {
+				int middle = (left + right) >>> 1;
+				int diff = key.compareTo(keyAt(middle));
+				if (diff > 0)
+					left = middle + 1;
+				else if (diff < 0)
+					right = middle - 1;
+				else
+					return middle;
+			}
+			return -(left + 1);
+		}
+
+		int childIndex(K key) {
+			int index = indexOf(key);
+			return index >= 0 ? index + 1 : -index - 1;
+		}
+
+		void insertAt(int index, K key, V value) {
+			int noOfKeys = noOfKeys();
+			moveKeys(this, index, this, index + 1, noOfKeys - index);
+			buffer.position(keyOffset(index));
+			keyCodec.write(buffer, key);
+			setValueAt(index, value);
+			setNoOfKeys(noOfKeys + 1);
+		}
+
+		void removeAt(int index) {
+			int noOfKeys = noOfKeys();
+			moveKeys(this, index + 1, this, index, noOfKeys - index - 1);
+			setNoOfKeys(noOfKeys - 1);
+		}
+	}
+}
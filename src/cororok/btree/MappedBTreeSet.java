@@ -0,0 +1,112 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.AbstractSet;
+import java.util.Iterator;
+
+/**
+ * {@link BTreeSet} kept in a {@link PageStore}, a {@link MappedBTreeMap} whose values take no bytes so a leaf has only
+ * the slots of keys. Use {@link #offHeap(int, Codec)} to keep the keys in direct memory and free them by
+ * {@link #close()}. It is not thread safe.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class MappedBTreeSet<K extends Comparable<K>> extends AbstractSet<K> implements Closeable {
+	/**
+	 * value of every key which is not written.
+	 */
+	static final Codec<Boolean> PRESENT = new Codec<Boolean>() {
+		@Override
+		public int maxSize() {
+			return 0;
+		}
+
+		@Override
+		public void write(ByteBuffer buffer, Boolean value) {
+		}
+
+		@Override
+		public Boolean read(ByteBuffer buffer) {
+			return Boolean.TRUE;
+		}
+	};
+
+	final MappedBTreeMap<K, Boolean> map;
+
+	MappedBTreeSet(MappedBTreeMap<K, Boolean> map) {
+		this.map = map;
+	}
+
+	/**
+	 * opens the set in the file or creates it, see {@link MappedBTreeMap#open(Path, int, Codec, Codec)}.
+	 */
+	public static <K extends Comparable<K>> MappedBTreeSet<K> open(Path path, int pageSize, Codec<K> keyCodec)
+			throws IOException {
+		return new MappedBTreeSet<K>(MappedBTreeMap.open(path, pageSize, keyCodec, PRESENT));
+	}
+
+	/**
+	 * creates an empty set whose pages are in direct memory, see {@link OffHeapArena}.
+	 */
+	public static <K extends Comparable<K>> MappedBTreeSet<K> offHeap(int pageSize, Codec<K> keyCodec) {
+		return new MappedBTreeSet<K>(MappedBTreeMap.offHeap(pageSize, keyCodec, PRESENT));
+	}
+
+	@Override
+	public Iterator<K> iterator() {
+		return map.iterator(null, null);
+	}
+
+	@Override
+	public int size() {
+		return map.size();
+	}
+
+	public long longSize() {
+		return map.longSize();
+	}
+
+	public int height() {
+		return map.height();
+	}
+
+	@Override
+	public boolean contains(Object key) {
+		return map.containsKey(key);
+	}
+
+	@Override
+	public boolean add(K key) {
+		long oldSize = map.longSize();
+		map.put(key, Boolean.TRUE);
+		return map.longSize() != oldSize;
+	}
+
+	@Override
+	public boolean remove(Object key) {
+		return map.remove(key) != null;
+	}
+
+	@Override
+	public void clear() {
+		map.clear();
+	}
+
+	public void flush() throws IOException {
+		map.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		map.close();
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link PageStore} keeping pages in direct memory outside of the heap, so nodes of {@link MappedBTreeMap} are not
+ * objects and the GC does not mark them. Pages are allocated from segments of {@link #SEGMENT_SIZE} bytes, a segment is
+ * allocated when its first page is, and a page is referred to by its id, which is its offset divided by the page size.
+ * Freed pages are linked and reused like in {@link PageFile}.
+ * <p>
+ * {@link #close()} drops all segments at once. Direct memory is returned to the OS when the segments are collected,
+ * which costs the GC one object per segment. Nothing is written anywhere, so pages are lost on close. It is not thread
+ * safe.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class OffHeapArena implements PageStore {
+	static final int SEGMENT_SIZE = 1 << 24;
+
+	final int pageSize;
+	final int pageShift;
+	final int pagesPerSegment;
+	ByteBuffer[] segments = new ByteBuffer[4];
+	int pageCount = 1;
+	/**
+	 * first page of the free list, 0 if none. Each free page keeps the next one in its first 4 bytes.
+	 */
+	int freePage;
+	boolean closed;
+
+	/**
+	 * @param pageSize power of 2 from 512 to 65536
+	 */
+	public OffHeapArena(int pageSize) {
+		if (pageSize < 512 || pageSize > 65536 || Integer.bitCount(pageSize) != 1)
+			throw new IllegalArgumentException("pageSize should be a power of 2 from 512 to 65536, " + pageSize);
+
+		this.pageSize = pageSize;
+		this.pageShift = Integer.numberOfTrailingZeros(pageSize);
+		this.pagesPerSegment = SEGMENT_SIZE / pageSize;
+		segment(0).putInt(0, PageFile.MAGIC).putInt(4, pageSize);
+	}
+
+	/**
+	 * @return true, it is always empty when it is created.
+	 */
+	@Override
+	public boolean isCreated() {
+		return true;
+	}
+
+	@Override
+	public int pageSize() {
+		return pageSize;
+	}
+
+	@Override
+	public int pageCount() {
+		return pageCount;
+	}
+
+	/**
+	 * @return bytes of direct memory allocated.
+	 */
+	public long allocatedBytes() {
+		long bytes = 0;
+		for (ByteBuffer segment : segments) {
+			if (segment != null)
+				bytes += segment.capacity();
+		}
+		return bytes;
+	}
+
+	@Override
+	public ByteBuffer buffer(int pageId) {
+		return segment(pageId / pagesPerSegment);
+	}
+
+	@Override
+	public int offset(int pageId) {
+		return (pageId % pagesPerSegment) << pageShift;
+	}
+
+	/**
+	 * does nothing, pages are changed in place.
+	 */
+	@Override
+	public void markDirty(int pageId) {
+	}
+
+	/**
+	 * does nothing, segments are valid until it is closed.
+	 */
+	@Override
+	public void release() {
+	}
+
+	/**
+	 * does nothing, all pages stay in memory.
+	 */
+	@Override
+	public void evictFirst(int pageId) {
+	}
+
+	private ByteBuffer segment(int index) {
+		if (closed)
+			throw new IllegalStateException("closed");
+		if (index >= segments.length) {
+			ByteBuffer[] newSegments = new ByteBuffer[Math.max(index + 1, segments.length * 2)];
+			System.arraycopy(segments, 0, newSegments, 0, segments.length);
+			segments = newSegments;
+		}
+		ByteBuffer segment = segments[index];
+		if (segment == null) {
+			segment = ByteBuffer.allocateDirect(SEGMENT_SIZE);
+			segments[index] = segment;
+		}
+		return segment;
+	}
+
+	@Override
+	public int allocate() {
+		if (freePage != 0) {
+			int pageId = freePage;
+			freePage = buffer(pageId).getInt(offset(pageId));
+			return pageId;
+		}
+		if (pageCount == Integer.MAX_VALUE)
+			throw new IllegalStateException("no more pages");
+		return pageCount++;
+	}
+
+	@Override
+	public void free(int pageId) {
+		buffer(pageId).putInt(offset(pageId), freePage);
+		freePage = pageId;
+	}
+
+	/**
+	 * forgets all pages but the header and drops the segments after the first one.
+	 */
+	@Override
+	public void clear() {
+		for (int i = 1; i < segments.length; i++)
+			segments[i] = null;
+		pageCount = 1;
+		freePage = 0;
+	}
+
+	/**
+	 * does nothing, it has no storage device.
+	 */
+	@Override
+	public void flush() {
+	}
+
+	/**
+	 * drops all segments, the pages can't be used any more.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		segments = new ByteBuffer[0];
+	}
+}
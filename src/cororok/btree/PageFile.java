@@ -0,0 +1,212 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file of fixed size pages mapped into memory by {@link FileChannel#map}. It maps the file in segments of
+ * {@link #SEGMENT_SIZE} bytes when a page of a segment is used first, so opening a big file reads only the header and
+ * the OS page cache keeps the pages which are read. Page 0 is the header, its first {@link #HEADER_SIZE} bytes are for
+ * the file and the rest is for the user. Freed pages are linked from the header and reused.
+ * <p>
+ * The header is changed in the mapped memory as soon as a page is allocated or freed, so the file is consistent after
+ * the process exits without closing it. Changes are written to the file by the OS at any time, {@link #flush()} writes
+ * them all and waits. It is not thread safe.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class PageFile implements PageStore {
+	static final int MAGIC = 0x42545245; // BTRE
+	static final int SEGMENT_SIZE = 1 << 24;
+	/**
+	 * magic, page size, number of pages and the first free page.
+	 */
+	public static final int HEADER_SIZE = 16;
+
+	final int pageSize;
+	final int pageShift;
+	final int pagesPerSegment;
+	final FileChannel channel;
+	MappedByteBuffer[] segments = new MappedByteBuffer[4];
+	int pageCount;
+	/**
+	 * first page of the free list, 0 if none. Each free page keeps the next one in its first 4 bytes.
+	 */
+	int freePage;
+	final boolean created;
+
+	/**
+	 * opens the file or creates it if it does not exist or is empty.
+	 *
+	 * @param path
+	 * @param pageSize power of 2 from 512 to 65536, it should be the same as the one the file was created with.
+	 * @throws IOException
+	 */
+	public PageFile(Path path, int pageSize) throws IOException {
+		if (pageSize < 512 || pageSize > 65536 || Integer.bitCount(pageSize) != 1)
+			throw new IllegalArgumentException("pageSize should be a power of 2 from 512 to 65536, " + pageSize);
+
+		this.pageSize = pageSize;
+		this.pageShift = Integer.numberOfTrailingZeros(pageSize);
+		this.pagesPerSegment = SEGMENT_SIZE / pageSize;
+		this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE);
+		this.created = channel.size() == 0;
+
+		ByteBuffer header = segment(0);
+		if (created) {
+			pageCount = 1;
+			header.putInt(0, MAGIC);
+			header.putInt(4, pageSize);
+			writeHeader();
+		} else {
+			if (header.getInt(0) != MAGIC) {
+				channel.close();
+				throw new IOException("not a page file, " + path);
+			}
+			if (header.getInt(4) != pageSize) {
+				channel.close();
+				throw new IOException("page size is " + header.getInt(4) + " not " + pageSize);
+			}
+			pageCount = header.getInt(8);
+			freePage = header.getInt(12);
+		}
+	}
+
+	@Override
+	public boolean isCreated() {
+		return created;
+	}
+
+	@Override
+	public int pageSize() {
+		return pageSize;
+	}
+
+	@Override
+	public int pageCount() {
+		return pageCount;
+	}
+
+	/**
+	 * @param pageId
+	 * @return buffer of the segment having the page, see {@link #offset(int)}. Its position is not used by the file.
+	 */
+	@Override
+	public ByteBuffer buffer(int pageId) {
+		return segment(pageId / pagesPerSegment);
+	}
+
+	@Override
+	public int offset(int pageId) {
+		return (pageId % pagesPerSegment) << pageShift;
+	}
+
+	/**
+	 * does nothing, the OS writes changed pages.
+	 */
+	@Override
+	public void markDirty(int pageId) {
+	}
+
+	/**
+	 * does nothing, mapped segments are valid until it is closed.
+	 */
+	@Override
+	public void release() {
+	}
+
+	/**
+	 * does nothing, the OS decides which pages stay in memory.
+	 */
+	@Override
+	public void evictFirst(int pageId) {
+	}
+
+	private MappedByteBuffer segment(int index) {
+		if (index >= segments.length) {
+			MappedByteBuffer[] newSegments = new MappedByteBuffer[Math.max(index + 1, segments.length * 2)];
+			System.arraycopy(segments, 0, newSegments, 0, segments.length);
+			segments = newSegments;
+		}
+		MappedByteBuffer segment = segments[index];
+		if (segment == null) {
+			try {
+				segment = channel.map(FileChannel.MapMode.READ_WRITE, (long) index * SEGMENT_SIZE, SEGMENT_SIZE);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			segments[index] = segment;
+		}
+		return segment;
+	}
+
+	@Override
+	public int allocate() {
+		if (freePage != 0) {
+			int pageId = freePage;
+			freePage = buffer(pageId).getInt(offset(pageId));
+			writeHeader();
+			return pageId;
+		}
+		int pageId = pageCount++;
+		writeHeader();
+		return pageId;
+	}
+
+	@Override
+	public void free(int pageId) {
+		buffer(pageId).putInt(offset(pageId), freePage);
+		freePage = pageId;
+		writeHeader();
+	}
+
+	@Override
+	public void clear() {
+		pageCount = 1;
+		freePage = 0;
+		writeHeader();
+	}
+
+	private void writeHeader() {
+		ByteBuffer header = segment(0);
+		header.putInt(8, pageCount);
+		header.putInt(12, freePage);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		writeHeader();
+		for (MappedByteBuffer segment : segments) {
+			if (segment != null)
+				segment.force();
+		}
+		channel.force(true);
+	}
+
+	/**
+	 * flushes and closes the file. Mapped segments are released when they are collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (channel.isOpen() == false)
+			return;
+		try {
+			flush();
+		} finally {
+			channel.close();
+			segments = new MappedByteBuffer[0];
+		}
+	}
+}
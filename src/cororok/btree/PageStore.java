@@ -0,0 +1,80 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * file of fixed size pages used by {@link MappedBTreeMap}. Page 0 is the header, its first
+ * {@link PageFile#HEADER_SIZE} bytes are for the store and the rest is for the user. {@link PageFile} maps pages into
+ * memory, {@link BufferPool} reads them into a bounded number of buffers and {@link OffHeapArena} keeps them in direct
+ * memory without a file.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public interface PageStore extends Closeable {
+	/**
+	 * @return true if the file was created when it was opened.
+	 */
+	boolean isCreated();
+
+	int pageSize();
+
+	int pageCount();
+
+	/**
+	 * @param pageId
+	 * @return buffer having the page from {@link #offset(int)}, it is valid until {@link #release()}. Its position is
+	 *         not used by the store.
+	 */
+	ByteBuffer buffer(int pageId);
+
+	/**
+	 * @param pageId
+	 * @return offset of the page in its buffer.
+	 */
+	int offset(int pageId);
+
+	/**
+	 * tells the page was changed through its buffer.
+	 */
+	void markDirty(int pageId);
+
+	/**
+	 * tells the buffers returned until now are not used any more.
+	 */
+	void release();
+
+	/**
+	 * tells the page will not be used soon, like a leaf passed by a scan, so its memory can be reused first.
+	 */
+	void evictFirst(int pageId);
+
+	/**
+	 * @return id of a free page or a new page at the end. Its contents are not cleared.
+	 */
+	int allocate();
+
+	/**
+	 * @param pageId which is not used any more
+	 */
+	void free(int pageId);
+
+	/**
+	 * forgets all pages but the header.
+	 */
+	void clear();
+
+	/**
+	 * writes the header and all changed pages to the storage device and waits.
+	 *
+	 * @throws IOException
+	 */
+	void flush() throws IOException;
+}
@@ -0,0 +1,494 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * concurrent map which splits the key space into ranges. Each range, shard, is a {@link BTreeMap} with its own
+ * {@link StampedLock} so that writers on different ranges do not block each other and readers try an optimistic read
+ * before they take the read lock.
+ * <p>
+ * A shard is split at its median key when it has more than maxShardSize keys, or when it gets more than twice its
+ * share of writes. Two neighbor shards are merged when they become small. Shards are replaced, not changed, when they
+ * are split or merged, a replaced shard is marked retired and operations which find it retry with the new shards.
+ * New shards are built bottom up from the sorted entries of the old ones. Iterators are weakly consistent and return
+ * keys in order, a shard at a time.
+ * <p>
+ * Splitting a hot shard at its median does not help ascending keys: every later write goes to the new right shard, so
+ * sequential inserts keep going to the last shard however many shards there are.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class ShardedBTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V> {
+	/**
+	 * a shard checks if it is hot every this number of writes.
+	 */
+	static final int HOT_CHECK_INTERVAL = 4096;
+	/**
+	 * of shards built by split and merge, it leaves room for the writes which follow.
+	 */
+	static final double FILL_FACTOR = 0.75;
+
+	final int maxSizeOfKeys;
+	final int maxShardSize;
+	final int minShardSize;
+
+	/**
+	 * sorted by lowerBound, replaced as a whole when shards are split or merged.
+	 */
+	volatile Shard[] shards;
+	final ReentrantLock rebalanceLock = new ReentrantLock();
+	/**
+	 * changed under the write lock of the shard so that clear, which holds all of them, can reset it.
+	 */
+	final LongAdder size = new LongAdder();
+	final LongAdder totalWrites = new LongAdder();
+
+	/**
+	 * @param maxSizeOfKeys see {@link BTreeSet#BTreeSet(int)}
+	 * @param maxShardSize a shard which has more keys than this is split.
+	 */
+	public ShardedBTreeMap(int maxSizeOfKeys, int maxShardSize) {
+		if (maxShardSize < 16)
+			throw new IllegalArgumentException("must be 16 or larger");
+
+		this.maxSizeOfKeys = maxSizeOfKeys;
+		this.maxShardSize = maxShardSize;
+		this.minShardSize = maxShardSize / 8;
+		this.shards = (Shard[]) java.lang.reflect.Array.newInstance(Shard.class, 1);
+		this.shards[0] = new Shard(null);
+	}
+
+	@Override
+	public Set<java.util.Map.Entry<K, V>> entrySet() {
+		return new EntrySet();
+	}
+
+	@Override
+	public int size() {
+		return (int) size.sum();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size.sum() == 0;
+	}
+
+	public int noOfShards() {
+		return shards.length;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public V get(Object keyObj) {
+		if (keyObj == null)
+			return null;
+
+		K key = (K) keyObj;
+		while (true) {
+			Shard[] current = shards;
+			Shard shard = current[indexOfShard(current, key)];
+			long stamp = shard.lock.tryOptimisticRead();
+			if (stamp != 0) {
+				try {
+					V value = shard.map.get(key);
+					boolean retired = shard.retired;
+					if (shard.lock.validate(stamp)) {
+						if (retired)
+							continue;
+						return value;
+					}
+				} catch (RuntimeException e) {
+					// a torn read of a node that was being changed, or a real error if the shard is still valid.
+					if (shard.lock.validate(stamp))
+						throw e;
+				}
+			}
+
+			stamp = shard.lock.readLock();
+			try {
+				if (shard.retired)
+					continue;
+				return shard.map.get(key);
+			} finally {
+				shard.lock.unlockRead(stamp);
+			}
+		}
+	}
+
+	/**
+	 * @param key must not be null
+	 * @param value must not be null
+	 * @return old value or null if it didn't have the key.
+	 */
+	@Override
+	public V put(K key, V value) {
+		if (key == null || value == null)
+			throw new NullPointerException();
+
+		while (true) {
+			Shard[] current = shards;
+			Shard shard = current[indexOfShard(current, key)];
+			V oldValue;
+			boolean isHot;
+			long stamp = shard.lock.writeLock();
+			try {
+				if (shard.retired)
+					continue;
+
+				oldValue = shard.map.put(key, value);
+				isHot = ++shard.writes % HOT_CHECK_INTERVAL == 0;
+				if (oldValue == null)
+					size.increment();
+			} finally {
+				shard.lock.unlockWrite(stamp);
+			}
+
+			totalWrites.increment();
+			if (oldValue == null) {
+				if (shard.map.size() > maxShardSize || (isHot && isHot(shard)))
+					split(shard);
+			}
+			return oldValue;
+		}
+	}
+
+	@Override
+	public V remove(Object keyObj) {
+		if (keyObj == null)
+			return null;
+
+		K key = (K) keyObj;
+		while (true) {
+			Shard[] current = shards;
+			Shard shard = current[indexOfShard(current, key)];
+			V oldValue;
+			long stamp = shard.lock.writeLock();
+			try {
+				if (shard.retired)
+					continue;
+
+				oldValue = shard.map.remove(key);
+				++shard.writes;
+				if (oldValue != null)
+					size.decrement();
+			} finally {
+				shard.lock.unlockWrite(stamp);
+			}
+
+			totalWrites.increment();
+			if (oldValue != null) {
+				if (shard.map.size() < minShardSize)
+					merge(shard);
+			}
+			return oldValue;
+		}
+	}
+
+	@Override
+	public void clear() {
+		rebalanceLock.lock();
+		try {
+			Shard[] oldShards = shards;
+			long[] stamps = new long[oldShards.length];
+			for (int i = 0; i < oldShards.length; i++) {
+				stamps[i] = oldShards[i].lock.writeLock();
+			}
+
+			Shard[] newShards = (Shard[]) java.lang.reflect.Array.newInstance(Shard.class, 1);
+			newShards[0] = new Shard(null);
+			shards = newShards;
+			size.reset();
+
+			for (int i = 0; i < oldShards.length; i++) {
+				oldShards[i].retired = true;
+				oldShards[i].lock.unlockWrite(stamps[i]);
+			}
+		} finally {
+			rebalanceLock.unlock();
+		}
+	}
+
+	/**
+	 * @param shards
+	 * @param key
+	 * @return index of the last shard whose lower bound is equal to or less than the key.
+	 */
+	int indexOfShard(Shard[] shards, K key) {
+		int left = 1;
+		int right = shards.length - 1;
+		while (left <= right) {
+			int middle = (left + right) >>> 1;
+			if (key.compareTo(shards[middle].lowerBound) >= 0)
+				left = middle + 1;
+			else
+				right = middle - 1;
+		}
+		return left - 1;
+	}
+
+	/**
+	 * a shard is hot if it got more than twice of its share of all writes since it was created.
+	 */
+	private boolean isHot(Shard shard) {
+		long writesSinceCreated = totalWrites.sum() - shard.totalWritesAtCreation;
+		return shard.map.size() >= minShardSize * 2 && shard.writes * (long) shards.length > writesSinceCreated * 2;
+	}
+
+	/**
+	 * replaces the shard with two shards divided at its median key.
+	 */
+	private void split(Shard shard) {
+		rebalanceLock.lock();
+		try {
+			if (shard.retired)
+				return;
+
+			long stamp = shard.lock.writeLock();
+			try {
+				int half = shard.map.size() / 2;
+				if (half == 0)
+					return;
+
+				ArrayList<java.util.Map.Entry<K, V>> entries = new ArrayList<java.util.Map.Entry<K, V>>(
+						shard.map.entrySet());
+				Shard left = new Shard(shard.lowerBound, build(entries.subList(0, half)));
+				Shard right = new Shard(entries.get(half).getKey(), build(entries.subList(half, entries.size())));
+
+				replace(indexOfShard(shards, shard), 1, left, right);
+				shard.retired = true;
+			} finally {
+				shard.lock.unlockWrite(stamp);
+			}
+		} finally {
+			rebalanceLock.unlock();
+		}
+	}
+
+	/**
+	 * merges a small shard with its smaller neighbor if they are small enough together.
+	 */
+	private void merge(Shard shard) {
+		// checks without the lock first not to make removes wait for each other
+		if (leftIndexToMerge(shards, shard) < 0)
+			return;
+
+		rebalanceLock.lock();
+		try {
+			int leftIndex = leftIndexToMerge(shards, shard);
+			if (leftIndex < 0)
+				return;
+
+			Shard left = shards[leftIndex];
+			Shard right = shards[leftIndex + 1];
+			long leftStamp = left.lock.writeLock();
+			long rightStamp = right.lock.writeLock();
+			try {
+				if (left.map.size() + right.map.size() > maxShardSize / 2)
+					return;
+
+				ArrayList<java.util.Map.Entry<K, V>> entries = new ArrayList<java.util.Map.Entry<K, V>>(
+						left.map.size() + right.map.size());
+				entries.addAll(left.map.entrySet());
+				entries.addAll(right.map.entrySet());
+				Shard merged = new Shard(left.lowerBound, build(entries));
+
+				replace(leftIndex, 2, merged, null);
+				left.retired = true;
+				right.retired = true;
+			} finally {
+				right.lock.unlockWrite(rightStamp);
+				left.lock.unlockWrite(leftStamp);
+			}
+		} finally {
+			rebalanceLock.unlock();
+		}
+	}
+
+	/**
+	 * @param sortedEntries
+	 * @return map built bottom up in O(n), see {@link BTreeMap#build(int, double, Iterator)}.
+	 */
+	private BTreeMap<K, V> build(java.util.List<java.util.Map.Entry<K, V>> sortedEntries) {
+		return BTreeMap.build(maxSizeOfKeys, FILL_FACTOR, sortedEntries.iterator());
+	}
+
+	/**
+	 * @return index of the left one of the shard and its smaller neighbor or -1 if they are too big to merge.
+	 */
+	private int leftIndexToMerge(Shard[] shards, Shard shard) {
+		if (shard.retired || shards.length == 1)
+			return -1;
+
+		int index = indexOfShard(shards, shard);
+		if (index < 0)
+			return -1;
+
+		int leftIndex;
+		if (index == 0)
+			leftIndex = 0;
+		else if (index == shards.length - 1)
+			leftIndex = index - 1;
+		else
+			leftIndex = shards[index - 1].map.size() <= shards[index + 1].map.size() ? index - 1 : index;
+
+		if (shards[leftIndex].map.size() + shards[leftIndex + 1].map.size() > maxShardSize / 2)
+			return -1;
+		return leftIndex;
+	}
+
+	/**
+	 * @return index of the shard or -1 if it is not in the shards.
+	 */
+	private int indexOfShard(Shard[] shards, Shard shard) {
+		int index = shard.lowerBound == null ? 0 : indexOfShard(shards, shard.lowerBound);
+		return shards[index] == shard ? index : -1;
+	}
+
+	/**
+	 * publishes a new array of shards in which noOfOld shards from index are replaced with first and second.
+	 *
+	 * @param second null if it replaces with one shard
+	 */
+	private void replace(int index, int noOfOld, Shard first, Shard second) {
+		Shard[] oldShards = shards;
+		int noOfNew = second == null ? 1 : 2;
+		Shard[] newShards = (Shard[]) java.lang.reflect.Array.newInstance(Shard.class,
+				oldShards.length - noOfOld + noOfNew);
+		System.arraycopy(oldShards, 0, newShards, 0, index);
+		newShards[index] = first;
+		if (second != null)
+			newShards[index + 1] = second;
+		System.arraycopy(oldShards, index + noOfOld, newShards, index + noOfNew, oldShards.length - index - noOfOld);
+		shards = newShards;
+	}
+
+	/**
+	 * keys equal to or greater than lowerBound and less than lowerBound of the next shard.
+	 */
+	class Shard {
+		final K lowerBound;
+		final BTreeMap<K, V> map;
+		final StampedLock lock = new StampedLock();
+		final long totalWritesAtCreation = totalWrites.sum();
+		/**
+		 * changed under the write lock.
+		 */
+		int writes;
+		volatile boolean retired;
+
+		Shard(K lowerBound) {
+			this(lowerBound, new BTreeMap<K, V>(maxSizeOfKeys));
+		}
+
+		Shard(K lowerBound, BTreeMap<K, V> map) {
+			this.lowerBound = lowerBound;
+			this.map = map;
+		}
+	}
+
+	class EntrySet extends AbstractSet<java.util.Map.Entry<K, V>> {
+		@Override
+		public Iterator<java.util.Map.Entry<K, V>> iterator() {
+			return new EntryIterator();
+		}
+
+		@Override
+		public int size() {
+			return ShardedBTreeMap.this.size();
+		}
+	}
+
+	/**
+	 * copies a shard at a time under its read lock. If the next shard has been split or merged it finds the current
+	 * shard of the lower bound and skips keys less than it.
+	 */
+	class EntryIterator implements Iterator<java.util.Map.Entry<K, V>> {
+		final ArrayList<java.util.Map.Entry<K, V>> buffer = new ArrayList<java.util.Map.Entry<K, V>>();
+		int index = 0;
+		/**
+		 * lower bound of the next shard, null for the first.
+		 */
+		K from;
+		boolean isLastShard;
+		K lastKey;
+
+		EntryIterator() {
+			readShard();
+		}
+
+		private void readShard() {
+			buffer.clear();
+			index = 0;
+			while (isLastShard == false) {
+				Shard[] current = shards;
+				int i = from == null ? 0 : indexOfShard(current, from);
+				Shard shard = current[i];
+				long stamp = shard.lock.readLock();
+				try {
+					if (shard.retired)
+						continue;
+
+					for (java.util.Map.Entry<K, V> entry : shard.map.entrySet()) {
+						if (from == null || entry.getKey().compareTo(from) >= 0)
+							buffer.add(new AbstractMap.SimpleImmutableEntry<K, V>(entry.getKey(), entry.getValue()));
+					}
+
+					if (i + 1 < current.length)
+						from = current[i + 1].lowerBound;
+					else
+						isLastShard = true;
+				} finally {
+					shard.lock.unlockRead(stamp);
+				}
+
+				if (buffer.size() > 0)
+					return;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return index < buffer.size();
+		}
+
+		@Override
+		public java.util.Map.Entry<K, V> next() {
+			if (index >= buffer.size())
+				throw new NoSuchElementException();
+
+			java.util.Map.Entry<K, V> entry = buffer.get(index++);
+			if (index == buffer.size())
+				readShard();
+
+			lastKey = entry.getKey();
+			return entry;
+		}
+
+		@Override
+		public void remove() {
+			if (lastKey == null)
+				throw new IllegalStateException();
+
+			ShardedBTreeMap.this.remove(lastKey);
+			lastKey = null;
+		}
+	}
+}
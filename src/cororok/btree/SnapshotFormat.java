@@ -0,0 +1,209 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+/**
+ * binary format of {@link BTreeSet#writeTo(WritableByteChannel, Codec)} and
+ * {@link BTreeMap#writeTo(WritableByteChannel, Codec, Codec)}: magic, version, 1 if it has values, the number of keys,
+ * the keys in ascending order each followed by its value, and CRC32 of the keys and values. Keys and values are
+ * written by codecs one after another without padding, through a direct buffer of {@link #BUFFER_SIZE} bytes.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+final class SnapshotFormat {
+	static final int MAGIC = 0x42545353; // BTSS
+	static final byte VERSION = 1;
+	static final int HEADER_SIZE = 4 + 1 + 1 + 8;
+	static final int BUFFER_SIZE = 1 << 20;
+
+	private SnapshotFormat() {
+	}
+
+	/**
+	 * @param valueCodec null if the set does not have values
+	 */
+	static <K extends Comparable<K>, V> void write(WritableByteChannel channel, BTreeSet<K> set, Codec<K> keyCodec,
+			Codec<V> valueCodec) throws IOException {
+		int entrySize = keyCodec.maxSize() + (valueCodec == null ? 0 : valueCodec.maxSize());
+		ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, entrySize + 4));
+		CRC32 crc = new CRC32();
+		buffer.putInt(MAGIC);
+		buffer.put(VERSION);
+		buffer.put((byte) (valueCodec == null ? 0 : 1));
+		buffer.putLong(set.size());
+		int checked = buffer.position();
+
+		BTreeSet<K>.KeyIterator itr = set.new KeyIterator();
+		while (itr.hasNext()) {
+			if (buffer.remaining() < entrySize) {
+				update(crc, buffer, checked);
+				writeFully(channel, buffer);
+				checked = 0;
+			}
+			keyCodec.write(buffer, itr.next());
+			if (valueCodec != null)
+				valueCodec.write(buffer, (V) itr.lastValue);
+		}
+		update(crc, buffer, checked);
+		if (buffer.remaining() < 4)
+			writeFully(channel, buffer);
+		buffer.putInt((int) crc.getValue());
+		writeFully(channel, buffer);
+	}
+
+	/**
+	 * loads keys and values written by {@link #write} to the empty set bottom up without searching it.
+	 */
+	static <K extends Comparable<K>, V> void read(ReadableByteChannel channel, BTreeSet<K> set, double fillFactor,
+			Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+		Input input = new Input(channel, keyCodec.maxSize() + (valueCodec == null ? 0 : valueCodec.maxSize()));
+		if (input.fill(HEADER_SIZE) == false || input.buffer.getInt() != MAGIC)
+			throw new IOException("not a snapshot");
+		ByteBuffer buffer = input.buffer;
+		if (buffer.get() != VERSION)
+			throw new IOException("unknown version of snapshot");
+		if ((buffer.get() == 1) != (valueCodec != null))
+			throw new IOException(valueCodec == null ? "snapshot has values" : "snapshot has no values");
+		long size = buffer.getLong();
+		input.checked = buffer.position();
+
+		// load reads the key and the value at once so one entry is used for all
+		SimpleEntry<K, V> entry = new SimpleEntry<K, V>();
+		Iterator<Object> sorted = new Iterator<Object>() {
+			long read;
+
+			@Override
+			public boolean hasNext() {
+				return read < size;
+			}
+
+			@Override
+			public Object next() {
+				if (read == size)
+					throw new NoSuchElementException();
+				try {
+					// the last entries can be shorter than entrySize
+					input.fill(input.entrySize);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				++read;
+				K key = keyCodec.read(buffer);
+				if (valueCodec == null)
+					return key;
+				entry.key = key;
+				entry.value = valueCodec.read(buffer);
+				return entry;
+			}
+		};
+
+		try {
+			set.load(sorted, fillFactor);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			throw new IOException("broken snapshot", e);
+		}
+		update(input.crc, buffer, input.checked);
+		if (input.fill(4) == false || buffer.getInt() != (int) input.crc.getValue())
+			throw new IOException("broken snapshot, wrong checksum");
+	}
+
+	/**
+	 * adds bytes from the checked position to the position of the buffer.
+	 */
+	static void update(CRC32 crc, ByteBuffer buffer, int checked) {
+		ByteBuffer bytes = buffer.duplicate();
+		bytes.limit(bytes.position());
+		bytes.position(checked);
+		crc.update(bytes);
+	}
+
+	/**
+	 * writes what is written to the buffer and clears it.
+	 */
+	static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * buffer being read from a channel whose read bytes are added to the checksum before they are compacted.
+	 */
+	static class Input {
+		final ReadableByteChannel channel;
+		final ByteBuffer buffer;
+		final int entrySize;
+		final CRC32 crc = new CRC32();
+		/**
+		 * read bytes before it are added to crc.
+		 */
+		int checked;
+
+		Input(ReadableByteChannel channel, int entrySize) {
+			this.channel = channel;
+			this.entrySize = entrySize;
+			this.buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, entrySize + 4));
+			buffer.flip();
+		}
+
+		/**
+		 * reads from the channel until the buffer has the bytes remaining.
+		 *
+		 * @return false if the channel ends before.
+		 */
+		boolean fill(int bytes) throws IOException {
+			if (buffer.remaining() >= bytes)
+				return true;
+
+			update(crc, buffer, checked);
+			checked = 0;
+			buffer.compact();
+			while (buffer.position() < bytes) {
+				if (channel.read(buffer) < 0) {
+					buffer.flip();
+					return false;
+				}
+			}
+			buffer.flip();
+			return true;
+		}
+	}
+
+	static class SimpleEntry<K, V> implements Map.Entry<K, V> {
+		K key;
+		V value;
+
+		@Override
+		public K getKey() {
+			return key;
+		}
+
+		@Override
+		public V getValue() {
+			return value;
+		}
+
+		@Override
+		public V setValue(V value) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
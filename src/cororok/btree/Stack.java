@@ -52,6 +52,14 @@ public class Stack<T> {
 		return array[--point];
 	}
 
+	/**
+	 * @param index from the bottom
+	 * @return element at the index without removing it.
+	 */
+	public T get(int index) {
+		return array[index];
+	}
+
 	public int size() {
 		return point;
 	}
@@ -0,0 +1,166 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * {@link BTreeMap} for String keys sharing long prefixes, see {@link StringBTreeSet}. Values are kept in a parallel
+ * Object[] of each node. Entries are created only when it iterates {@link #entrySet()}.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class StringBTreeMap<V> extends AbstractMap<String, V> {
+	StringBTreeSet set;
+
+	public StringBTreeMap(int maxKey) {
+		this.set = new StringBTreeSet(maxKey, true);
+	}
+
+	@Override
+	public Set<java.util.Map.Entry<String, V>> entrySet() {
+		return new EntrySet();
+	}
+
+	@Override
+	public Set<String> keySet() {
+		return set;
+	}
+
+	@Override
+	public int size() {
+		return set.size();
+	}
+
+	@Override
+	public void clear() {
+		set.clear();
+	}
+
+	@Override
+	public V put(String key, V value) {
+		return (V) set.put(key, value);
+	}
+
+	@Override
+	public V get(Object key) {
+		if (key instanceof String == false)
+			return null;
+
+		return (V) set.getValue((String) key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return set.contains(key);
+	}
+
+	@Override
+	public V remove(Object key) {
+		if (key instanceof String == false)
+			return null;
+
+		return (V) set.removeKey((String) key);
+	}
+
+	class KVEntity implements java.util.Map.Entry<String, V> {
+		final String key;
+		V value;
+
+		KVEntity(String key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public String getKey() {
+			return key;
+		}
+
+		@Override
+		public V getValue() {
+			return value;
+		}
+
+		@Override
+		public V setValue(V value) {
+			V oldValue = (V) set.replaceValue(key, value);
+			this.value = value;
+			return oldValue;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof java.util.Map.Entry == false)
+				return false;
+
+			java.util.Map.Entry<?, ?> other = (java.util.Map.Entry<?, ?>) obj;
+			return getKey().equals(other.getKey())
+					&& (value == null ? other.getValue() == null : value.equals(other.getValue()));
+		}
+
+		@Override
+		public int hashCode() {
+			return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + value;
+		}
+	}
+
+	class EntrySet extends AbstractSet<java.util.Map.Entry<String, V>> {
+		@Override
+		public Iterator<java.util.Map.Entry<String, V>> iterator() {
+			return new EntryIterator((StringBTreeSet.KeyIterator) set.iterator());
+		}
+
+		@Override
+		public int size() {
+			return set.size();
+		}
+	}
+
+	class EntryIterator implements Iterator<java.util.Map.Entry<String, V>> {
+		StringBTreeSet.KeyIterator itr;
+
+		EntryIterator(StringBTreeSet.KeyIterator itr) {
+			this.itr = itr;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return itr.hasNext();
+		}
+
+		@Override
+		public java.util.Map.Entry<String, V> next() {
+			String key = itr.next();
+			return new KVEntity(key, (V) itr.lastValue);
+		}
+
+		@Override
+		public void remove() {
+			itr.remove();
+		}
+	}
+
+	public int height() {
+		return set.height();
+	}
+
+	/**
+	 * @return number of chars kept in all nodes, see {@link StringBTreeSet#charCount()}.
+	 */
+	public long charCount() {
+		return set.charCount();
+	}
+}
@@ -0,0 +1,1046 @@
+/*
+ * GNU GENERAL PUBLIC LICENSE
+ Version 2, June 1991
+
+ */
+package cororok.btree;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * {@link BTreeSet} for String keys sharing long prefixes. Each node keeps the prefix shared by its keys once and the
+ * rest of each key, the suffix, in one char[] with the end of each suffix in an int[], so a node has 3 arrays instead
+ * of a String per key. A search compares a key with the prefix once per node and then compares only suffixes in the
+ * binary search. Keys are compared like {@link String#compareTo(String)}.
+ * <p>
+ * A node finds the longest prefix when it is split or joined, adding a key which does not have the prefix shortens it.
+ * Keys are created from the prefix and the suffix when they are returned. If it is created by {@link StringBTreeMap}
+ * each node keeps values in an Object[] parallel to the keys.
+ *
+ * @author songduk.park cororok@gmail.com
+ */
+public class StringBTreeSet extends AbstractSet<String> {
+	static final char[] NO_CHARS = new char[0];
+
+	int count = 0;
+	final int MAX_KEY;
+	final int HALF_KEY;
+	final int CENTER_KEY;
+	final int CENTER_CHILDREN;
+	final int MAX_CHILDREN;
+	final int HALF_CHILDREN;
+	final boolean hasValues;
+
+	Node root;
+	int size;
+	int height = 1;
+	int changed = 0;
+
+	Stack<Node> addStack = new Stack<Node>();
+	Stack<WrappedNode> deleteStack = new Stack<WrappedNode>();
+	Stack<WrappedNode> minStack = new Stack<WrappedNode>();
+	Stack<WrappedNode> maxStack = new Stack<WrappedNode>();
+	/**
+	 * keys and values of a node being split.
+	 */
+	final String[] splitKeys;
+	final Object[] splitValues;
+
+	public StringBTreeSet(int maxSizeOfKeys) {
+		this(maxSizeOfKeys, false);
+	}
+
+	StringBTreeSet(int maxSizeOfKeys, boolean hasValues) {
+		this.MAX_KEY = maxSizeOfKeys;
+		this.MAX_CHILDREN = maxSizeOfKeys + 1;
+		this.HALF_CHILDREN = (MAX_CHILDREN + 1) / 2;
+		this.HALF_KEY = MAX_KEY / 2;
+		this.CENTER_KEY = maxSizeOfKeys / 2 - 1;
+		this.CENTER_CHILDREN = CENTER_KEY + 1;
+		this.hasValues = hasValues;
+		this.splitKeys = new String[MAX_KEY + 1];
+		this.splitValues = new Object[MAX_KEY + 1];
+
+		this.root = new Node();
+	}
+
+	@Override
+	public Iterator<String> iterator() {
+		return new KeyIterator();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	public int height() {
+		return height;
+	}
+
+	@Override
+	public boolean contains(final Object keyObj) {
+		if (keyObj instanceof String == false)
+			return false;
+
+		String key = (String) keyObj;
+		Node node = root;
+		int index = 0;
+		while (true) {
+			index = node.indexOfGreatestLessThan(key);
+			if (index < 0)
+				return true;
+			else if (node.isLeaf())
+				return false;
+			else
+				node = node.childAt(index);
+		}
+	}
+
+	/**
+	 * @param key
+	 * @return value of the key, null if it can't find the key.
+	 */
+	Object getValue(final String key) {
+		Node node = root;
+		int index = 0;
+		while (true) {
+			index = node.indexOfGreatestLessThan(key);
+			if (index < 0)
+				return node.values[node.convertToRealIndex(index)];
+			else if (node.isLeaf())
+				return null;
+			else
+				node = node.childAt(index);
+		}
+	}
+
+	/**
+	 * @return number of chars kept in all nodes, prefixes and suffixes.
+	 */
+	public long charCount() {
+		return charCount(root);
+	}
+
+	private long charCount(Node node) {
+		long chars = node.prefix.length + node.used();
+		for (int i = 0; i < node.noOfChildren; i++)
+			chars += charCount(node.childAt(i));
+		return chars;
+	}
+
+	@Override
+	public void clear() {
+		this.root = new Node();
+		this.size = 0;
+		this.height = 1;
+		++changed;
+	}
+
+	@Override
+	public boolean add(String newKey) {
+		int oldSize = size;
+		put(newKey, null);
+		return size != oldSize;
+	}
+
+	/**
+	 * if the same key exists it replaces the value of the key and does not add a newKey.
+	 *
+	 * @param newKey
+	 * @param newValue ignored if it does not have values.
+	 * @return old value if the key exists or null
+	 */
+	Object put(String newKey, Object newValue) {
+		if (newKey == null)
+			throw new NullPointerException();
+
+		addStack.reset();
+		int indexOfGreatestLessThan = 0;
+		Node currentNode = root;
+		while (true) { // build a stack until leap
+			indexOfGreatestLessThan = currentNode.indexOfGreatestLessThan(newKey);
+			if (indexOfGreatestLessThan < 0) {
+				// fond old one
+				if (hasValues == false)
+					return null;
+
+				int realIndex = currentNode.convertToRealIndex(indexOfGreatestLessThan);
+				Object oldValue = currentNode.values[realIndex];
+				currentNode.values[realIndex] = newValue;
+				++changed;
+				return oldValue;
+			}
+			addStack.add(currentNode);
+			if (currentNode.isLeaf())
+				break;
+			currentNode = currentNode.childAt(indexOfGreatestLessThan);
+		}
+
+		++size;
+		++changed;
+		addFromTheBotton(newKey, newValue);
+		return null;
+	}
+
+	/**
+	 * replaces the value of an existing key without changing the structure so it does not affect iterators.
+	 *
+	 * @param key
+	 * @param newValue
+	 * @return old value or null if it can't find the key
+	 */
+	Object replaceValue(String key, Object newValue) {
+		Node node = root;
+		int index = 0;
+		while (true) {
+			index = node.indexOfGreatestLessThan(key);
+			if (index < 0) {
+				int realIndex = node.convertToRealIndex(index);
+				Object oldValue = node.values[realIndex];
+				node.values[realIndex] = newValue;
+				return oldValue;
+			} else if (node.isLeaf())
+				return null;
+			else
+				node = node.childAt(index);
+		}
+	}
+
+	private void addFromTheBotton(String newKey, Object newValue) {
+		Node currentNode = null;
+		WrappedNode wrappedNode = new WrappedNode();
+		while (addStack.size() > 0) {
+			currentNode = addStack.pop();
+			wrappedNode = currentNode.add(newKey, newValue, wrappedNode.node);
+			if (wrappedNode == null) // no overflow
+				return;
+			// was overflowed so need to add it to the parent.
+			newKey = wrappedNode.key;
+			newValue = wrappedNode.value;
+		}
+
+		// if top has a node it has to create a new root
+		createNewRoot(currentNode, wrappedNode);
+	}
+
+	private void createNewRoot(Node currentNode, WrappedNode wrappedNode) {
+		Node newRoot = new Node();
+		newRoot.insertKeyAt(0, wrappedNode.key, wrappedNode.value);
+		newRoot.initChildren();
+		newRoot.setChildAt(0, currentNode);
+		newRoot.setChildAt(1, wrappedNode.node);
+		newRoot.noOfChildren = 2;
+
+		this.root = newRoot;
+		++height;
+	}
+
+	@Override
+	public boolean remove(Object keyObj) {
+		if (keyObj instanceof String == false)
+			return false;
+
+		int oldSize = size;
+		removeKey((String) keyObj);
+		return size != oldSize;
+	}
+
+	/**
+	 * @param key
+	 * @return value of the removed key or null if it doesn't find the key or does not have values.
+	 */
+	Object removeKey(String key) {
+		deleteStack.reset();
+		int indexOfGreatestLessThan = 0;
+		Object oldValue = null;
+		Node currentNode = root;
+		while (true) {
+			indexOfGreatestLessThan = currentNode.indexOfGreatestLessThan(key);
+			WrappedNode wrapper = new WrappedNode(currentNode);
+			if (indexOfGreatestLessThan < 0) {// found
+				wrapper.index = currentNode.convertToRealIndex(indexOfGreatestLessThan);
+				deleteStack.add(wrapper);
+				if (hasValues)
+					oldValue = currentNode.values[wrapper.index];
+
+				// if the found key is leaf, delete the key.
+				if (currentNode.isLeaf()) {
+					currentNode.removeKeyAt(wrapper.index);
+				} else {
+					overwriteWithLeaf(wrapper);
+				}
+				--size;
+				++changed;
+				break;
+			} else if (currentNode.isLeaf()) {
+				return null; // no key found
+			}
+			wrapper.index = indexOfGreatestLessThan;
+			deleteStack.add(wrapper);
+			currentNode = currentNode.childAt(indexOfGreatestLessThan);
+		}
+
+		if (deleteStack.size() == 1) // root
+			return oldValue;
+
+		merge();
+		return oldValue;
+	}
+
+	/**
+	 * replace a key in currentNode with the least key or the largest key in the leaf. and delete the key in the leaf.
+	 *
+	 * @param wrapper the node and the index of the key to delete. Its index is changed to the index of the child which
+	 *            the key comes from so that merge can find the siblings of the child.
+	 */
+	private void overwriteWithLeaf(WrappedNode wrapper) {
+		Node currentNode = wrapper.node;
+		int indexToDelete = wrapper.index;
+		minStack.reset();
+		maxStack.reset();
+		Node minNode = findMinNode(currentNode.childAt(indexToDelete + 1));
+		Node maxNode = findMaxNode(currentNode.childAt(indexToDelete));
+
+		// swap, use one which has more keys to reduce restructuring later.
+		Stack<WrappedNode> target = null;
+		if (minNode.noOfKeys <= maxNode.noOfKeys) {
+			currentNode.setKeyAt(indexToDelete, maxNode.lastKey(), maxNode.lastValue());
+			maxNode.removeKeyAt(maxNode.noOfKeys - 1);
+			target = maxStack;
+		} else {
+			currentNode.setKeyAt(indexToDelete, minNode.keyAt(0), minNode.valueAt(0));
+			minNode.removeKeyAt(0);
+			target = minStack;
+			wrapper.index = indexToDelete + 1;
+		}
+		deleteStack.addAll(target);
+	}
+
+	/**
+	 * merges insufficient nodes from down to top. It doesn't use recursive call but uses a stack.
+	 */
+	private void merge() {
+		WrappedNode current = deleteStack.pop();
+		WrappedNode parent = null;
+		while (deleteStack.size() > 0) {
+			parent = deleteStack.pop();
+			if (current.node.isInsufficientKey()) {
+				WrappedNode borrow = getBiggerChild(parent.node, parent.index);
+				boolean isRight = borrow.index == 1;
+
+				if (canJoin(borrow, current)) {
+					if (isRight) {
+						join(current.node, parent.node, parent.index, borrow.node);
+					} else {
+						join(borrow.node, parent.node, parent.index - 1, current.node);
+					}
+				} else {
+					borrow(current, parent, borrow, isRight);
+					return;
+				}
+				current = parent;
+			} else {
+				break;
+			}
+		}
+
+		// root
+		if (parent.node.noOfKeys == 0 && parent.node.isLeaf() == false) {
+			this.root = parent.node.childAt(0);
+			--height;
+		}
+	}
+
+	private boolean canJoin(WrappedNode borrow, WrappedNode node) {
+		return borrow.node.noOfKeys + node.node.noOfKeys < MAX_KEY;
+	}
+
+	private void borrow(WrappedNode current, WrappedNode parent, WrappedNode borrow, boolean isRight) {
+		if (isRight) {
+			shrinkRightKeys(current, parent, borrow);
+		} else {
+			shrinkLeftKeys(current, parent, borrow);
+		}
+	}
+
+	private void shrinkLeftKeys(WrappedNode current, WrappedNode parent, WrappedNode borrow) {
+		int parentIndex = parent.index - 1;
+		current.node.insertKeyAt(0, parent.node.keyAt(parentIndex), parent.node.valueAt(parentIndex));
+
+		parent.node.setKeyAt(parentIndex, borrow.node.lastKey(), borrow.node.lastValue());
+		borrow.node.removeKeyAt(borrow.node.noOfKeys - 1);
+		if (borrow.node.isLeaf() == false) {
+			ArrayUtil.shiftRight(current.node.children, 0, current.node.noOfChildren);
+			current.node.setChildAt(0, borrow.node.removeLastChild());
+
+			++current.node.noOfChildren;
+		}
+	}
+
+	private void shrinkRightKeys(WrappedNode current, WrappedNode parent, WrappedNode borrow) {
+		int parentIndex = parent.index;
+		current.node.insertKeyAt(current.node.noOfKeys, parent.node.keyAt(parentIndex),
+				parent.node.valueAt(parentIndex));
+
+		parent.node.setKeyAt(parentIndex, borrow.node.keyAt(0), borrow.node.valueAt(0));
+		borrow.node.removeKeyAt(0);
+		if (borrow.node.isLeaf() == false) {
+			current.node.setChildAt(current.node.noOfChildren, borrow.node.removeFirstChild());
+			++current.node.noOfChildren;
+		}
+	}
+
+	/**
+	 * choose a bigger child node between left and right child of key at index.
+	 *
+	 * @param parent
+	 * @param index index of the key to find its left or right child.
+	 * @return left or right child node
+	 */
+	private WrappedNode getBiggerChild(Node parent, int index) {
+		Node left = null;
+		Node right = null;
+		WrappedNode wrappedNode = new WrappedNode();
+		if (index > 0)
+			left = parent.childAt(index - 1);
+
+		if (index + 1 < parent.noOfChildren)
+			right = parent.childAt(index + 1);
+
+		if (left == null) {
+			wrappedNode.node = right;
+			wrappedNode.index = 1;
+		} else if (right == null) {
+			wrappedNode.node = left;
+			wrappedNode.index = 0;
+		} else {
+			// choose bigger one
+			if (left.noOfKeys >= right.noOfKeys) {
+				wrappedNode.node = left;
+				wrappedNode.index = 0;
+			} else {
+				wrappedNode.node = right;
+				wrappedNode.index = 1;
+			}
+		}
+		return wrappedNode;
+	}
+
+	/**
+	 * appends right node to left node
+	 *
+	 * @param left
+	 * @param center parent node between left and right
+	 * @param centerIndex
+	 * @param right
+	 */
+	private void join(Node left, Node center, int centerIndex, Node right) {
+		joinKeys(left, center.keyAt(centerIndex), center.valueAt(centerIndex), right);
+		joinChildren(left, right);
+
+		// shrink parent
+		center.shrink(centerIndex + 1);
+	}
+
+	private void joinChildren(Node left, Node right) {
+		for (int i = 0; i < right.noOfChildren; i++) {
+			left.setChildAt(i + left.noOfChildren, right.childAt(i));
+		}
+		left.noOfChildren += right.noOfChildren;
+	}
+
+	/**
+	 * rebuilds left with its keys, the key from the parent and the keys of right so that it finds the longest prefix.
+	 */
+	private void joinKeys(Node left, String centerKey, Object centerValue, Node right) {
+		int noOfKeys = 0;
+		for (int i = 0; i < left.noOfKeys; i++, noOfKeys++) {
+			splitKeys[noOfKeys] = left.keyAt(i);
+			splitValues[noOfKeys] = left.valueAt(i);
+		}
+		splitKeys[noOfKeys] = centerKey;
+		splitValues[noOfKeys++] = centerValue;
+		for (int i = 0; i < right.noOfKeys; i++, noOfKeys++) {
+			splitKeys[noOfKeys] = right.keyAt(i);
+			splitValues[noOfKeys] = right.valueAt(i);
+		}
+		left.rebuild(splitKeys, splitValues, 0, noOfKeys);
+	}
+
+	/**
+	 * find the maximum node from a node.
+	 *
+	 * @param node
+	 * @return the maximum node
+	 */
+	private Node findMaxNode(Node node) {
+		while (true) {
+			WrappedNode wrappedNode = new WrappedNode();
+			wrappedNode.node = node;
+			wrappedNode.index = node.noOfChildren - 1;
+			maxStack.add(wrappedNode);
+			if (node.isLeaf())
+				return node;
+
+			node = node.childAt(node.noOfChildren - 1); // It's the maximum node
+														// in a node
+		}
+	}
+
+	/**
+	 * find the minimum node from a node.
+	 *
+	 * @param node starting point
+	 * @return the minimum node
+	 */
+	private Node findMinNode(Node node) {
+		while (true) {
+			WrappedNode wrapper = new WrappedNode();
+			wrapper.node = node;
+			wrapper.index = 0;
+			minStack.add(wrapper);
+			if (node.isLeaf())
+				return node;
+
+			node = node.childAt(0); // It's the minimum in a node
+		}
+	}
+
+	/**
+	 * Iterator that contains keys.
+	 */
+	class KeyIterator implements Iterator<String> {
+		WrappedNode wrappedNode;
+		boolean hasNext;
+		String currentKey;
+		Object currentValue;
+		/**
+		 * value of the key returned by the last next.
+		 */
+		Object lastValue;
+		private Stack<WrappedNode> stack = new Stack<WrappedNode>();
+		int indexOfPrinting = 0;
+		final int changedAt = changed;
+
+		KeyIterator() {
+			wrappedNode = new WrappedNode(root);
+			getNext();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return hasNext;
+		}
+
+		private void setCurrent(Node node, int index) {
+			currentKey = node.keyAt(index);
+			currentValue = node.valueAt(index);
+			hasNext = true;
+		}
+
+		/**
+		 * find the next node
+		 */
+		private void getNext() {
+			do {
+				if (wrappedNode.node.isLeaf()) {
+					if (wrappedNode.node.noOfKeys > indexOfPrinting) {
+						setCurrent(wrappedNode.node, indexOfPrinting++);
+						break;
+					}
+					indexOfPrinting = 0;
+					if (stack.size() == 0) {
+						hasNext = false;
+						break;
+					}
+					wrappedNode = stack.pop();
+					wrappedNode.check = true;
+				} else if (wrappedNode.check) {
+					// check it returned all node
+					if (wrappedNode.index == wrappedNode.node.noOfKeys) {
+						if (stack.size() == 0) {
+							hasNext = false;
+							break;
+						}
+						wrappedNode = stack.pop();
+						wrappedNode.check = true;
+					} else { // return one by one in the current node
+						setCurrent(wrappedNode.node, wrappedNode.index++);
+						stack.add(wrappedNode);
+						WrappedNode temp = new WrappedNode(wrappedNode.node.childAt(wrappedNode.index));
+						wrappedNode = temp;
+						break;
+					}
+				} else {
+					stack.add(wrappedNode);
+					WrappedNode temp = new WrappedNode(wrappedNode.node.childAt(0));
+					wrappedNode = temp;
+				}
+			} while (true);
+		}
+
+		@Override
+		public String next() {
+			if (changedAt != changed)
+				throw new ConcurrentModificationException();
+
+			if (hasNext == false)
+				throw new NoSuchElementException();
+
+			String temp = currentKey;
+			lastValue = currentValue;
+			getNext();
+			return temp;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * It uses WrappedNode to reduce unnecessary members in Node.
+	 */
+	class WrappedNode {
+		Node node;
+		int index;
+		String key;
+		Object value;
+		boolean check;
+
+		public WrappedNode() {
+		}
+
+		public WrappedNode(Node node) {
+			this.node = node;
+		}
+	}
+
+	/**
+	 * Keeps the prefix of all keys in a char[] and the suffixes one after another in another char[]. Suffix i is from
+	 * ends[i - 1], or 0 if i is 0, to ends[i]. Values, if any, are in an Object[] at the same index.
+	 */
+	class Node {
+		int id;
+		int noOfKeys = 0;
+		int noOfChildren = 0;
+
+		char[] prefix = NO_CHARS;
+		char[] suffixes = NO_CHARS;
+		int[] ends;
+		Object[] values;
+		Node[] children;
+
+		public Node() {
+			this.ends = new int[MAX_KEY];
+			if (hasValues)
+				this.values = new Object[MAX_KEY];
+			this.id = ++count;
+		}
+
+		public void initChildren() {
+			this.children = new Node[MAX_CHILDREN];
+		}
+
+		/**
+		 * except root node should keep half or more than key
+		 *
+		 * @return
+		 */
+		public boolean isInsufficientKey() {
+			return noOfKeys < HALF_KEY;
+		}
+
+		/**
+		 * @return number of chars of the suffixes.
+		 */
+		int used() {
+			return noOfKeys == 0 ? 0 : ends[noOfKeys - 1];
+		}
+
+		private int startOf(int index) {
+			return index == 0 ? 0 : ends[index - 1];
+		}
+
+		String keyAt(int index) {
+			int start = startOf(index);
+			char[] key = new char[prefix.length + ends[index] - start];
+			System.arraycopy(prefix, 0, key, 0, prefix.length);
+			System.arraycopy(suffixes, start, key, prefix.length, ends[index] - start);
+			return new String(key);
+		}
+
+		String lastKey() {
+			return keyAt(noOfKeys - 1);
+		}
+
+		Object lastValue() {
+			return valueAt(noOfKeys - 1);
+		}
+
+		/**
+		 * compares the key from the end of the prefix with the suffix at the index like
+		 * {@link String#compareTo(String)}.
+		 */
+		private int compareSuffix(String key, int index) {
+			int start = startOf(index);
+			int end = ends[index];
+			int keyLength = key.length();
+			int p = prefix.length;
+			int limit = Math.min(keyLength - p, end - start);
+			for (int i = 0; i < limit; i++) {
+				char c = key.charAt(p + i);
+				char s = suffixes[start + i];
+				if (c != s)
+					return c - s;
+			}
+			return (keyLength - p) - (end - start);
+		}
+
+		/**
+		 * shortens the prefix to the chars shared with the key.
+		 */
+		private void fitPrefix(String key) {
+			int p = 0;
+			int limit = Math.min(prefix.length, key.length());
+			while (p < limit && prefix[p] == key.charAt(p))
+				++p;
+			if (p == prefix.length)
+				return;
+
+			// the rest of the prefix goes to the front of each suffix
+			int cut = prefix.length - p;
+			char[] newSuffixes = new char[used() + noOfKeys * cut];
+			int start = 0;
+			int newEnd = 0;
+			for (int i = 0; i < noOfKeys; i++) {
+				System.arraycopy(prefix, p, newSuffixes, newEnd, cut);
+				newEnd += cut;
+				int length = ends[i] - start;
+				System.arraycopy(suffixes, start, newSuffixes, newEnd, length);
+				newEnd += length;
+				start = ends[i];
+				ends[i] = newEnd;
+			}
+			suffixes = newSuffixes;
+			prefix = p == 0 ? NO_CHARS : Arrays.copyOf(prefix, p);
+		}
+
+		/**
+		 * moves suffixes from the index by the shift and makes room for it.
+		 */
+		private void moveSuffixes(int index, int shift) {
+			int used = used();
+			if (used + shift > suffixes.length)
+				suffixes = Arrays.copyOf(suffixes, Math.max(used + shift, suffixes.length * 3 / 2 + 8));
+			int start = startOf(index);
+			System.arraycopy(suffixes, start, suffixes, start + shift, used - start);
+			for (int i = index; i < noOfKeys; i++)
+				ends[i] += shift;
+		}
+
+		/**
+		 * inserts a key at the index, keys from the index move one right.
+		 */
+		void insertKeyAt(int index, String key, Object value) {
+			fitPrefix(key);
+			int length = key.length() - prefix.length;
+			int start = startOf(index);
+			moveSuffixes(index, length);
+			ArrayUtil.shiftRight(ends, index, noOfKeys);
+			key.getChars(prefix.length, key.length(), suffixes, start);
+			ends[index] = start + length;
+			if (values != null) {
+				ArrayUtil.shiftRight(values, index, noOfKeys);
+				values[index] = value;
+			}
+			++noOfKeys;
+		}
+
+		/**
+		 * replaces the key at the index.
+		 */
+		private void setKeyAt(int index, String key, Object value) {
+			fitPrefix(key);
+			int start = startOf(index);
+			int length = key.length() - prefix.length;
+			moveSuffixes(index + 1, length - (ends[index] - start));
+			key.getChars(prefix.length, key.length(), suffixes, start);
+			ends[index] = start + length;
+			if (values != null)
+				values[index] = value;
+		}
+
+		void removeKeyAt(int index) {
+			if (noOfKeys <= index)
+				return;
+
+			int start = startOf(index);
+			int length = ends[index] - start;
+			System.arraycopy(suffixes, ends[index], suffixes, start, used() - ends[index]);
+			for (int i = index + 1; i < noOfKeys; i++)
+				ends[i - 1] = ends[i] - length;
+			if (values != null) {
+				ArrayUtil.shiftLeft(values, index + 1, noOfKeys);
+				values[noOfKeys - 1] = null;
+			}
+			--noOfKeys;
+			if (noOfKeys == 0) {
+				prefix = NO_CHARS;
+				suffixes = NO_CHARS;
+			}
+		}
+
+		/**
+		 * replaces all keys with the sorted ones and takes the prefix shared by the first and the last key.
+		 */
+		void rebuild(String[] keys, Object[] newValues, int from, int noOfKeys) {
+			String first = keys[from];
+			String last = keys[from + noOfKeys - 1];
+			int p = 0;
+			int limit = Math.min(first.length(), last.length());
+			while (p < limit && first.charAt(p) == last.charAt(p))
+				++p;
+			prefix = p == 0 ? NO_CHARS : first.substring(0, p).toCharArray();
+
+			int used = 0;
+			for (int i = 0; i < noOfKeys; i++)
+				used += keys[from + i].length() - p;
+			suffixes = new char[used];
+			int end = 0;
+			for (int i = 0; i < noOfKeys; i++) {
+				String key = keys[from + i];
+				key.getChars(p, key.length(), suffixes, end);
+				end += key.length() - p;
+				ends[i] = end;
+				if (values != null)
+					values[i] = newValues[from + i];
+			}
+			if (values != null) {
+				for (int i = noOfKeys; i < this.noOfKeys; i++)
+					values[i] = null;
+			}
+			this.noOfKeys = noOfKeys;
+		}
+
+		/**
+		 * @return null if there is no child
+		 */
+		Node removeFirstChild() {
+			if (noOfChildren == 0)
+				return null;
+
+			Node deletedNode = children[0];
+			ArrayUtil.shiftLeft(children, 1, noOfChildren);
+			--noOfChildren;
+			children[noOfChildren] = null;
+			return deletedNode;
+		}
+
+		/**
+		 * @return null if there is no child
+		 */
+		Node removeLastChild() {
+			if (noOfChildren == 0)
+				return null;
+
+			Node deletedNode = children[--noOfChildren];
+			children[noOfChildren] = null;
+			return deletedNode;
+		}
+
+		private Node childAt(int childIndex) {
+			return children[childIndex];
+		}
+
+		private void setChildAt(int childIndex, Node child) {
+			children[childIndex] = child;
+		}
+
+		Object valueAt(int keyIndex) {
+			return values == null ? null : values[keyIndex];
+		}
+
+		public boolean isLeaf() {
+			return noOfChildren == 0;
+		}
+
+		public boolean isFull() {
+			return noOfKeys == MAX_KEY;
+		}
+
+		/**
+		 * see the method {@link java.util.List#add(index,element)}.
+		 *
+		 * @param position
+		 * @param newNode
+		 */
+		private void addChild(int position, Node newNode) {
+			ArrayUtil.shiftRight(children, position, noOfChildren);
+
+			children[position] = newNode;
+			++noOfChildren;
+		}
+
+		/**
+		 * @param key
+		 * @param value
+		 * @param childNode
+		 * @return null it it is not full or new right node separated because of insertion.
+		 */
+		public WrappedNode add(String key, Object value, Node childNode) {
+			int indexOfNew = indexOfGreatestLessThan(key);
+			if (isFull())
+				return split(key, value, childNode, indexOfNew);
+
+			if (childNode != null)
+				addChild(indexOfNew + 1, childNode);
+
+			insertKeyAt(indexOfNew, key, value);
+			return null;
+		}
+
+		/**
+		 * split current node to left and right node which is created newly and add key and childNode to either left or
+		 * right.
+		 *
+		 * @param key
+		 * @param value
+		 * @param childNode
+		 * @param indexOfNew index where key and childNode will be placed.
+		 * @return new right side node which will be added to the parent.
+		 */
+		private WrappedNode split(String key, Object value, Node childNode, int indexOfNew) {
+			WrappedNode wrappedNode = splitKeys(key, value, indexOfNew);
+			if (childNode != null) {
+				splitChildren(indexOfNew, wrappedNode.node, childNode);
+			}
+			return wrappedNode;
+		}
+
+		/**
+		 * If a key exists returns (index - size) that is negative value. A key which does not have the prefix is less
+		 * or greater than all keys.
+		 *
+		 * @param key
+		 * @return negative value if there is the key or index of the greatest but smaller key than the key.
+		 */
+		private int indexOfGreatestLessThan(String key) {
+			int p = prefix.length;
+			int limit = Math.min(p, key.length());
+			for (int i = 0; i < limit; i++) {
+				char c = key.charAt(i);
+				if (c != prefix[i])
+					return c < prefix[i] ? 0 : noOfKeys;
+			}
+			if (key.length() < p)
+				return 0;
+
+			int left = 0;
+			int right = noOfKeys - 1;
+			// use binary search
+			while (left <= right) {
+				int middle = (left + right) >>> 1;
+				int diff = compareSuffix(key, middle);
+				if (diff > 0)
+					left = middle + 1;
+				else if (diff < 0)
+					right = middle - 1;
+				else
+					return middle - MAX_KEY; // exists
+			}
+			return left;
+		}
+
+		/**
+		 * see the method {@link #indexOfGreatestLessThan(String)}.
+		 *
+		 * @param indexOfGreatestLessThan
+		 * @return
+		 */
+		int convertToRealIndex(int indexOfGreatestLessThan) {
+			return indexOfGreatestLessThan + MAX_KEY;
+		}
+
+		/**
+		 * split child before it adds a new key because it knows it will be full.
+		 *
+		 * @param indexOfNew
+		 * @param seperatedNode
+		 * @param newChild
+		 */
+		private void splitChildren(int indexOfNew, Node seperatedNode, Node newChild) {
+			seperatedNode.initChildren();
+			if (indexOfNew == CENTER_CHILDREN) {
+				// right
+				seperatedNode.children[0] = newChild;
+				ArrayUtil.moveTo(children, seperatedNode.children, CENTER_CHILDREN + 1, MAX_KEY + 1, 1);
+			} else if (indexOfNew < CENTER_CHILDREN) {
+				// right
+				ArrayUtil.moveTo(children, seperatedNode.children, CENTER_CHILDREN, MAX_CHILDREN, 0);
+				// left
+				ArrayUtil.shiftRight(children, indexOfNew + 1, CENTER_CHILDREN);
+				children[indexOfNew + 1] = newChild;
+			} else {
+				// right
+				ArrayUtil.moveTo(children, seperatedNode.children, CENTER_CHILDREN + 1, indexOfNew + 1, 0);
+				int index = indexOfNew - CENTER_CHILDREN;
+				seperatedNode.children[index] = newChild;
+				ArrayUtil.moveTo(children, seperatedNode.children, indexOfNew + 1, MAX_CHILDREN, ++index);
+			}
+			noOfChildren = seperatedNode.noOfChildren = HALF_CHILDREN;
+		}
+
+		/**
+		 * lines up all keys and the new one, keeps the left half, moves the right half to a new node and returns the
+		 * center. Each half takes its own prefix.
+		 *
+		 * @param key
+		 * @param value
+		 * @param indexOfNew
+		 * @return new node for right node which should be added to parent node
+		 */
+		private WrappedNode splitKeys(String key, Object value, int indexOfNew) {
+			for (int i = 0, j = 0; i <= MAX_KEY; i++) {
+				if (i == indexOfNew) {
+					splitKeys[i] = key;
+					splitValues[i] = value;
+				} else {
+					splitKeys[i] = keyAt(j);
+					splitValues[i] = valueAt(j++);
+				}
+			}
+
+			WrappedNode wrappedNode = new WrappedNode();
+			Node newNode = wrappedNode.node = new Node();
+			wrappedNode.key = splitKeys[HALF_KEY];
+			wrappedNode.value = splitValues[HALF_KEY];
+			rebuild(splitKeys, splitValues, 0, HALF_KEY);
+			newNode.rebuild(splitKeys, splitValues, HALF_KEY + 1, HALF_KEY);
+			return wrappedNode;
+		}
+
+		/**
+		 * move key and child one left from 'from' to the end and reduce one size.
+		 *
+		 * @param from
+		 */
+		void shrink(int from) {
+			removeKeyAt(from - 1);
+			ArrayUtil.shiftLeft(children, from + 1, noOfChildren);
+			--noOfChildren;
+			children[noOfChildren] = null;
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package cororok.btree;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * compares aggregates of {@link AggregateBTreeMap} with sums and lists of keys of the same range of {@link TreeMap}.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class AggregateTest {
+	static Random random = new Random();
+
+	static final Aggregator<Integer, Integer, Long> SUM = new Aggregator<Integer, Integer, Long>() {
+		@Override
+		public Long identity() {
+			return 0L;
+		}
+
+		@Override
+		public Long of(Integer key, Integer value) {
+			return (long) value;
+		}
+
+		@Override
+		public Long combine(Long left, Long right) {
+			return left + right;
+		}
+	};
+
+	/**
+	 * not commutative, it shows the order of keys.
+	 */
+	static final Aggregator<Integer, Integer, String> KEYS = new Aggregator<Integer, Integer, String>() {
+		@Override
+		public String identity() {
+			return "";
+		}
+
+		@Override
+		public String of(Integer key, Integer value) {
+			return key + ",";
+		}
+
+		@Override
+		public String combine(String left, String right) {
+			return left + right;
+		}
+	};
+
+	public static void main(String[] args) {
+		for (int maxSizeOfKeys = 2; maxSizeOfKeys <= 10; maxSizeOfKeys += 2) {
+			System.out.println("maxSizeOfKeys=" + maxSizeOfKeys);
+			if (testSum(maxSizeOfKeys, 5000) == false || testOrder(maxSizeOfKeys, 300) == false) {
+				System.out.println("Failed");
+				return;
+			}
+		}
+		System.out.println("all right, done");
+	}
+
+	static boolean testSum(int maxSizeOfKeys, int testSize) {
+		AggregateBTreeMap<Integer, Integer, Long> map = new AggregateBTreeMap<Integer, Integer, Long>(maxSizeOfKeys,
+				SUM);
+		TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+		int range = testSize * 2;
+		AggregateBTreeMap<Integer, Integer, Long> snapshot = null;
+		long snapshotSum = 0;
+		for (int i = 0; i < testSize * 4; i++) {
+			Integer key = random.nextInt(range);
+			Integer value = random.nextInt(1000);
+			int choice = random.nextInt(4);
+			if (choice < 2) {
+				expected.put(key, value);
+				map.put(key, value);
+			} else if (choice == 2) {
+				expected.remove(key);
+				map.remove(key);
+			} else if (expected.isEmpty() == false) {
+				Map.Entry<Integer, Integer> entry = map.entrySet().iterator().next();
+				entry.setValue(value);
+				expected.put(entry.getKey(), value);
+			}
+			if (i == testSize) {
+				snapshot = map.snapshot();
+				snapshotSum = sum(expected, null, null);
+			}
+			if (i % 1000 == 0 && isSame(expected, map, range) == false)
+				return false;
+		}
+		if (snapshot.aggregate() != snapshotSum) {
+			System.out.println("wrong snapshot");
+			return false;
+		}
+		if (isSame(expected, map, range) == false)
+			return false;
+
+		AggregateBTreeMap<Integer, Integer, Long> built = AggregateBTreeMap.build(maxSizeOfKeys, SUM, 0.7,
+				expected.entrySet().iterator());
+		if (isSame(expected, built, range) == false)
+			return false;
+
+		for (Integer key : expected.keySet().toArray(new Integer[0]))
+			map.remove(key);
+		return map.aggregate() == 0 && map.aggregate(0, range) == 0;
+	}
+
+	static boolean isSame(TreeMap<Integer, Integer> expected, AggregateBTreeMap<Integer, Integer, Long> map,
+			int range) {
+		if (map.aggregate() != sum(expected, null, null)) {
+			System.out.println("wrong total");
+			return false;
+		}
+		for (int i = 0; i < 100; i++) {
+			Integer from = random.nextInt(range + 2) - 1;
+			Integer to = from + random.nextInt(range / 3);
+			if (random.nextInt(4) == 0)
+				from = null;
+			if (map.aggregate(from, to) != sum(expected, from, to)) {
+				System.out.println("wrong sum, from=" + from + " to=" + to);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static long sum(TreeMap<Integer, Integer> expected, Integer from, Integer to) {
+		Map<Integer, Integer> view = from == null ? (to == null ? expected : expected.headMap(to))
+				: expected.subMap(from, to);
+		long sum = 0;
+		for (Integer value : view.values())
+			sum += value;
+		return sum;
+	}
+
+	static boolean testOrder(int maxSizeOfKeys, int testSize) {
+		AggregateBTreeMap<Integer, Integer, String> map = new AggregateBTreeMap<Integer, Integer, String>(
+				maxSizeOfKeys, KEYS);
+		TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+		for (int i = 0; i < testSize * 2; i++) {
+			Integer key = random.nextInt(testSize);
+			if (random.nextInt(3) > 0) {
+				expected.put(key, i);
+				map.put(key, i);
+			} else {
+				expected.remove(key);
+				map.remove(key);
+			}
+		}
+
+		for (int i = 0; i < 200; i++) {
+			Integer from = random.nextInt(testSize + 2) - 1;
+			Integer to = from + random.nextInt(testSize / 2);
+			boolean fromInclusive = random.nextBoolean();
+			boolean toInclusive = random.nextBoolean();
+			StringBuilder keys = new StringBuilder();
+			for (Integer key : expected.subMap(from, fromInclusive, to, toInclusive).keySet())
+				keys.append(key).append(',');
+			if (keys.toString().equals(map.aggregate(from, fromInclusive, to, toInclusive)) == false) {
+				System.out.println("wrong order, from=" + from + " to=" + to);
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,180 @@
+package cororok.btree;
+
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * adds keys in ascending order, which go through the right edge without searching and fill nodes, mixed with other
+ * changes and snapshots, and compares the set with TreeSet.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class AppendTest {
+	static Random random = new Random();
+
+	public static void main(String[] args) {
+		for (int maxSizeOfKeys = 2; maxSizeOfKeys <= 64; maxSizeOfKeys *= 2) {
+			System.out.println("maxSizeOfKeys=" + maxSizeOfKeys);
+			if (testFill(maxSizeOfKeys) == false || testClear(maxSizeOfKeys) == false
+					|| testMixed(maxSizeOfKeys) == false || testRemoveFromRightEdge(maxSizeOfKeys) == false
+					|| testCounted(maxSizeOfKeys) == false
+					|| testMap(maxSizeOfKeys) == false || testAggregate(maxSizeOfKeys) == false) {
+				System.out.println("Failed");
+				return;
+			}
+		}
+		System.out.println("all right, done");
+	}
+
+	static boolean testFill(int maxSizeOfKeys) {
+		BTreeSet<Integer> set = new BTreeSet<Integer>(maxSizeOfKeys);
+		int size = 100000;
+		for (int i = 0; i < size; i++)
+			set.add(i);
+		int[] nodes = new int[1];
+		countNodes(set.root, nodes);
+		double fill = (double) size / nodes[0] / maxSizeOfKeys;
+		System.out.println("nodes=" + nodes[0] + ", fill=" + fill);
+		if (BulkLoadTest.isValid(set) == false || set.size() != size)
+			return false;
+		// a node split at the right edge keeps all keys but one
+		return fill >= (maxSizeOfKeys - 1.0) / maxSizeOfKeys * 0.95;
+	}
+
+	/**
+	 * the right path grows again after clear.
+	 */
+	static boolean testClear(int maxSizeOfKeys) {
+		BTreeSet<Integer> set = new BTreeSet<Integer>(maxSizeOfKeys);
+		set.add(1);
+		set.clear();
+		int size = 200000;
+		for (int i = 0; i < size; i++)
+			set.add(i);
+		return BulkLoadTest.isValid(set) && set.size() == size && set.height() == heightOf(set.root);
+	}
+
+	static int heightOf(BTreeSet<Integer>.Node node) {
+		return node.noOfChildren == 0 ? 1 : 1 + heightOf(node.children[0]);
+	}
+
+	static void countNodes(BTreeSet<Integer>.Node node, int[] nodes) {
+		++nodes[0];
+		for (int i = 0; i < node.noOfChildren; i++)
+			countNodes(node.children[i], nodes);
+	}
+
+	static boolean testMixed(int maxSizeOfKeys) {
+		BTreeSet<Integer> set = new BTreeSet<Integer>(maxSizeOfKeys);
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		BTreeSet<Integer> snapshot = null;
+		TreeSet<Integer> expectedSnapshot = null;
+		int next = 0;
+		for (int i = 0; i < 50000; i++) {
+			int op = random.nextInt(100);
+			Integer key;
+			if (op < 70) {
+				key = next;
+				next += 1 + random.nextInt(3);
+				if (expected.add(key) != set.add(key))
+					return false;
+			} else if (op < 85) {
+				key = random.nextInt(next + 1);
+				if (expected.remove(key) != set.remove(key))
+					return false;
+			} else if (op < 99) {
+				key = random.nextInt(next + 1);
+				if (expected.add(key) != set.add(key))
+					return false;
+			} else {
+				snapshot = set.snapshot();
+				expectedSnapshot = new TreeSet<Integer>(expected);
+			}
+		}
+		if (BulkLoadTest.isValid(set) == false || expected.equals(set) == false) {
+			System.out.println("wrong set");
+			return false;
+		}
+		// appends after the last snapshot should not change it
+		return snapshot == null || expectedSnapshot.equals(snapshot);
+	}
+
+	/**
+	 * removes keys from the right edge, which has nodes with fewer than half keys, and from anywhere while appending.
+	 */
+	static boolean testRemoveFromRightEdge(int maxSizeOfKeys) {
+		BTreeSet<Integer> set = new BTreeSet<Integer>(maxSizeOfKeys);
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		int next = 0;
+		for (int round = 0; round < 200; round++) {
+			for (int i = random.nextInt(300); i > 0; i--) {
+				set.add(next);
+				expected.add(next++);
+			}
+			for (int i = random.nextInt(100); i > 0 && expected.isEmpty() == false; i--) {
+				Integer key = random.nextBoolean() ? expected.last() : random.nextInt(next);
+				if (expected.remove(key) != set.remove(key))
+					return false;
+			}
+			if (round % 20 == 0 && BulkLoadTest.isValid(set) == false)
+				return false;
+		}
+		return BulkLoadTest.isValid(set) && expected.equals(set);
+	}
+
+	static boolean testCounted(int maxSizeOfKeys) {
+		BTreeSet<Integer> set = BTreeSet.counted(maxSizeOfKeys);
+		for (int i = 0; i < 10000; i++)
+			set.add(i * 2);
+		for (int i = 0; i < 10000; i += 7)
+			set.remove(i * 2);
+		for (int i = 10000; i < 20000; i++)
+			set.add(i * 2);
+		TreeSet<Integer> expected = new TreeSet<Integer>(set);
+		int index = 0;
+		for (Integer key : expected) {
+			if (set.get(index) != key.intValue() || set.rank(key) != index)
+				return false;
+			++index;
+		}
+		return BulkLoadTest.isValid(set);
+	}
+
+	static boolean testMap(int maxSizeOfKeys) {
+		BTreeMap<Integer, String> map = new BTreeMap<Integer, String>(maxSizeOfKeys);
+		TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+		for (int i = 0; i < 20000; i++) {
+			String value = "v" + i;
+			if (map.put(i, value) != expected.put(i, value))
+				return false;
+			if (i % 10 == 0 && map.put(i / 2, value).equals(expected.put(i / 2, value)) == false)
+				return false;
+		}
+		if (BulkLoadTest.isValid(map.set) == false || expected.equals(map) == false)
+			return false;
+
+		// new values do not change the right path
+		for (int key : new int[] { 20000, 0, 20000 }) {
+			map.put(key, "new" + key);
+			expected.put(key, "new" + key);
+		}
+		if (map.set.rightPathRestructured != map.set.restructured)
+			return false;
+		map.put(20001, "v");
+		expected.put(20001, "v");
+		return expected.equals(map);
+	}
+
+	static boolean testAggregate(int maxSizeOfKeys) {
+		AggregateBTreeMap<Integer, Integer, Long> map = new AggregateBTreeMap<Integer, Integer, Long>(maxSizeOfKeys,
+				AggregateTest.SUM);
+		long sum = 0;
+		for (int i = 0; i < 20000; i++) {
+			map.put(i, i % 100);
+			sum += i % 100;
+		}
+		return map.aggregate() == sum;
+	}
+}
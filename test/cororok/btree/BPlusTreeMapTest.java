@@ -0,0 +1,73 @@
+package cororok.btree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class BPlusTreeMapTest {
+	public static void main(String[] args) {
+		TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+		BPlusTreeMap<Integer, Integer> map = new BPlusTreeMap<Integer, Integer>(8);
+
+		Random random = new Random();
+		int testSize = 10000;
+		int doubleTestSize = testSize * 2;
+		for (int i = 0; i < testSize * 4; i++) {
+			Integer key = random.nextInt(doubleTestSize);
+			Integer value = i;
+			if (random.nextInt(3) == 0) {
+				if (expected.remove(key) != map.remove(key)) {
+					System.out.println("remove wrong");
+					return;
+				}
+			} else if (expected.put(key, value) != map.put(key, value)) {
+				System.out.println("put wrong");
+				return;
+			}
+
+			if (expected.get(key) != map.get(key) || expected.size() != map.size()) {
+				System.out.println("get or size wrong");
+				return;
+			}
+		}
+		System.out.println("size=" + map.size());
+
+		if (expected.equals(map) == false || map.equals(expected) == false) {
+			System.out.println("entries wrong");
+			return;
+		}
+
+		for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+			entry.setValue(entry.getValue() + 1);
+		}
+		for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+			entry.setValue(entry.getValue() + 1);
+		}
+		if (expected.equals(map) == false) {
+			System.out.println("setValue wrong");
+			return;
+		}
+
+		final List<Integer> keys = new ArrayList<Integer>();
+		map.forEach(1000, 5000, new BiConsumer<Integer, Integer>() {
+			@Override
+			public void accept(Integer key, Integer value) {
+				keys.add(key);
+			}
+		});
+		if (keys.equals(new ArrayList<Integer>(expected.subMap(1000, 5000).keySet())) == false) {
+			System.out.println("forEach wrong");
+			return;
+		}
+
+		System.out.println("all right, done");
+	}
+}
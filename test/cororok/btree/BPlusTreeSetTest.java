@@ -0,0 +1,116 @@
+package cororok.btree;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class BPlusTreeSetTest {
+	public static void main(String[] args) {
+		for (int maxSizeOfKeys = 3; maxSizeOfKeys <= 16; maxSizeOfKeys++) {
+			System.out.println("# maxSizeOfKeys=" + maxSizeOfKeys);
+			if (test(10000, maxSizeOfKeys) == false) {
+				System.out.println("Failed");
+				return;
+			}
+		}
+
+		System.out.println("all right, done");
+	}
+
+	static boolean test(int testSize, int maxSizeOfKeys) {
+		Random random = new Random();
+		BPlusTreeSet<Integer> set = new BPlusTreeSet<Integer>(maxSizeOfKeys);
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+
+		int doubleTestSize = testSize * 2;
+		for (int i = 0; i < testSize; i++) {
+			Integer key = random.nextInt(doubleTestSize);
+			if (expected.add(key) != set.add(key)) {
+				System.out.println("wrong add, key=" + key);
+				return false;
+			}
+		}
+		if (isValid(expected, set) == false)
+			return false;
+
+		for (int i = 0; i < 100; i++) {
+			int from = random.nextInt(doubleTestSize);
+			int to = from + random.nextInt(testSize / 10);
+			if (haveSameKeys(expected.subSet(from, to).iterator(), set.iterator(from, to)) == false) {
+				System.out.println("wrong range, from=" + from + " to=" + to);
+				return false;
+			}
+		}
+
+		for (int i = 0; i < testSize * 4; i++) {
+			Integer key = random.nextInt(doubleTestSize);
+			if (random.nextInt(3) == 0) {
+				if (expected.add(key) != set.add(key)) {
+					System.out.println("wrong add, key=" + key);
+					return false;
+				}
+			} else if (expected.remove(key) != set.remove(key)) {
+				System.out.println("wrong delete, key=" + key);
+				return false;
+			}
+
+			if (expected.contains(key) != set.contains(key) || expected.size() != set.size()) {
+				System.out.println("wrong search or size, key=" + key);
+				return false;
+			}
+		}
+		System.out.println("after delete size=" + expected.size() + " height=" + set.height());
+		if (isValid(expected, set) == false)
+			return false;
+
+		for (Integer key : expected.toArray(new Integer[0])) {
+			if (set.remove(key) == false || expected.remove(key) == false) {
+				System.out.println("wrong delete, key=" + key);
+				return false;
+			}
+		}
+		return set.isEmpty() && set.height() == 1 && isValid(expected, set);
+	}
+
+	static boolean isValid(TreeSet<Integer> expected, BPlusTreeSet<Integer> set) {
+		if (expected.size() != set.size() || haveSameKeys(expected.iterator(), set.iterator()) == false) {
+			System.out.println("different");
+			return false;
+		}
+		if (isValid(set, set.root, true, 1) == false) {
+			System.out.println("invalid tree");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * every node except root has the least keys or more, and all leaves are at the same depth.
+	 */
+	static boolean isValid(BPlusTreeSet<Integer> set, BPlusTreeSet<Integer>.Node node, boolean isRoot, int depth) {
+		if (node.noOfKeys > set.MAX_KEY || (isRoot == false && node.noOfKeys < node.minKeys()))
+			return false;
+
+		if (node.isLeaf)
+			return depth == set.height();
+
+		for (int i = 0; i <= node.noOfKeys; i++) {
+			if (isValid(set, node.children[i], false, depth + 1) == false)
+				return false;
+		}
+		return true;
+	}
+
+	static boolean haveSameKeys(Iterator<Integer> expected, Iterator<Integer> actual) {
+		while (expected.hasNext()) {
+			if (actual.hasNext() == false || expected.next().equals(actual.next()) == false)
+				return false;
+		}
+		return actual.hasNext() == false;
+	}
+}
@@ -2,6 +2,7 @@ package cororok.btree;
 
 import java.util.HashMap;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 
@@ -39,6 +40,11 @@ public class BTreeMapTest {
 		}
 		System.out.println("size=" + hashMap.size());
 
+		if (hashMap.equals(treeMap) == false || treeMap.equals(hashMap) == false) {
+			System.out.println("entries wrong");
+			return;
+		}
+
 		System.out.println("delete test");
 		int delete = hashMap.size() / 2;
 		while (hashMap.size() > delete) {
@@ -61,6 +67,50 @@ public class BTreeMapTest {
 		}
 		System.out.println("after delete size=" + hashMap.size());
 
+		if (hashMap.equals(treeMap) == false || treeMap.equals(hashMap) == false) {
+			System.out.println("entries wrong");
+			return;
+		}
+
+		System.out.println("concurrent read test");
+		if (readConcurrently(hashMap, treeMap, doubleTestSize) == false) {
+			System.out.println("concurrent get wrong");
+			return;
+		}
+
 		System.out.println("all right, done");
 	}
+
+	/**
+	 * many threads read the map at the same time without any lock.
+	 */
+	static boolean readConcurrently(final HashMap<Integer, Integer> hashMap, final BTreeMap<Integer, Integer> treeMap,
+			final int keyRange) {
+		final AtomicBoolean failed = new AtomicBoolean();
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int round = 0; round < 10; round++) {
+						for (int key = 0; key < keyRange; key++) {
+							if (hashMap.get(key) != treeMap.get(key)
+									|| hashMap.containsKey(key) != treeMap.containsKey(key))
+								failed.set(true);
+						}
+					}
+				}
+			};
+			threads[i].start();
+		}
+
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				return false;
+			}
+		}
+		return failed.get() == false;
+	}
 }
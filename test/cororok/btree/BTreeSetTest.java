@@ -6,6 +6,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * For performance purpose it does not remove Element when it pops.
@@ -19,19 +20,91 @@ public class BTreeSetTest {
 
 		for (int i = 0; i < 10; i++) {
 			System.out.println("# test " + i);
-			if (test.test(10000) == false) {
+			if (test.test(10000, 2 + i * 2) == false) {
 				System.out.println("Failed");
 				return;
 			}
 		}
 
+		for (int maxSizeOfKeys = 2; maxSizeOfKeys <= 20; maxSizeOfKeys += 2) {
+			if (test.testRemoveAll(maxSizeOfKeys) == false) {
+				System.out.println("Failed remove, maxSizeOfKeys=" + maxSizeOfKeys);
+				return;
+			}
+		}
+
+		if (test.testRemoveObject() == false) {
+			System.out.println("Failed remove object");
+			return;
+		}
+
 		System.out.println("all right, done");
 
 	}
 
-	public boolean test(int testSize) {
-		Random random = new Random();
+	/**
+	 * removes through Collection which calls remove(Object), not the iterator.
+	 */
+	public boolean testRemoveObject() {
 		BTreeSet<Integer> set = new BTreeSet<Integer>(4);
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		for (int i = 0; i < 1000; i++) {
+			set.add(i);
+			expected.add(i);
+		}
+
+		java.util.Collection<Object> collection = (java.util.Collection) set;
+		if (collection.remove((Object) 10) == false || collection.remove(null)) {
+			System.out.println("wrong remove");
+			return false;
+		}
+		expected.remove(10);
+
+		List<Integer> odds = new ArrayList<Integer>();
+		for (int i = 1; i < 1000; i += 2)
+			odds.add(i);
+		if (set.removeAll(odds) == false || expected.removeAll(odds) == false)
+			return false;
+
+		return new ArrayList<Integer>(expected).equals(new ArrayList<Integer>(set));
+	}
+
+	/**
+	 * adds and removes random keys with fixed seeds, which used to break the tree for some sizes. Removing a key of an
+	 * inner node replaces it with the least key of its right subtree and then the right child should be merged, not
+	 * the left one, and the right sibling of the last child should not be taken from a stale slot.
+	 * 
+	 * @param maxSizeOfKeys
+	 * @return
+	 */
+	public boolean testRemoveAll(int maxSizeOfKeys) {
+		for (int seed = 0; seed < 50; seed++) {
+			Random random = new Random(seed);
+			BTreeSet<Integer> set = new BTreeSet<Integer>(maxSizeOfKeys);
+			TreeSet<Integer> expected = new TreeSet<Integer>();
+			for (int i = 0; i < 2000; i++) {
+				Integer key = random.nextInt(4000);
+				set.add(key);
+				expected.add(key);
+			}
+			for (int i = 0; i < 4000; i++) {
+				Integer key = random.nextInt(4000);
+				if (expected.remove(key) != set.remove(key) || expected.size() != set.size()) {
+					System.out.println("wrong delete, seed=" + seed + " key=" + key);
+					return false;
+				}
+			}
+			if (new ArrayList<Integer>(expected).equals(new ArrayList<Integer>(set)) == false) {
+				System.out.println("different, seed=" + seed);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean test(int testSize, int maxSizeOfKeys) {
+		Random random = new Random();
+		BTreeSet<Integer> set = new BTreeSet<Integer>(maxSizeOfKeys);
 
 		ArrayList<Integer> list = new ArrayList<Integer>();
 		int doubleTestSize = testSize * 2;
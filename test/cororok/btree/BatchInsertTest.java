@@ -0,0 +1,136 @@
+package cororok.btree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * adds batches of keys by addAll and putAll, sorted or not, with duplicates and keys which exist, and compares the
+ * sets and maps with TreeSet and TreeMap.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class BatchInsertTest {
+	static Random random = new Random();
+
+	public static void main(String[] args) {
+		for (int maxSizeOfKeys = 2; maxSizeOfKeys <= 64; maxSizeOfKeys *= 2) {
+			System.out.println("maxSizeOfKeys=" + maxSizeOfKeys);
+			if (testSet(maxSizeOfKeys, false) == false || testSet(maxSizeOfKeys, true) == false
+					|| testMap(maxSizeOfKeys) == false || testAggregate(maxSizeOfKeys) == false) {
+				System.out.println("Failed");
+				return;
+			}
+		}
+		System.out.println("all right, done");
+	}
+
+	/**
+	 * keys close to each other, far from each other, or in random order.
+	 */
+	static List<Integer> batch(int bound) {
+		int size = random.nextInt(2000);
+		List<Integer> keys = new ArrayList<Integer>(size);
+		int start = random.nextInt(bound);
+		int kind = random.nextInt(3);
+		for (int i = 0; i < size; i++) {
+			if (kind == 0)
+				keys.add(start + i * (1 + random.nextInt(2)));
+			else
+				keys.add(random.nextInt(bound));
+		}
+		if (kind == 2)
+			Collections.sort(keys);
+		return keys;
+	}
+
+	static boolean testSet(int maxSizeOfKeys, boolean counted) {
+		BTreeSet<Integer> set = counted ? BTreeSet.counted(maxSizeOfKeys) : new BTreeSet<Integer>(maxSizeOfKeys);
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		BTreeSet<Integer> snapshot = null;
+		TreeSet<Integer> expectedSnapshot = null;
+		for (int round = 0; round < 100; round++) {
+			List<Integer> keys = batch(50000);
+			if (expected.addAll(keys) != set.addAll(keys)) {
+				System.out.println("wrong addAll");
+				return false;
+			}
+			for (int i = 0; i < 300; i++) {
+				Integer key = random.nextInt(50000);
+				if (expected.remove(key) != set.remove(key))
+					return false;
+			}
+			if (round == 50) {
+				snapshot = set.snapshot();
+				expectedSnapshot = new TreeSet<Integer>(expected);
+			}
+		}
+		if (BulkLoadTest.isValid(set) == false || expected.equals(set) == false) {
+			System.out.println("wrong set");
+			return false;
+		}
+		if (counted) {
+			int index = 0;
+			for (Integer key : expected) {
+				if (set.get(index) != key.intValue() || set.rank(key) != index)
+					return false;
+				++index;
+			}
+		}
+		return set.addAll(new ArrayList<Integer>()) == false && expectedSnapshot.equals(snapshot);
+	}
+
+	static boolean testMap(int maxSizeOfKeys) {
+		BTreeMap<Integer, Integer> map = new BTreeMap<Integer, Integer>(maxSizeOfKeys);
+		TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+		for (int round = 0; round < 100; round++) {
+			List<Integer> keys = batch(50000);
+			// sorted, unsorted and sorted but not a SortedMap
+			Map<Integer, Integer> entries = round % 3 == 0 ? new TreeMap<Integer, Integer>()
+					: round % 3 == 1 ? new HashMap<Integer, Integer>() : new LinkedHashMap<Integer, Integer>();
+			if (round % 3 == 2)
+				Collections.sort(keys);
+			for (Integer key : keys)
+				entries.put(key, random.nextInt());
+			map.putAll(entries);
+			expected.putAll(entries);
+			for (int i = 0; i < 300; i++) {
+				Integer key = random.nextInt(50000);
+				if (expected.containsKey(key) != map.containsKey(key))
+					return false;
+				map.remove(key);
+				expected.remove(key);
+			}
+		}
+		map.putAll(map);
+		if (BulkLoadTest.isValid(map.set) == false || expected.equals(map) == false) {
+			System.out.println("wrong map");
+			return false;
+		}
+		return true;
+	}
+
+	static boolean testAggregate(int maxSizeOfKeys) {
+		AggregateBTreeMap<Integer, Integer, Long> map = new AggregateBTreeMap<Integer, Integer, Long>(maxSizeOfKeys,
+				AggregateTest.SUM);
+		TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+		for (int round = 0; round < 50; round++) {
+			TreeMap<Integer, Integer> entries = new TreeMap<Integer, Integer>();
+			for (Integer key : batch(20000))
+				entries.put(key, random.nextInt(100));
+			map.putAll(entries);
+			expected.putAll(entries);
+		}
+		long sum = 0;
+		for (Integer value : expected.values())
+			sum += value;
+		return map.aggregate() == sum && expected.equals(map);
+	}
+}
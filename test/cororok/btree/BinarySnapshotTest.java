@@ -0,0 +1,118 @@
+package cororok.btree;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * writes {@link BTreeSet} and {@link BTreeMap} with writeTo, reads them with readFrom and compares them with the
+ * originals. Broken data should be rejected.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class BinarySnapshotTest {
+	static Random random = new Random();
+
+	public static void main(String[] args) throws IOException {
+		for (int maxSizeOfKeys = 2; maxSizeOfKeys <= 64; maxSizeOfKeys *= 2) {
+			System.out.println("maxSizeOfKeys=" + maxSizeOfKeys);
+			for (int size : new int[] { 0, 1, 10, 1000, 100000 }) {
+				if (testSet(maxSizeOfKeys, size) == false || testMap(maxSizeOfKeys, size) == false) {
+					System.out.println("Failed, size=" + size);
+					return;
+				}
+			}
+		}
+		if (testBroken() == false) {
+			System.out.println("Failed broken data");
+			return;
+		}
+		System.out.println("all right, done");
+	}
+
+	static boolean testSet(int maxSizeOfKeys, int size) throws IOException {
+		BTreeSet<Integer> set = new BTreeSet<Integer>(maxSizeOfKeys);
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		for (int i = 0; i < size; i++) {
+			Integer key = random.nextInt();
+			set.add(key);
+			expected.add(key);
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		set.writeTo(Channels.newChannel(out), Codecs.INT);
+		BTreeSet<Integer> read = BTreeSet.readFrom(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())),
+				maxSizeOfKeys, 1, Codecs.INT);
+		if (BulkLoadTest.isValid(read) == false || expected.equals(read) == false) {
+			System.out.println("wrong set");
+			return false;
+		}
+
+		// it can be changed after it is read
+		for (int i = 0; i < size; i++) {
+			Integer key = random.nextInt();
+			if (expected.add(key) != read.add(key) || expected.remove(key + 1) != read.remove(key + 1))
+				return false;
+		}
+		return BulkLoadTest.isValid(read) && expected.equals(read);
+	}
+
+	static boolean testMap(int maxSizeOfKeys, int size) throws IOException {
+		BTreeMap<Integer, String> map = new BTreeMap<Integer, String>(maxSizeOfKeys);
+		TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+		for (int i = 0; i < size; i++) {
+			Integer key = random.nextInt(size * 2);
+			String value = i % 7 == 0 ? "" : "값" + i;
+			map.put(key, value);
+			expected.put(key, value);
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		// a snapshot is written while the map is changed
+		BTreeMap<Integer, String> snapshot = map.snapshot();
+		map.put(-1, "new");
+		snapshot.writeTo(Channels.newChannel(out), Codecs.INT, Codecs.utf8(30));
+		BTreeMap<Integer, String> read = BTreeMap.readFrom(
+				Channels.newChannel(new ByteArrayInputStream(out.toByteArray())), maxSizeOfKeys, 0.5, Codecs.INT,
+				Codecs.utf8(30));
+		if (BulkLoadTest.isValid(read.set) == false || expected.equals(read) == false) {
+			System.out.println("wrong map");
+			return false;
+		}
+		return true;
+	}
+
+	static boolean testBroken() throws IOException {
+		BTreeMap<Integer, Long> map = new BTreeMap<Integer, Long>(16);
+		for (int i = 0; i < 10000; i++)
+			map.put(i, (long) i * i);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		map.writeTo(Channels.newChannel(out), Codecs.INT, Codecs.LONG);
+		byte[] bytes = out.toByteArray();
+		if (bytes.length != SnapshotFormat.HEADER_SIZE + 10000 * 12 + 4) {
+			System.out.println("not compact, " + bytes.length);
+			return false;
+		}
+
+		byte[] changed = bytes.clone();
+		changed[SnapshotFormat.HEADER_SIZE + 12 * 5000 + 5] ^= 1; // a value
+		return isRejected(changed) && isRejected(Arrays.copyOf(bytes, bytes.length - 1))
+				&& isRejected(Arrays.copyOf(bytes, bytes.length / 2)) && isRejected(new byte[0]);
+	}
+
+	static boolean isRejected(byte[] bytes) {
+		try {
+			BTreeMap.readFrom(Channels.newChannel(new ByteArrayInputStream(bytes)), 16, 1, Codecs.INT, Codecs.LONG);
+		} catch (IOException e) {
+			return true;
+		}
+		System.out.println("broken data is read, " + bytes.length);
+		return false;
+	}
+}
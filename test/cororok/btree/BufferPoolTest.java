@@ -0,0 +1,142 @@
+package cororok.btree;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * compares {@link MappedBTreeMap} using a small {@link BufferPool} with {@link TreeMap}, reopens the file mapped and
+ * checks that a scan of leaves does not evict inner pages.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class BufferPoolTest {
+	static Random random = new Random();
+
+	public static void main(String[] args) throws IOException {
+		Path path = Files.createTempFile("pool", ".btree");
+		Files.delete(path);
+		try {
+			if (testMap(path) == false || testPins(path) == false) {
+				System.out.println("Failed");
+				return;
+			}
+		} finally {
+			Files.deleteIfExists(path);
+		}
+		System.out.println("all right, done");
+	}
+
+	static boolean testMap(Path path) throws IOException {
+		int size = 100000;
+		TreeMap<Integer, Long> expected = new TreeMap<Integer, Long>();
+		try (MappedBTreeMap<Integer, Long> map = MappedBTreeMap.open(path, 512, 16, Codecs.INT, Codecs.LONG)) {
+			for (int i = 0; i < size; i++) {
+				Integer key = random.nextInt(size * 2);
+				long value = random.nextLong();
+				if (MappedBTreeMapTest.equals(expected.put(key, value), map.put(key, value)) == false)
+					return false;
+				key = random.nextInt(size * 2);
+				if (i % 3 == 0 && MappedBTreeMapTest.equals(expected.remove(key), map.remove(key)) == false)
+					return false;
+			}
+			BufferPool pool = (BufferPool) map.file;
+			System.out.println("height=" + map.height() + " pages=" + pool.pageCount() + " hits=" + pool.hits()
+					+ " misses=" + pool.misses() + " writeBacks=" + pool.writeBacks());
+			if (pool.writeBacks() == 0 || MappedBTreeMapTest.same(expected, map) == false)
+				return false;
+		}
+
+		// the same file can be mapped
+		try (MappedBTreeMap<Integer, Long> map = MappedBTreeMap.open(path, 512, Codecs.INT, Codecs.LONG)) {
+			if (MappedBTreeMapTest.same(expected, map) == false) {
+				System.out.println("wrong mapped file");
+				return false;
+			}
+		}
+
+		try (MappedBTreeMap<Integer, Long> map = MappedBTreeMap.open(path, 512, 128, Codecs.INT, Codecs.LONG)) {
+			BufferPool pool = (BufferPool) map.file;
+			Integer[] keys = expected.keySet().toArray(new Integer[expected.size()]);
+			for (int i = 0; i < 20000; i++)
+				map.get(keys[random.nextInt(keys.length)]);
+			ArrayList<Integer> innerPages = new ArrayList<Integer>();
+			addInnerPages(map, map.root, 1, innerPages);
+			int kept = countKept(pool, innerPages);
+
+			// a scan reads every leaf once
+			long[] sum = new long[1];
+			map.forEach((key, value) -> sum[0] += key);
+			int keptAfterScan = countKept(pool, innerPages);
+			System.out.println("inner pages=" + innerPages.size() + " kept=" + kept + " after scan=" + keptAfterScan);
+			if (keptAfterScan < kept - 2)
+				return false;
+
+			for (int i = 0; i < 1000; i++) {
+				Integer key = keys[random.nextInt(keys.length)];
+				if (expected.get(key).equals(map.get(key)) == false)
+					return false;
+			}
+		}
+		return true;
+	}
+
+	static void addInnerPages(MappedBTreeMap<Integer, Long> map, int pageId, int level, ArrayList<Integer> pages) {
+		if (level == map.height())
+			return;
+
+		pages.add(pageId);
+		int noOfKeys = map.new Page(pageId).noOfKeys();
+		for (int i = 0; i <= noOfKeys; i++) {
+			int child = map.new Page(pageId).childAt(i);
+			map.file.release();
+			addInnerPages(map, child, level + 1, pages);
+		}
+	}
+
+	static int countKept(BufferPool pool, ArrayList<Integer> pages) {
+		int count = 0;
+		for (Integer pageId : pages) {
+			if (pool.frameOf.containsKey(pageId))
+				++count;
+		}
+		return count;
+	}
+
+	static boolean testPins(Path path) throws IOException {
+		try (BufferPool pool = new BufferPool(path, 512, 8)) {
+			for (int i = 1; i <= 8; i++)
+				pool.buffer(i);
+			try {
+				pool.buffer(9);
+				System.out.println("no buffer should be available");
+				return false;
+			} catch (IllegalStateException e) {
+			}
+			pool.release();
+
+			pool.pin(9).putInt(100, 1234);
+			pool.unpin(9, true);
+			for (int i = 10; i < 30; i++) {
+				pool.pin(i);
+				pool.unpin(i, false);
+			}
+			if (pool.pin(9).getInt(100) != 1234) {
+				System.out.println("changed page is lost");
+				return false;
+			}
+			pool.unpin(9, false);
+			try {
+				pool.unpin(9, false);
+				System.out.println("page is not pinned");
+				return false;
+			} catch (IllegalStateException e) {
+			}
+		}
+		return true;
+	}
+}
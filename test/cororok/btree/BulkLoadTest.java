@@ -0,0 +1,146 @@
+package cororok.btree;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class BulkLoadTest {
+	public static void main(String[] args) {
+		for (int maxSizeOfKeys = 2; maxSizeOfKeys <= 16; maxSizeOfKeys += 2) {
+			System.out.println("maxSizeOfKeys=" + maxSizeOfKeys);
+			for (double fillFactor : new double[] { 0.1, 0.5, 0.7, 1 }) {
+				for (int size = 0; size < 300; size++) {
+					if (testSet(maxSizeOfKeys, fillFactor, size, false) == false) {
+						System.out.println("Failed, fillFactor=" + fillFactor + " size=" + size);
+						return;
+					}
+				}
+				if (testSet(maxSizeOfKeys, fillFactor, 20000, true) == false
+						|| testMap(maxSizeOfKeys, fillFactor, 20000) == false) {
+					System.out.println("Failed, fillFactor=" + fillFactor);
+					return;
+				}
+			}
+		}
+
+		try {
+			BTreeSet.build(4, 1, java.util.Arrays.asList(1, 3, 2).iterator());
+			System.out.println("Failed, unsorted keys");
+			return;
+		} catch (IllegalArgumentException e) {
+		}
+
+		System.out.println("all right, done");
+	}
+
+	static boolean testSet(int maxSizeOfKeys, double fillFactor, int size, boolean change) {
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		for (int i = 0; i < size; i++)
+			expected.add(i * 2);
+
+		BTreeSet<Integer> set = BTreeSet.build(maxSizeOfKeys, fillFactor, expected.iterator());
+		if (isValid(set) == false || set.size() != size || expected.equals(set) == false) {
+			System.out.println("build wrong");
+			return false;
+		}
+		if (change == false)
+			return true;
+
+		// later changes should keep the tree valid
+		Random random = new Random();
+		for (int i = 0; i < size * 2; i++) {
+			Integer key = random.nextInt(size * 2);
+			if (random.nextBoolean()) {
+				if (expected.add(key) != set.add(key)) {
+					System.out.println("add wrong, key=" + key);
+					return false;
+				}
+			} else if (expected.remove(key) != set.remove(key)) {
+				System.out.println("remove wrong, key=" + key);
+				return false;
+			}
+		}
+		return isValid(set) && expected.size() == set.size() && expected.equals(set);
+	}
+
+	static boolean testMap(int maxSizeOfKeys, double fillFactor, int size) {
+		TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+		for (int i = 0; i < size; i++)
+			expected.put(i, i * 10);
+
+		BTreeMap<Integer, Integer> map = BTreeMap.build(maxSizeOfKeys, fillFactor, expected.entrySet().iterator());
+		if (isValid(map.set) == false || expected.equals(map) == false || map.equals(expected) == false) {
+			System.out.println("build map wrong");
+			return false;
+		}
+		for (int i = 0; i < size; i++) {
+			if (expected.get(i).equals(map.get(i)) == false) {
+				System.out.println("get wrong, key=" + i);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * checks every node except root and the right edge has half or more keys, all leaves are at the same depth and
+	 * keys are in order.
+	 */
+	static boolean isValid(BTreeSet<Integer> set) {
+		int[] count = new int[1];
+		if (isValid(set, set.root, true, true, 1, null, null, count) == false) {
+			System.out.println("invalid tree");
+			return false;
+		}
+		if (count[0] != set.size()) {
+			System.out.println("wrong size");
+			return false;
+		}
+		Iterator<Integer> itr = set.iterator();
+		Integer last = null;
+		while (itr.hasNext()) {
+			Integer key = itr.next();
+			if (last != null && last >= key)
+				return false;
+			last = key;
+		}
+		return true;
+	}
+
+	/**
+	 * @param isRightEdge nodes on the right edge may have fewer than half keys but one, see {@link BTreeSet#appending}.
+	 */
+	static boolean isValid(BTreeSet<Integer> set, BTreeSet<Integer>.Node node, boolean isRoot, boolean isRightEdge,
+			int depth, Integer min, Integer max, int[] count) {
+		if (node.noOfKeys > set.MAX_KEY || (isRoot == false && node.noOfKeys < (isRightEdge ? 1 : set.HALF_KEY)))
+			return false;
+
+		Object[] keys = node.keys; // K[] is Comparable[] at runtime
+		for (int i = 0; i < node.noOfKeys; i++) {
+			Integer key = (Integer) keys[i];
+			if ((min != null && key <= min) || (max != null && key >= max) || (i > 0 && (Integer) keys[i - 1] >= key))
+				return false;
+		}
+		count[0] += node.noOfKeys;
+
+		if (node.isLeaf())
+			return depth == set.height();
+
+		if (node.noOfChildren != node.noOfKeys + 1)
+			return false;
+		for (int i = 0; i < node.noOfChildren; i++) {
+			Integer childMin = i == 0 ? min : (Integer) keys[i - 1];
+			Integer childMax = i == node.noOfKeys ? max : (Integer) keys[i];
+			if (isValid(set, node.children[i], false, isRightEdge && i == node.noOfKeys, depth + 1, childMin, childMax,
+					count) == false)
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,174 @@
+package cororok.btree;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * compares {@link BytesBTreeSet} and {@link BytesBTreeMap} with TreeSet and TreeMap ordered by unsigned bytes.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class BytesBTreeSetTest {
+	static Random random = new Random();
+
+	public static void main(String[] args) {
+		if (testCompare() == false) {
+			System.out.println("Failed compare");
+			return;
+		}
+		for (int maxSizeOfKeys = 2; maxSizeOfKeys <= 64; maxSizeOfKeys *= 2) {
+			System.out.println("maxSizeOfKeys=" + maxSizeOfKeys);
+			if (testSet(20000, maxSizeOfKeys) == false || testMap(20000, maxSizeOfKeys) == false) {
+				System.out.println("Failed");
+				return;
+			}
+		}
+		System.out.println("all right, done");
+	}
+
+	/**
+	 * compares byte by byte, which the one reading 8 bytes at once should agree with.
+	 */
+	static int slowCompare(byte[] a, byte[] b) {
+		for (int i = 0; i < Math.min(a.length, b.length); i++) {
+			int diff = (a[i] & 0xff) - (b[i] & 0xff);
+			if (diff != 0)
+				return diff;
+		}
+		return a.length - b.length;
+	}
+
+	static boolean testCompare() {
+		if (BytesBTreeSet.compare(new byte[] { (byte) 0x80 }, new byte[] { 0x7f }) <= 0
+				|| BytesBTreeSet.compare(new byte[] { 1, 2 }, new byte[] { 1, 2, 0 }) >= 0
+				|| BytesBTreeSet.compare(new byte[0], new byte[0]) != 0)
+			return false;
+
+		for (int i = 0; i < 100000; i++) {
+			byte[] a = randomKey();
+			byte[] b = a.clone();
+			if (b.length > 0 && i % 2 == 0)
+				b[random.nextInt(b.length)] = (byte) random.nextInt(256);
+			else if (i % 3 == 0)
+				b = randomKey();
+			if (Integer.signum(slowCompare(a, b)) != Integer.signum(BytesBTreeSet.compare(a, b))) {
+				System.out.println("wrong compare " + Arrays.toString(a) + " vs " + Arrays.toString(b));
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * serialized keys, a common prefix with a big endian number, random bytes or nothing.
+	 */
+	static byte[] randomKey() {
+		int n = random.nextInt(40000);
+		switch (n % 4) {
+		case 0:
+			return ("user:" + (n % 11) + ":").getBytes(StandardCharsets.UTF_8);
+		case 1:
+			byte[] prefix = ("user:" + (n % 11) + ":").getBytes(StandardCharsets.UTF_8);
+			byte[] key = Arrays.copyOf(prefix, prefix.length + 4);
+			for (int i = 0; i < 4; i++)
+				key[prefix.length + i] = (byte) (n >>> (24 - i * 8));
+			return key;
+		case 2:
+			return n % 100 == 2 ? new byte[0] : new byte[] { (byte) n, (byte) (n >>> 8) };
+		default:
+			byte[] bytes = new byte[n % 23];
+			random.nextBytes(bytes);
+			return bytes;
+		}
+	}
+
+	static boolean testSet(int testSize, int maxSizeOfKeys) {
+		BytesBTreeSet set = new BytesBTreeSet(maxSizeOfKeys);
+		TreeSet<byte[]> expected = new TreeSet<byte[]>(BytesBTreeSet::compare);
+		for (int i = 0; i < testSize; i++) {
+			byte[] key = randomKey();
+			if (expected.add(key) != set.add(key)) {
+				System.out.println("wrong add, key=" + Arrays.toString(key));
+				return false;
+			}
+		}
+		if (haveSameKeys(expected, set.iterator()) == false)
+			return false;
+
+		for (int i = 0; i < testSize; i++) {
+			byte[] key = randomKey();
+			if (expected.contains(key) != set.contains(key) || expected.remove(key) != set.remove(key)) {
+				System.out.println("wrong delete, key=" + Arrays.toString(key));
+				return false;
+			}
+			if (key.length > 0 && i % 3 == 0) {
+				key[0]++;
+				if (expected.add(key.clone()) != set.add(key)) {
+					System.out.println("wrong add, key=" + Arrays.toString(key));
+					return false;
+				}
+				key[0]++; // does not change the set
+			}
+		}
+		if (expected.size() != set.size() || haveSameKeys(expected, set.iterator()) == false)
+			return false;
+
+		for (byte[] key : expected.toArray(new byte[0][]))
+			set.remove(key);
+		return set.isEmpty() && set.byteCount() == 0 && set.height() == 1;
+	}
+
+	static boolean haveSameKeys(TreeSet<byte[]> expected, Iterator<byte[]> itr) {
+		for (byte[] key : expected) {
+			byte[] setKey = itr.next();
+			if (Arrays.equals(key, setKey) == false) {
+				System.out.println("wrong iterator " + Arrays.toString(key) + " vs " + Arrays.toString(setKey));
+				return false;
+			}
+		}
+		return itr.hasNext() == false;
+	}
+
+	static boolean testMap(int testSize, int maxSizeOfKeys) {
+		BytesBTreeMap<Integer> map = new BytesBTreeMap<Integer>(maxSizeOfKeys);
+		TreeMap<byte[], Integer> expected = new TreeMap<byte[], Integer>(BytesBTreeSet::compare);
+		for (int i = 0; i < testSize; i++) {
+			byte[] key = randomKey();
+			Integer value = i;
+			if (expected.put(key, value) != map.put(key, value)) {
+				System.out.println("wrong put, key=" + Arrays.toString(key));
+				return false;
+			}
+		}
+		for (int i = 0; i < testSize; i++) {
+			byte[] key = randomKey();
+			if (Objects.equals(expected.get(key), map.get(key)) == false
+					|| Objects.equals(expected.remove(key), map.remove(key)) == false) {
+				System.out.println("wrong remove, key=" + Arrays.toString(key));
+				return false;
+			}
+		}
+		for (Map.Entry<byte[], Integer> entry : map.entrySet())
+			entry.setValue(entry.getValue() + 1);
+		if (expected.size() != map.size())
+			return false;
+
+		Iterator<Map.Entry<byte[], Integer>> itr = map.entrySet().iterator();
+		for (Map.Entry<byte[], Integer> entry : expected.entrySet()) {
+			Map.Entry<byte[], Integer> mapEntry = itr.next();
+			if (Arrays.equals(entry.getKey(), mapEntry.getKey()) == false
+					|| entry.getValue() + 1 != mapEntry.getValue()) {
+				System.out.println("wrong entry " + mapEntry);
+				return false;
+			}
+		}
+		return itr.hasNext() == false;
+	}
+}
@@ -0,0 +1,466 @@
+package cororok.btree;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class ConcurrentBTreeMapTest {
+	public static void main(String[] args) throws InterruptedException {
+		if (testSingleThread(10000) == false) {
+			System.out.println("Failed");
+			return;
+		}
+
+		if (testMultiThreads(8, 20000) == false) {
+			System.out.println("Failed");
+			return;
+		}
+
+		if (testAtomicOperations(10000) == false) {
+			System.out.println("Failed");
+			return;
+		}
+
+		if (testConcurrentAtomicOperations(4, 1000, 20000) == false) {
+			System.out.println("Failed");
+			return;
+		}
+
+		if (testEmptyLeaves(4, 20000) == false) {
+			System.out.println("Failed");
+			return;
+		}
+
+		if (testReentrantFunctions(1000) == false) {
+			System.out.println("Failed");
+			return;
+		}
+
+		if (testClearWhileWriting(4, 1000) == false) {
+			System.out.println("Failed");
+			return;
+		}
+
+		System.out.println("all right, done");
+	}
+
+	static boolean testSingleThread(int testSize) {
+		System.out.println("single thread test");
+		Random random = new Random();
+		TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+		ConcurrentBTreeMap<Integer, Integer> map = new ConcurrentBTreeMap<Integer, Integer>(4);
+
+		int doubleTestSize = testSize * 2;
+		for (int i = 0; i < testSize * 4; i++) {
+			Integer key = random.nextInt(doubleTestSize);
+			Integer value = i;
+			if (random.nextInt(3) == 0) {
+				if (expected.remove(key) != map.remove(key)) {
+					System.out.println("remove wrong, key=" + key);
+					return false;
+				}
+			} else if (expected.put(key, value) != map.put(key, value)) {
+				System.out.println("put wrong, key=" + key);
+				return false;
+			}
+
+			if (expected.size() != map.size()) {
+				System.out.println("size wrong");
+				return false;
+			}
+		}
+
+		for (int key = 0; key < doubleTestSize; key++) {
+			if (expected.get(key) != map.get(key)) {
+				System.out.println("get wrong, key=" + key);
+				return false;
+			}
+		}
+		return haveSameOrder(expected, map);
+	}
+
+	/**
+	 * each writer puts and removes its own range of keys while readers read all keys.
+	 */
+	static boolean testMultiThreads(final int noOfThreads, final int keysPerThread) throws InterruptedException {
+		System.out.println("multi threads test");
+		final ConcurrentBTreeMap<Integer, Integer> map = new ConcurrentBTreeMap<Integer, Integer>(8);
+		final AtomicBoolean failed = new AtomicBoolean();
+		final AtomicBoolean writing = new AtomicBoolean(true);
+
+		Thread[] writers = new Thread[noOfThreads];
+		for (int i = 0; i < noOfThreads; i++) {
+			final int thread = i;
+			writers[i] = new Thread() {
+				@Override
+				public void run() {
+					// keys of threads are interleaved so that they share leaves
+					for (int j = 0; j < keysPerThread; j++) {
+						Integer key = j * noOfThreads + thread;
+						if (map.put(key, key) != null)
+							failed.set(true);
+					}
+					for (int j = 0; j < keysPerThread; j += 2) {
+						Integer key = j * noOfThreads + thread;
+						if (key.equals(map.remove(key)) == false)
+							failed.set(true);
+					}
+				}
+			};
+		}
+
+		Thread[] readers = new Thread[2];
+		for (int i = 0; i < readers.length; i++) {
+			readers[i] = new Thread() {
+				@Override
+				public void run() {
+					Random random = new Random();
+					while (writing.get()) {
+						Integer key = random.nextInt(noOfThreads * keysPerThread);
+						Integer value = map.get(key);
+						if (value != null && value.equals(key) == false)
+							failed.set(true);
+
+						Integer last = null;
+						Iterator<Integer> itr = map.keySet().iterator();
+						for (int j = 0; j < 100 && itr.hasNext(); j++) {
+							Integer current = itr.next();
+							if (last != null && last.compareTo(current) >= 0)
+								failed.set(true);
+							last = current;
+						}
+					}
+				}
+			};
+		}
+
+		for (Thread thread : readers)
+			thread.start();
+		for (Thread thread : writers)
+			thread.start();
+		for (Thread thread : writers)
+			thread.join();
+		writing.set(false);
+		for (Thread thread : readers)
+			thread.join();
+
+		if (failed.get()) {
+			System.out.println("wrong value or order while writing");
+			return false;
+		}
+
+		TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+		for (int i = 0; i < noOfThreads; i++) {
+			for (int j = 1; j < keysPerThread; j += 2) {
+				Integer key = j * noOfThreads + i;
+				expected.put(key, key);
+			}
+		}
+
+		System.out.println("size=" + map.size());
+		return expected.size() == map.size() && haveSameOrder(expected, map);
+	}
+
+	/**
+	 * writers remove almost all of their keys while readers iterate, empty leaves should be removed from the chain of
+	 * leaves except one for each parent.
+	 */
+	static boolean testEmptyLeaves(final int noOfThreads, final int keysPerThread) throws InterruptedException {
+		System.out.println("empty leaves test");
+		final ConcurrentBTreeMap<Integer, Integer> map = new ConcurrentBTreeMap<Integer, Integer>(8);
+		final AtomicBoolean failed = new AtomicBoolean();
+		final AtomicBoolean writing = new AtomicBoolean(true);
+
+		Thread[] writers = new Thread[noOfThreads];
+		for (int i = 0; i < noOfThreads; i++) {
+			final int thread = i;
+			writers[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < keysPerThread; j++) {
+						Integer key = j * noOfThreads + thread;
+						map.put(key, key);
+					}
+					for (int j = 0; j < keysPerThread; j++) {
+						Integer key = j * noOfThreads + thread;
+						if (j % 100 != 0 && key.equals(map.remove(key)) == false)
+							failed.set(true);
+					}
+				}
+			};
+		}
+
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				while (writing.get()) {
+					Integer last = null;
+					for (Integer current : map.keySet()) {
+						if (last != null && last.compareTo(current) >= 0)
+							failed.set(true);
+						last = current;
+					}
+				}
+			}
+		};
+
+		reader.start();
+		for (Thread thread : writers)
+			thread.start();
+		for (Thread thread : writers)
+			thread.join();
+		writing.set(false);
+		reader.join();
+
+		TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+		for (int i = 0; i < noOfThreads; i++) {
+			for (int j = 0; j < keysPerThread; j += 100) {
+				Integer key = j * noOfThreads + i;
+				expected.put(key, key);
+			}
+		}
+
+		if (failed.get() || haveSameOrder(expected, map) == false) {
+			System.out.println("wrong keys after removing");
+			return false;
+		}
+
+		// removes the rest on one thread, nothing is locked now so only one leaf of each parent is left
+		for (Integer key : expected.keySet())
+			map.remove(key);
+
+		ConcurrentBTreeMap<Integer, Integer>.Node node = map.root;
+		while (node.isLeaf == false)
+			node = node.children[0];
+		int noOfLeaves = 0;
+		for (; node != null; node = node.next)
+			++noOfLeaves;
+
+		int noOfParents = countParentsOfLeaves(map.root);
+		System.out.println("leaves=" + noOfLeaves + ", parents=" + noOfParents);
+		return map.isEmpty() && noOfLeaves == Math.max(1, noOfParents);
+	}
+
+	static int countParentsOfLeaves(ConcurrentBTreeMap<Integer, Integer>.Node node) {
+		if (node.isLeaf)
+			return 0;
+		if (node.children[0].isLeaf)
+			return 1;
+
+		int count = 0;
+		for (int i = 0; i <= node.noOfKeys; i++)
+			count += countParentsOfLeaves(node.children[i]);
+		return count;
+	}
+
+	/**
+	 * compares the atomic operations of ConcurrentMap with TreeMap.
+	 */
+	static boolean testAtomicOperations(int testSize) {
+		System.out.println("atomic operations test");
+		Random random = new Random();
+		TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+		ConcurrentBTreeMap<Integer, Integer> map = new ConcurrentBTreeMap<Integer, Integer>(4);
+
+		for (int i = 0; i < testSize * 4; i++) {
+			Integer key = random.nextInt(testSize);
+			Integer value = random.nextInt(4);
+			Object expectedResult;
+			Object result;
+			switch (random.nextInt(8)) {
+			case 0:
+				expectedResult = expected.putIfAbsent(key, value);
+				result = map.putIfAbsent(key, value);
+				break;
+			case 1:
+				expectedResult = expected.remove(key, value);
+				result = map.remove(key, value);
+				break;
+			case 2:
+				expectedResult = expected.replace(key, value, i);
+				result = map.replace(key, value, i);
+				break;
+			case 3:
+				expectedResult = expected.replace(key, value);
+				result = map.replace(key, value);
+				break;
+			case 4:
+				expectedResult = expected.computeIfAbsent(key, k -> k % 3 == 0 ? null : k);
+				result = map.computeIfAbsent(key, k -> k % 3 == 0 ? null : k);
+				break;
+			case 5:
+				expectedResult = expected.computeIfPresent(key, (k, v) -> v % 2 == 0 ? null : v + 1);
+				result = map.computeIfPresent(key, (k, v) -> v % 2 == 0 ? null : v + 1);
+				break;
+			case 6:
+				expectedResult = expected.compute(key, (k, v) -> v == null ? k : (v % 3 == 0 ? null : v + 3));
+				result = map.compute(key, (k, v) -> v == null ? k : (v % 3 == 0 ? null : v + 3));
+				break;
+			default:
+				expectedResult = expected.merge(key, value, (v1, v2) -> v1 % 5 == 0 ? null : v1 + v2);
+				result = map.merge(key, value, (v1, v2) -> v1 % 5 == 0 ? null : v1 + v2);
+			}
+
+			if (java.util.Objects.equals(expectedResult, result) == false || expected.size() != map.size()) {
+				System.out.println("wrong result, key=" + key + " " + expectedResult + " vs " + result);
+				return false;
+			}
+		}
+
+		System.out.println("size=" + map.size());
+		return haveSameOrder(expected, map);
+	}
+
+	/**
+	 * threads merge counts and compute absent keys on the same keys, no update should be lost and every thread should
+	 * get the value which was kept for a key.
+	 */
+	static boolean testConcurrentAtomicOperations(final int noOfThreads, final int noOfKeys, final int opsPerThread)
+			throws InterruptedException {
+		System.out.println("concurrent atomic operations test");
+		final ConcurrentBTreeMap<Integer, Integer> counts = new ConcurrentBTreeMap<Integer, Integer>(8);
+		final ConcurrentBTreeMap<Integer, Integer> created = new ConcurrentBTreeMap<Integer, Integer>(8);
+		final AtomicIntegerArray kept = new AtomicIntegerArray(noOfKeys);
+		final AtomicBoolean lost = new AtomicBoolean();
+
+		Thread[] threads = new Thread[noOfThreads];
+		for (int i = 0; i < noOfThreads; i++) {
+			final int id = i + 1;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					Random random = new Random();
+					for (int j = 0; j < opsPerThread; j++) {
+						Integer key = random.nextInt(noOfKeys);
+						counts.merge(key, 1, Integer::sum);
+						// the function reads the map, and each thread creates its own value
+						int value = created.computeIfAbsent(key, k -> {
+							created.get(k + 1);
+							return id;
+						});
+						if (kept.compareAndSet(key, 0, value) == false && kept.get(key) != value)
+							lost.set(true);
+					}
+				}
+			};
+		}
+
+		for (Thread thread : threads)
+			thread.start();
+		for (Thread thread : threads)
+			thread.join();
+
+		long total = 0;
+		for (Integer count : counts.values())
+			total += count;
+
+		System.out.println("total=" + total + ", keys=" + created.size());
+		return total == (long) noOfThreads * opsPerThread && lost.get() == false;
+	}
+
+	/**
+	 * functions read and change the map on the same leaf, they used to hang when they were called under its lock.
+	 */
+	static boolean testReentrantFunctions(int testSize) {
+		System.out.println("reentrant functions test");
+		ConcurrentBTreeMap<Integer, Integer> map = new ConcurrentBTreeMap<Integer, Integer>(8);
+		TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+		for (int i = 0; i < testSize; i++) {
+			Integer key = i;
+			map.computeIfAbsent(key, k -> map.containsKey(k - 1) ? 1 : 0);
+			expected.computeIfAbsent(key, k -> expected.containsKey(k - 1) ? 1 : 0);
+			map.compute(key, (k, v) -> v + map.getOrDefault(k - 1, 0));
+			expected.compute(key, (k, v) -> v + expected.getOrDefault(k - 1, 0));
+			map.merge(key, 1, (v1, v2) -> v1 + v2 + map.size());
+			expected.merge(key, 1, (v1, v2) -> v1 + v2 + expected.size());
+		}
+
+		// changes a value while its function is running, the function is called again with the new value
+		map.put(testSize, 0);
+		AtomicInteger calls = new AtomicInteger();
+		Integer result = map.computeIfPresent(testSize, (k, v) -> {
+			if (calls.incrementAndGet() == 1)
+				map.put(k, 10);
+			return v + 1;
+		});
+		map.remove(testSize);
+
+		return result == 11 && calls.get() == 2 && haveSameOrder(expected, map);
+	}
+
+	/**
+	 * clears while writers put and remove, the size should match the keys after all.
+	 */
+	static boolean testClearWhileWriting(final int noOfThreads, final int keysPerThread) throws InterruptedException {
+		System.out.println("clear while writing test");
+		final ConcurrentBTreeMap<Integer, Integer> map = new ConcurrentBTreeMap<Integer, Integer>(8);
+		final AtomicBoolean writing = new AtomicBoolean(true);
+
+		Thread[] writers = new Thread[noOfThreads];
+		for (int i = 0; i < noOfThreads; i++) {
+			writers[i] = new Thread() {
+				@Override
+				public void run() {
+					Random random = new Random();
+					for (int j = 0; j < keysPerThread * 200; j++) {
+						Integer key = random.nextInt(keysPerThread);
+						if (random.nextInt(3) == 0)
+							map.remove(key);
+						else
+							map.put(key, key);
+					}
+				}
+			};
+		}
+
+		Thread clearer = new Thread() {
+			@Override
+			public void run() {
+				while (writing.get()) {
+					map.clear();
+				}
+			}
+		};
+
+		clearer.start();
+		for (Thread thread : writers)
+			thread.start();
+		for (Thread thread : writers)
+			thread.join();
+		writing.set(false);
+		clearer.join();
+
+		for (int key = 0; key < keysPerThread; key++) {
+			if (key % 2 == 0)
+				map.put(key, key);
+		}
+
+		int count = 0;
+		for (Iterator<Integer> itr = map.keySet().iterator(); itr.hasNext(); itr.next())
+			count++;
+
+		System.out.println("size=" + map.size() + ", keys=" + count);
+		return count == map.size();
+	}
+
+	static boolean haveSameOrder(Map<Integer, Integer> expected, Map<Integer, Integer> map) {
+		Iterator<Map.Entry<Integer, Integer>> expectedItr = expected.entrySet().iterator();
+		Iterator<Map.Entry<Integer, Integer>> mapItr = map.entrySet().iterator();
+		while (expectedItr.hasNext()) {
+			if (mapItr.hasNext() == false || expectedItr.next().equals(mapItr.next()) == false) {
+				System.out.println("wrong iterator");
+				return false;
+			}
+		}
+		return mapItr.hasNext() == false;
+	}
+}
@@ -0,0 +1,82 @@
+package cororok.btree;
+
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class ConcurrentMapTest {
+	public static void main(String[] args) throws InterruptedException {
+		for (boolean optimisticRead : new boolean[] { false, true }) {
+			System.out.println("optimisticRead=" + optimisticRead);
+			if (test(optimisticRead, 20000) == false) {
+				System.out.println("Failed");
+				return;
+			}
+		}
+
+		System.out.println("all right, done");
+	}
+
+	/**
+	 * a writer adds and removes keys while readers check that the value of a key is the key or null.
+	 */
+	static boolean test(boolean optimisticRead, final int keyRange) throws InterruptedException {
+		final ConcurrentMap<Integer, Integer> map = new ConcurrentMap<Integer, Integer>(
+				new BTreeMap<Integer, Integer>(4), optimisticRead);
+		final TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+		final AtomicBoolean failed = new AtomicBoolean();
+		final AtomicBoolean writing = new AtomicBoolean(true);
+
+		Thread[] readers = new Thread[4];
+		for (int i = 0; i < readers.length; i++) {
+			readers[i] = new Thread() {
+				@Override
+				public void run() {
+					Random random = new Random();
+					while (writing.get()) {
+						Integer key = random.nextInt(keyRange);
+						Integer value = map.get(key);
+						if (value != null && value.equals(key) == false)
+							failed.set(true);
+
+						if (map.containsKey(key) && map.size() == 0)
+							failed.set(true);
+					}
+				}
+			};
+			readers[i].start();
+		}
+
+		Random random = new Random();
+		for (int i = 0; i < keyRange * 10; i++) {
+			Integer key = random.nextInt(keyRange);
+			if (random.nextBoolean()) {
+				if (expected.put(key, key) != map.put(key, key))
+					failed.set(true);
+			} else if (expected.remove(key) != map.remove(key)) {
+				failed.set(true);
+			}
+		}
+		writing.set(false);
+		for (Thread thread : readers)
+			thread.join();
+
+		if (failed.get()) {
+			System.out.println("wrong value while writing");
+			return false;
+		}
+
+		for (int key = 0; key < keyRange; key++) {
+			if (expected.get(key) != map.get(key) || expected.containsKey(key) != map.containsKey(key)) {
+				System.out.println("get wrong, key=" + key);
+				return false;
+			}
+		}
+		return expected.size() == map.size();
+	}
+}
@@ -0,0 +1,239 @@
+package cororok.btree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * compares {@link DurableBTreeMap} with {@link TreeMap} after reopening, checkpoints, a broken log and concurrent
+ * commits.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class DurableBTreeMapTest {
+	static Random random = new Random();
+
+	public static void main(String[] args) throws Exception {
+		Path dir = Files.createTempDirectory("durable");
+		try {
+			if (testReopen(dir) == false || testBrokenLog(dir) == false || testCheckpoint(dir) == false
+					|| testGroupCommit(dir) == false) {
+				System.out.println("Failed");
+				return;
+			}
+		} finally {
+			delete(dir);
+		}
+		System.out.println("all right, done");
+	}
+
+	static DurableBTreeMap<Integer, String> open(Path dir) throws IOException {
+		return DurableBTreeMap.open(dir, 16, Codecs.INT, Codecs.utf8(20));
+	}
+
+	static boolean change(TreeMap<Integer, String> expected, DurableBTreeMap<Integer, String> map, int count) {
+		for (int i = 0; i < count; i++) {
+			Integer key = random.nextInt(count);
+			String value = "v" + random.nextInt();
+			Object actual = random.nextInt(3) == 0 ? map.remove(key) : map.put(key, value);
+			Object expectedValue = map.containsKey(key) ? expected.put(key, value) : expected.remove(key);
+			if (expectedValue == null ? actual != null : expectedValue.equals(actual) == false) {
+				System.out.println("wrong change, key=" + key);
+				return false;
+			}
+		}
+		return same(expected, map);
+	}
+
+	static boolean testReopen(Path dir) throws IOException {
+		TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+		try (DurableBTreeMap<Integer, String> map = open(dir)) {
+			if (change(expected, map, 5000) == false)
+				return false;
+		}
+		try (DurableBTreeMap<Integer, String> map = open(dir)) {
+			if (same(expected, map) == false)
+				return false;
+			map.clear();
+			expected.clear();
+			if (change(expected, map, 3000) == false)
+				return false;
+		}
+		try (DurableBTreeMap<Integer, String> map = open(dir)) {
+			return same(expected, map);
+		}
+	}
+
+	static boolean testBrokenLog(Path dir) throws IOException {
+		TreeMap<Integer, String> expected;
+		try (DurableBTreeMap<Integer, String> map = open(dir)) {
+			expected = new TreeMap<Integer, String>(map);
+		}
+
+		// a record which was being written when it crashed
+		Path log = lastLog(dir);
+		try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 0, 0, 0, 20, 1, 2, 3, 4, 1, 0 }));
+		}
+		try (DurableBTreeMap<Integer, String> map = open(dir)) {
+			if (same(expected, map) == false) {
+				System.out.println("wrong replay of broken log");
+				return false;
+			}
+			// the broken record is dropped before new records
+			if (change(expected, map, 1000) == false)
+				return false;
+		}
+		try (DurableBTreeMap<Integer, String> map = open(dir)) {
+			return same(expected, map);
+		}
+	}
+
+	static boolean testCheckpoint(Path dir) throws IOException {
+		TreeMap<Integer, String> expected;
+		try (DurableBTreeMap<Integer, String> map = open(dir)) {
+			expected = new TreeMap<Integer, String>(map);
+			map.checkpoint();
+			if (change(expected, map, 2000) == false)
+				return false;
+
+			map.setCheckpointBytes(10000);
+			if (change(expected, map, 20000) == false)
+				return false;
+		}
+		// checkpoints run in the background and close waits for the last one
+		if (countFiles(dir) > 3) {
+			System.out.println("old files are not deleted, " + countFiles(dir));
+			return false;
+		}
+		try (DurableBTreeMap<Integer, String> map = open(dir)) {
+			if (same(expected, map) == false) {
+				System.out.println("wrong checkpoint");
+				return false;
+			}
+		}
+
+		// it crashes without closing
+		DurableBTreeMap<Integer, String> crashed = open(dir);
+		crashed.checkpoint();
+		if (change(expected, crashed, 1000) == false)
+			return false;
+		try (DurableBTreeMap<Integer, String> map = open(dir)) {
+			return same(expected, map);
+		}
+	}
+
+	static boolean testGroupCommit(Path dir) throws Exception {
+		try (DurableBTreeMap<Integer, String> map = open(dir)) {
+			map.clear();
+
+			HashMap<Integer, String> entries = new HashMap<Integer, String>();
+			for (int i = 0; i < 1000; i++)
+				entries.put(i, "all" + i);
+			long syncCount = map.syncCount();
+			map.putAll(entries);
+			if (map.syncCount() != syncCount + 1) {
+				System.out.println("putAll is not committed once");
+				return false;
+			}
+
+			int noOfThreads = 8;
+			int puts = 2000;
+			Thread[] threads = new Thread[noOfThreads];
+			for (int t = 0; t < noOfThreads; t++) {
+				int first = 1000 + t * puts;
+				threads[t] = new Thread(() -> {
+					for (int i = first; i < first + puts; i++)
+						map.put(i, "t" + i);
+				});
+			}
+			syncCount = map.syncCount();
+			for (Thread thread : threads)
+				thread.start();
+			for (Thread thread : threads)
+				thread.join();
+			long syncs = map.syncCount() - syncCount;
+			System.out.println("puts=" + noOfThreads * puts + " syncs=" + syncs);
+			// a sync commits more than one put on average when threads arrive while another one syncs
+			if (syncs >= noOfThreads * puts) {
+				System.out.println("puts are not committed together");
+				return false;
+			}
+
+			// threads which put while a sync is going on are committed by one sync after it
+			map.syncLock.lock();
+			try {
+				for (int t = 0; t < noOfThreads; t++) {
+					int key = 1000 + noOfThreads * puts + t;
+					threads[t] = new Thread(() -> map.put(key, "t" + key));
+					threads[t].start();
+				}
+				while (map.syncLock.getQueueLength() < noOfThreads)
+					Thread.sleep(1);
+				syncCount = map.syncCount();
+			} finally {
+				map.syncLock.unlock();
+			}
+			for (Thread thread : threads)
+				thread.join();
+			if (map.syncCount() != syncCount + 1) {
+				System.out.println("waiting puts are not committed once, syncs=" + (map.syncCount() - syncCount));
+				return false;
+			}
+		}
+		try (DurableBTreeMap<Integer, String> map = open(dir)) {
+			if (map.size() != 1000 + 8 * 2000 + 8)
+				return false;
+			for (int i = 0; i < map.size(); i++) {
+				if ((i < 1000 ? "all" + i : "t" + i).equals(map.get(i)) == false)
+					return false;
+			}
+		}
+		return true;
+	}
+
+	static boolean same(TreeMap<Integer, String> expected, DurableBTreeMap<Integer, String> map) {
+		if (expected.equals(map) == false || map.equals(expected) == false) {
+			System.out.println("not same, " + expected.size() + " " + map.size());
+			return false;
+		}
+		return true;
+	}
+
+	static Path lastLog(Path dir) throws IOException {
+		long last = -1;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, DurableBTreeMap.LOG_PREFIX + "*")) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				last = Math.max(last, Long.parseLong(name.substring(DurableBTreeMap.LOG_PREFIX.length(),
+						name.length() - DurableBTreeMap.LOG_SUFFIX.length())));
+			}
+		}
+		return dir.resolve(DurableBTreeMap.LOG_PREFIX + last + DurableBTreeMap.LOG_SUFFIX);
+	}
+
+	static int countFiles(Path dir) throws IOException {
+		int count = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+			for (Path file : files)
+				++count;
+		}
+		return count;
+	}
+
+	static void delete(Path dir) throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+			for (Path file : files)
+				Files.delete(file);
+		}
+		Files.delete(dir);
+	}
+}
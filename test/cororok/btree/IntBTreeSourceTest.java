@@ -0,0 +1,64 @@
+package cororok.btree;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * IntBTreeSet and IntBTreeMap are generated from LongBTreeSet and LongBTreeMap. It checks that they are up to date,
+ * or writes them again when it runs with "write". Runs from the project directory.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class IntBTreeSourceTest {
+	static final String DIR = "src/cororok/btree/";
+	static final String[] NAMES = { "BTreeSet", "BTreeMap" };
+
+	/**
+	 * regular expression and replacement, in order.
+	 */
+	static final String[][] RULES = { //
+			{ "\\ba long\\[\\]", "an int[]" }, //
+			{ "\\bLong(BTree\\w*)", "Int$1" }, //
+			{ "\\bOfLong\\b", "OfInt" }, //
+			{ "\\bLong\\b", "Integer" }, //
+			{ "\\blongValue\\b", "intValue" }, //
+			{ "\\bnextLong\\b", "nextInt" }, //
+			{ "\\blong\\b", "int" }, //
+	};
+
+	public static void main(String[] args) throws IOException {
+		boolean write = args.length > 0 && args[0].equals("write");
+		for (String name : NAMES) {
+			Path longPath = Paths.get(DIR + "Long" + name + ".java");
+			Path intPath = Paths.get(DIR + "Int" + name + ".java");
+			String generated = generate(new String(Files.readAllBytes(longPath), StandardCharsets.UTF_8), name);
+
+			if (write) {
+				Files.write(intPath, generated.getBytes(StandardCharsets.UTF_8));
+				System.out.println("wrote " + intPath);
+			} else if (generated.equals(new String(Files.readAllBytes(intPath), StandardCharsets.UTF_8)) == false) {
+				System.out.println(intPath + " is different from Long" + name
+						+ ".java, change that and run with \"write\"");
+				System.out.println("Failed");
+				return;
+			}
+		}
+
+		System.out.println("all right, done");
+	}
+
+	static String generate(String source, String name) {
+		for (String[] rule : RULES) {
+			source = source.replaceAll(rule[0], rule[1]);
+		}
+
+		// the first author tag is of the class
+		String note = " * <p>\n * generated from Long" + name + ".java by IntBTreeSourceTest, do not edit.\n *\n";
+		int index = source.indexOf(" *\n * @author");
+		return source.substring(0, index) + note + source.substring(index + " *\n".length());
+	}
+}
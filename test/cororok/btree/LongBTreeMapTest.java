@@ -0,0 +1,109 @@
+package cororok.btree;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * 
+ * @author songduk.park cororok@gmail.com
+ * 
+ */
+public class LongBTreeMapTest {
+	public static void main(String[] args) {
+		TreeMap<Long, String> expected = new TreeMap<Long, String>();
+		LongBTreeMap<String> treeMap = new LongBTreeMap<String>(4);
+
+		Random random = new Random();
+
+		int testSize = 10000;
+		int doubleTestSize = testSize * 2;
+
+		for (int i = 0; i < testSize; i++) {
+			long key = random.nextInt(doubleTestSize);
+			String value = String.valueOf(key * 10 + i);
+
+			if (expected.containsKey(key) != treeMap.containsKey(key)) {
+				System.out.println("contains wrong");
+				return;
+			}
+
+			if (expected.put(key, value) != treeMap.put(key, value)) {
+				System.out.println("add wrong");
+				return;
+			}
+
+			if (expected.size() != treeMap.size()) {
+				System.out.println("size wrong");
+				return;
+			}
+		}
+		System.out.println("size=" + expected.size());
+
+		if (expected.equals(treeMap) == false || haveSameOrder(expected, treeMap) == false) {
+			System.out.println("entries wrong");
+			return;
+		}
+
+		System.out.println("delete test");
+		int delete = expected.size() / 2;
+		while (expected.size() > delete) {
+			long key = random.nextInt(doubleTestSize);
+
+			if (expected.get(key) != treeMap.get(key)) {
+				System.out.println("get wrong");
+				return;
+			}
+
+			if (expected.remove(key) != treeMap.remove(key)) {
+				System.out.println("remove wrong");
+				return;
+			}
+
+			if (expected.size() != treeMap.size()) {
+				System.out.println("size2 wrong");
+				return;
+			}
+		}
+		System.out.println("after delete size=" + expected.size());
+
+		if (expected.equals(treeMap) == false || haveSameOrder(expected, treeMap) == false) {
+			System.out.println("entries wrong");
+			return;
+		}
+
+		System.out.println("key set test");
+		if (expected.keySet().equals(treeMap.keySet()) == false) {
+			System.out.println("keys wrong");
+			return;
+		}
+
+		try {
+			treeMap.keySet().add(-1L);
+			System.out.println("key set add wrong");
+			return;
+		} catch (UnsupportedOperationException e) {
+			// a key can't be added without a value
+		}
+
+		long firstKey = expected.firstKey();
+		if (expected.keySet().remove(firstKey) != treeMap.keySet().remove(firstKey)
+				|| treeMap.containsKey(-1L) || expected.equals(treeMap) == false) {
+			System.out.println("key set remove wrong");
+			return;
+		}
+
+		System.out.println("all right, done");
+	}
+
+	static boolean haveSameOrder(Map<Long, String> expected, Map<Long, String> map) {
+		Iterator<Map.Entry<Long, String>> expectedItr = expected.entrySet().iterator();
+		Iterator<Map.Entry<Long, String>> mapItr = map.entrySet().iterator();
+		while (expectedItr.hasNext()) {
+			if (expectedItr.next().equals(mapItr.next()) == false)
+				return false;
+		}
+		return mapItr.hasNext() == false;
+	}
+}
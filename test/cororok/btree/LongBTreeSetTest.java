@@ -0,0 +1,129 @@
+package cororok.btree;
+
+import java.util.Iterator;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * 
+ * @author songduk.park cororok@gmail.com
+ * 
+ */
+public class LongBTreeSetTest {
+	public static void main(String[] args) {
+		LongBTreeSetTest test = new LongBTreeSetTest();
+
+		for (int i = 0; i < 10; i++) {
+			System.out.println("# test " + i);
+			if (test.test(10000, 2 + i * 2) == false) {
+				System.out.println("Failed");
+				return;
+			}
+		}
+
+		for (int maxSizeOfKeys = 2; maxSizeOfKeys <= 20; maxSizeOfKeys += 2) {
+			if (test.testRemoveAll(maxSizeOfKeys) == false) {
+				System.out.println("Failed remove, maxSizeOfKeys=" + maxSizeOfKeys);
+				return;
+			}
+		}
+
+		System.out.println("all right, done");
+	}
+
+	/**
+	 * adds and removes random keys with fixed seeds, see {@link BTreeSetTest#testRemoveAll(int)}.
+	 */
+	public boolean testRemoveAll(int maxSizeOfKeys) {
+		for (int seed = 0; seed < 50; seed++) {
+			Random random = new Random(seed);
+			LongBTreeSet set = new LongBTreeSet(maxSizeOfKeys);
+			TreeSet<Long> expected = new TreeSet<Long>();
+			for (int i = 0; i < 2000; i++) {
+				long key = random.nextInt(4000);
+				set.add(key);
+				expected.add(key);
+			}
+			for (int i = 0; i < 4000; i++) {
+				long key = random.nextInt(4000);
+				if (expected.remove(key) != set.remove(key) || expected.size() != set.size()) {
+					System.out.println("wrong delete, seed=" + seed + " key=" + key);
+					return false;
+				}
+			}
+			if (havsSameValue(expected, set) == false)
+				return false;
+		}
+		return true;
+	}
+
+	public boolean test(int testSize, int maxSizeOfKeys) {
+		Random random = new Random();
+		LongBTreeSet set = new LongBTreeSet(maxSizeOfKeys);
+
+		TreeSet<Long> expected = new TreeSet<Long>();
+		long doubleTestSize = testSize * 2;
+		for (int i = 0; i < testSize; i++) {
+			long key = random.nextInt((int) doubleTestSize) - testSize;
+
+			if (expected.add(key) != set.add(key)) {
+				System.out.println("wrong add, key=" + key);
+				return false;
+			}
+		}
+
+		System.out.println("size=" + expected.size());
+		if (havsSameValue(expected, set) == false) {
+			System.out.println("different");
+			return false;
+		}
+
+		System.out.println("delete test");
+		int delete = expected.size() / 2;
+		while (expected.size() > delete) {
+			long key = random.nextInt((int) doubleTestSize) - testSize;
+			if (expected.contains(key) != set.contains(key)) {
+				System.out.println("wrong search, key=" + key);
+				return false;
+			}
+
+			if (expected.remove(key) != set.remove(key)) {
+				System.out.println("wrong delete");
+				return false;
+			}
+
+			if (expected.size() != set.size()) {
+				System.out.println("wrong size");
+				return false;
+			}
+		}
+
+		System.out.println("after delete size=" + expected.size());
+		if (havsSameValue(expected, set) == false) {
+			System.out.println("different");
+			return false;
+		}
+		return true;
+	}
+
+	public boolean havsSameValue(TreeSet<Long> expected, LongBTreeSet set) {
+		if (expected.size() != set.size()) {
+			System.out.println("wrong size");
+			return false;
+		}
+
+		Iterator<Long> expectedItr = expected.iterator();
+		PrimitiveIterator.OfLong setItr = set.iterator();
+		while (expectedItr.hasNext()) {
+			long expectedKey = expectedItr.next();
+			long setKey = setItr.nextLong();
+			if (expectedKey != setKey) {
+				System.out.println("wrong iterator " + expectedKey + " vs " + setKey);
+				return false;
+			}
+		}
+
+		return setItr.hasNext() == false;
+	}
+}
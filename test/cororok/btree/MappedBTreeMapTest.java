@@ -0,0 +1,160 @@
+package cororok.btree;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * compares {@link MappedBTreeMap} with {@link TreeMap} and reopens its file.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class MappedBTreeMapTest {
+	static Random random = new Random();
+
+	public static void main(String[] args) throws IOException {
+		// small pages make deep trees
+		for (int pageSize : new int[] { 512, 4096 }) {
+			System.out.println("pageSize=" + pageSize);
+			for (int size : new int[] { 0, 1, 100, 10000, 100000 }) {
+				if (test(pageSize, size) == false) {
+					System.out.println("Failed, size=" + size);
+					return;
+				}
+			}
+		}
+		if (testStrings() == false) {
+			System.out.println("Failed strings");
+			return;
+		}
+		System.out.println("all right, done");
+	}
+
+	static boolean test(int pageSize, int size) throws IOException {
+		Path path = Files.createTempFile("mapped", ".btree");
+		Files.delete(path);
+		try {
+			TreeMap<Integer, Long> expected = new TreeMap<Integer, Long>();
+			try (MappedBTreeMap<Integer, Long> map = MappedBTreeMap.open(path, pageSize, Codecs.INT, Codecs.LONG)) {
+				for (int i = 0; i < size; i++) {
+					Integer key = random.nextInt(size * 2);
+					long value = random.nextLong();
+					if (equals(expected.put(key, value), map.put(key, value)) == false) {
+						System.out.println("wrong put, key=" + key);
+						return false;
+					}
+				}
+				if (same(expected, map) == false)
+					return false;
+
+				for (int i = 0; i < size / 2; i++) {
+					Integer key = random.nextInt(size * 2);
+					if (equals(expected.remove(key), map.remove(key)) == false) {
+						System.out.println("wrong remove, key=" + key);
+						return false;
+					}
+				}
+				if (same(expected, map) == false)
+					return false;
+			}
+
+			// reopens and changes it again
+			try (MappedBTreeMap<Integer, Long> map = MappedBTreeMap.open(path, pageSize, Codecs.INT, Codecs.LONG)) {
+				if (same(expected, map) == false) {
+					System.out.println("wrong reopen");
+					return false;
+				}
+
+				for (Iterator<Entry<Integer, Long>> itr = map.entrySet().iterator(); itr.hasNext();) {
+					Entry<Integer, Long> entry = itr.next();
+					entry.setValue(entry.getValue() + 1);
+					expected.put(entry.getKey(), entry.getValue());
+				}
+				if (same(expected, map) == false)
+					return false;
+
+				int pageCount = map.file.pageCount();
+				for (Integer key : expected.keySet())
+					map.remove(key);
+				expected.clear();
+				if (same(expected, map) == false || map.height() != 1)
+					return false;
+
+				// freed pages are used again
+				for (int i = 0; i < size / 4; i++)
+					map.put(i, (long) i);
+				if (map.file.pageCount() > Math.max(pageCount, 2)) {
+					System.out.println("pages not reused, " + map.file.pageCount() + " " + pageCount);
+					return false;
+				}
+				map.clear();
+				if (map.isEmpty() == false || map.get(0) != null)
+					return false;
+			}
+			return true;
+		} finally {
+			Files.deleteIfExists(path);
+		}
+	}
+
+	static boolean testStrings() throws IOException {
+		Path path = Files.createTempFile("mapped", ".btree");
+		Files.delete(path);
+		try {
+			TreeMap<String, String> expected = new TreeMap<String, String>();
+			try (MappedBTreeMap<String, String> map = MappedBTreeMap.open(path, 1024, Codecs.utf8(40),
+					Codecs.utf8(20))) {
+				for (int i = 0; i < 20000; i++) {
+					String key = "key-" + random.nextInt(30000);
+					String value = "가" + i;
+					if (equals(expected.put(key, value), map.put(key, value)) == false)
+						return false;
+					key = "key-" + random.nextInt(30000);
+					if (equals(expected.remove(key), map.remove(key)) == false)
+						return false;
+				}
+				if (same(expected, map) == false)
+					return false;
+
+				TreeMap<String, String> range = new TreeMap<String, String>();
+				map.forEach("key-1", "key-2", range::put);
+				if (range.equals(expected.subMap("key-1", "key-2")) == false) {
+					System.out.println("wrong range");
+					return false;
+				}
+			}
+			try {
+				MappedBTreeMap.open(path, 1024, Codecs.utf8(30), Codecs.utf8(20)).close();
+				System.out.println("opened with other sizes");
+				return false;
+			} catch (IOException e) {
+			}
+			return true;
+		} finally {
+			Files.deleteIfExists(path);
+		}
+	}
+
+	static <K extends Comparable<K>, V> boolean same(TreeMap<K, V> expected, MappedBTreeMap<K, V> map) {
+		if (expected.size() != map.size() || expected.equals(map) == false || map.equals(expected) == false) {
+			System.out.println("not same, " + expected.size() + " " + map.size());
+			return false;
+		}
+		for (K key : expected.keySet()) {
+			if (map.containsKey(key) == false || expected.get(key).equals(map.get(key)) == false) {
+				System.out.println("wrong get, key=" + key);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static boolean equals(Object expected, Object actual) {
+		return expected == null ? actual == null : expected.equals(actual);
+	}
+}
@@ -0,0 +1,232 @@
+package cororok.btree;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * compares {@link BTreeSet} and {@link BTreeMap} and their views with {@link TreeSet} and {@link TreeMap}.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class NavigableTest {
+	static final int KEY_RANGE = 2000;
+	static Random random = new Random();
+
+	public static void main(String[] args) {
+		for (int maxSizeOfKeys = 2; maxSizeOfKeys <= 8; maxSizeOfKeys += 2) {
+			System.out.println("maxSizeOfKeys=" + maxSizeOfKeys);
+			for (int size : new int[] { 0, 1, 10, 1000 }) {
+				if (testSet(maxSizeOfKeys, size) == false || testMap(maxSizeOfKeys, size) == false) {
+					System.out.println("Failed, size=" + size);
+					return;
+				}
+			}
+		}
+		System.out.println("all right, done");
+	}
+
+	static boolean testSet(int maxSizeOfKeys, int size) {
+		BTreeSet<Integer> set = new BTreeSet<Integer>(maxSizeOfKeys);
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		for (int i = 0; i < size; i++) {
+			Integer key = random.nextInt(KEY_RANGE) * 2;
+			expected.add(key);
+			set.add(key);
+		}
+
+		for (int i = 0; i < 200; i++) {
+			NavigableSet<Integer> expectedView = expected;
+			NavigableSet<Integer> view = set;
+			// nested views
+			for (int depth = random.nextInt(4); depth > 0; depth--) {
+				int choice = random.nextInt(4);
+				if (choice == 0) {
+					expectedView = expectedView.descendingSet();
+					view = view.descendingSet();
+					continue;
+				}
+
+				Integer from = randomKey();
+				Integer to = randomKey();
+				boolean fromInclusive = random.nextBoolean();
+				boolean toInclusive = random.nextBoolean();
+				NavigableSet<Integer> nextExpected;
+				try {
+					if (choice == 1)
+						nextExpected = expectedView.headSet(to, toInclusive);
+					else if (choice == 2)
+						nextExpected = expectedView.tailSet(from, fromInclusive);
+					else
+						nextExpected = expectedView.subSet(from, fromInclusive, to, toInclusive);
+				} catch (IllegalArgumentException e) {
+					try {
+						if (choice == 1)
+							view.headSet(to, toInclusive);
+						else if (choice == 2)
+							view.tailSet(from, fromInclusive);
+						else
+							view.subSet(from, fromInclusive, to, toInclusive);
+						System.out.println("no IllegalArgumentException");
+						return false;
+					} catch (IllegalArgumentException expectedException) {
+						continue;
+					}
+				}
+				expectedView = nextExpected;
+				if (choice == 1)
+					view = view.headSet(to, toInclusive);
+				else if (choice == 2)
+					view = view.tailSet(from, fromInclusive);
+				else
+					view = view.subSet(from, fromInclusive, to, toInclusive);
+			}
+
+			if (isSameSet(expectedView, view) == false)
+				return false;
+		}
+
+		// changes through a view
+		NavigableSet<Integer> expectedView = expected.subSet(KEY_RANGE / 2, true, KEY_RANGE, false);
+		NavigableSet<Integer> view = set.subSet(KEY_RANGE / 2, true, KEY_RANGE, false);
+		for (int i = 0; i < 100; i++) {
+			Integer key = KEY_RANGE / 2 + random.nextInt(KEY_RANGE / 2);
+			if (expectedView.add(key) != view.add(key) || expectedView.remove(key + 1) != view.remove(key + 1)) {
+				System.out.println("wrong change through view");
+				return false;
+			}
+		}
+		if (equals(expectedView.pollFirst(), view.pollFirst()) == false
+				|| equals(expectedView.pollLast(), view.pollLast()) == false) {
+			System.out.println("wrong poll");
+			return false;
+		}
+		try {
+			view.add(KEY_RANGE);
+			System.out.println("added out of range");
+			return false;
+		} catch (IllegalArgumentException e) {
+		}
+		return isSameSet(expected, set);
+	}
+
+	static Integer randomKey() {
+		return random.nextInt(KEY_RANGE * 2 + 2) - 1;
+	}
+
+	static boolean isSameSet(NavigableSet<Integer> expected, NavigableSet<Integer> set) {
+		if (expected.size() != set.size() || expected.isEmpty() != set.isEmpty()
+				|| isSame(expected.iterator(), set.iterator()) == false
+				|| isSame(expected.descendingIterator(), set.descendingIterator()) == false) {
+			System.out.println("wrong keys");
+			return false;
+		}
+
+		if (expected.isEmpty() == false
+				&& (expected.first().equals(set.first()) == false || expected.last().equals(set.last()) == false)) {
+			System.out.println("wrong first or last");
+			return false;
+		}
+
+		for (int i = 0; i < 50; i++) {
+			Integer key = randomKey();
+			if (equals(expected.lower(key), set.lower(key)) == false
+					|| equals(expected.floor(key), set.floor(key)) == false
+					|| equals(expected.ceiling(key), set.ceiling(key)) == false
+					|| equals(expected.higher(key), set.higher(key)) == false
+					|| expected.contains(key) != set.contains(key)) {
+				System.out.println("wrong navigation, key=" + key);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static boolean testMap(int maxSizeOfKeys, int size) {
+		BTreeMap<Integer, Integer> map = new BTreeMap<Integer, Integer>(maxSizeOfKeys);
+		TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+		for (int i = 0; i < size; i++) {
+			Integer key = random.nextInt(KEY_RANGE) * 2;
+			expected.put(key, i);
+			map.put(key, i);
+		}
+
+		for (int i = 0; i < 100; i++) {
+			Integer from = randomKey();
+			Integer to = from + random.nextInt(KEY_RANGE / 4);
+			boolean fromInclusive = random.nextBoolean();
+			boolean toInclusive = random.nextBoolean();
+			NavigableMap<Integer, Integer> expectedView = expected.subMap(from, fromInclusive, to, toInclusive);
+			NavigableMap<Integer, Integer> view = map.subMap(from, fromInclusive, to, toInclusive);
+			if (random.nextBoolean()) {
+				expectedView = expectedView.descendingMap();
+				view = view.descendingMap();
+			}
+			if (isSameMap(expectedView, view) == false)
+				return false;
+		}
+
+		NavigableMap<Integer, Integer> expectedView = expected.headMap(KEY_RANGE, true);
+		NavigableMap<Integer, Integer> view = map.headMap(KEY_RANGE, true);
+		if (equals(expectedView.pollFirstEntry(), view.pollFirstEntry()) == false
+				|| equals(expectedView.pollLastEntry(), view.pollLastEntry()) == false) {
+			System.out.println("wrong poll");
+			return false;
+		}
+		view.keySet().remove(KEY_RANGE / 2);
+		expectedView.keySet().remove(KEY_RANGE / 2);
+		return isSameMap(expected, map) && isSameMap(expected.descendingMap(), map.descendingMap());
+	}
+
+	static boolean isSameMap(NavigableMap<Integer, Integer> expected, NavigableMap<Integer, Integer> map) {
+		if (expected.size() != map.size() || expected.equals(map) == false
+				|| isSame(expected.entrySet().iterator(), map.entrySet().iterator()) == false
+				|| isSame(expected.descendingKeySet().iterator(), map.descendingKeySet().iterator()) == false) {
+			System.out.println("wrong entries");
+			return false;
+		}
+		if (equals(expected.firstEntry(), map.firstEntry()) == false
+				|| equals(expected.lastEntry(), map.lastEntry()) == false) {
+			System.out.println("wrong first or last");
+			return false;
+		}
+
+		for (int i = 0; i < 50; i++) {
+			Integer key = randomKey();
+			if (equals(expected.lowerEntry(key), map.lowerEntry(key)) == false
+					|| equals(expected.floorEntry(key), map.floorEntry(key)) == false
+					|| equals(expected.ceilingEntry(key), map.ceilingEntry(key)) == false
+					|| equals(expected.higherEntry(key), map.higherEntry(key)) == false
+					|| equals(expected.higherKey(key), map.higherKey(key)) == false
+					|| equals(expected.get(key), map.get(key)) == false) {
+				System.out.println("wrong navigation, key=" + key);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static boolean isSame(Iterator<?> expected, Iterator<?> actual) {
+		ArrayList<Object> expectedList = new ArrayList<Object>();
+		ArrayList<Object> actualList = new ArrayList<Object>();
+		while (expected.hasNext())
+			expectedList.add(expected.next());
+		while (actual.hasNext())
+			actualList.add(actual.next());
+		return expectedList.equals(actualList);
+	}
+
+	static boolean equals(Object expected, Object actual) {
+		return expected == null ? actual == null : expected.equals(actual);
+	}
+
+	static boolean equals(Map.Entry<?, ?> expected, Map.Entry<?, ?> actual) {
+		return expected == null ? actual == null : expected.equals(actual);
+	}
+}
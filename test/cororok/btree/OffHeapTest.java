@@ -0,0 +1,123 @@
+package cororok.btree;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * compares {@link MappedBTreeMap} and {@link MappedBTreeSet} in an {@link OffHeapArena} with TreeMap and TreeSet and
+ * checks close frees the arena.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class OffHeapTest {
+	static Random random = new Random();
+
+	public static void main(String[] args) throws IOException {
+		for (int pageSize : new int[] { 512, 4096 }) {
+			System.out.println("pageSize=" + pageSize);
+			for (int size : new int[] { 0, 1, 100, 10000, 200000 }) {
+				if (testMap(pageSize, size) == false || testSet(pageSize, size) == false) {
+					System.out.println("Failed, size=" + size);
+					return;
+				}
+			}
+		}
+		if (testClose() == false) {
+			System.out.println("Failed close");
+			return;
+		}
+		System.out.println("all right, done");
+	}
+
+	static boolean testMap(int pageSize, int size) throws IOException {
+		TreeMap<Long, Long> expected = new TreeMap<Long, Long>();
+		try (MappedBTreeMap<Long, Long> map = MappedBTreeMap.offHeap(pageSize, Codecs.LONG, Codecs.LONG)) {
+			for (int i = 0; i < size; i++) {
+				Long key = (long) random.nextInt(size * 2);
+				Long value = random.nextLong();
+				if (Objects.equals(expected.put(key, value), map.put(key, value)) == false) {
+					System.out.println("wrong put, key=" + key);
+					return false;
+				}
+			}
+			for (int i = 0; i < size; i++) {
+				Long key = (long) random.nextInt(size * 2);
+				if (Objects.equals(expected.get(key), map.get(key)) == false
+						|| Objects.equals(expected.remove(key), map.remove(key)) == false) {
+					System.out.println("wrong remove, key=" + key);
+					return false;
+				}
+			}
+			if (expected.size() != map.size())
+				return false;
+			Iterator<Map.Entry<Long, Long>> itr = map.entrySet().iterator();
+			for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+				if (entry.equals(itr.next()) == false) {
+					System.out.println("wrong entry " + entry);
+					return false;
+				}
+			}
+			return itr.hasNext() == false;
+		}
+	}
+
+	static boolean testSet(int pageSize, int size) throws IOException {
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		try (MappedBTreeSet<Integer> set = MappedBTreeSet.offHeap(pageSize, Codecs.INT)) {
+			for (int i = 0; i < size; i++) {
+				Integer key = random.nextInt(size * 2);
+				if (expected.add(key) != set.add(key)) {
+					System.out.println("wrong add, key=" + key);
+					return false;
+				}
+			}
+			for (int i = 0; i < size; i++) {
+				Integer key = random.nextInt(size * 2);
+				if (expected.contains(key) != set.contains(key) || expected.remove(key) != set.remove(key)) {
+					System.out.println("wrong remove, key=" + key);
+					return false;
+				}
+			}
+			if (expected.size() != set.size())
+				return false;
+			Iterator<Integer> itr = set.iterator();
+			for (Integer key : expected) {
+				if (key.equals(itr.next()) == false) {
+					System.out.println("wrong key " + key);
+					return false;
+				}
+			}
+			return itr.hasNext() == false;
+		}
+	}
+
+	static boolean testClose() throws IOException {
+		OffHeapArena arena = new OffHeapArena(4096);
+		MappedBTreeMap<Long, Long> map = new MappedBTreeMap<Long, Long>(arena, Codecs.LONG, Codecs.LONG);
+		for (long i = 0; i < 2000000; i++)
+			map.put(i, i * 3);
+		System.out.println("size=" + map.size() + ", direct bytes=" + arena.allocatedBytes());
+		if (map.get(1234567L) != 1234567L * 3 || arena.allocatedBytes() < 2000000 * 16)
+			return false;
+
+		map.clear();
+		if (map.isEmpty() == false || arena.allocatedBytes() != OffHeapArena.SEGMENT_SIZE)
+			return false;
+
+		map.close();
+		if (arena.allocatedBytes() != 0)
+			return false;
+		try {
+			map.get(1L);
+		} catch (IllegalStateException e) {
+			return true;
+		}
+		return false;
+	}
+}
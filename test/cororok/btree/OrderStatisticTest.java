@@ -0,0 +1,172 @@
+package cororok.btree;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * compares get(int), rank and size of views of counted {@link BTreeSet} and {@link BTreeMap} with a sorted list.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class OrderStatisticTest {
+	static Random random = new Random();
+
+	public static void main(String[] args) {
+		for (int maxSizeOfKeys = 2; maxSizeOfKeys <= 10; maxSizeOfKeys += 2) {
+			System.out.println("maxSizeOfKeys=" + maxSizeOfKeys);
+			if (testSet(maxSizeOfKeys, 5000) == false || testBuild(maxSizeOfKeys, 3000) == false
+					|| testMap(maxSizeOfKeys, 2000) == false) {
+				System.out.println("Failed");
+				return;
+			}
+		}
+
+		try {
+			new BTreeSet<Integer>(4).rank(1);
+			System.out.println("Failed, not counted");
+			return;
+		} catch (UnsupportedOperationException e) {
+		}
+		System.out.println("all right, done");
+	}
+
+	static boolean testSet(int maxSizeOfKeys, int testSize) {
+		BTreeSet<Integer> set = BTreeSet.counted(maxSizeOfKeys);
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		int range = testSize * 2;
+		BTreeSet<Integer> snapshot = null;
+		TreeSet<Integer> expectedSnapshot = null;
+		for (int i = 0; i < testSize * 4; i++) {
+			Integer key = random.nextInt(range);
+			boolean changed = random.nextInt(3) > 0 ? expected.add(key) != set.add(key)
+					: expected.remove(key) != set.remove(key);
+			if (changed) {
+				System.out.println("wrong change, key=" + key);
+				return false;
+			}
+			if (i == testSize) {
+				snapshot = set.snapshot();
+				expectedSnapshot = new TreeSet<Integer>(expected);
+			}
+			if (i % 500 == 0 && isSame(expected, set) == false)
+				return false;
+		}
+		if (isSame(expected, set) == false || isSame(expectedSnapshot, snapshot) == false)
+			return false;
+
+		for (Integer key : expected.toArray(new Integer[0])) {
+			if (set.remove(key) == false || expected.remove(key) == false) {
+				System.out.println("wrong delete, key=" + key);
+				return false;
+			}
+		}
+		return isSame(expected, set);
+	}
+
+	static boolean testBuild(int maxSizeOfKeys, int testSize) {
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		for (int i = 0; i < testSize; i++)
+			expected.add(i * 3);
+
+		BTreeSet<Integer> set = BTreeSet.counted(maxSizeOfKeys);
+		set.load(expected.iterator(), 0.7);
+		if (isSame(expected, set) == false)
+			return false;
+		for (int i = 0; i < testSize; i++) {
+			Integer key = random.nextInt(testSize * 3);
+			expected.add(key);
+			set.add(key);
+		}
+		return isSame(expected, set);
+	}
+
+	static boolean testMap(int maxSizeOfKeys, int testSize) {
+		BTreeMap<Integer, Integer> map = BTreeMap.counted(maxSizeOfKeys);
+		TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+		for (int i = 0; i < testSize; i++) {
+			Integer key = random.nextInt(testSize * 2);
+			expected.put(key, i);
+			map.put(key, i);
+		}
+		int index = 0;
+		for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+			if (entry.equals(map.entryAt(index)) == false || map.rank(entry.getKey()) != index) {
+				System.out.println("wrong entryAt or rank, index=" + index);
+				return false;
+			}
+			++index;
+		}
+		for (int i = 0; i < 100; i++) {
+			Integer from = random.nextInt(testSize * 2);
+			Integer to = from + random.nextInt(testSize / 4);
+			if (expected.subMap(from, true, to, false).size() != map.subMap(from, true, to, false).size()) {
+				System.out.println("wrong size of subMap, from=" + from + " to=" + to);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static boolean isSame(TreeSet<Integer> expected, BTreeSet<Integer> set) {
+		if (expected.size() != set.size() || isCounted(set, set.root) != set.size()) {
+			System.out.println("wrong counts");
+			return false;
+		}
+
+		ArrayList<Integer> list = new ArrayList<Integer>(expected);
+		for (int i = 0; i < list.size(); i++) {
+			if (list.get(i).equals(set.get(i)) == false || set.rank(list.get(i)) != i) {
+				System.out.println("wrong get or rank, index=" + i);
+				return false;
+			}
+		}
+		for (int index : new int[] { -1, list.size() }) {
+			try {
+				set.get(index);
+				System.out.println("no IndexOutOfBoundsException, index=" + index);
+				return false;
+			} catch (IndexOutOfBoundsException e) {
+			}
+		}
+
+		int last = list.isEmpty() ? 10 : list.get(list.size() - 1) + 2;
+		for (int i = 0; i < 100; i++) {
+			Integer key = random.nextInt(last + 1) - 1;
+			if (expected.headSet(key).size() != set.rank(key)) {
+				System.out.println("wrong rank, key=" + key);
+				return false;
+			}
+			Integer from = key;
+			Integer to = from + random.nextInt(last / 4 + 1);
+			boolean fromInclusive = random.nextBoolean();
+			boolean toInclusive = random.nextBoolean();
+			if (expected.subSet(from, fromInclusive, to, toInclusive).size() != set
+					.subSet(from, fromInclusive, to, toInclusive).size()
+					|| expected.headSet(to, toInclusive).size() != set.headSet(to, toInclusive).size()
+					|| expected.tailSet(from, fromInclusive).descendingSet().size() != set
+							.tailSet(from, fromInclusive).descendingSet().size()) {
+				System.out.println("wrong size of view, from=" + from + " to=" + to);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of keys under the node, or -1 if a node has a wrong number.
+	 */
+	static int isCounted(BTreeSet<Integer> set, BTreeSet<Integer>.Node node) {
+		int total = node.noOfKeys;
+		for (int i = 0; i < node.noOfChildren; i++) {
+			int childTotal = isCounted(set, node.children[i]);
+			if (childTotal < 0)
+				return -1;
+			total += childTotal;
+		}
+		return total == node.subtreeSize ? total : -1;
+	}
+}
@@ -0,0 +1,105 @@
+package cororok.btree;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * compares parallelBuild, parallelForEach and parallelReduce of {@link BTreeSet} and {@link BTreeMap} with
+ * {@link TreeSet} and {@link TreeMap}.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class ParallelTest {
+	static Random random = new Random();
+
+	public static void main(String[] args) {
+		for (int maxSizeOfKeys = 2; maxSizeOfKeys <= 64; maxSizeOfKeys *= 2) {
+			System.out.println("maxSizeOfKeys=" + maxSizeOfKeys);
+			for (int size : new int[] { 0, 1, 10, 1000, 100000 }) {
+				for (double fillFactor : new double[] { 0.5, 1 }) {
+					if (testSet(maxSizeOfKeys, fillFactor, size) == false
+							|| testMap(maxSizeOfKeys, fillFactor, size) == false) {
+						System.out.println("Failed, size=" + size + " fillFactor=" + fillFactor);
+						return;
+					}
+				}
+			}
+		}
+		System.out.println("all right, done");
+	}
+
+	static boolean testSet(int maxSizeOfKeys, double fillFactor, int size) {
+		ArrayList<Integer> keys = new ArrayList<Integer>();
+		for (int i = 0; i < size; i++)
+			keys.add(random.nextInt(size * 2));
+		TreeSet<Integer> expected = new TreeSet<Integer>(keys);
+
+		BTreeSet<Integer> set = BTreeSet.parallelBuild(maxSizeOfKeys, fillFactor, keys);
+		if (BulkLoadTest.isValid(set) == false || expected.equals(set) == false) {
+			System.out.println("wrong build");
+			return false;
+		}
+
+		long sum = 0;
+		for (Integer key : expected)
+			sum += key;
+		AtomicLong actualSum = new AtomicLong();
+		set.parallelForEach(key -> actualSum.addAndGet(key));
+		if (actualSum.get() != sum || equals(set.parallelReduce(key -> (long) key, Long::sum), sum, size) == false) {
+			System.out.println("wrong sum");
+			return false;
+		}
+
+		// each result is {first, last, 1 if in order}
+		long[] range = set.parallelReduce(key -> new long[] { key, key, 1 },
+				(left, right) -> new long[] { left[0], right[1], left[2] & right[2] & (left[1] < right[0] ? 1 : 0) });
+		if (size > 0 && (range[0] != expected.first() || range[1] != expected.last() || range[2] != 1)) {
+			System.out.println("wrong order of reduce");
+			return false;
+		}
+
+		// later changes should keep the tree valid
+		for (int i = 0; i < size / 2; i++) {
+			Integer key = random.nextInt(size * 2);
+			if (expected.add(key) != set.add(key) || expected.remove(key + 1) != set.remove(key + 1)) {
+				System.out.println("wrong change, key=" + key);
+				return false;
+			}
+		}
+		return BulkLoadTest.isValid(set) && expected.equals(set);
+	}
+
+	static boolean testMap(int maxSizeOfKeys, double fillFactor, int size) {
+		HashMap<Integer, Integer> entries = new HashMap<Integer, Integer>();
+		for (int i = 0; i < size; i++)
+			entries.put(random.nextInt(size * 2), i);
+		TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>(entries);
+
+		BTreeMap<Integer, Integer> map = BTreeMap.parallelBuild(maxSizeOfKeys, fillFactor, entries);
+		if (BulkLoadTest.isValid(map.set) == false || expected.equals(map) == false) {
+			System.out.println("wrong build of map");
+			return false;
+		}
+
+		long sum = 0;
+		for (Integer value : expected.values())
+			sum += value;
+		AtomicLong actualSum = new AtomicLong();
+		map.parallelForEach((key, value) -> actualSum.addAndGet(value));
+		if (actualSum.get() != sum
+				|| equals(map.parallelReduce((key, value) -> (long) value, Long::sum), sum, expected.size()) == false) {
+			System.out.println("wrong sum of values");
+			return false;
+		}
+		return true;
+	}
+
+	static boolean equals(Long actual, long expected, int size) {
+		return size == 0 ? actual == null : actual != null && actual == expected;
+	}
+}
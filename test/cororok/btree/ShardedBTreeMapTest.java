@@ -0,0 +1,225 @@
+package cororok.btree;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class ShardedBTreeMapTest {
+	public static void main(String[] args) throws InterruptedException {
+		if (testSingleThread(10000) == false) {
+			System.out.println("Failed");
+			return;
+		}
+
+		if (testMultiThreads(8, 20000) == false) {
+			System.out.println("Failed");
+			return;
+		}
+
+		if (testClearWhileWriting(4, 1000) == false) {
+			System.out.println("Failed");
+			return;
+		}
+
+		System.out.println("all right, done");
+	}
+
+	static boolean testSingleThread(int testSize) {
+		System.out.println("single thread test");
+		Random random = new Random();
+		TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+		ShardedBTreeMap<Integer, Integer> map = new ShardedBTreeMap<Integer, Integer>(4, 64);
+
+		int doubleTestSize = testSize * 2;
+		for (int i = 0; i < testSize * 4; i++) {
+			Integer key = random.nextInt(doubleTestSize);
+			Integer value = i;
+			if (random.nextInt(3) == 0) {
+				if (expected.remove(key) != map.remove(key)) {
+					System.out.println("remove wrong, key=" + key);
+					return false;
+				}
+			} else if (expected.put(key, value) != map.put(key, value)) {
+				System.out.println("put wrong, key=" + key);
+				return false;
+			}
+
+			if (expected.size() != map.size()) {
+				System.out.println("size wrong");
+				return false;
+			}
+		}
+
+		for (int key = 0; key < doubleTestSize; key++) {
+			if (expected.get(key) != map.get(key)) {
+				System.out.println("get wrong, key=" + key);
+				return false;
+			}
+		}
+		System.out.println("shards=" + map.noOfShards());
+		if (haveSameOrder(expected, map) == false)
+			return false;
+
+		System.out.println("merge test");
+		while (expected.size() > 100) {
+			Integer key = expected.firstKey();
+			if (expected.remove(key) != map.remove(key)) {
+				System.out.println("remove wrong, key=" + key);
+				return false;
+			}
+		}
+		System.out.println("shards=" + map.noOfShards());
+		return expected.size() == map.size() && haveSameOrder(expected, map);
+	}
+
+	/**
+	 * each writer puts and removes its own range of keys while readers read all keys.
+	 */
+	static boolean testMultiThreads(final int noOfThreads, final int keysPerThread) throws InterruptedException {
+		System.out.println("multi threads test");
+		final ShardedBTreeMap<Integer, Integer> map = new ShardedBTreeMap<Integer, Integer>(8, 1024);
+		final AtomicBoolean failed = new AtomicBoolean();
+		final AtomicBoolean writing = new AtomicBoolean(true);
+
+		Thread[] writers = new Thread[noOfThreads];
+		for (int i = 0; i < noOfThreads; i++) {
+			final int thread = i;
+			writers[i] = new Thread() {
+				@Override
+				public void run() {
+					// keys of threads are interleaved so that they share leaves
+					for (int j = 0; j < keysPerThread; j++) {
+						Integer key = j * noOfThreads + thread;
+						if (map.put(key, key) != null)
+							failed.set(true);
+					}
+					for (int j = 0; j < keysPerThread; j += 2) {
+						Integer key = j * noOfThreads + thread;
+						if (key.equals(map.remove(key)) == false)
+							failed.set(true);
+					}
+				}
+			};
+		}
+
+		Thread[] readers = new Thread[2];
+		for (int i = 0; i < readers.length; i++) {
+			readers[i] = new Thread() {
+				@Override
+				public void run() {
+					Random random = new Random();
+					while (writing.get()) {
+						Integer key = random.nextInt(noOfThreads * keysPerThread);
+						Integer value = map.get(key);
+						if (value != null && value.equals(key) == false)
+							failed.set(true);
+
+						Integer last = null;
+						Iterator<Integer> itr = map.keySet().iterator();
+						for (int j = 0; j < 100 && itr.hasNext(); j++) {
+							Integer current = itr.next();
+							if (last != null && last.compareTo(current) >= 0)
+								failed.set(true);
+							last = current;
+						}
+					}
+				}
+			};
+		}
+
+		for (Thread thread : readers)
+			thread.start();
+		for (Thread thread : writers)
+			thread.start();
+		for (Thread thread : writers)
+			thread.join();
+		writing.set(false);
+		for (Thread thread : readers)
+			thread.join();
+
+		if (failed.get()) {
+			System.out.println("wrong value or order while writing");
+			return false;
+		}
+
+		TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+		for (int i = 0; i < noOfThreads; i++) {
+			for (int j = 1; j < keysPerThread; j += 2) {
+				Integer key = j * noOfThreads + i;
+				expected.put(key, key);
+			}
+		}
+
+		System.out.println("size=" + map.size() + ", shards=" + map.noOfShards());
+		return expected.size() == map.size() && haveSameOrder(expected, map);
+	}
+
+	/**
+	 * clears while writers put and remove, the size should match the keys after all.
+	 */
+	static boolean testClearWhileWriting(final int noOfThreads, final int keysPerThread) throws InterruptedException {
+		System.out.println("clear while writing test");
+		final ShardedBTreeMap<Integer, Integer> map = new ShardedBTreeMap<Integer, Integer>(8, 256);
+		final AtomicBoolean writing = new AtomicBoolean(true);
+
+		Thread[] writers = new Thread[noOfThreads];
+		for (int i = 0; i < noOfThreads; i++) {
+			writers[i] = new Thread() {
+				@Override
+				public void run() {
+					Random random = new Random();
+					for (int j = 0; j < keysPerThread * 200; j++) {
+						Integer key = random.nextInt(keysPerThread);
+						if (random.nextInt(3) == 0)
+							map.remove(key);
+						else
+							map.put(key, key);
+					}
+				}
+			};
+		}
+
+		Thread clearer = new Thread() {
+			@Override
+			public void run() {
+				while (writing.get()) {
+					map.clear();
+				}
+			}
+		};
+
+		clearer.start();
+		for (Thread thread : writers)
+			thread.start();
+		for (Thread thread : writers)
+			thread.join();
+		writing.set(false);
+		clearer.join();
+
+		int count = 0;
+		for (Iterator<Integer> itr = map.keySet().iterator(); itr.hasNext(); itr.next())
+			count++;
+
+		System.out.println("size=" + map.size() + ", keys=" + count);
+		return count == map.size();
+	}
+
+	static boolean haveSameOrder(Map<Integer, Integer> expected, Map<Integer, Integer> map) {
+		Iterator<Map.Entry<Integer, Integer>> expectedItr = expected.entrySet().iterator();
+		Iterator<Map.Entry<Integer, Integer>> mapItr = map.entrySet().iterator();
+		while (expectedItr.hasNext()) {
+			if (mapItr.hasNext() == false || expectedItr.next().equals(mapItr.next()) == false) {
+				System.out.println("wrong iterator");
+				return false;
+			}
+		}
+		return mapItr.hasNext() == false;
+	}
+}
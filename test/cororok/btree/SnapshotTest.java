@@ -0,0 +1,178 @@
+package cororok.btree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class SnapshotTest {
+	public static void main(String[] args) throws InterruptedException {
+		for (int maxSizeOfKeys = 2; maxSizeOfKeys <= 8; maxSizeOfKeys += 2) {
+			System.out.println("maxSizeOfKeys=" + maxSizeOfKeys);
+			if (test(maxSizeOfKeys, 20000) == false) {
+				System.out.println("Failed");
+				return;
+			}
+		}
+
+		if (testReadOnly() == false || testConcurrentReader() == false) {
+			System.out.println("Failed");
+			return;
+		}
+
+		System.out.println("all right, done");
+	}
+
+	/**
+	 * takes snapshots while it puts, removes and sets values, and checks every snapshot keeps the entries of the time.
+	 */
+	static boolean test(int maxSizeOfKeys, int testSize) {
+		Random random = new Random();
+		BTreeMap<Integer, Integer> map = new BTreeMap<Integer, Integer>(maxSizeOfKeys);
+		TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+		List<BTreeMap<Integer, Integer>> snapshots = new ArrayList<BTreeMap<Integer, Integer>>();
+		List<TreeMap<Integer, Integer>> copies = new ArrayList<TreeMap<Integer, Integer>>();
+
+		int doubleTestSize = testSize * 2;
+		for (int i = 0; i < testSize * 4; i++) {
+			Integer key = random.nextInt(doubleTestSize);
+			Integer value = i;
+			int action = random.nextInt(4);
+			if (action == 0) {
+				if (expected.remove(key) != map.remove(key)) {
+					System.out.println("remove wrong, key=" + key);
+					return false;
+				}
+			} else if (action == 1) {
+				for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+					if (entry.getKey().equals(key)) {
+						value = -i;
+						entry.setValue(value);
+						expected.put(key, value);
+						break;
+					}
+				}
+			} else if (expected.put(key, value) != map.put(key, value)) {
+				System.out.println("put wrong, key=" + key);
+				return false;
+			}
+
+			if (i % (testSize / 10) == 0) {
+				snapshots.add(map.snapshot());
+				copies.add(new TreeMap<Integer, Integer>(expected));
+			}
+			if (action == 1)
+				i += testSize / 100; // setValue iterates all
+		}
+
+		if (expected.equals(map) == false) {
+			System.out.println("map wrong");
+			return false;
+		}
+
+		for (int i = 0; i < snapshots.size(); i++) {
+			BTreeMap<Integer, Integer> snapshot = snapshots.get(i);
+			TreeMap<Integer, Integer> copy = copies.get(i);
+			if (copy.size() != snapshot.size() || copy.equals(snapshot) == false
+					|| snapshot.equals(copy) == false) {
+				System.out.println("snapshot wrong, index=" + i);
+				return false;
+			}
+			for (Integer key : copy.keySet()) {
+				if (copy.get(key).equals(snapshot.get(key)) == false) {
+					System.out.println("snapshot get wrong, key=" + key);
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	static boolean testReadOnly() {
+		BTreeSet<Integer> set = new BTreeSet<Integer>(4);
+		for (int i = 0; i < 100; i++)
+			set.add(i);
+
+		BTreeSet<Integer> snapshot = set.snapshot();
+		if (snapshot.isReadOnly() == false || snapshot.snapshot() != snapshot) {
+			System.out.println("snapshot is not read only");
+			return false;
+		}
+		try {
+			snapshot.add(1000);
+			System.out.println("snapshot changed");
+			return false;
+		} catch (UnsupportedOperationException e) {
+		}
+
+		set.clear();
+		return snapshot.size() == 100 && snapshot.contains(99) && set.contains(99) == false;
+	}
+
+	/**
+	 * a reader iterates snapshots while the writer keeps changing the map.
+	 */
+	static boolean testConcurrentReader() throws InterruptedException {
+		final BTreeMap<Integer, Integer> map = new BTreeMap<Integer, Integer>(8);
+		for (int i = 0; i < 10000; i++)
+			map.put(i, i);
+
+		final List<BTreeMap<Integer, Integer>> snapshots = new ArrayList<BTreeMap<Integer, Integer>>();
+		final AtomicBoolean failed = new AtomicBoolean();
+		final AtomicBoolean writing = new AtomicBoolean(true);
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				while (writing.get()) {
+					BTreeMap<Integer, Integer> snapshot;
+					synchronized (snapshots) {
+						snapshot = snapshots.isEmpty() ? null : snapshots.get(snapshots.size() - 1);
+					}
+					if (snapshot == null)
+						continue;
+
+					int count = 0;
+					Integer last = null;
+					for (Map.Entry<Integer, Integer> entry : snapshot.entrySet()) {
+						if (last != null && last.compareTo(entry.getKey()) >= 0)
+							failed.set(true);
+						last = entry.getKey();
+						++count;
+					}
+					if (count != snapshot.size())
+						failed.set(true);
+				}
+			}
+		};
+		reader.start();
+
+		Random random = new Random();
+		for (int i = 0; i < 200000; i++) {
+			Integer key = random.nextInt(20000);
+			if (random.nextBoolean())
+				map.put(key, key);
+			else
+				map.remove(key);
+			if (i % 1000 == 0) {
+				synchronized (snapshots) {
+					snapshots.add(map.snapshot());
+				}
+			}
+		}
+		writing.set(false);
+		reader.join();
+
+		if (failed.get()) {
+			System.out.println("wrong snapshot while writing");
+			return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,95 @@
+package cororok.btree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * splits {@link BTreeSet#spliterator()} recursively and compares the keys of the parts in order with {@link TreeSet}.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class SpliteratorTest {
+	static Random random = new Random();
+
+	public static void main(String[] args) {
+		for (int maxSizeOfKeys = 2; maxSizeOfKeys <= 16; maxSizeOfKeys += 2) {
+			System.out.println("maxSizeOfKeys=" + maxSizeOfKeys);
+			for (int size : new int[] { 0, 1, 2, 10, 1000, 50000 }) {
+				if (test(new BTreeSet<Integer>(maxSizeOfKeys), size) == false
+						|| test(BTreeSet.<Integer> counted(maxSizeOfKeys), size) == false) {
+					System.out.println("Failed, size=" + size);
+					return;
+				}
+			}
+		}
+		System.out.println("all right, done");
+	}
+
+	static boolean test(BTreeSet<Integer> set, int size) {
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		for (int i = 0; i < size; i++) {
+			Integer key = random.nextInt(size * 2);
+			expected.add(key);
+			set.add(key);
+		}
+		List<Integer> expectedList = new ArrayList<Integer>(expected);
+
+		Spliterator<Integer> spliterator = set.spliterator();
+		if (spliterator.hasCharacteristics(Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.SIZED) == false
+				|| spliterator.getExactSizeIfKnown() != expected.size()) {
+			System.out.println("wrong characteristics or size");
+			return false;
+		}
+
+		ArrayList<Integer> actual = new ArrayList<Integer>();
+		if (split(spliterator, actual, set.isCounted()) == false)
+			return false;
+		if (expectedList.equals(actual) == false) {
+			System.out.println("wrong keys of parts");
+			return false;
+		}
+
+		long sum = 0;
+		for (Integer key : expected)
+			sum += key;
+		if (set.parallelStream().mapToLong(Integer::longValue).sum() != sum
+				|| expectedList.equals(set.parallelStream().collect(Collectors.toList())) == false
+				|| expectedList.equals(set.descendingSet().descendingSet().stream().collect(Collectors.toList())) == false) {
+			System.out.println("wrong stream");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * splits randomly and reads each part by tryAdvance or forEachRemaining.
+	 */
+	static boolean split(Spliterator<Integer> spliterator, List<Integer> keys, boolean exact) {
+		long size = spliterator.estimateSize();
+		int before = keys.size();
+		Spliterator<Integer> prefix = random.nextInt(5) > 0 ? spliterator.trySplit() : null;
+		if (prefix != null) {
+			if (exact && prefix.estimateSize() + spliterator.estimateSize() != size) {
+				System.out.println("wrong sizes of parts");
+				return false;
+			}
+			if (split(prefix, keys, exact) == false || split(spliterator, keys, exact) == false)
+				return false;
+		} else if (random.nextBoolean() && spliterator.tryAdvance(keys::add)) {
+			if (split(spliterator, keys, exact) == false)
+				return false;
+		} else {
+			spliterator.forEachRemaining(keys::add);
+		}
+		if (exact && keys.size() - before != size) {
+			System.out.println("wrong exact size");
+			return false;
+		}
+		return true;
+	}
+}
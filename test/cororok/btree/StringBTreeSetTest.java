@@ -0,0 +1,155 @@
+package cororok.btree;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * compares {@link StringBTreeSet} and {@link StringBTreeMap} with TreeSet and TreeMap on keys sharing long prefixes,
+ * keys which are prefixes of others and keys differing at the first char.
+ *
+ * @author songduk.park cororok@gmail.com
+ *
+ */
+public class StringBTreeSetTest {
+	static Random random = new Random();
+
+	public static void main(String[] args) {
+		for (int maxSizeOfKeys = 2; maxSizeOfKeys <= 64; maxSizeOfKeys *= 2) {
+			System.out.println("maxSizeOfKeys=" + maxSizeOfKeys);
+			if (testSet(20000, maxSizeOfKeys) == false || testMap(20000, maxSizeOfKeys) == false) {
+				System.out.println("Failed");
+				return;
+			}
+		}
+		if (testCompression() == false) {
+			System.out.println("Failed compression");
+			return;
+		}
+		System.out.println("all right, done");
+	}
+
+	static String randomKey(int bound) {
+		int n = random.nextInt(bound);
+		switch (n % 5) {
+		case 0:
+			return "tenant-" + (n % 3) + "/region-" + (n % 7) + "/object/" + n;
+		case 1:
+			return "tenant-" + (n % 3) + "/region-" + (n % 7);
+		case 2:
+			return n % 10 == 2 ? "" : String.valueOf((char) ('a' + n % 26)) + n;
+		case 3:
+			return "tenant-" + (n % 3) + "/region-" + (n % 7) + "/object/" + n + "/값";
+		default:
+			return "tenant-" + (n % 3) + "/";
+		}
+	}
+
+	static boolean testSet(int testSize, int maxSizeOfKeys) {
+		StringBTreeSet set = new StringBTreeSet(maxSizeOfKeys);
+		TreeSet<String> expected = new TreeSet<String>();
+		for (int i = 0; i < testSize; i++) {
+			String key = randomKey(testSize * 2);
+			if (expected.add(key) != set.add(key)) {
+				System.out.println("wrong add, key=" + key);
+				return false;
+			}
+		}
+		if (haveSameKeys(expected, set) == false)
+			return false;
+
+		for (int i = 0; i < testSize; i++) {
+			String key = randomKey(testSize * 2);
+			if (expected.contains(key) != set.contains(key)) {
+				System.out.println("wrong search, key=" + key);
+				return false;
+			}
+			if (expected.remove(key) != set.remove(key)) {
+				System.out.println("wrong delete, key=" + key);
+				return false;
+			}
+			if (i % 3 == 0 && expected.add(key + i) != set.add(key + i)) {
+				System.out.println("wrong add, key=" + key + i);
+				return false;
+			}
+		}
+		if (haveSameKeys(expected, set) == false)
+			return false;
+
+		for (String key : expected.toArray(new String[0]))
+			set.remove(key);
+		return set.isEmpty() && set.iterator().hasNext() == false && set.height() == 1;
+	}
+
+	static boolean haveSameKeys(TreeSet<String> expected, StringBTreeSet set) {
+		if (expected.size() != set.size()) {
+			System.out.println("wrong size");
+			return false;
+		}
+		Iterator<String> itr = set.iterator();
+		for (String key : expected) {
+			String setKey = itr.next();
+			if (key.equals(setKey) == false) {
+				System.out.println("wrong iterator " + key + " vs " + setKey);
+				return false;
+			}
+		}
+		return itr.hasNext() == false;
+	}
+
+	static boolean testMap(int testSize, int maxSizeOfKeys) {
+		StringBTreeMap<Integer> map = new StringBTreeMap<Integer>(maxSizeOfKeys);
+		TreeMap<String, Integer> expected = new TreeMap<String, Integer>();
+		for (int i = 0; i < testSize; i++) {
+			String key = randomKey(testSize * 2);
+			Integer value = i;
+			if (expected.put(key, value) != map.put(key, value)) {
+				System.out.println("wrong put, key=" + key);
+				return false;
+			}
+		}
+		for (int i = 0; i < testSize; i++) {
+			String key = randomKey(testSize * 2);
+			if (Objects.equals(expected.get(key), map.get(key)) == false
+					|| Objects.equals(expected.remove(key), map.remove(key)) == false) {
+				System.out.println("wrong remove, key=" + key);
+				return false;
+			}
+		}
+		for (Map.Entry<String, Integer> entry : map.entrySet())
+			entry.setValue(entry.getValue() + 1);
+		for (Map.Entry<String, Integer> entry : expected.entrySet())
+			entry.setValue(entry.getValue() + 1);
+		if (expected.equals(map) == false) {
+			System.out.println("wrong entries");
+			return false;
+		}
+		Iterator<String> itr = map.keySet().iterator();
+		for (String key : expected.keySet()) {
+			if (key.equals(itr.next()) == false) {
+				System.out.println("wrong order");
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * keys sharing a long prefix should be kept in far fewer chars than the keys have.
+	 */
+	static boolean testCompression() {
+		StringBTreeSet set = new StringBTreeSet(64);
+		String prefix = "/data/warehouse/customer-events/year=2024/month=06/day=15/";
+		long chars = 0;
+		for (int i = 0; i < 100000; i++) {
+			String key = prefix + "part-" + (100000 + i);
+			set.add(key);
+			chars += key.length();
+		}
+		System.out.println("chars of keys=" + chars + ", chars in nodes=" + set.charCount());
+		return set.charCount() * 4 < chars;
+	}
+}